@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.brotli;
+
+import com.facebook.stetho.inspector.network.ContentDecoder;
+import com.facebook.stetho.inspector.network.ContentDecoderRegistry;
+
+import org.brotli.dec.BrotliInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes {@code Content-Encoding: br} response bodies for the Network tab.  Install it
+ * alongside Stetho using:
+ * <pre>
+ *   {@code
+ *   BrotliContentDecoder.install();
+ *   }
+ * </pre>
+ */
+public class BrotliContentDecoder implements ContentDecoder {
+  public static final String CONTENT_ENCODING = "br";
+
+  public static void install() {
+    ContentDecoderRegistry.getInstance().register(CONTENT_ENCODING, new BrotliContentDecoder());
+  }
+
+  @Override
+  public InputStream decode(InputStream encoded) throws IOException {
+    return new BrotliInputStream(encoded);
+  }
+}
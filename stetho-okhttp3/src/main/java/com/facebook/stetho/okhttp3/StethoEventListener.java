@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.okhttp3;
+
+import android.os.SystemClock;
+
+import com.facebook.stetho.inspector.network.NetworkEventReporter;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Records how long each phase of a call takes (DNS, connecting, the TLS handshake, sending the
+ * request and waiting for the response) so that {@link StethoInterceptor} can fill in the
+ * Network tab's timing waterfall.  To use, install its factory next to the interceptor:
+ * <pre>
+ *   OkHttpClient client = new OkHttpClient.Builder()
+ *       .addNetworkInterceptor(new StethoInterceptor())
+ *       .eventListenerFactory(new StethoEventListener.Factory())
+ *       .build();
+ * </pre>
+ * Without it, responses are reported without timing.  If the app has an event listener of its
+ * own, pass its factory to {@link Factory#Factory(EventListener.Factory)} and every event is
+ * forwarded to it.
+ * <p>
+ * A call may go through several network requests (redirects, retries); each gets the phases
+ * recorded since the previous one was reported.
+ */
+public class StethoEventListener extends EventListener {
+  private static final long NONE = -1;
+
+  /**
+   * Weakly keyed so that calls which are created but never executed (or cloned and discarded),
+   * and so never end, don't keep their listener or request alive.  {@link Call} implementations
+   * don't override {@code equals}, so this still matches by identity.
+   */
+  @GuardedBy("sListeners")
+  private static final Map<Call, StethoEventListener> sListeners = new WeakHashMap<>();
+
+  private final EventListener mDelegate;
+
+  @GuardedBy("this")
+  private long mRequestStartRealtimeMs;
+
+  @GuardedBy("this")
+  private long mRequestStartNanos;
+
+  @GuardedBy("this")
+  private long mDnsStart = NONE;
+  @GuardedBy("this")
+  private long mDnsEnd = NONE;
+  @GuardedBy("this")
+  private long mConnectStart = NONE;
+  @GuardedBy("this")
+  private long mConnectEnd = NONE;
+  @GuardedBy("this")
+  private long mSecureConnectStart = NONE;
+  @GuardedBy("this")
+  private long mSecureConnectEnd = NONE;
+  @GuardedBy("this")
+  private long mRequestHeadersStart = NONE;
+  @GuardedBy("this")
+  private long mRequestEnd = NONE;
+  @GuardedBy("this")
+  private long mResponseHeadersStart = NONE;
+  @GuardedBy("this")
+  private long mResponseHeadersEnd = NONE;
+
+  public static class Factory implements EventListener.Factory {
+    private final EventListener.Factory mDelegate;
+
+    public Factory() {
+      this(new EventListener.Factory() {
+        @Override
+        public EventListener create(Call call) {
+          return EventListener.NONE;
+        }
+      });
+    }
+
+    /**
+     * @param delegate Factory of the listener the app would otherwise have installed, which is
+     *     told about every event as usual.
+     */
+    public Factory(EventListener.Factory delegate) {
+      mDelegate = delegate;
+    }
+
+    @Override
+    public EventListener create(Call call) {
+      StethoEventListener listener = new StethoEventListener(mDelegate.create(call));
+      synchronized (sListeners) {
+        sListeners.put(call, listener);
+      }
+      return listener;
+    }
+  }
+
+  StethoEventListener(EventListener delegate) {
+    mDelegate = delegate;
+  }
+
+  @Nullable
+  static StethoEventListener forCall(Call call) {
+    synchronized (sListeners) {
+      return sListeners.get(call);
+    }
+  }
+
+  private static void release(Call call) {
+    synchronized (sListeners) {
+      sListeners.remove(call);
+    }
+  }
+
+  /**
+   * Phases recorded for the network request whose response headers have just arrived.  Later
+   * phases are attributed to the next request.
+   */
+  synchronized NetworkEventReporter.InspectorResourceTiming takeTiming() {
+    Timing timing = new Timing(
+        mRequestStartRealtimeMs / 1000.0,
+        toOffsetMs(mDnsStart),
+        toOffsetMs(mDnsEnd),
+        toOffsetMs(mConnectStart),
+        toOffsetMs(mConnectEnd),
+        toOffsetMs(mSecureConnectStart),
+        toOffsetMs(mSecureConnectEnd),
+        toOffsetMs(mRequestHeadersStart),
+        toOffsetMs(mRequestEnd),
+        toOffsetMs(mResponseHeadersStart),
+        toOffsetMs(mResponseHeadersEnd));
+    startRequest();
+    return timing;
+  }
+
+  @GuardedBy("this")
+  private double toOffsetMs(long nanos) {
+    if (nanos == NONE) {
+      return -1;
+    }
+    return (nanos - mRequestStartNanos) / 1000000.0;
+  }
+
+  @GuardedBy("this")
+  private void startRequest() {
+    mRequestStartRealtimeMs = SystemClock.elapsedRealtime();
+    mRequestStartNanos = System.nanoTime();
+    mDnsStart = NONE;
+    mDnsEnd = NONE;
+    mConnectStart = NONE;
+    mConnectEnd = NONE;
+    mSecureConnectStart = NONE;
+    mSecureConnectEnd = NONE;
+    mRequestHeadersStart = NONE;
+    mRequestEnd = NONE;
+    mResponseHeadersStart = NONE;
+    mResponseHeadersEnd = NONE;
+  }
+
+  // Each event is recorded with our lock held and then forwarded without it, so that a slow
+  // delegate doesn't hold up takeTiming.
+
+  @Override
+  public void callStart(Call call) {
+    synchronized (this) {
+      startRequest();
+    }
+    mDelegate.callStart(call);
+  }
+
+  @Override
+  public void dnsStart(Call call, String domainName) {
+    synchronized (this) {
+      mDnsStart = System.nanoTime();
+    }
+    mDelegate.dnsStart(call, domainName);
+  }
+
+  @Override
+  public void dnsEnd(Call call, String domainName, List<InetAddress> addresses) {
+    synchronized (this) {
+      mDnsEnd = System.nanoTime();
+    }
+    mDelegate.dnsEnd(call, domainName, addresses);
+  }
+
+  @Override
+  public void connectStart(
+      Call call,
+      InetSocketAddress inetSocketAddress,
+      Proxy proxy) {
+    synchronized (this) {
+      // Keep the first attempt's start if a route fails and another one is tried.
+      if (mConnectStart == NONE) {
+        mConnectStart = System.nanoTime();
+      }
+    }
+    mDelegate.connectStart(call, inetSocketAddress, proxy);
+  }
+
+  @Override
+  public void secureConnectStart(Call call) {
+    synchronized (this) {
+      mSecureConnectStart = System.nanoTime();
+    }
+    mDelegate.secureConnectStart(call);
+  }
+
+  @Override
+  public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
+    synchronized (this) {
+      mSecureConnectEnd = System.nanoTime();
+    }
+    mDelegate.secureConnectEnd(call, handshake);
+  }
+
+  @Override
+  public void connectEnd(
+      Call call,
+      InetSocketAddress inetSocketAddress,
+      Proxy proxy,
+      @Nullable Protocol protocol) {
+    synchronized (this) {
+      mConnectEnd = System.nanoTime();
+    }
+    mDelegate.connectEnd(call, inetSocketAddress, proxy, protocol);
+  }
+
+  @Override
+  public void connectFailed(
+      Call call,
+      InetSocketAddress inetSocketAddress,
+      Proxy proxy,
+      @Nullable Protocol protocol,
+      IOException ioe) {
+    mDelegate.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+  }
+
+  @Override
+  public void connectionAcquired(Call call, Connection connection) {
+    mDelegate.connectionAcquired(call, connection);
+  }
+
+  @Override
+  public void connectionReleased(Call call, Connection connection) {
+    mDelegate.connectionReleased(call, connection);
+  }
+
+  @Override
+  public void requestHeadersStart(Call call) {
+    synchronized (this) {
+      mRequestHeadersStart = System.nanoTime();
+    }
+    mDelegate.requestHeadersStart(call);
+  }
+
+  @Override
+  public void requestHeadersEnd(Call call, Request request) {
+    synchronized (this) {
+      mRequestEnd = System.nanoTime();
+    }
+    mDelegate.requestHeadersEnd(call, request);
+  }
+
+  @Override
+  public void requestBodyStart(Call call) {
+    mDelegate.requestBodyStart(call);
+  }
+
+  @Override
+  public void requestBodyEnd(Call call, long byteCount) {
+    synchronized (this) {
+      mRequestEnd = System.nanoTime();
+    }
+    mDelegate.requestBodyEnd(call, byteCount);
+  }
+
+  @Override
+  public void responseHeadersStart(Call call) {
+    synchronized (this) {
+      mResponseHeadersStart = System.nanoTime();
+    }
+    mDelegate.responseHeadersStart(call);
+  }
+
+  @Override
+  public void responseHeadersEnd(Call call, Response response) {
+    synchronized (this) {
+      mResponseHeadersEnd = System.nanoTime();
+    }
+    mDelegate.responseHeadersEnd(call, response);
+  }
+
+  @Override
+  public void responseBodyStart(Call call) {
+    mDelegate.responseBodyStart(call);
+  }
+
+  @Override
+  public void responseBodyEnd(Call call, long byteCount) {
+    mDelegate.responseBodyEnd(call, byteCount);
+  }
+
+  @Override
+  public void callEnd(Call call) {
+    release(call);
+    mDelegate.callEnd(call);
+  }
+
+  @Override
+  public void callFailed(Call call, IOException ioe) {
+    release(call);
+    mDelegate.callFailed(call, ioe);
+  }
+
+  private static class Timing implements NetworkEventReporter.InspectorResourceTiming {
+    private final double mRequestTime;
+    private final double mDnsStart;
+    private final double mDnsEnd;
+    private final double mConnectStart;
+    private final double mConnectEnd;
+    private final double mSslStart;
+    private final double mSslEnd;
+    private final double mSendStart;
+    private final double mSendEnd;
+    private final double mReceiveHeadersStart;
+    private final double mReceiveHeadersEnd;
+
+    public Timing(
+        double requestTime,
+        double dnsStart,
+        double dnsEnd,
+        double connectStart,
+        double connectEnd,
+        double sslStart,
+        double sslEnd,
+        double sendStart,
+        double sendEnd,
+        double receiveHeadersStart,
+        double receiveHeadersEnd) {
+      mRequestTime = requestTime;
+      mDnsStart = dnsStart;
+      mDnsEnd = dnsEnd;
+      mConnectStart = connectStart;
+      mConnectEnd = connectEnd;
+      mSslStart = sslStart;
+      mSslEnd = sslEnd;
+      mSendStart = sendStart;
+      mSendEnd = sendEnd;
+      mReceiveHeadersStart = receiveHeadersStart;
+      mReceiveHeadersEnd = receiveHeadersEnd;
+    }
+
+    @Override
+    public double requestTime() {
+      return mRequestTime;
+    }
+
+    @Override
+    public double dnsStart() {
+      return mDnsStart;
+    }
+
+    @Override
+    public double dnsEnd() {
+      return mDnsEnd;
+    }
+
+    @Override
+    public double connectStart() {
+      return mConnectStart;
+    }
+
+    @Override
+    public double connectEnd() {
+      return mConnectEnd;
+    }
+
+    @Override
+    public double sslStart() {
+      return mSslStart;
+    }
+
+    @Override
+    public double sslEnd() {
+      return mSslEnd;
+    }
+
+    @Override
+    public double sendStart() {
+      return mSendStart;
+    }
+
+    @Override
+    public double sendEnd() {
+      return mSendEnd;
+    }
+
+    @Override
+    public double receiveHeadersStart() {
+      return mReceiveHeadersStart;
+    }
+
+    @Override
+    public double receiveHeadersEnd() {
+      return mReceiveHeadersEnd;
+    }
+  }
+}
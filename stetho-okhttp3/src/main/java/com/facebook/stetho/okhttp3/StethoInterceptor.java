@@ -31,6 +31,7 @@ import java.io.OutputStream;
  *       .addNetworkInterceptor(new StethoInterceptor())
  *       .build();
  * </pre>
+ * Add a {@link StethoEventListener.Factory} as well to get timing information.
  */
 public class StethoInterceptor implements Interceptor {
   private final NetworkEventReporter mEventReporter = NetworkEventReporterImpl.get();
@@ -49,15 +50,21 @@ public class StethoInterceptor implements Interceptor {
       mEventReporter.requestWillBeSent(inspectorRequest);
     }
 
+    StethoEventListener eventListener = StethoEventListener.forCall(chain.call());
     Response response;
     try {
       response = chain.proceed(request);
     } catch (IOException e) {
+      if (eventListener != null) {
+        eventListener.takeTiming();
+      }
       if (mEventReporter.isEnabled()) {
         mEventReporter.httpExchangeFailed(requestId, e.toString());
       }
       throw e;
     }
+    NetworkEventReporter.InspectorResourceTiming timing =
+        eventListener != null ? eventListener.takeTiming() : null;
 
     if (mEventReporter.isEnabled()) {
       if (requestBodyHelper != null && requestBodyHelper.hasBody()) {
@@ -75,7 +82,8 @@ public class StethoInterceptor implements Interceptor {
               requestId,
               request,
               response,
-              connection));
+              connection,
+              timing));
 
       ResponseBody body = response.body();
       MediaType contentType = null;
@@ -186,16 +194,19 @@ public class StethoInterceptor implements Interceptor {
     private final Request mRequest;
     private final Response mResponse;
     private @Nullable final Connection mConnection;
+    private @Nullable final NetworkEventReporter.InspectorResourceTiming mTiming;
 
     public OkHttpInspectorResponse(
         String requestId,
         Request request,
         Response response,
-        @Nullable Connection connection) {
+        @Nullable Connection connection,
+        @Nullable NetworkEventReporter.InspectorResourceTiming timing) {
       mRequestId = requestId;
       mRequest = request;
       mResponse = response;
       mConnection = connection;
+      mTiming = timing;
     }
 
     @Override
@@ -234,6 +245,12 @@ public class StethoInterceptor implements Interceptor {
       return mResponse.cacheResponse() != null;
     }
 
+    @Nullable
+    @Override
+    public NetworkEventReporter.InspectorResourceTiming timing() {
+      return mTiming;
+    }
+
     @Override
     public int headerCount() {
       return mResponse.headers().size();
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.okhttp3;
+
+import android.os.Build;
+import com.facebook.stetho.inspector.network.NetworkEventReporter;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN)
+@RunWith(RobolectricTestRunner.class)
+public class StethoEventListenerTest {
+  private final OkHttpClient mClient = new OkHttpClient();
+  private final Request mRequest = new Request.Builder()
+      .url("http://www.facebook.com/nowhere")
+      .build();
+
+  @Test
+  public void testTimingReportsRecordedPhasesInOrder() {
+    Call call = mClient.newCall(mRequest);
+    StethoEventListener listener =
+        (StethoEventListener) new StethoEventListener.Factory().create(call);
+    assertSame(listener, StethoEventListener.forCall(call));
+
+    InetSocketAddress address = InetSocketAddress.createUnresolved("www.facebook.com", 80);
+    listener.callStart(call);
+    listener.dnsStart(call, "www.facebook.com");
+    listener.dnsEnd(call, "www.facebook.com", Collections.<InetAddress>emptyList());
+    listener.connectStart(call, address, Proxy.NO_PROXY);
+    listener.connectEnd(call, address, Proxy.NO_PROXY, Protocol.HTTP_1_1);
+    listener.requestHeadersStart(call);
+    listener.requestHeadersEnd(call, mRequest);
+    listener.responseHeadersStart(call);
+    listener.responseHeadersEnd(call, createResponse());
+
+    NetworkEventReporter.InspectorResourceTiming timing = listener.takeTiming();
+    assertTrue(timing.requestTime() >= 0);
+    assertInOrder(
+        0,
+        timing.dnsStart(),
+        timing.dnsEnd(),
+        timing.connectStart(),
+        timing.connectEnd(),
+        timing.sendStart(),
+        timing.sendEnd(),
+        timing.receiveHeadersStart(),
+        timing.receiveHeadersEnd());
+    // No TLS for plain HTTP.
+    assertEquals(-1, timing.sslStart(), 0);
+    assertEquals(-1, timing.sslEnd(), 0);
+  }
+
+  @Test
+  public void testFollowUpRequestOnlyGetsItsOwnPhases() {
+    Call call = mClient.newCall(mRequest);
+    StethoEventListener listener =
+        (StethoEventListener) new StethoEventListener.Factory().create(call);
+
+    InetSocketAddress address = InetSocketAddress.createUnresolved("www.facebook.com", 80);
+    listener.callStart(call);
+    listener.connectStart(call, address, Proxy.NO_PROXY);
+    listener.connectEnd(call, address, Proxy.NO_PROXY, Protocol.HTTP_1_1);
+    listener.requestHeadersStart(call);
+    listener.requestHeadersEnd(call, mRequest);
+    listener.responseHeadersStart(call);
+    listener.responseHeadersEnd(call, createResponse());
+    listener.takeTiming();
+
+    // A redirect followed on the same connection.
+    listener.requestHeadersStart(call);
+    listener.requestHeadersEnd(call, mRequest);
+    listener.responseHeadersStart(call);
+    listener.responseHeadersEnd(call, createResponse());
+
+    NetworkEventReporter.InspectorResourceTiming timing = listener.takeTiming();
+    assertEquals(-1, timing.dnsStart(), 0);
+    assertEquals(-1, timing.connectStart(), 0);
+    assertEquals(-1, timing.connectEnd(), 0);
+    assertInOrder(
+        0,
+        timing.sendStart(),
+        timing.sendEnd(),
+        timing.receiveHeadersStart(),
+        timing.receiveHeadersEnd());
+  }
+
+  @Test
+  public void testReleasedWhenCallEnds() {
+    StethoEventListener.Factory factory = new StethoEventListener.Factory();
+    Call succeeded = mClient.newCall(mRequest);
+    factory.create(succeeded).callEnd(succeeded);
+    assertNull(StethoEventListener.forCall(succeeded));
+
+    Call failed = mClient.newCall(mRequest);
+    factory.create(failed).callFailed(failed, new IOException());
+    assertNull(StethoEventListener.forCall(failed));
+  }
+
+  @Test
+  public void testEventsForwardedToAppListener() {
+    final RecordingEventListener appListener = new RecordingEventListener();
+    StethoEventListener.Factory factory = new StethoEventListener.Factory(
+        new EventListener.Factory() {
+          @Override
+          public EventListener create(Call call) {
+            return appListener;
+          }
+        });
+
+    Call call = mClient.newCall(mRequest);
+    EventListener listener = factory.create(call);
+    listener.callStart(call);
+    listener.requestHeadersStart(call);
+    listener.requestHeadersEnd(call, mRequest);
+    listener.responseHeadersStart(call);
+    listener.responseHeadersEnd(call, createResponse());
+    listener.responseBodyStart(call);
+    listener.responseBodyEnd(call, 0);
+    listener.callEnd(call);
+
+    assertEquals(
+        Arrays.asList(
+            "callStart",
+            "requestHeadersStart",
+            "requestHeadersEnd",
+            "responseHeadersStart",
+            "responseHeadersEnd",
+            "responseBodyStart",
+            "responseBodyEnd",
+            "callEnd"),
+        appListener.events);
+  }
+
+  private Response createResponse() {
+    return new Response.Builder()
+        .request(mRequest)
+        .protocol(Protocol.HTTP_1_1)
+        .code(200)
+        .message("OK")
+        .build();
+  }
+
+  private static void assertInOrder(double... offsets) {
+    for (int i = 1; i < offsets.length; i++) {
+      assertTrue(
+          "Phase " + i + " at " + offsets[i] + " before " + offsets[i - 1],
+          offsets[i] >= offsets[i - 1]);
+    }
+  }
+
+  private static class RecordingEventListener extends EventListener {
+    public final List<String> events = new ArrayList<>();
+
+    @Override
+    public void callStart(Call call) {
+      events.add("callStart");
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+      events.add("requestHeadersStart");
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+      events.add("requestHeadersEnd");
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+      events.add("responseHeadersStart");
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+      events.add("responseHeadersEnd");
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+      events.add("responseBodyStart");
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+      events.add("responseBodyEnd");
+    }
+
+    @Override
+    public void callEnd(Call call) {
+      events.add("callEnd");
+    }
+  }
+}
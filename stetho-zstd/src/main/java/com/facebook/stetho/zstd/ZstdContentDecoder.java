@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.zstd;
+
+import com.facebook.stetho.inspector.network.ContentDecoder;
+import com.facebook.stetho.inspector.network.ContentDecoderRegistry;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes {@code Content-Encoding: zstd} response bodies for the Network tab.  Install it
+ * alongside Stetho using:
+ * <pre>
+ *   {@code
+ *   ZstdContentDecoder.install();
+ *   }
+ * </pre>
+ */
+public class ZstdContentDecoder implements ContentDecoder {
+  public static final String CONTENT_ENCODING = "zstd";
+
+  public static void install() {
+    ContentDecoderRegistry.getInstance().register(CONTENT_ENCODING, new ZstdContentDecoder());
+  }
+
+  @Override
+  public InputStream decode(InputStream encoded) throws IOException {
+    return new ZstdInputStream(encoded);
+  }
+}
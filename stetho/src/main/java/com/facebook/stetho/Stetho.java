@@ -37,6 +37,8 @@ import com.facebook.stetho.inspector.elements.DocumentProviderFactory;
 import com.facebook.stetho.inspector.elements.android.ActivityTracker;
 import com.facebook.stetho.inspector.elements.android.AndroidDocumentConstants;
 import com.facebook.stetho.inspector.elements.android.AndroidDocumentProviderFactory;
+import com.facebook.stetho.inspector.network.NetworkCapturePolicy;
+import com.facebook.stetho.inspector.network.ResponseBodyStoreOptions;
 import com.facebook.stetho.inspector.protocol.ChromeDevtoolsDomain;
 import com.facebook.stetho.inspector.protocol.module.CSS;
 import com.facebook.stetho.inspector.protocol.module.DOM;
@@ -62,6 +64,9 @@ import com.facebook.stetho.server.ProtocolDetectingSocketHandler;
 import com.facebook.stetho.server.ServerManager;
 import com.facebook.stetho.server.SocketHandler;
 import com.facebook.stetho.server.SocketHandlerFactory;
+import com.facebook.stetho.server.WorkerPool;
+import com.facebook.stetho.server.WorkerPoolOptions;
+import com.facebook.stetho.websocket.DeflateOptions;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -245,6 +250,8 @@ public class Stetho {
     @Nullable private DatabaseFilesProvider mDatabaseFilesProvider;
     @Nullable private List<DatabaseDriver2> mDatabaseDrivers;
     private boolean mExcludeSqliteDatabaseDriver;
+    private ResponseBodyStoreOptions mResponseBodyStoreOptions = ResponseBodyStoreOptions.DEFAULT;
+    private NetworkCapturePolicy mNetworkCapturePolicy = NetworkCapturePolicy.CAPTURE_ALL;
 
     private final DomainContext mDomainContext;
 
@@ -265,6 +272,24 @@ public class Stetho {
       return this;
     }
 
+    /**
+     * Limit the disk space and number of responses whose bodies are kept for the Network tab.
+     * Defaults to {@link ResponseBodyStoreOptions#DEFAULT}.
+     */
+    public DefaultInspectorModulesBuilder responseBodyStore(ResponseBodyStoreOptions options) {
+      mResponseBodyStoreOptions = Util.throwIfNull(options);
+      return this;
+    }
+
+    /**
+     * Limit which requests show up in the Network tab and how much of their response bodies is
+     * kept.  Defaults to {@link NetworkCapturePolicy#CAPTURE_ALL}.
+     */
+    public DefaultInspectorModulesBuilder networkCapturePolicy(NetworkCapturePolicy policy) {
+      mNetworkCapturePolicy = Util.throwIfNull(policy);
+      return this;
+    }
+
     /**
      * Provide a custom runtime REPL (read-eval-print loop) implementation for the Console tab.
      * By default an implementation will be provided for you that automatically detects
@@ -385,7 +410,9 @@ public class Stetho {
       provideIfDesired(new DOMStorage(mContext));
       provideIfDesired(new HeapProfiler());
       provideIfDesired(new Inspector());
-      provideIfDesired(new Network(mContext));
+      Network network = new Network(mContext, mResponseBodyStoreOptions);
+      network.setCapturePolicy(mNetworkCapturePolicy);
+      provideIfDesired(network);
       provideIfDesired(new Page(mContext));
       provideIfDesired(new Profiler());
       provideIfDesired(
@@ -437,6 +464,8 @@ public class Stetho {
   public static abstract class Initializer {
     private final Context mContext;
 
+    @Nullable private volatile LocalSocketServer mServer;
+
     protected Initializer(Context context) {
       mContext = Util.getApplication(context);
     }
@@ -447,13 +476,38 @@ public class Stetho {
     @Nullable
     protected abstract Iterable<ChromeDevtoolsDomain> getInspectorModules();
 
+    /**
+     * Tuning for {@code permessage-deflate} compression of the inspector WebSocket.
+     */
+    protected DeflateOptions getWebSocketDeflateOptions() {
+      return DeflateOptions.DEFAULT;
+    }
+
+    /**
+     * Sizing of the thread pool serving connections to the Stetho socket.
+     */
+    protected WorkerPoolOptions getWorkerPoolOptions() {
+      return WorkerPoolOptions.DEFAULT;
+    }
+
+    /**
+     * Connection and thread counters of the running server, or null if not yet started.
+     */
+    @Nullable
+    public final WorkerPool getWorkerPool() {
+      LocalSocketServer server = mServer;
+      return server != null ? server.getWorkerPool() : null;
+    }
+
     final void start() {
       // Note that _devtools_remote is a magic suffix understood by Chrome which causes
       // the discovery process to begin.
       LocalSocketServer server = new LocalSocketServer(
           "main",
           AddressNameHelper.createCustomAddress("_devtools_remote"),
-          new LazySocketHandler(new RealSocketHandlerFactory()));
+          new LazySocketHandler(new RealSocketHandlerFactory()),
+          getWorkerPoolOptions());
+      mServer = server;
 
       ServerManager serverManager = new ServerManager(server);
       serverManager.start();
@@ -490,7 +544,10 @@ public class Stetho {
         if (inspectorModules != null) {
           socketHandler.addHandler(
               new ProtocolDetectingSocketHandler.AlwaysMatchMatcher(),
-              new DevtoolsSocketHandler(mContext, inspectorModules));
+              new DevtoolsSocketHandler(
+                  mContext,
+                  inspectorModules,
+                  getWebSocketDeflateOptions()));
         }
 
         return socketHandler;
@@ -506,6 +563,8 @@ public class Stetho {
 
     @Nullable DumperPluginsProvider mDumperPlugins;
     @Nullable InspectorModulesProvider mInspectorModules;
+    DeflateOptions mWebSocketDeflateOptions = DeflateOptions.DEFAULT;
+    WorkerPoolOptions mWorkerPoolOptions = WorkerPoolOptions.DEFAULT;
 
     private InitializerBuilder(Context context) {
       mContext = Util.getApplication(context);
@@ -534,6 +593,26 @@ public class Stetho {
       return this;
     }
 
+    /**
+     * Configure {@code permessage-deflate} compression of the WebSocket used by the inspector,
+     * which is negotiated whenever Chrome offers it.  Use {@link DeflateOptions#DISABLED} to
+     * always send uncompressed messages.
+     */
+    public InitializerBuilder webSocketCompression(DeflateOptions options) {
+      mWebSocketDeflateOptions = Util.throwIfNull(options);
+      return this;
+    }
+
+    /**
+     * Bound the threads used to serve short exchanges such as discovery polling from
+     * {@code chrome://inspect}.  Long-lived WebSocket and dumpapp sessions get threads of their
+     * own outside of this limit.
+     */
+    public InitializerBuilder workerPool(WorkerPoolOptions options) {
+      mWorkerPoolOptions = Util.throwIfNull(options);
+      return this;
+    }
+
     public Initializer build() {
       return new BuilderBasedInitializer(this);
     }
@@ -542,11 +621,15 @@ public class Stetho {
   private static class BuilderBasedInitializer extends Initializer {
     @Nullable private final DumperPluginsProvider mDumperPlugins;
     @Nullable private final InspectorModulesProvider mInspectorModules;
+    private final DeflateOptions mWebSocketDeflateOptions;
+    private final WorkerPoolOptions mWorkerPoolOptions;
 
     private BuilderBasedInitializer(InitializerBuilder b) {
       super(b.mContext);
       mDumperPlugins = b.mDumperPlugins;
       mInspectorModules = b.mInspectorModules;
+      mWebSocketDeflateOptions = b.mWebSocketDeflateOptions;
+      mWorkerPoolOptions = b.mWorkerPoolOptions;
     }
 
     @Nullable
@@ -560,6 +643,16 @@ public class Stetho {
     protected Iterable<ChromeDevtoolsDomain> getInspectorModules() {
       return mInspectorModules != null ? mInspectorModules.get() : null;
     }
+
+    @Override
+    protected DeflateOptions getWebSocketDeflateOptions() {
+      return mWebSocketDeflateOptions;
+    }
+
+    @Override
+    protected WorkerPoolOptions getWorkerPoolOptions() {
+      return mWorkerPoolOptions;
+    }
   }
 
   private static boolean sIsSuspend = false;
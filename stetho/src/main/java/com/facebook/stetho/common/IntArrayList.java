@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.common;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of {@code int}s, for when boxing every element of an {@code ArrayList<Integer>}
+ * would cost more than the work being done with them.
+ */
+@NotThreadSafe
+public final class IntArrayList {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private int[] mValues;
+  private int mSize;
+
+  public IntArrayList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public IntArrayList(int initialCapacity) {
+    mValues = new int[initialCapacity];
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  public boolean isEmpty() {
+    return mSize == 0;
+  }
+
+  public int get(int index) {
+    if (index >= mSize) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+    }
+    return mValues[index];
+  }
+
+  public void set(int index, int value) {
+    if (index >= mSize) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+    }
+    mValues[index] = value;
+  }
+
+  public void add(int value) {
+    if (mSize == mValues.length) {
+      mValues = Arrays.copyOf(mValues, Math.max(DEFAULT_CAPACITY, mSize * 2));
+    }
+    mValues[mSize++] = value;
+  }
+
+  public void clear() {
+    mSize = 0;
+  }
+
+  public void sort() {
+    Arrays.sort(mValues, 0, mSize);
+  }
+
+  /**
+   * Only valid after {@link #sort}.
+   */
+  public boolean binarySearchContains(int value) {
+    return Arrays.binarySearch(mValues, 0, mSize, value) >= 0;
+  }
+}
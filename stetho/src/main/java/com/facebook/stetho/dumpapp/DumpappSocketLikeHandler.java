@@ -10,6 +10,7 @@ package com.facebook.stetho.dumpapp;
 import com.facebook.stetho.common.LogUtil;
 import com.facebook.stetho.server.SocketLike;
 import com.facebook.stetho.server.SocketLikeHandler;
+import com.facebook.stetho.server.WorkerPool;
 
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -40,6 +41,10 @@ public class DumpappSocketLikeHandler implements SocketLikeHandler {
     // Get through the initial hello...
     establishConversation(in);
 
+    // Commands can run for as long as they like (think `dumpapp crash` or streaming output), so
+    // don't let them hold up the pool serving discovery requests.
+    WorkerPool.detachCurrentThread();
+
     Framer framer = new Framer(in, socket.getOutput());
     String[] args = readArgs(framer);
 
@@ -14,7 +14,10 @@ import com.facebook.stetho.common.LogRedirector;
 import com.facebook.stetho.common.Util;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcException;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcPeer;
+import com.facebook.stetho.inspector.jsonrpc.JsonRpcResponder;
+import com.facebook.stetho.inspector.jsonrpc.JsonRpcResult;
 import com.facebook.stetho.inspector.jsonrpc.PendingRequest;
+import com.facebook.stetho.inspector.jsonrpc.protocol.EmptyResult;
 import com.facebook.stetho.inspector.jsonrpc.protocol.JsonRpcError;
 import com.facebook.stetho.inspector.jsonrpc.protocol.JsonRpcRequest;
 import com.facebook.stetho.inspector.jsonrpc.protocol.JsonRpcResponse;
@@ -31,6 +34,9 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
 
 /**
  * Implements a limited version of the Chrome Debugger WebSocket protocol (using JSON-RPC 2.0).
@@ -42,6 +48,8 @@ public class ChromeDevtoolsServer implements SimpleEndpoint {
 
   public static final String PATH = "/inspector";
 
+  private static final EmptyResult EMPTY_RESULT = new EmptyResult();
+
   private final ObjectMapper mObjectMapper;
   private final MethodDispatcher mMethodDispatcher;
   private final Map<SimpleSession, JsonRpcPeer> mPeers =
@@ -136,34 +144,10 @@ public class ChromeDevtoolsServer implements SimpleEndpoint {
         requestNode,
         JsonRpcRequest.class);
 
-    JSONObject result = null;
-    JSONObject error = null;
-    try {
-      result = mMethodDispatcher.dispatch(peer,
-          request.method,
-          request.params);
-    } catch (JsonRpcException e) {
-      logDispatchException(e);
-      error = mObjectMapper.convertValue(e.getErrorMessage(), JSONObject.class);
-    }
-    if (request.id != null) {
-      JsonRpcResponse response = new JsonRpcResponse();
-      response.id = request.id;
-      response.result = result;
-      response.error = error;
-      JSONObject jsonObject = mObjectMapper.convertValue(response, JSONObject.class);
-      String responseString;
-      try {
-        responseString = jsonObject.toString();
-      } catch (OutOfMemoryError e) {
-        // JSONStringer can cause an OOM when the Json to handle is too big.
-        response.result = null;
-        response.error = mObjectMapper.convertValue(e.getMessage(), JSONObject.class);
-        jsonObject = mObjectMapper.convertValue(response, JSONObject.class);
-        responseString = jsonObject.toString();
-      }
-      peer.getWebSocket().sendText(responseString);
-    }
+    mMethodDispatcher.dispatch(peer,
+        request.method,
+        request.params,
+        new ResponseSender(peer, request.id));
   }
 
   private static void logDispatchException(JsonRpcException e) {
@@ -192,6 +176,41 @@ public class ChromeDevtoolsServer implements SimpleEndpoint {
     }
   }
 
+  /**
+   * Routes the outcome of a dispatched request back to the peer, matched up by
+   * {@link JsonRpcResponse#id}.  Notifications (requests without an id) get no response.
+   */
+  private static class ResponseSender implements JsonRpcResponder {
+    private final JsonRpcPeer mPeer;
+    @Nullable private final Long mRequestId;
+    private final AtomicBoolean mResponded = new AtomicBoolean();
+
+    public ResponseSender(JsonRpcPeer peer, @Nullable Long requestId) {
+      mPeer = peer;
+      mRequestId = requestId;
+    }
+
+    @Override
+    public void sendResult(@Nullable JsonRpcResult result) {
+      if (!mResponded.getAndSet(true) && mRequestId != null) {
+        mPeer.sendResponse(
+            mRequestId,
+            result != null ? result : EMPTY_RESULT,
+            null /* error */);
+      }
+    }
+
+    @Override
+    public void sendError(JsonRpcException e) {
+      if (!mResponded.getAndSet(true)) {
+        logDispatchException(e);
+        if (mRequestId != null) {
+          mPeer.sendResponse(mRequestId, null /* result */, e.getErrorMessage());
+        }
+      }
+    }
+  }
+
   @Override
   public void onError(SimpleSession session, Throwable ex) {
     LogRedirector.e(TAG, "onError: ex=" + ex.toString());
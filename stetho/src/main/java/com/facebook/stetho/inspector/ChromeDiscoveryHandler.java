@@ -17,10 +17,12 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.facebook.stetho.common.ProcessUtil;
+import com.facebook.stetho.common.Utf8Charset;
 import com.facebook.stetho.server.SocketLike;
 import com.facebook.stetho.server.http.ExactPathMatcher;
 import com.facebook.stetho.server.http.HandlerRegistry;
 import com.facebook.stetho.server.http.HttpHandler;
+import com.facebook.stetho.server.http.HttpHeaders;
 import com.facebook.stetho.server.http.HttpStatus;
 import com.facebook.stetho.server.http.LightHttpBody;
 import com.facebook.stetho.server.http.LightHttpRequest;
@@ -32,6 +34,9 @@ import org.json.JSONObject;
 
 import javax.annotation.Nullable;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Provides sufficient responses to convince Chrome's {@code chrome://inspect/devices} that we're
  * "one of them".  Note that we are being discovered automatically by the name of our socket
@@ -64,8 +69,14 @@ public class ChromeDiscoveryHandler implements HttpHandler {
   private final Context mContext;
   private final String mInspectorPath;
 
-  @Nullable private LightHttpBody mVersionResponse;
-  @Nullable private LightHttpBody mPageListResponse;
+  /**
+   * Source of the version component of our ETags, so that a rebuilt response never reuses the
+   * tag of an earlier one even if the content happens to hash the same.
+   */
+  private final AtomicInteger mNextResponseVersion = new AtomicInteger();
+
+  @Nullable private volatile CachedResponse mVersionResponse;
+  @Nullable private volatile CachedResponse mPageListResponse;
 
   public static String getWebViewRev() {
     try {
@@ -97,9 +108,9 @@ public class ChromeDiscoveryHandler implements HttpHandler {
     String path = request.uri.getPath();
     try {
       if (PATH_VERSION.equals(path)) {
-        handleVersion(response);
+        handleVersion(request, response);
       } else if (PATH_PAGE_LIST.equals(path) || PATH_PAGE_LIST_NEW.equals(path)) {
-        handlePageList(response);
+        handlePageList(request, response);
       } else if (PATH_ACTIVATE.equals(path)) {
         handleActivate(response);
       } else {
@@ -115,23 +126,31 @@ public class ChromeDiscoveryHandler implements HttpHandler {
     return true;
   }
 
-  private void handleVersion(LightHttpResponse response)
+  private void handleVersion(LightHttpRequest request, LightHttpResponse response)
       throws JSONException {
-    if (mVersionResponse == null) {
+    // Nothing in here can change for the lifetime of the process.
+    CachedResponse cached = mVersionResponse;
+    if (cached == null) {
       JSONObject reply = new JSONObject();
       reply.put("WebKit-Version", WEBKIT_VERSION);
       reply.put("User-Agent", USER_AGENT);
       reply.put("Protocol-Version", PROTOCOL_VERSION);
       reply.put("Browser", getAppLabelAndVersion());
       reply.put("Android-Package", mContext.getPackageName());
-      mVersionResponse = LightHttpBody.create(reply.toString(), "application/json");
+      cached = createCachedResponse("" /* key */, reply.toString());
+      mVersionResponse = cached;
     }
-    setSuccessfulResponse(response, mVersionResponse);
+    setCachedResponse(request, response, cached);
   }
 
-  private void handlePageList(LightHttpResponse response)
+  private void handlePageList(LightHttpRequest request, LightHttpResponse response)
       throws JSONException {
-    if (mPageListResponse == null) {
+    // The inputs to the page list which can change (the rev can be overridden with setprop at
+    // any time), all cheap to query unlike the app label.
+    String webViewRev = getWebViewRev();
+    String key = Process.myPid() + "/" + ProcessUtil.getProcessName() + "/" + webViewRev;
+    CachedResponse cached = mPageListResponse;
+    if (cached == null || !cached.key.equals(key)) {
       JSONArray reply = new JSONArray();
       JSONObject page = new JSONObject();
       page.put("type", "app");
@@ -145,16 +164,54 @@ public class ChromeDiscoveryHandler implements HttpHandler {
           .scheme("http")
           .authority("chrome-devtools-frontend.appspot.com")
           .appendEncodedPath("serve_rev")
-          .appendEncodedPath(getWebViewRev())
+          .appendEncodedPath(webViewRev)
           .appendEncodedPath("inspector.html")
           .appendQueryParameter("ws", mInspectorPath)
           .build();
       page.put("devtoolsFrontendUrl", chromeFrontendUrl.toString());
 
       reply.put(page);
-      mPageListResponse = LightHttpBody.create(reply.toString(), "application/json");
+      cached = createCachedResponse(key, reply.toString());
+      mPageListResponse = cached;
+    }
+    setCachedResponse(request, response, cached);
+  }
+
+  private CachedResponse createCachedResponse(String key, String json) {
+    byte[] body = Utf8Charset.encodeUTF8(json);
+    String etag = "\"" + mNextResponseVersion.incrementAndGet() + "-" +
+        Integer.toHexString(Arrays.hashCode(body)) + "\"";
+    return new CachedResponse(key, LightHttpBody.create(body, "application/json"), etag);
+  }
+
+  private static void setCachedResponse(
+      LightHttpRequest request,
+      LightHttpResponse response,
+      CachedResponse cached) {
+    response.addHeader(HttpHeaders.ETAG, cached.etag);
+    if (matchesIfNoneMatch(request.getFirstHeaderValue(HttpHeaders.IF_NONE_MATCH), cached.etag)) {
+      response.code = HttpStatus.HTTP_NOT_MODIFIED;
+      response.reasonPhrase = "Not Modified";
+      response.body = null;
+    } else {
+      setSuccessfulResponse(response, cached.body);
     }
-    setSuccessfulResponse(response, mPageListResponse);
+  }
+
+  private static boolean matchesIfNoneMatch(@Nullable String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if ("*".equals(candidate) || etag.equals(candidate)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   private String makeTitle() {
@@ -206,4 +263,19 @@ public class ChromeDiscoveryHandler implements HttpHandler {
     PackageManager pm = mContext.getPackageManager();
     return pm.getApplicationLabel(mContext.getApplicationInfo());
   }
+
+  private static class CachedResponse {
+    /**
+     * Inputs the response was built from, if it would need rebuilding when they change.
+     */
+    public final String key;
+    public final LightHttpBody body;
+    public final String etag;
+
+    public CachedResponse(String key, LightHttpBody body, String etag) {
+      this.key = key;
+      this.body = body;
+      this.etag = etag;
+    }
+  }
 }
@@ -16,6 +16,7 @@ import com.facebook.stetho.server.SocketLikeHandler;
 import com.facebook.stetho.server.http.ExactPathMatcher;
 import com.facebook.stetho.server.http.HandlerRegistry;
 import com.facebook.stetho.server.http.LightHttpServer;
+import com.facebook.stetho.websocket.DeflateOptions;
 import com.facebook.stetho.websocket.WebSocketHandler;
 
 import java.io.IOException;
@@ -23,11 +24,20 @@ import java.io.IOException;
 public class DevtoolsSocketHandler implements SocketLikeHandler {
   private final Context mContext;
   private final Iterable<ChromeDevtoolsDomain> mModules;
+  private final DeflateOptions mDeflateOptions;
   private final LightHttpServer mServer;
 
   public DevtoolsSocketHandler(Context context, Iterable<ChromeDevtoolsDomain> modules) {
+    this(context, modules, DeflateOptions.DEFAULT);
+  }
+
+  public DevtoolsSocketHandler(
+      Context context,
+      Iterable<ChromeDevtoolsDomain> modules,
+      DeflateOptions deflateOptions) {
     mContext = context;
     mModules = modules;
+    mDeflateOptions = deflateOptions;
     mServer = createServer();
   }
 
@@ -40,7 +50,7 @@ public class DevtoolsSocketHandler implements SocketLikeHandler {
     discoveryHandler.register(registry);
     registry.register(
         new ExactPathMatcher(ChromeDevtoolsServer.PATH),
-        new WebSocketHandler(new ChromeDevtoolsServer(mModules)));
+        new WebSocketHandler(new ChromeDevtoolsServer(mModules), mDeflateOptions));
 
     return new LightHttpServer(registry);
   }
@@ -8,19 +8,19 @@
 package com.facebook.stetho.inspector;
 
 import com.facebook.stetho.common.ExceptionUtil;
+import com.facebook.stetho.common.LogUtil;
 import com.facebook.stetho.common.Util;
 import com.facebook.stetho.inspector.console.CLog;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcException;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcPeer;
+import com.facebook.stetho.inspector.jsonrpc.JsonRpcResponder;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcResult;
-import com.facebook.stetho.inspector.jsonrpc.protocol.EmptyResult;
 import com.facebook.stetho.inspector.jsonrpc.protocol.JsonRpcError;
 import com.facebook.stetho.inspector.protocol.ChromeDevtoolsDomain;
 import com.facebook.stetho.inspector.protocol.ChromeDevtoolsMethod;
 import com.facebook.stetho.inspector.protocol.module.Log;
 import com.facebook.stetho.json.ObjectMapper;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.PrintWriter;
@@ -30,6 +30,7 @@ import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
@@ -57,16 +58,57 @@ public class MethodDispatcher {
     return mMethods.get(methodName);
   }
 
-  public JSONObject dispatch(JsonRpcPeer peer, String methodName, @Nullable JSONObject params)
-      throws JsonRpcException {
-    MethodDispatchHelper dispatchHelper = findMethodDispatcher(methodName);
+  /**
+   * Invoke the named method and deliver its outcome to {@code responder}.  Depending on the
+   * domain's {@link ChromeDevtoolsDomain#getDispatchExecutor()} and whether the method responds
+   * asynchronously, {@code responder} may be called before this method returns or at any later
+   * point from another thread.
+   */
+  public void dispatch(
+      final JsonRpcPeer peer,
+      final String methodName,
+      @Nullable final JSONObject params,
+      final JsonRpcResponder responder) {
+    final MethodDispatchHelper dispatchHelper = findMethodDispatcher(methodName);
     if (dispatchHelper == null) {
-      throw new JsonRpcException(new JsonRpcError(JsonRpcError.ErrorCode.METHOD_NOT_FOUND,
+      responder.sendError(new JsonRpcException(new JsonRpcError(
+          JsonRpcError.ErrorCode.METHOD_NOT_FOUND,
           "Not implemented: " + methodName,
-          null /* data */));
+          null /* data */)));
+      return;
     }
+    Executor executor = dispatchHelper.getExecutor();
+    if (executor == null) {
+      invokeAndRespond(dispatchHelper, peer, params, responder);
+    } else {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            invokeAndRespond(dispatchHelper, peer, params, responder);
+          } catch (Throwable t) {
+            // There's no reader thread to propagate this to, so report it to the peer instead
+            // of killing the executor's thread.  That includes Errors such as a
+            // StackOverflowError while walking a deep view tree, which would otherwise leave
+            // the request without a response.
+            LogUtil.e(t, "Dispatch of %s failed", methodName);
+            responder.sendError(new JsonRpcException(new JsonRpcError(
+                JsonRpcError.ErrorCode.INTERNAL_ERROR,
+                t.toString(),
+                null /* data */)));
+          }
+        }
+      });
+    }
+  }
+
+  private static void invokeAndRespond(
+      MethodDispatchHelper dispatchHelper,
+      JsonRpcPeer peer,
+      @Nullable JSONObject params,
+      JsonRpcResponder responder) {
     try {
-      return dispatchHelper.invoke(peer, params);
+      dispatchHelper.invoke(peer, params, responder);
     } catch (InvocationTargetException e) {
       android.util.Log.e("stetho", "dispatch failed", e);
       StringWriter w = new StringWriter();
@@ -77,38 +119,44 @@ public class MethodDispatcher {
       CLog.writeToConsole(Log.MessageLevel.ERROR, Log.MessageSource.JAVASCRIPT,
               "fatal error in stetho:" + w);
       Throwable cause = e.getCause();
-      ExceptionUtil.propagateIfInstanceOf(cause, JsonRpcException.class);
+      if (cause instanceof JsonRpcException) {
+        responder.sendError((JsonRpcException) cause);
+        return;
+      }
       throw ExceptionUtil.propagate(cause);
     } catch (IllegalAccessException e) {
       throw new RuntimeException(e);
-    } catch (JSONException e) {
-      throw new JsonRpcException(new JsonRpcError(JsonRpcError.ErrorCode.INTERNAL_ERROR,
-          e.toString(),
-          null /* data */));
     }
   }
 
   private static class MethodDispatchHelper {
-    private final ObjectMapper mObjectMapper;
     private final ChromeDevtoolsDomain mInstance;
     private final Method mMethod;
+    private final boolean mRespondsAsync;
+    @Nullable private final Executor mExecutor;
 
-    public MethodDispatchHelper(ObjectMapper objectMapper,
+    public MethodDispatchHelper(
         ChromeDevtoolsDomain instance,
-        Method method) {
-      mObjectMapper = objectMapper;
+        Method method,
+        @Nullable Executor executor) {
       mInstance = instance;
       mMethod = method;
+      mRespondsAsync = method.getParameterTypes().length == 3;
+      mExecutor = executor;
+    }
+
+    @Nullable
+    public Executor getExecutor() {
+      return mExecutor;
     }
 
-    public JSONObject invoke(JsonRpcPeer peer, @Nullable JSONObject params)
-        throws InvocationTargetException, IllegalAccessException, JSONException, JsonRpcException {
-      Object internalResult = mMethod.invoke(mInstance, peer, params);
-      if (internalResult == null || internalResult instanceof EmptyResult) {
-        return new JSONObject();
+    public void invoke(JsonRpcPeer peer, @Nullable JSONObject params, JsonRpcResponder responder)
+        throws InvocationTargetException, IllegalAccessException {
+      if (mRespondsAsync) {
+        mMethod.invoke(mInstance, peer, params, responder);
       } else {
-        JsonRpcResult convertableResult = (JsonRpcResult)internalResult;
-        return mObjectMapper.convertValue(convertableResult, JSONObject.class);
+        Object internalResult = mMethod.invoke(mInstance, peer, params);
+        responder.sendResult((JsonRpcResult) internalResult);
       }
     }
   }
@@ -121,13 +169,14 @@ public class MethodDispatcher {
     for (ChromeDevtoolsDomain domainHandler : Util.throwIfNull(domainHandlers)) {
       Class<?> handlerClass = domainHandler.getClass();
       String domainName = handlerClass.getSimpleName();
+      Executor executor = domainHandler.getDispatchExecutor();
 
       for (Method method : handlerClass.getMethods()) {
         if (isDevtoolsMethod(method)) {
           MethodDispatchHelper dispatchHelper = new MethodDispatchHelper(
-              objectMapper,
               domainHandler,
-              method);
+              method,
+              executor);
           methods.put(domainName + "." + method.getName(), dispatchHelper);
         }
       }
@@ -148,8 +197,8 @@ public class MethodDispatcher {
     } else {
       Class<?> args[] = method.getParameterTypes();
       String methodName = method.getDeclaringClass().getSimpleName() + "." + method.getName();
-      Util.throwIfNot(args.length == 2,
-          "%s: expected 2 args, got %s",
+      Util.throwIfNot(args.length == 2 || args.length == 3,
+          "%s: expected 2 or 3 args, got %s",
           methodName,
           args.length);
       Util.throwIfNot(args[0].equals(JsonRpcPeer.class),
@@ -162,7 +211,16 @@ public class MethodDispatcher {
           args[1].getName());
 
       Class<?> returnType = method.getReturnType();
-      if (!returnType.equals(void.class)) {
+      if (args.length == 3) {
+        Util.throwIfNot(args[2].equals(JsonRpcResponder.class),
+            "%s: expected 3rd arg of JsonRpcResponder, got %s",
+            methodName,
+            args[2].getName());
+        Util.throwIfNot(returnType.equals(void.class),
+            "%s: expected void return type when responding through JsonRpcResponder, got %s",
+            methodName,
+            returnType.getName());
+      } else if (!returnType.equals(void.class)) {
         Util.throwIfNot(JsonRpcResult.class.isAssignableFrom(returnType),
             "%s: expected JsonRpcResult return type, got %s",
             methodName,
@@ -11,6 +11,8 @@ import android.os.SystemClock;
 
 import com.facebook.stetho.common.Accumulator;
 import com.facebook.stetho.common.ArrayListAccumulator;
+import com.facebook.stetho.common.IntArrayList;
+import com.facebook.stetho.common.ListUtil;
 import com.facebook.stetho.common.LogUtil;
 import com.facebook.stetho.common.Util;
 import com.facebook.stetho.inspector.helper.ObjectIdMapper;
@@ -20,9 +22,10 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Queue;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
@@ -31,13 +34,22 @@ public final class Document extends ThreadBoundProxy {
   private final DocumentProviderFactory mFactory;
   private final ObjectIdMapper mObjectIdMapper;
   private final Queue<Object> mCachedUpdateQueue;
+  private final ElementSearchIndex mSearchIndex;
+  private final ElementSearchIndex.AttributeSource mSearchAttributeSource;
 
   private DocumentProvider mDocumentProvider;
   private ShadowDocument mShadowDocument;
   private UpdateListenerCollection mUpdateListeners;
   private ChildEventingList mCachedChildEventingList;
   private ArrayListAccumulator<Object> mCachedChildrenAccumulator;
-  private AttributeListAccumulator mCachedAttributeAccumulator;
+  private Set<Object> mCachedSubtreeRootsSet;
+  private IntArrayList mCachedGarbageElementIds;
+  private final IdentityHashMap<Object, Integer> mCachedNewIndicesMap = new IdentityHashMap<>();
+  private final IntArrayList mCachedPositions = new IntArrayList();
+  private final AttributeListAccumulator mCachedAttributes = new AttributeListAccumulator();
+  private boolean[] mCachedLisKeep = new boolean[0];
+  private int[] mCachedLisTails = new int[0];
+  private int[] mCachedLisPredecessors = new int[0];
 
   @GuardedBy("this")
   private int mReferenceCounter;
@@ -50,6 +62,18 @@ public final class Document extends ThreadBoundProxy {
     mReferenceCounter = 0;
     mUpdateListeners = new UpdateListenerCollection();
     mCachedUpdateQueue = new ArrayDeque<>();
+    mSearchIndex = new ElementSearchIndex();
+    mSearchAttributeSource = new ElementSearchIndex.AttributeSource() {
+      @Override
+      public void getAttributes(int nodeId, AttributeAccumulator attributes) {
+        Object element = mObjectIdMapper.getObjectForId(nodeId);
+        NodeDescriptor descriptor =
+            (element != null) ? mDocumentProvider.getNodeDescriptor(element) : null;
+        if (descriptor != null) {
+          descriptor.getAttributes(element, attributes);
+        }
+      }
+    };
   }
 
   public synchronized void addRef() {
@@ -71,10 +95,11 @@ public final class Document extends ThreadBoundProxy {
     mShadowDocument = new ShadowDocument(mDocumentProvider.getRootElement());
 
     mDocumentProvider.postAndWait(() -> {
-      createShadowDocumentUpdate().commit();
+      ShadowDocument.Update docUpdate = createShadowDocumentUpdate(null);
+      indexChangedElements(docUpdate);
+      docUpdate.commit();
       mDocumentProvider.setListener(new ProviderListener());
     });
-
   }
 
   private void cleanUp() {
@@ -82,6 +107,7 @@ public final class Document extends ThreadBoundProxy {
       mDocumentProvider.setListener(null);
       mShadowDocument = null;
       mObjectIdMapper.clear();
+      mSearchIndex.clear();
       mDocumentProvider.dispose();
       mDocumentProvider = null;
     });
@@ -183,44 +209,43 @@ public final class Document extends ThreadBoundProxy {
     return rootElement;
   }
 
+  /**
+   * Matches are stored in the order their elements were first seen. See
+   * {@link ElementSearchIndex} for the supported queries.  May be called on any thread; only
+   * what isn't indexed is matched on ours.
+   */
   public void findMatchingElements(String query, Accumulator<Integer> matchedIds) {
-    verifyThreadAccess();
-
-    final Pattern queryPattern = Pattern.compile(Pattern.quote(query), Pattern.CASE_INSENSITIVE);
-    final Object rootElement = mDocumentProvider.getRootElement();
-
-    findMatches(rootElement, queryPattern, matchedIds);
-  }
-
-  private void findMatches(Object element, Pattern queryPattern, Accumulator<Integer> matchedIds) {
-    final ElementInfo info = mShadowDocument.getElementInfo(element);
-
-    for (int i = 0, size = info.children.size(); i < size; i++) {
-      final Object childElement = info.children.get(i);
-
-      if (doesElementMatch(childElement, queryPattern)) {
-        matchedIds.store(mObjectIdMapper.getIdForObject(childElement));
-      }
-
-      findMatches(childElement, queryPattern, matchedIds);
+    final ElementSearchIndex.Search search = mSearchIndex.search(query);
+    if (search.needsAttributes()) {
+      postAndWait(() -> search.matchAttributes(mSearchAttributeSource));
     }
+    search.getResults(matchedIds);
   }
 
-  private boolean doesElementMatch(Object element, Pattern queryPattern) {
-    AttributeListAccumulator accumulator = acquireCachedAttributeAccumulator();
-    NodeDescriptor descriptor = mDocumentProvider.getNodeDescriptor(element);
-
-    descriptor.getAttributes(element, accumulator);
-
-    for (int i = 0, N = accumulator.size(); i < N; i++) {
-      if (queryPattern.matcher(accumulator.get(i)).find()) {
-        releaseCachedAttributeAccumulator(accumulator);
-        return true;
+  /**
+   * New elements are always among the changed ones. Node names never change and id changes are
+   * reported as attribute changes, so elements which were already in the tree don't need to be
+   * indexed again.
+   */
+  private void indexChangedElements(ShadowDocument.Update docUpdate) {
+    final Object rootElement = mShadowDocument.getRootElement();
+    docUpdate.getChangedElements(new Accumulator<Object>() {
+      @Override
+      public void store(Object element) {
+        // The root is never reported as a search result.
+        if (element == rootElement || mShadowDocument.getElementInfo(element) != null) {
+          return;
+        }
+        Integer nodeId = mObjectIdMapper.getIdForObject(element);
+        if (nodeId != null) {
+          NodeDescriptor descriptor = mDocumentProvider.getNodeDescriptor(element);
+          AttributeListAccumulator attributes = mCachedAttributes;
+          descriptor.getAttributes(element, attributes);
+          mSearchIndex.put(nodeId, descriptor.getNodeName(element), attributes);
+          attributes.clear();
+        }
       }
-    }
-
-    releaseCachedAttributeAccumulator(accumulator);
-    return queryPattern.matcher(descriptor.getNodeName(element)).find();
+    });
   }
 
   private ChildEventingList acquireChildEventingList(
@@ -245,23 +270,19 @@ public final class Document extends ThreadBoundProxy {
     }
   }
 
-  private AttributeListAccumulator acquireCachedAttributeAccumulator() {
-    AttributeListAccumulator accumulator = mCachedAttributeAccumulator;
-
-    if (accumulator == null) {
-      accumulator = new AttributeListAccumulator();
+  private IntArrayList acquireGarbageElementIds() {
+    IntArrayList garbageElementIds = mCachedGarbageElementIds;
+    if (garbageElementIds == null) {
+      garbageElementIds = new IntArrayList();
     }
-
-    mCachedChildrenAccumulator = null;
-
-    return accumulator;
+    mCachedGarbageElementIds = null;
+    return garbageElementIds;
   }
 
-  private void releaseCachedAttributeAccumulator(AttributeListAccumulator accumulator) {
-    accumulator.clear();
-
-    if (mCachedAttributeAccumulator == null) {
-      mCachedAttributeAccumulator = accumulator;
+  private void releaseGarbageElementIds(IntArrayList garbageElementIds) {
+    garbageElementIds.clear();
+    if (mCachedGarbageElementIds == null) {
+      mCachedGarbageElementIds = garbageElementIds;
     }
   }
 
@@ -281,7 +302,11 @@ public final class Document extends ThreadBoundProxy {
     }
   }
 
-  private ShadowDocument.Update createShadowDocumentUpdate() {
+  /**
+   * @param subtreeRoots Elements whose sub-trees are traversed, or null to traverse the entire
+   *     tree.
+   */
+  private ShadowDocument.Update createShadowDocumentUpdate(@Nullable List<Object> subtreeRoots) {
     verifyThreadAccess();
 
     if (mDocumentProvider.getRootElement() != mShadowDocument.getRootElement()) {
@@ -291,7 +316,11 @@ public final class Document extends ThreadBoundProxy {
     ArrayListAccumulator<Object> childrenAccumulator = acquireChildrenAccumulator();
 
     ShadowDocument.UpdateBuilder updateBuilder = mShadowDocument.beginUpdate();
-    mCachedUpdateQueue.add(mDocumentProvider.getRootElement());
+    if (subtreeRoots == null) {
+      mCachedUpdateQueue.add(mDocumentProvider.getRootElement());
+    } else {
+      enqueueSubtreeRoots(subtreeRoots);
+    }
 
     while (!mCachedUpdateQueue.isEmpty()) {
       final Object element = mCachedUpdateQueue.remove();
@@ -328,10 +357,49 @@ public final class Document extends ThreadBoundProxy {
     return updateBuilder.build();
   }
 
-  private void updateTree() {
+  /**
+   * Queue up the elements of {@code subtreeRoots} which are in the tree, skipping those that are
+   * inside another one's sub-tree since they'll be reached anyway.
+   */
+  private void enqueueSubtreeRoots(List<Object> subtreeRoots) {
+    if (mCachedSubtreeRootsSet == null) {
+      mCachedSubtreeRootsSet = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    }
+    final Set<Object> subtreeRootsSet = mCachedSubtreeRootsSet;
+
+    for (int i = 0, N = subtreeRoots.size(); i < N; ++i) {
+      final Object element = subtreeRoots.get(i);
+      if (mShadowDocument.getElementInfo(element) != null) {
+        subtreeRootsSet.add(element);
+      }
+    }
+
+    for (Object element : subtreeRootsSet) {
+      boolean isNested = false;
+      ElementInfo info = mShadowDocument.getElementInfo(element);
+      while (info.parentElement != null) {
+        if (subtreeRootsSet.contains(info.parentElement)) {
+          isNested = true;
+          break;
+        }
+        info = mShadowDocument.getElementInfo(info.parentElement);
+      }
+
+      if (!isNested) {
+        mCachedUpdateQueue.add(element);
+      }
+    }
+
+    subtreeRootsSet.clear();
+  }
+
+  /**
+   * @param subtreeRoots Elements whose sub-trees may have changed, or null if anything may have.
+   */
+  private void updateTree(@Nullable List<Object> subtreeRoots) {
     long startTimeMs = SystemClock.elapsedRealtime();
 
-    ShadowDocument.Update docUpdate = createShadowDocumentUpdate();
+    ShadowDocument.Update docUpdate = createShadowDocumentUpdate(subtreeRoots);
     boolean isEmpty = docUpdate.isEmpty();
     if (isEmpty) {
       docUpdate.abandon();
@@ -341,8 +409,9 @@ public final class Document extends ThreadBoundProxy {
 
     long deltaMs = SystemClock.elapsedRealtime() - startTimeMs;
     LogUtil.d(
-        "Document.updateTree() completed in %s ms%s",
+        "Document.updateTree() completed in %s ms%s%s",
         Long.toString(deltaMs),
+        subtreeRoots != null ? " (sub-trees only)" : "",
         isEmpty ? " (no changes)" : "");
   }
 
@@ -362,11 +431,10 @@ public final class Document extends ThreadBoundProxy {
     // that it can use a binary search as a quick "contains()" method.
     // Note that this could be accomplished in a simpler way by employing a HashSet<Object> and
     // storing the element Objects. However, HashSet wraps HashMap and we would have a lot more
-    // allocations (Map.Entry, iterator during stage 3) and thus GC pressure.
-    // Using SparseArray wouldn't be good because it ensures sorted ordering as you go, but we don't
-    // need that during stage 1. Using ArrayList with int boxing is fine because the Integers are
-    // already boxed inside of mObjectIdMapper and we make sure to reuse that allocation.
-    final ArrayList<Integer> garbageElementIds = new ArrayList<>();
+    // allocations (Map.Entry, iterator during stage 3) and thus GC pressure. The IDs are kept
+    // unboxed and the list is reused between updates, so a large sub-tree being thrown away
+    // doesn't allocate anything at all here.
+    final IntArrayList garbageElementIds = acquireGarbageElementIds();
 
     docUpdate.getGarbageElements(new Accumulator<Object>() {
       @Override
@@ -386,7 +454,7 @@ public final class Document extends ThreadBoundProxy {
       }
     });
 
-    Collections.sort(garbageElementIds);
+    garbageElementIds.sort();
 
     // Stage 2: remove all elements that have been reparented. Otherwise we get into trouble if we
     // transmit an event to insert under the new parent before we've transmitted an event to remove
@@ -398,7 +466,7 @@ public final class Document extends ThreadBoundProxy {
         Integer nodeId = Util.throwIfNull(mObjectIdMapper.getIdForObject(element));
 
         // Skip garbage elements
-        if (Collections.binarySearch(garbageElementIds, nodeId) >= 0) {
+        if (garbageElementIds.binarySearchContains(nodeId)) {
           return;
         }
 
@@ -418,8 +486,11 @@ public final class Document extends ThreadBoundProxy {
 
     // Stage 3: unhook garbage elements
     for (int i = 0, N = garbageElementIds.size(); i < N; ++i) {
-      mObjectIdMapper.removeObjectById(garbageElementIds.get(i));
+      final int nodeId = garbageElementIds.get(i);
+      mObjectIdMapper.removeObjectById(nodeId);
+      mSearchIndex.remove(nodeId);
     }
+    releaseGarbageElementIds(garbageElementIds);
 
     // Stage 4: transmit all other changes to our listener. This includes inserting reparented
     // elements that we removed in the 2nd stage.
@@ -483,61 +554,109 @@ public final class Document extends ThreadBoundProxy {
       }
     });
 
-    // Stage 5: Finally, commit the update to the ShadowDocument.
+    // Stage 5: Finally, bring the search index up to date and commit the update to the
+    // ShadowDocument.
+    indexChangedElements(docUpdate);
     docUpdate.commit();
+
+    mUpdateListeners.onDocumentUpdated();
   }
 
-  private static void updateListenerChildren(
+  /**
+   * Transform {@code listenerChildren} into {@code newChildren} with as few events as we can
+   * manage. The protocol has no notion of moving a node, only of removing it and inserting it
+   * again (along with its entire sub-tree), so we keep the longest run of children that are
+   * already in the right relative order where they are and only move the others. For example,
+   * {@code [A, B, C, D] -> [B, C, D, A]} moves just A, where a naive left-to-right pass would move
+   * B, C and D.
+   */
+  private void updateListenerChildren(
       ChildEventingList listenerChildren,
       List<Object> newChildren,
       Accumulator<Object> insertedElements) {
-    int index = 0;
-    while (index <= listenerChildren.size()) {
-      // Insert new items that were added to the end of the list
-      if (index == listenerChildren.size()) {
-        if (index == newChildren.size()) {
-          break;
-        }
+    if (ListUtil.identityEquals(listenerChildren, newChildren)) {
+      return;
+    }
 
-        final Object newElement = newChildren.get(index);
-        listenerChildren.addWithEvent(index, newElement, insertedElements);
-        ++index;
-        continue;
-      }
+    final IdentityHashMap<Object, Integer> newIndices = mCachedNewIndicesMap;
+    for (int i = 0, N = newChildren.size(); i < N; ++i) {
+      newIndices.put(newChildren.get(i), i);
+    }
 
-      // Remove old items that were removed from the end of the list
-      if (index == newChildren.size()) {
-        listenerChildren.removeWithEvent(index);
-        continue;
+    // Remove children that are gone, and translate the remaining ones into their new positions.
+    final IntArrayList positions = mCachedPositions;
+    for (int i = listenerChildren.size() - 1; i >= 0; --i) {
+      if (!newIndices.containsKey(listenerChildren.get(i))) {
+        listenerChildren.removeWithEvent(i);
       }
+    }
+    for (int i = 0, N = listenerChildren.size(); i < N; ++i) {
+      positions.add(newIndices.get(listenerChildren.get(i)));
+    }
+    newIndices.clear();
 
-      final Object listenerElement = listenerChildren.get(index);
-      final Object newElement = newChildren.get(index);
-
-      // This slot has exactly what we need to have here.
-      if (listenerElement == newElement) {
-        ++index;
-        continue;
+    // Children off the longest increasing run of positions are the ones that must move. Take
+    // them out now and put them back in with the other insertions below.
+    final boolean[] keep = findLongestIncreasingSubsequence(positions);
+    for (int i = listenerChildren.size() - 1; i >= 0; --i) {
+      if (!keep[i]) {
+        listenerChildren.removeWithEvent(i);
       }
+    }
+    positions.clear();
 
-      int newElementListenerIndex = listenerChildren.indexOf(newElement);
-      if (newElementListenerIndex == -1) {
-        listenerChildren.addWithEvent(index, newElement, insertedElements);
-        ++index;
-        continue;
+    // listenerChildren is now an ordered subsequence of newChildren, so we just fill in the gaps.
+    for (int i = 0, N = newChildren.size(); i < N; ++i) {
+      final Object newElement = newChildren.get(i);
+      if (i >= listenerChildren.size() || listenerChildren.get(i) != newElement) {
+        listenerChildren.addWithEvent(i, newElement, insertedElements);
       }
+    }
+  }
 
-      // TODO: use longest common substring to decide whether to
-      //       1) remove(newElementListenerIndex)-then-add(index), or
-      //       2) remove(index) and let a subsequent loop iteration do add() (that is, when index
-      //          catches up the current value of newElementListenerIndex)
-      //       Neither one of these is the best strategy -- it depends on context.
-
-      listenerChildren.removeWithEvent(newElementListenerIndex);
-      listenerChildren.addWithEvent(index, newElement, insertedElements);
+  /**
+   * @return Flags for the elements of {@code values} that make up one of its longest strictly
+   *     increasing subsequences. Only valid until the next call.
+   */
+  private boolean[] findLongestIncreasingSubsequence(IntArrayList values) {
+    final int size = values.size();
+    if (mCachedLisKeep.length < size) {
+      final int capacity = Math.max(size, mCachedLisKeep.length * 2);
+      mCachedLisKeep = new boolean[capacity];
+      mCachedLisTails = new int[capacity];
+      mCachedLisPredecessors = new int[capacity];
+    }
+    final boolean[] keep = mCachedLisKeep;
+    final int[] tails = mCachedLisTails;
+    final int[] predecessors = mCachedLisPredecessors;
+
+    // tails[k] is the index of the smallest value that ends an increasing run of length k + 1.
+    int length = 0;
+    for (int i = 0; i < size; ++i) {
+      final int value = values.get(i);
+      int lo = 0;
+      int hi = length;
+      while (lo < hi) {
+        final int mid = (lo + hi) >>> 1;
+        if (values.get(tails[mid]) < value) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      predecessors[i] = (lo > 0) ? tails[lo - 1] : -1;
+      tails[lo] = i;
+      if (lo == length) {
+        ++length;
+      }
+      keep[i] = false;
+    }
 
-      ++index;
+    for (int i = (length > 0) ? tails[length - 1] : -1; i >= 0; i = predecessors[i]) {
+      keep[i] = true;
     }
+
+    return keep;
   }
 
   /**
@@ -668,6 +787,20 @@ public final class Document extends ThreadBoundProxy {
         listener.onChildNodeInserted(view, element, parentNodeId, previousNodeId, insertedItems);
       }
     }
+
+    @Override
+    public void onDocumentUpdated() {
+      for (UpdateListener listener : getListenersSnapshot()) {
+        listener.onDocumentUpdated();
+      }
+    }
+
+    @Override
+    public void onStylesPossiblyChanged(Object element) {
+      for (UpdateListener listener : getListenersSnapshot()) {
+        listener.onStylesPossiblyChanged(element);
+      }
+    }
   }
 
   public interface UpdateListener {
@@ -687,6 +820,20 @@ public final class Document extends ThreadBoundProxy {
         int parentNodeId,
         int previousNodeId,
         Accumulator<Object> insertedItems);
+
+    /**
+     * Called after the events for an update have all been delivered, once
+     * {@link #getDocumentView()} reflects it.
+     */
+    default void onDocumentUpdated() {
+    }
+
+    /**
+     * The styles of {@code element} and its descendants may have changed without any other
+     * event, e.g. because they were laid out again.
+     */
+    default void onStylesPossiblyChanged(Object element) {
+    }
   }
 
   private final class DocumentObjectIdMapper extends ObjectIdMapper {
@@ -710,18 +857,38 @@ public final class Document extends ThreadBoundProxy {
   private final class ProviderListener implements DocumentProviderListener {
     @Override
     public void onPossiblyChanged() {
-      updateTree();
+      updateTree(null);
+    }
+
+    @Override
+    public void onSubtreesPossiblyChanged(List<Object> elements) {
+      verifyThreadAccess();
+      updateTree(elements);
+    }
+
+    @Override
+    public void onStylesPossiblyChanged(Object element) {
+      verifyThreadAccess();
+      mUpdateListeners.onStylesPossiblyChanged(element);
     }
 
     @Override
     public void onAttributeModified(Object element, String name, String value) {
       verifyThreadAccess();
+      Integer nodeId = mObjectIdMapper.getIdForObject(element);
+      if (nodeId != null) {
+        mSearchIndex.onAttributeModified(nodeId, name, value);
+      }
       mUpdateListeners.onAttributeModified(element, name, value);
     }
 
     @Override
     public void onAttributeRemoved(Object element, String name) {
       verifyThreadAccess();
+      Integer nodeId = mObjectIdMapper.getIdForObject(element);
+      if (nodeId != null) {
+        mSearchIndex.onAttributeRemoved(nodeId, name);
+      }
       mUpdateListeners.onAttributeRemoved(element, name);
     }
 
@@ -7,9 +7,29 @@
 
 package com.facebook.stetho.inspector.elements;
 
+import java.util.List;
+
 public interface DocumentProviderListener {
+  /**
+   * Anything in the tree may have changed.
+   */
   void onPossiblyChanged();
 
+  /**
+   * Only the sub-trees rooted at {@code elements} may have changed.  Elements which aren't
+   * currently part of the tree can be ignored; they'll only become part of it through a change to
+   * an element which is, and that is reported separately.
+   *
+   * @param elements Only valid for the duration of the call.
+   */
+  void onSubtreesPossiblyChanged(List<Object> elements);
+
+  /**
+   * The styles of the elements in the sub-tree rooted at {@code element} may have changed, even
+   * though the tree itself has not (e.g. after a layout pass).
+   */
+  void onStylesPossiblyChanged(Object element);
+
   void onAttributeModified(
       Object element,
       String name,
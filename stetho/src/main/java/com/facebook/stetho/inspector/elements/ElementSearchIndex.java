@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.elements;
+
+import com.facebook.stetho.common.Accumulator;
+import com.facebook.stetho.common.IntArrayList;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Lower-cased node names and ids of every element in a {@link Document}, kept up to date as
+ * elements are added and removed and as their id attributes change.  These are matched without
+ * going near the elements, on whichever thread searches.  Other attributes such as the text of a
+ * TextView change too often to be worth indexing, so they are only read, through an
+ * {@link AttributeSource} on the {@link Document}'s thread, for the elements which have any and
+ * which a query still needs them for.
+ * <p>
+ * Queries are matched as a case-insensitive substring of the node name or of any attribute name
+ * or value, except for these forms:
+ * <ul>
+ *   <li>{@code <name} or {@code <name>} matches node names starting with, or equal to, name.</li>
+ *   <li>{@code #name} matches id attributes equal to name or to a resource name ending with
+ *   {@code /name}, such as {@code com.example:id/name}.</li>
+ *   <li>{@code "text"} matches attribute values equal to text.</li>
+ * </ul>
+ * Only the last two read any attributes, and {@code #name} only ever reads indexed ones.
+ */
+@ThreadSafe
+final class ElementSearchIndex {
+  @GuardedBy("this")
+  private final HashMap<Integer, Entry> mEntries = new HashMap<>();
+
+  /**
+   * @param attributes The element's attribute names and values, alternating.
+   */
+  public synchronized void put(int nodeId, String nodeName, List<String> attributes) {
+    final Entry entry = new Entry(toLowerCase(nodeName));
+    for (int i = 0, N = attributes.size() - 1; i < N; i += 2) {
+      entry.putAttribute(attributes.get(i), attributes.get(i + 1));
+    }
+    mEntries.put(nodeId, entry);
+  }
+
+  public synchronized void onAttributeModified(int nodeId, String name, String value) {
+    final Entry entry = mEntries.get(nodeId);
+    if (entry != null) {
+      entry.putAttribute(name, value);
+    }
+  }
+
+  public synchronized void onAttributeRemoved(int nodeId, String name) {
+    final Entry entry = mEntries.get(nodeId);
+    if (entry != null) {
+      entry.removeAttribute(name);
+    }
+  }
+
+  public synchronized void remove(int nodeId) {
+    mEntries.remove(nodeId);
+  }
+
+  public synchronized void clear() {
+    mEntries.clear();
+  }
+
+  /**
+   * Match {@code query} against the index.  If {@link Search#needsAttributes()} afterwards,
+   * {@link Search#matchAttributes} must be called on the {@link Document}'s thread before the
+   * results are complete.
+   */
+  public Search search(String query) {
+    final Search search = new Search(createMatcher(toLowerCase(query)));
+    synchronized (this) {
+      for (Map.Entry<Integer, Entry> mapEntry : mEntries.entrySet()) {
+        search.matchIndexed(mapEntry.getKey(), mapEntry.getValue());
+      }
+    }
+    return search;
+  }
+
+  /**
+   * Whether an attribute is an id or a resource name, which rarely change once an element is
+   * created.
+   */
+  private static boolean isIdAttribute(String lowerCaseName) {
+    return lowerCaseName.contains("id");
+  }
+
+  private static Matcher createMatcher(final String query) {
+    final int length = query.length();
+    if (length > 1 && query.charAt(0) == '<') {
+      final boolean exact = query.charAt(length - 1) == '>';
+      final String name = query.substring(1, exact ? length - 1 : length);
+      return new Matcher() {
+        @Override
+        public boolean matchesNodeName(String nodeName) {
+          return exact ? nodeName.equals(name) : nodeName.startsWith(name);
+        }
+      };
+    }
+
+    if (length > 1 && query.charAt(0) == '#') {
+      final String id = query.substring(1);
+      final String resourceNameSuffix = "/" + id;
+      return new Matcher() {
+        @Override
+        public boolean matchesAttributes(List<String> attributes) {
+          for (int i = 0, N = attributes.size() - 1; i < N; i += 2) {
+            final String value = attributes.get(i + 1);
+            if (isIdAttribute(attributes.get(i)) &&
+                (value.equals(id) || value.endsWith(resourceNameSuffix))) {
+              return true;
+            }
+          }
+          return false;
+        }
+      };
+    }
+
+    if (length > 2 && query.charAt(0) == '"' && query.charAt(length - 1) == '"') {
+      final String text = query.substring(1, length - 1);
+      return new Matcher() {
+        @Override
+        public boolean needsOtherAttributes() {
+          return true;
+        }
+
+        @Override
+        public boolean matchesAttributes(List<String> attributes) {
+          for (int i = 1, N = attributes.size(); i < N; i += 2) {
+            if (attributes.get(i).equals(text)) {
+              return true;
+            }
+          }
+          return false;
+        }
+      };
+    }
+
+    return new Matcher() {
+      @Override
+      public boolean matchesNodeName(String nodeName) {
+        return nodeName.contains(query);
+      }
+
+      @Override
+      public boolean needsOtherAttributes() {
+        return true;
+      }
+
+      @Override
+      public boolean matchesAttributes(List<String> attributes) {
+        for (int i = 0, N = attributes.size(); i < N; ++i) {
+          if (attributes.get(i).contains(query)) {
+            return true;
+          }
+        }
+        return false;
+      }
+    };
+  }
+
+  private static String toLowerCase(String s) {
+    return s.toLowerCase(Locale.US);
+  }
+
+  interface AttributeSource {
+    /**
+     * Store the current attributes of the node in {@code attributes}, or nothing if it's gone.
+     */
+    void getAttributes(int nodeId, AttributeAccumulator attributes);
+  }
+
+  /**
+   * The results of {@link #search}.
+   */
+  public static final class Search {
+    private final Matcher mMatcher;
+    private final IntArrayList mMatches = new IntArrayList();
+    private final IntArrayList mCandidates = new IntArrayList();
+
+    private Search(Matcher matcher) {
+      mMatcher = matcher;
+    }
+
+    private void matchIndexed(int nodeId, Entry entry) {
+      if (mMatcher.matchesNodeName(entry.nodeName) ||
+          mMatcher.matchesAttributes(entry.idAttributes)) {
+        mMatches.add(nodeId);
+      } else if (entry.hasOtherAttributes && mMatcher.needsOtherAttributes()) {
+        mCandidates.add(nodeId);
+      }
+    }
+
+    /**
+     * Whether there are elements left that can only be matched by reading their attributes.
+     */
+    public boolean needsAttributes() {
+      return mCandidates.size() > 0;
+    }
+
+    public void matchAttributes(AttributeSource source) {
+      final LowerCaseAttributeList attributes = new LowerCaseAttributeList();
+      for (int i = 0, N = mCandidates.size(); i < N; ++i) {
+        final int nodeId = mCandidates.get(i);
+        source.getAttributes(nodeId, attributes);
+        if (mMatcher.matchesAttributes(attributes)) {
+          mMatches.add(nodeId);
+        }
+        attributes.clear();
+      }
+      mCandidates.clear();
+    }
+
+    /**
+     * Store the ids of the matching nodes, in the order they were created.
+     */
+    public void getResults(Accumulator<Integer> matchedIds) {
+      mMatches.sort();
+      for (int i = 0, N = mMatches.size(); i < N; ++i) {
+        matchedIds.store(mMatches.get(i));
+      }
+    }
+  }
+
+  private static final class Entry {
+    public final String nodeName;
+
+    /**
+     * Lower-cased names and values of the id attributes, alternating.
+     */
+    public final List<String> idAttributes = new ArrayList<>(4);
+
+    /**
+     * Whether the element has had any attributes besides ids, which have to be read at search
+     * time.  Never goes back to false, which at worst costs reading them for nothing.
+     */
+    public boolean hasOtherAttributes;
+
+    public Entry(String nodeName) {
+      this.nodeName = nodeName;
+    }
+
+    public void putAttribute(String name, String value) {
+      final String lowerCaseName = toLowerCase(name);
+      if (!isIdAttribute(lowerCaseName)) {
+        hasOtherAttributes = true;
+        return;
+      }
+      final int index = indexOfAttribute(lowerCaseName);
+      if (index >= 0) {
+        idAttributes.set(index + 1, toLowerCase(value));
+      } else {
+        idAttributes.add(lowerCaseName);
+        idAttributes.add(toLowerCase(value));
+      }
+    }
+
+    public void removeAttribute(String name) {
+      final int index = indexOfAttribute(toLowerCase(name));
+      if (index >= 0) {
+        idAttributes.remove(index + 1);
+        idAttributes.remove(index);
+      }
+    }
+
+    private int indexOfAttribute(String lowerCaseName) {
+      for (int i = 0, N = idAttributes.size(); i < N; i += 2) {
+        if (idAttributes.get(i).equals(lowerCaseName)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+
+  private static final class LowerCaseAttributeList
+      extends ArrayList<String> implements AttributeAccumulator {
+    @Override
+    public void store(String name, String value) {
+      add(toLowerCase(name));
+      add(toLowerCase(value));
+    }
+  }
+
+  private abstract static class Matcher {
+    public boolean matchesNodeName(String nodeName) {
+      return false;
+    }
+
+    /**
+     * Whether attributes other than ids can match.
+     */
+    public boolean needsOtherAttributes() {
+      return false;
+    }
+
+    /**
+     * @param attributes Lower-cased names and values, alternating.
+     */
+    public boolean matchesAttributes(List<String> attributes) {
+      return false;
+    }
+  }
+}
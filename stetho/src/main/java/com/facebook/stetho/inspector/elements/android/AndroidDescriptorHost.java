@@ -7,6 +7,8 @@
 
 package com.facebook.stetho.inspector.elements.android;
 
+import android.view.View;
+
 import com.facebook.stetho.inspector.elements.Descriptor;
 
 import javax.annotation.Nullable;
@@ -14,4 +16,17 @@ import javax.annotation.Nullable;
 interface AndroidDescriptorHost extends Descriptor.Host {
   @Nullable
   HighlightableDescriptor getHighlightableDescriptor(@Nullable Object element);
+
+  /**
+   * Report that the children of {@code element} may have changed, so that only its sub-tree
+   * needs to be traversed again.
+   */
+  void onChildrenPossiblyChanged(Object element);
+
+  /**
+   * Report that a layout pass completed in the window whose root view is {@code rootView}.  Unless
+   * it was preceded by a call to {@link #onChildrenPossiblyChanged} for a view in that window, the
+   * whole window may have changed in ways we weren't told about.
+   */
+  void onWindowLayout(View rootView);
 }
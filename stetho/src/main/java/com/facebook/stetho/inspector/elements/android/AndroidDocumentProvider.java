@@ -13,6 +13,7 @@ import android.app.Dialog;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.os.SystemClock;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
@@ -34,7 +35,10 @@ import com.facebook.stetho.inspector.elements.ObjectDescriptor;
 import com.facebook.stetho.inspector.helper.ThreadBoundProxy;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -53,12 +57,37 @@ final class AndroidDocumentProvider extends ThreadBoundProxy
   private final InspectModeHandler mInspectModeHandler;
   private @Nullable DocumentProviderListener mListener;
 
-  // We don't yet have an an implementation for reliably detecting fine-grained changes in the
-  // View tree. So, for now at least, we have a timer that runs every so often and just reports
-  // that we changed. Our listener will then read the entire Document from us and transmit the
-  // changes to Chrome. Detecting, reporting, and traversing fine-grained changes is a future work
-  // item (see Issue #210).
-  private static final long REPORT_CHANGED_INTERVAL_MS = 1000;
+  // Changes in the View tree are reported to us by ViewGroupDescriptor, precisely for views added
+  // to or removed from a ViewGroup and coarsely (the whole window) for layout passes that we
+  // can't otherwise explain. We collect the changed sub-trees and report them after a short delay
+  // so that bursts of changes are coalesced into a single traversal. Changes that slip past both
+  // (windows appearing, apps replacing our OnHierarchyChangeListener, etc) are picked up by a
+  // much less frequent full traversal.
+  private static final long REPORT_CHILDREN_CHANGED_DELAY_MS = 200;
+  private static final long REPORT_WINDOW_CHANGED_DELAY_MS = 1000;
+  private static final long REPORT_CHANGED_FALLBACK_INTERVAL_MS = 5000;
+
+  private final Set<Object> mChangedElements =
+      Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+  private final Set<View> mRootViewsWithChangedChildren =
+      Collections.newSetFromMap(new IdentityHashMap<View, Boolean>());
+  private final ArrayList<Object> mCachedChangedElementsList = new ArrayList<>();
+
+  private long mReportChangesUptimeMs;
+  private boolean mIsReportChangesPosted = false;
+  private final Runnable mReportChanges = new Runnable() {
+    @Override
+    public void run() {
+      mIsReportChangesPosted = false;
+      if (mListener != null && !mChangedElements.isEmpty()) {
+        mCachedChangedElementsList.addAll(mChangedElements);
+        clearChangedElements();
+        mListener.onSubtreesPossiblyChanged(mCachedChangedElementsList);
+        mCachedChangedElementsList.clear();
+      }
+    }
+  };
+
   private boolean mIsReportChangesTimerPosted = false;
   private final Runnable mReportChangesTimer = new Runnable() {
     @Override
@@ -66,9 +95,11 @@ final class AndroidDocumentProvider extends ThreadBoundProxy
       mIsReportChangesTimerPosted = false;
 
       if (mListener != null) {
+        // This covers everything that has been reported so far too.
+        clearChangedElements();
         mListener.onPossiblyChanged();
         mIsReportChangesTimerPosted = true;
-        postDelayed(this, REPORT_CHANGED_INTERVAL_MS);
+        postDelayed(this, REPORT_CHANGED_FALLBACK_INTERVAL_MS);
       }
     }
   };
@@ -116,6 +147,7 @@ final class AndroidDocumentProvider extends ThreadBoundProxy
     mInspectModeHandler.disable();
     removeCallbacks(mReportChangesTimer);
     mIsReportChangesTimerPosted = false;
+    cancelReportChanges();
     mListener = null;
   }
 
@@ -127,9 +159,10 @@ final class AndroidDocumentProvider extends ThreadBoundProxy
     if (mListener == null && mIsReportChangesTimerPosted) {
       mIsReportChangesTimerPosted = false;
       removeCallbacks(mReportChangesTimer);
+      cancelReportChanges();
     } else if (mListener != null && !mIsReportChangesTimerPosted) {
       mIsReportChangesTimerPosted = true;
-      postDelayed(mReportChangesTimer, REPORT_CHANGED_INTERVAL_MS);
+      postDelayed(mReportChangesTimer, REPORT_CHANGED_FALLBACK_INTERVAL_MS);
     }
   }
 
@@ -244,6 +277,62 @@ final class AndroidDocumentProvider extends ThreadBoundProxy
     return highlightableDescriptor;
   }
 
+  @Override
+  public void onChildrenPossiblyChanged(Object element) {
+    if (mListener == null) {
+      return;
+    }
+
+    mChangedElements.add(element);
+    if (element instanceof View) {
+      mRootViewsWithChangedChildren.add(((View) element).getRootView());
+    }
+    scheduleReportChanges(REPORT_CHILDREN_CHANGED_DELAY_MS);
+  }
+
+  @Override
+  public void onWindowLayout(View rootView) {
+    if (mListener == null) {
+      return;
+    }
+
+    // Adding or removing views requests a layout, so if we've already been told about changes in
+    // this window then this is most likely just the consequence of those.
+    if (!mRootViewsWithChangedChildren.contains(rootView)) {
+      mChangedElements.add(rootView);
+      scheduleReportChanges(REPORT_WINDOW_CHANGED_DELAY_MS);
+    }
+
+    mListener.onStylesPossiblyChanged(rootView);
+  }
+
+  private void scheduleReportChanges(long delayMs) {
+    final long uptimeMs = SystemClock.uptimeMillis() + delayMs;
+    if (mIsReportChangesPosted) {
+      if (uptimeMs >= mReportChangesUptimeMs) {
+        return;
+      }
+      removeCallbacks(mReportChanges);
+    }
+
+    mIsReportChangesPosted = true;
+    mReportChangesUptimeMs = uptimeMs;
+    postDelayed(mReportChanges, delayMs);
+  }
+
+  private void cancelReportChanges() {
+    if (mIsReportChangesPosted) {
+      mIsReportChangesPosted = false;
+      removeCallbacks(mReportChanges);
+    }
+    clearChangedElements();
+  }
+
+  private void clearChangedElements() {
+    mChangedElements.clear();
+    mRootViewsWithChangedChildren.clear();
+  }
+
   private void getWindows(final Accumulator<Window> accumulator) {
     Descriptor appDescriptor = getDescriptor(mApplication);
     if (appDescriptor != null) {
@@ -7,23 +7,99 @@
 
 package com.facebook.stetho.inspector.elements.android;
 
+import android.content.res.Resources;
+import android.graphics.Color;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+import android.view.View;
+
 import com.facebook.stetho.common.LogUtil;
 import com.facebook.stetho.common.Util;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 /**
  * Tries to arbitrarily invoke single argument methods by name on an object instance by trying out
  * different argument types.
+ * <p>
+ * Supported argument types, in order of preference when a method is overloaded, are
+ * {@link String}, {@link CharSequence}, {@code int}, {@code float}, {@code boolean},
+ * {@code long}, {@code double} and any enum.  Besides plain numbers, {@code int} accepts
+ * {@code 0x} hex and {@code #RRGGBB} or {@code #AARRGGBB} colors, and both {@code int} and
+ * {@code float} accept dimensions such as {@code 16dp}, which are converted to pixels.  The
+ * exception is a {@code float} setter with a {@code (int unit, float value)} overload, such as
+ * {@link android.widget.TextView#setTextSize(int, float)}, whose plain {@code float} argument
+ * isn't in pixels.  Everything is passed to the overload instead: dimensions along with their
+ * unit and plain numbers as pixels, which is what the matching getter returns.  Enum
+ * constants are matched ignoring case, with {@code -} standing in for {@code _}.
+ * <p>
+ * The setters of each class are looked up once and cached, including the absence of any, so
+ * repeatedly setting a property (e.g. scrubbing a value in the Elements panel) doesn't go through
+ * reflection to find it again.
  */
 public class MethodInvoker {
+  private static final Setter[] NO_SETTERS = new Setter[0];
+
+  private static final Pattern DIMENSION_PATTERN =
+      Pattern.compile("(-?\\d*\\.?\\d+)\\s*(px|dp|dip|sp|pt|in|mm)");
 
-  private static final List<TypedMethodInvoker<?>> invokers = Arrays.asList(
-      new StringMethodInvoker(), new CharSequenceMethodInvoker(), new IntegerMethodInvoker(),
-      new FloatMethodInvoker(), new BooleanMethodInvoker());
+  private static final List<Class<?>> ARGUMENT_TYPES = Arrays.<Class<?>>asList(
+      String.class,
+      CharSequence.class,
+      int.class,
+      float.class,
+      boolean.class,
+      long.class,
+      double.class);
+
+  private static final Map<Class<?>, ArgumentConverter> ARGUMENT_CONVERTERS = new HashMap<>();
+
+  static {
+    ARGUMENT_CONVERTERS.put(String.class, (receiver, argument) -> argument);
+    ARGUMENT_CONVERTERS.put(CharSequence.class, (receiver, argument) -> argument);
+    ARGUMENT_CONVERTERS.put(int.class, MethodInvoker::convertToInteger);
+    ARGUMENT_CONVERTERS.put(float.class, MethodInvoker::convertToFloat);
+    ARGUMENT_CONVERTERS.put(boolean.class, (receiver, argument) -> {
+      if ("true".equalsIgnoreCase(argument)) {
+        return Boolean.TRUE;
+      } else if ("false".equalsIgnoreCase(argument)) {
+        return Boolean.FALSE;
+      }
+      return null;
+    });
+    ARGUMENT_CONVERTERS.put(long.class, (receiver, argument) -> Long.parseLong(argument));
+    ARGUMENT_CONVERTERS.put(double.class, (receiver, argument) -> Double.parseDouble(argument));
+  }
+
+  /**
+   * Single argument methods with an argument type we support, by name, for each class we've been
+   * asked about.
+   */
+  @GuardedBy("this")
+  private final HashMap<Class<?>, HashMap<String, Setter[]>> mSetters = new HashMap<>();
+
+  /**
+   * @return Whether {@link #invoke} can find a method named {@code methodName} on
+   *     {@code receiver}, regardless of the argument.
+   */
+  public boolean hasSetter(Object receiver, String methodName) {
+    return getSetters(receiver.getClass(), methodName).length > 0;
+  }
 
   /**
    * Tries to invoke a method on receiver with a single argument by trying out different types
@@ -34,96 +110,265 @@ public class MethodInvoker {
    */
   public void invoke(Object receiver, String methodName, String argument) {
     Util.throwIfNull(receiver, methodName, argument);
-    int size = invokers.size();
-    for (int i = 0; i < size; ++i) {
-      final TypedMethodInvoker<?> invoker = invokers.get(i);
-      if (invoker.invoke(receiver, methodName, argument)) {
+    final Setter[] setters = getSetters(receiver.getClass(), methodName);
+    for (Setter setter : setters) {
+      final Object convertedArgument = setter.convertArgument(receiver, argument);
+      if (convertedArgument != null) {
+        setter.invoke(receiver, convertedArgument);
         return;
       }
     }
-    LogUtil.w("Method with name " + methodName +
-              " not found for any of the MethodInvoker supported argument types.");
+    if (setters.length == 0) {
+      LogUtil.w("Method with name " + methodName +
+                " not found for any of the MethodInvoker supported argument types.");
+    } else {
+      LogUtil.w("Argument \"" + argument + "\" not valid for any of the methods named " +
+                methodName);
+    }
   }
 
-  private static abstract class TypedMethodInvoker<T> {
-    private final Class<T> mArgType;
-
-    TypedMethodInvoker(Class<T> argType) {
-      mArgType = argType;
+  private synchronized Setter[] getSetters(Class<?> receiverClass, String methodName) {
+    HashMap<String, Setter[]> setters = mSetters.get(receiverClass);
+    if (setters == null) {
+      setters = findSetters(receiverClass);
+      mSetters.put(receiverClass, setters);
     }
+    Setter[] settersForName = setters.get(methodName);
+    return (settersForName != null) ? settersForName : NO_SETTERS;
+  }
 
-    boolean invoke(Object receiver, String methodName, String argument) {
-      try {
-        Method method = receiver.getClass().getMethod(methodName, mArgType);
-        method.invoke(receiver, convertArgument(argument));
-        return true;
-      } catch (NoSuchMethodException ignored) {
-        // ignore
-      } catch (InvocationTargetException e) {
-        LogUtil.w("InvocationTargetException: " + e.getMessage());
-      } catch (IllegalAccessException e) {
-        LogUtil.w("IllegalAccessException: " + e.getMessage());
-      } catch (IllegalArgumentException e) {
-        LogUtil.w("IllegalArgumentException: " + e.getMessage());
+  private static HashMap<String, Setter[]> findSetters(Class<?> receiverClass) {
+    final Method[] methods = receiverClass.getMethods();
+
+    HashMap<String, Method> unitMethodsByName = new HashMap<>();
+    for (Method method : methods) {
+      if (isUnitMethod(method)) {
+        unitMethodsByName.put(method.getName(), method);
       }
-      return false;
     }
 
-    abstract T convertArgument(String argument);
-  }
+    HashMap<String, List<Setter>> settersByName = new HashMap<>();
+    for (Method method : methods) {
+      final Class<?>[] parameterTypes = method.getParameterTypes();
+      if (parameterTypes.length != 1) {
+        continue;
+      }
+
+      final Method unitMethod = (parameterTypes[0] == float.class)
+          ? unitMethodsByName.get(method.getName())
+          : null;
+      final ArgumentConverter converter = (unitMethod != null)
+          ? MethodInvoker::convertToDimension
+          : getArgumentConverter(parameterTypes[0]);
+      if (converter == null) {
+        continue;
+      }
 
-  private static class StringMethodInvoker extends TypedMethodInvoker<String> {
-    StringMethodInvoker() {
-      super(String.class);
+      List<Setter> setters = settersByName.get(method.getName());
+      if (setters == null) {
+        setters = new ArrayList<>();
+        settersByName.put(method.getName(), setters);
+      }
+      setters.add(
+          new Setter(method, unitMethod, getArgumentTypeRank(parameterTypes[0]), converter));
     }
 
-    @Override
-    String convertArgument(String argument) {
-      return argument;
+    HashMap<String, Setter[]> result = new HashMap<>();
+    for (Map.Entry<String, List<Setter>> entry : settersByName.entrySet()) {
+      final List<Setter> setters = entry.getValue();
+      Collections.sort(setters, new Comparator<Setter>() {
+        @Override
+        public int compare(Setter lhs, Setter rhs) {
+          return lhs.rank - rhs.rank;
+        }
+      });
+      result.put(entry.getKey(), setters.toArray(new Setter[setters.size()]));
     }
+    return result;
+  }
+
+  /**
+   * @return Whether {@code method} takes a {@code TypedValue.COMPLEX_UNIT_*} constant and a value
+   *     in that unit.
+   */
+  private static boolean isUnitMethod(Method method) {
+    final Class<?>[] parameterTypes = method.getParameterTypes();
+    return parameterTypes.length == 2 &&
+        parameterTypes[0] == int.class &&
+        parameterTypes[1] == float.class;
   }
 
-  private static class CharSequenceMethodInvoker extends TypedMethodInvoker<CharSequence> {
-    CharSequenceMethodInvoker() {
-      super(CharSequence.class);
+  private static int getArgumentTypeRank(Class<?> argumentType) {
+    final int index = ARGUMENT_TYPES.indexOf(argumentType);
+    return (index >= 0) ? index : ARGUMENT_TYPES.size();
+  }
+
+  @Nullable
+  private static ArgumentConverter getArgumentConverter(final Class<?> argumentType) {
+    if (argumentType.isEnum()) {
+      final Object[] constants = argumentType.getEnumConstants();
+      return (receiver, argument) -> {
+        final String name = argument.replace('-', '_');
+        for (Object constant : constants) {
+          if (((Enum<?>) constant).name().equalsIgnoreCase(name)) {
+            return constant;
+          }
+        }
+        return null;
+      };
     }
+    return ARGUMENT_CONVERTERS.get(argumentType);
+  }
 
-    @Override
-    CharSequence convertArgument(String argument) {
-      return argument;
+  private static Integer convertToInteger(Object receiver, String argument) {
+    if (argument.startsWith("#")) {
+      return Color.parseColor(argument);
+    }
+    if (argument.startsWith("0x") || argument.startsWith("0X")) {
+      // Parsed as a long so that colors with the top bit set (e.g. 0xff000000) fit.
+      return (int) Long.parseLong(argument.substring(2), 16);
+    }
+    final Dimension dimension = parseDimension(argument);
+    if (dimension != null) {
+      final float pixels = toPixels(receiver, dimension);
+      return (int) (pixels >= 0 ? pixels + 0.5f : pixels - 0.5f);
     }
+    return Integer.parseInt(argument);
+  }
+
+  private static Float convertToFloat(Object receiver, String argument) {
+    final Dimension dimension = parseDimension(argument);
+    return (dimension != null) ? toPixels(receiver, dimension) : Float.parseFloat(argument);
+  }
+
+  private static Dimension convertToDimension(Object receiver, String argument) {
+    final Dimension dimension = parseDimension(argument);
+    return (dimension != null)
+        ? dimension
+        : new Dimension(TypedValue.COMPLEX_UNIT_PX, Float.parseFloat(argument));
   }
 
-  private static class IntegerMethodInvoker extends TypedMethodInvoker<Integer> {
-    IntegerMethodInvoker() {
-      super(int.class);
+  private static float toPixels(Object receiver, Dimension dimension) {
+    final DisplayMetrics displayMetrics = (receiver instanceof View)
+        ? ((View) receiver).getResources().getDisplayMetrics()
+        : Resources.getSystem().getDisplayMetrics();
+    return TypedValue.applyDimension(dimension.unit, dimension.value, displayMetrics);
+  }
+
+  /**
+   * @return {@code argument} as a {@link Dimension}, or null if it isn't one.
+   */
+  @Nullable
+  private static Dimension parseDimension(String argument) {
+    final Matcher matcher = DIMENSION_PATTERN.matcher(argument.toLowerCase(Locale.US));
+    if (!matcher.matches()) {
+      return null;
     }
 
-    @Override
-    Integer convertArgument(String argument) {
-      return Integer.parseInt(argument);
+    final float value = Float.parseFloat(matcher.group(1));
+    final int unit;
+    switch (matcher.group(2)) {
+      case "px":
+        unit = TypedValue.COMPLEX_UNIT_PX;
+        break;
+      case "dp":
+      case "dip":
+        unit = TypedValue.COMPLEX_UNIT_DIP;
+        break;
+      case "sp":
+        unit = TypedValue.COMPLEX_UNIT_SP;
+        break;
+      case "pt":
+        unit = TypedValue.COMPLEX_UNIT_PT;
+        break;
+      case "in":
+        unit = TypedValue.COMPLEX_UNIT_IN;
+        break;
+      case "mm":
+        unit = TypedValue.COMPLEX_UNIT_MM;
+        break;
+      default:
+        throw new IllegalStateException();
     }
+    return new Dimension(unit, value);
   }
 
-  private static class FloatMethodInvoker extends TypedMethodInvoker<Float> {
-    FloatMethodInvoker() {
-      super(float.class);
-    }
+  /**
+   * A value with one of the {@code TypedValue.COMPLEX_UNIT_*} units, such as {@code 16dp}.
+   */
+  private static final class Dimension {
+    public final int unit;
+    public final float value;
 
-    @Override
-    Float convertArgument(String argument) {
-      return Float.parseFloat(argument);
+    public Dimension(int unit, float value) {
+      this.unit = unit;
+      this.value = value;
     }
   }
 
-  private static class BooleanMethodInvoker extends TypedMethodInvoker<Boolean> {
-    BooleanMethodInvoker() {
-      super(boolean.class);
+  private interface ArgumentConverter {
+    /**
+     * @return The converted argument, or null if it isn't valid for the type. Throwing an
+     *     {@link IllegalArgumentException} (such as {@link NumberFormatException}) means the same.
+     */
+    @Nullable
+    Object convert(Object receiver, String argument);
+  }
+
+  private static final class Setter {
+    public final Method method;
+    public final int rank;
+    private final ArgumentConverter mConverter;
+
+    /**
+     * The {@code (int unit, float value)} overload of {@link #method}, which any
+     * {@link Dimension} argument is passed to.  When there is one, every argument is a
+     * {@link Dimension}.
+     */
+    private final @Nullable Method mUnitMethod;
+
+    public Setter(
+        Method method,
+        @Nullable Method unitMethod,
+        int rank,
+        ArgumentConverter converter) {
+      this.method = method;
+      this.rank = rank;
+      mConverter = converter;
+      mUnitMethod = unitMethod;
+      if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+        // Public methods of a non-public class still need this.
+        method.setAccessible(true);
+        if (unitMethod != null) {
+          unitMethod.setAccessible(true);
+        }
+      }
+    }
+
+    @Nullable
+    public Object convertArgument(Object receiver, String argument) {
+      try {
+        return mConverter.convert(receiver, argument);
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
     }
 
-    @Override
-    Boolean convertArgument(String argument) {
-      return Boolean.parseBoolean(argument);
+    public void invoke(Object receiver, Object argument) {
+      try {
+        if (argument instanceof Dimension) {
+          final Dimension dimension = (Dimension) argument;
+          mUnitMethod.invoke(receiver, dimension.unit, dimension.value);
+        } else {
+          method.invoke(receiver, argument);
+        }
+      } catch (InvocationTargetException e) {
+        LogUtil.w("InvocationTargetException: " + e.getMessage());
+      } catch (IllegalAccessException e) {
+        LogUtil.w("IllegalAccessException: " + e.getMessage());
+      } catch (IllegalArgumentException e) {
+        LogUtil.w("IllegalArgumentException: " + e.getMessage());
+      }
     }
   }
 }
@@ -30,6 +30,7 @@ import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -46,6 +47,7 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
   private static final String NONE_VALUE = "(none)";
   private static final String NONE_MAPPING = "<no mapping>";
   private static final String VIEW_STYLE_RULE_NAME = "<this_view>";
+  private static final String READ_ONLY_VIEW_STYLE_RULE_NAME = "<this_view> (read-only)";
   private static final String ACCESSIBILITY_STYLE_RULE_NAME = "Accessibility Properties";
 
   private final MethodInvoker mMethodInvoker;
@@ -75,11 +77,14 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
   private Pattern mWordBoundaryPattern;
 
   /**
+   * Exported properties of each concrete {@link View} class we've been asked about, sorted by CSS
+   * name. This lives only as long as the descriptor, which is to say the inspection session, so
+   * the classes are held strongly (as their {@link Method}s and {@link Field}s would anyway).
+   * <p>
    * NOTE: Only access this via {@link #getViewProperties}.
    */
-  @Nullable
   @GuardedBy("this")
-  private volatile List<ViewCSSProperty> mViewProperties;
+  private final HashMap<Class<?>, List<ViewCSSProperty>> mViewProperties = new HashMap<>();
 
   private Pattern getWordBoundaryPattern() {
     if (mWordBoundaryPattern == null) {
@@ -89,50 +94,63 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
     return mWordBoundaryPattern;
   }
 
-  private List<ViewCSSProperty> getViewProperties() {
-    if (mViewProperties == null) {
-      synchronized (this) {
-        if (mViewProperties == null) {
-          List<ViewCSSProperty> props = new ArrayList<>();
-
-          for (final Method method : View.class.getDeclaredMethods()) {
-            ViewDebug.ExportedProperty annotation =
-                method.getAnnotation(
-                    ViewDebug.ExportedProperty.class);
-
-            if (annotation != null) {
-              props.add(new MethodBackedCSSProperty(
-                  method,
-                  convertViewPropertyNameToCSSName(method.getName()),
-                  annotation));
-            }
-          }
+  /**
+   * @return Properties exported by {@code viewClass} and its superclasses up to {@link View}. A
+   *     subclass overriding an exported method replaces the superclass' property of that name.
+   */
+  private synchronized List<ViewCSSProperty> getViewProperties(Class<?> viewClass) {
+    List<ViewCSSProperty> properties = mViewProperties.get(viewClass);
+    if (properties != null) {
+      return properties;
+    }
 
-          for (final Field field : View.class.getDeclaredFields()) {
-            ViewDebug.ExportedProperty annotation =
-                field.getAnnotation(
-                    ViewDebug.ExportedProperty.class);
-
-            if (annotation != null) {
-              props.add(new FieldBackedCSSProperty(
-                  field,
-                  convertViewPropertyNameToCSSName(field.getName()),
-                  annotation));
-            }
-          }
+    HashMap<String, ViewCSSProperty> propertiesByName = new HashMap<>();
+    if (viewClass != View.class) {
+      for (ViewCSSProperty property : getViewProperties(viewClass.getSuperclass())) {
+        propertiesByName.put(property.getCSSName(), property);
+      }
+    }
 
-          Collections.sort(props, new Comparator<ViewCSSProperty>() {
-            @Override
-            public int compare(ViewCSSProperty lhs, ViewCSSProperty rhs) {
-              return lhs.getCSSName().compareTo(rhs.getCSSName());
-            }
-          });
-          mViewProperties = Collections.unmodifiableList(props);
+    try {
+      for (final Field field : viewClass.getDeclaredFields()) {
+        ViewDebug.ExportedProperty annotation =
+            field.getAnnotation(
+                ViewDebug.ExportedProperty.class);
+
+        if (annotation != null && !Modifier.isStatic(field.getModifiers())) {
+          String cssName = convertViewPropertyNameToCSSName(field.getName());
+          propertiesByName.put(cssName, new FieldBackedCSSProperty(field, cssName, annotation));
         }
       }
+
+      for (final Method method : viewClass.getDeclaredMethods()) {
+        ViewDebug.ExportedProperty annotation =
+            method.getAnnotation(
+                ViewDebug.ExportedProperty.class);
+
+        if (annotation != null &&
+            method.getParameterTypes().length == 0 &&
+            !Modifier.isStatic(method.getModifiers())) {
+          String cssName = convertViewPropertyNameToCSSName(method.getName());
+          propertiesByName.put(cssName, new MethodBackedCSSProperty(method, cssName, annotation));
+        }
+      }
+    } catch (LinkageError e) {
+      // Custom views may refer to classes that aren't there at runtime, e.g. from an optional
+      // dependency. We can still show what their superclasses export.
+      LogUtil.w(e, "Failed to find exported properties of " + viewClass.getName());
     }
 
-    return mViewProperties;
+    properties = new ArrayList<>(propertiesByName.values());
+    Collections.sort(properties, new Comparator<ViewCSSProperty>() {
+      @Override
+      public int compare(ViewCSSProperty lhs, ViewCSSProperty rhs) {
+        return lhs.getCSSName().compareTo(rhs.getCSSName());
+      }
+    });
+    properties = Collections.unmodifiableList(properties);
+    mViewProperties.put(viewClass, properties);
+    return properties;
   }
 
   public ViewDescriptor() {
@@ -215,7 +233,10 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
 
   @Override
   protected void onGetStyleRuleNames(View element, StyleRuleNameAccumulator accumulator) {
-    accumulator.store(VIEW_STYLE_RULE_NAME, false);
+    // DevTools can only mark a whole rule as editable, so the properties we have no setter for
+    // go in a rule of their own.
+    accumulator.store(VIEW_STYLE_RULE_NAME, true /* editable */);
+    accumulator.store(READ_ONLY_VIEW_STYLE_RULE_NAME, false);
     if (sHasSupportNodeInfo) {
       accumulator.store(ACCESSIBILITY_STYLE_RULE_NAME, false);
     }
@@ -223,8 +244,10 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
 
   @Override
   protected void onGetStyles(View element, String ruleName, StyleAccumulator accumulator) {
-    if (VIEW_STYLE_RULE_NAME.equals(ruleName)) {
-      List<ViewCSSProperty> properties = getViewProperties();
+    final boolean isEditableRule = VIEW_STYLE_RULE_NAME.equals(ruleName);
+    if (isEditableRule || READ_ONLY_VIEW_STYLE_RULE_NAME.equals(ruleName)) {
+      accumulator = new SetterFilteringStyleAccumulator(element, isEditableRule, accumulator);
+      List<ViewCSSProperty> properties = getViewProperties(element.getClass());
       for (int i = 0, size = properties.size(); i < size; i++) {
         ViewCSSProperty property = properties.get(i);
         try {
@@ -233,6 +256,7 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
               property.getCSSName(),
               property.getValue(element),
               property.getAnnotation(),
+              property.getMapping(),
               accumulator);
         } catch (Exception e) {
           if (e instanceof IllegalAccessException || e instanceof InvocationTargetException) {
@@ -251,6 +275,7 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
             "ignored",
             ignored,
             null,
+            null,
             accumulator);
 
         if (ignored) {
@@ -259,6 +284,7 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
               "ignored-reasons",
               AccessibilityNodeInfoWrapper.getIgnoredReasons(element),
               null,
+              null,
               accumulator);
         }
 
@@ -267,6 +293,7 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
             "focusable",
             !ignored,
             null,
+            null,
             accumulator);
 
         if (!ignored) {
@@ -275,6 +302,7 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
               "focusable-reasons",
               AccessibilityNodeInfoWrapper.getFocusableReasons(element),
               null,
+              null,
               accumulator);
 
           getStyleFromValue(
@@ -282,6 +310,7 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
               "focused",
               AccessibilityNodeInfoWrapper.getIsAccessibilityFocused(element),
               null,
+              null,
               accumulator);
 
           getStyleFromValue(
@@ -289,6 +318,7 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
               "description",
               AccessibilityNodeInfoWrapper.getDescription(element),
               null,
+              null,
               accumulator);
 
           getStyleFromValue(
@@ -296,12 +326,20 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
               "actions",
               AccessibilityNodeInfoWrapper.getActions(element),
               null,
+              null,
               accumulator);
         }
       }
     }
   }
 
+  @Override
+  protected void onSetStyle(View element, String ruleName, String name, String value) {
+    if (VIEW_STYLE_RULE_NAME.equals(ruleName)) {
+      mMethodInvoker.invoke(element, convertCSSNameToSetterName(name), value);
+    }
+  }
+
   @Override
   protected void onGetComputedStyles(View element, ComputedStyleAccumulator styles) {
     int width = element.getRight() - element.getLeft();
@@ -314,67 +352,6 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
     styles.store("bottom", Integer.toString(point[1] + height));
   }
 
-  private static boolean canIntBeMappedToString(@Nullable ViewDebug.ExportedProperty annotation) {
-    return annotation != null
-        && annotation.mapping() != null
-        && annotation.mapping().length > 0;
-  }
-
-  private static String mapIntToStringUsingAnnotation(
-      int value,
-      @Nullable ViewDebug.ExportedProperty annotation) {
-    if (!canIntBeMappedToString(annotation)) {
-      throw new IllegalStateException("Cannot map using this annotation");
-    }
-
-    for (ViewDebug.IntToString map : annotation.mapping()) {
-      if (map.from() == value) {
-        return map.to();
-      }
-    }
-
-    // no mapping was found even though one was expected ):
-    return NONE_MAPPING;
-  }
-
-  private static boolean canFlagsBeMappedToString(@Nullable ViewDebug.ExportedProperty annotation) {
-    return annotation != null
-        && annotation.flagMapping() != null
-        && annotation.flagMapping().length > 0;
-  }
-
-  private static String mapFlagsToStringUsingAnnotation(
-      int value,
-      @Nullable ViewDebug.ExportedProperty annotation) {
-    if (!canFlagsBeMappedToString(annotation)) {
-      throw new IllegalStateException("Cannot map using this annotation");
-    }
-
-    StringBuilder stringBuilder = null;
-    boolean atLeastOneFlag = false;
-
-    for (ViewDebug.FlagToString flagToString : annotation.flagMapping()) {
-      if (flagToString.outputIf() == ((value & flagToString.mask()) == flagToString.equals())) {
-        if (stringBuilder == null) {
-          stringBuilder = new StringBuilder();
-        }
-
-        if (atLeastOneFlag) {
-          stringBuilder.append(" | ");
-        }
-
-        stringBuilder.append(flagToString.name());
-        atLeastOneFlag = true;
-      }
-    }
-
-    if (atLeastOneFlag) {
-      return stringBuilder.toString();
-    } else {
-      return NONE_MAPPING;
-    }
-  }
-
   private String convertViewPropertyNameToCSSName(String getterName) {
     // Split string by uppercase characters. Thankfully since
     // this is the android source we don't have to worry about
@@ -399,17 +376,64 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
     return result.toString();
   }
 
+  /**
+   * The reverse of {@link #convertViewPropertyNameToCSSName}, e.g. {@code text-size} and
+   * {@code is-clickable} become {@code setTextSize} and {@code setClickable}.
+   */
+  private static String convertCSSNameToSetterName(String cssName) {
+    String[] words = cssName.split("-");
+
+    StringBuilder result = new StringBuilder("set");
+
+    for (int i = 0; i < words.length; i++) {
+      if (i == 0 && words.length > 1 && words[i].equals("is")) {
+        continue;
+      }
+
+      result.append(capitalize(words[i]));
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Passes on only the properties which do, or don't, have a setter that
+   * {@link #onSetStyle} can find.
+   */
+  private final class SetterFilteringStyleAccumulator implements StyleAccumulator {
+    private final View mElement;
+    private final boolean mHasSetter;
+    private final StyleAccumulator mAccumulator;
+
+    public SetterFilteringStyleAccumulator(
+        View element,
+        boolean hasSetter,
+        StyleAccumulator accumulator) {
+      mElement = element;
+      mHasSetter = hasSetter;
+      mAccumulator = accumulator;
+    }
+
+    @Override
+    public void store(String name, String value, boolean isDefault) {
+      if (mMethodInvoker.hasSetter(mElement, convertCSSNameToSetterName(name)) == mHasSetter) {
+        mAccumulator.store(name, value, isDefault);
+      }
+    }
+  }
+
   private void getStyleFromValue(
       View element,
       String name,
       Object value,
       @Nullable ViewDebug.ExportedProperty annotation,
+      @Nullable IntegerMapping mapping,
       StyleAccumulator styles) {
 
     if (name.equals(ID_NAME)) {
       getIdStyle(element, styles);
     } else if (value instanceof Integer) {
-      getStyleFromInteger(name, (Integer) value, annotation, styles);
+      getStyleFromInteger(name, (Integer) value, annotation, mapping, styles);
     } else if (value instanceof Float) {
       styles.store(name, String.valueOf(value), ((Float) value) == 0.0f);
     } else if (value instanceof Boolean) {
@@ -448,31 +472,18 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
       String name,
       Integer value,
       @Nullable ViewDebug.ExportedProperty annotation,
+      @Nullable IntegerMapping mapping,
       StyleAccumulator styles) {
 
     String intValueStr = IntegerFormatter.getInstance().format(value, annotation);
 
-    if (canIntBeMappedToString(annotation)) {
-      styles.store(
-          name,
-          intValueStr + " (" + mapIntToStringUsingAnnotation(value, annotation) + ")",
-          false);
-    } else if (canFlagsBeMappedToString(annotation)) {
-      styles.store(
-          name,
-          intValueStr + " (" + mapFlagsToStringUsingAnnotation(value, annotation) + ")",
-          false);
-    } else {
-      Boolean defaultValue = true;
+    if (mapping != null) {
       // Mappable ints should always be shown, because enums don't necessarily have
       // logical "default" values. Thus we mark all of them as not default, so that they
       // show up in the inspector.
-      if (value != 0 ||
-          canFlagsBeMappedToString(annotation) ||
-          canIntBeMappedToString(annotation)) {
-        defaultValue = false;
-      }
-      styles.store(name, intValueStr, defaultValue);
+      styles.store(name, intValueStr + " (" + mapping.map(value) + ")", false);
+    } else {
+      styles.store(name, intValueStr, value == 0);
     }
   }
 
@@ -535,6 +546,7 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
           propertyName,
           propertyValue,
           subAnnotation,
+          IntegerMapping.create(subAnnotation),
           styles);
     }
   }
@@ -587,10 +599,12 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
   private abstract class ViewCSSProperty {
     private final String mCSSName;
     private final ViewDebug.ExportedProperty mAnnotation;
+    private final @Nullable IntegerMapping mMapping;
 
     public ViewCSSProperty(String cssName, @Nullable ViewDebug.ExportedProperty annotation) {
       mCSSName = cssName;
       mAnnotation = annotation;
+      mMapping = IntegerMapping.create(annotation);
     }
 
     public final String getCSSName() {
@@ -603,5 +617,103 @@ final class ViewDescriptor extends AbstractChainedDescriptor<View>
     public final @Nullable ViewDebug.ExportedProperty getAnnotation() {
       return mAnnotation;
     }
+
+    public final @Nullable IntegerMapping getMapping() {
+      return mMapping;
+    }
+  }
+
+  /**
+   * The {@link ViewDebug.IntToString} or {@link ViewDebug.FlagToString} table of an
+   * {@link ViewDebug.ExportedProperty}, copied out of the annotation once so that mapping a value
+   * doesn't go through the annotation's proxy for every entry.
+   */
+  private static final class IntegerMapping {
+    private final int[] mFrom;
+    private final String[] mTo;
+    private final boolean mIsFlags;
+
+    /**
+     * For flags only; {@link #mFrom} holds the masks.
+     */
+    private final int[] mEquals;
+    private final boolean[] mOutputIf;
+
+    @Nullable
+    public static IntegerMapping create(@Nullable ViewDebug.ExportedProperty annotation) {
+      if (annotation == null) {
+        return null;
+      }
+
+      ViewDebug.IntToString[] mapping = annotation.mapping();
+      if (mapping != null && mapping.length > 0) {
+        return new IntegerMapping(mapping);
+      }
+
+      ViewDebug.FlagToString[] flagMapping = annotation.flagMapping();
+      if (flagMapping != null && flagMapping.length > 0) {
+        return new IntegerMapping(flagMapping);
+      }
+
+      return null;
+    }
+
+    private IntegerMapping(ViewDebug.IntToString[] mapping) {
+      mFrom = new int[mapping.length];
+      mTo = new String[mapping.length];
+      for (int i = 0; i < mapping.length; i++) {
+        mFrom[i] = mapping[i].from();
+        mTo[i] = mapping[i].to();
+      }
+      mIsFlags = false;
+      mEquals = null;
+      mOutputIf = null;
+    }
+
+    private IntegerMapping(ViewDebug.FlagToString[] flagMapping) {
+      mFrom = new int[flagMapping.length];
+      mTo = new String[flagMapping.length];
+      mEquals = new int[flagMapping.length];
+      mOutputIf = new boolean[flagMapping.length];
+      for (int i = 0; i < flagMapping.length; i++) {
+        mFrom[i] = flagMapping[i].mask();
+        mTo[i] = flagMapping[i].name();
+        mEquals[i] = flagMapping[i].equals();
+        mOutputIf[i] = flagMapping[i].outputIf();
+      }
+      mIsFlags = true;
+    }
+
+    public String map(int value) {
+      return mIsFlags ? mapFlags(value) : mapInt(value);
+    }
+
+    private String mapInt(int value) {
+      for (int i = 0; i < mFrom.length; i++) {
+        if (mFrom[i] == value) {
+          return mTo[i];
+        }
+      }
+
+      // no mapping was found even though one was expected ):
+      return NONE_MAPPING;
+    }
+
+    private String mapFlags(int value) {
+      StringBuilder stringBuilder = null;
+
+      for (int i = 0; i < mFrom.length; i++) {
+        if (mOutputIf[i] == ((value & mFrom[i]) == mEquals[i])) {
+          if (stringBuilder == null) {
+            stringBuilder = new StringBuilder();
+          } else {
+            stringBuilder.append(" | ");
+          }
+          stringBuilder.append(mTo[i]);
+        }
+      }
+
+      return (stringBuilder != null) ? stringBuilder.toString() : NONE_MAPPING;
+    }
   }
 }
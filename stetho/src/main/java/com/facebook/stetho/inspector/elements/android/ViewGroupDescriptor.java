@@ -10,13 +10,19 @@ package com.facebook.stetho.inspector.elements.android;
 import android.graphics.Rect;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
 
 import com.facebook.stetho.common.Accumulator;
+import com.facebook.stetho.common.LogUtil;
 import com.facebook.stetho.common.android.FragmentCompatUtil;
 import com.facebook.stetho.inspector.elements.AbstractChainedDescriptor;
+import com.facebook.stetho.inspector.elements.Descriptor;
 
 import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -25,6 +31,28 @@ import javax.annotation.Nullable;
 final class ViewGroupDescriptor extends AbstractChainedDescriptor<ViewGroup>
     implements HighlightableDescriptor<ViewGroup> {
 
+  /**
+   * {@link ViewGroup} only has room for a single {@link ViewGroup.OnHierarchyChangeListener} and no
+   * getter for it, so we chain ours in front of whatever is already there by accessing the field
+   * directly.  Going through {@link ViewGroup#setOnHierarchyChangeListener} instead would
+   * clobber the app's listener, or for subclasses like {@link android.widget.RadioGroup} which
+   * override it, the listener of the app's listener.
+   */
+  private static final Field sOnHierarchyChangeListenerField;
+
+  static {
+    Field field = null;
+    try {
+      field = ViewGroup.class.getDeclaredField("mOnHierarchyChangeListener");
+      field.setAccessible(true);
+    } catch (NoSuchFieldException | RuntimeException e) {
+      // Without it we still find out about changes through layout passes, just less precisely.
+      LogUtil.w(e, "failed to get mOnHierarchyChangeListener");
+      field = null;
+    }
+    sOnHierarchyChangeListenerField = field;
+  }
+
   /**
    * This is a cache that maps from a View to the Fragment that contains it. If the View isn't
    * contained by a Fragment, then this maps the View to itself. For Views contained by Fragments,
@@ -34,9 +62,27 @@ final class ViewGroupDescriptor extends AbstractChainedDescriptor<ViewGroup>
   private final Map<View, Object> mViewToElementMap =
       Collections.synchronizedMap(new WeakHashMap<View, Object>());
 
+  private final Map<ViewGroup, ElementContext> mElementToContextMap =
+      Collections.synchronizedMap(new IdentityHashMap<ViewGroup, ElementContext>());
+
   public ViewGroupDescriptor() {
   }
 
+  @Override
+  protected void onHook(ViewGroup element) {
+    ElementContext context = new ElementContext();
+    context.hook(element);
+    mElementToContextMap.put(element, context);
+  }
+
+  @Override
+  protected void onUnhook(ViewGroup element) {
+    ElementContext context = mElementToContextMap.remove(element);
+    if (context != null) {
+      context.unhook();
+    }
+  }
+
   @Override
   protected void onGetChildren(ViewGroup element, Accumulator<Object> children) {
     for (int i = 0, N = element.getChildCount(); i < N; ++i) {
@@ -122,4 +168,103 @@ final class ViewGroupDescriptor extends AbstractChainedDescriptor<ViewGroup>
       return element;
     }
   }
+
+  /**
+   * Reports structural changes in a {@link ViewGroup} to our {@link AndroidDescriptorHost}, and
+   * for the root view of a window, also its layout passes.
+   */
+  private final class ElementContext implements
+      ViewGroup.OnHierarchyChangeListener,
+      ViewTreeObserver.OnGlobalLayoutListener {
+    private ViewGroup mElement;
+    private @Nullable ViewGroup.OnHierarchyChangeListener mChainedListener;
+    private boolean mIsHierarchyListenerInstalled;
+    private @Nullable ViewTreeObserver mViewTreeObserver;
+
+    public void hook(ViewGroup element) {
+      mElement = element;
+
+      if (sOnHierarchyChangeListenerField != null) {
+        try {
+          mChainedListener = (ViewGroup.OnHierarchyChangeListener)
+              sOnHierarchyChangeListenerField.get(element);
+          sOnHierarchyChangeListenerField.set(element, this);
+          mIsHierarchyListenerInstalled = true;
+        } catch (IllegalAccessException e) {
+          LogUtil.w(e, "failed to set mOnHierarchyChangeListener");
+        }
+      }
+
+      if (isRootView(element)) {
+        mViewTreeObserver = element.getViewTreeObserver();
+        mViewTreeObserver.addOnGlobalLayoutListener(this);
+      }
+    }
+
+    public void unhook() {
+      if (mIsHierarchyListenerInstalled) {
+        try {
+          // If the app has since replaced us then leave its listener alone.  Either way we stay
+          // transparent in case we're still reachable through someone else's chain.
+          if (sOnHierarchyChangeListenerField.get(mElement) == this) {
+            sOnHierarchyChangeListenerField.set(mElement, mChainedListener);
+          }
+        } catch (IllegalAccessException e) {
+          LogUtil.w(e, "failed to restore mOnHierarchyChangeListener");
+        }
+        mIsHierarchyListenerInstalled = false;
+      }
+
+      if (mViewTreeObserver != null) {
+        // The observer is replaced when the view is attached to a window, and is then no longer
+        // alive, so try the current one too.
+        if (mViewTreeObserver.isAlive()) {
+          mViewTreeObserver.removeOnGlobalLayoutListener(this);
+        }
+        ViewTreeObserver current = mElement.getViewTreeObserver();
+        if (current != mViewTreeObserver && current.isAlive()) {
+          current.removeOnGlobalLayoutListener(this);
+        }
+        mViewTreeObserver = null;
+      }
+    }
+
+    @Override
+    public void onChildViewAdded(View parent, View child) {
+      onChildrenChanged(parent);
+      if (mChainedListener != null) {
+        mChainedListener.onChildViewAdded(parent, child);
+      }
+    }
+
+    @Override
+    public void onChildViewRemoved(View parent, View child) {
+      onChildrenChanged(parent);
+      if (mChainedListener != null) {
+        mChainedListener.onChildViewRemoved(parent, child);
+      }
+    }
+
+    private void onChildrenChanged(View parent) {
+      final Descriptor.Host host = getHost();
+      if (mIsHierarchyListenerInstalled &&
+          host instanceof AndroidDescriptorHost &&
+          host.checkThreadAccess()) {
+        ((AndroidDescriptorHost) host).onChildrenPossiblyChanged(parent);
+      }
+    }
+
+    @Override
+    public void onGlobalLayout() {
+      final Descriptor.Host host = getHost();
+      if (mViewTreeObserver != null && host instanceof AndroidDescriptorHost) {
+        ((AndroidDescriptorHost) host).onWindowLayout(mElement);
+      }
+    }
+  }
+
+  private static boolean isRootView(View view) {
+    final ViewParent parent = view.getParent();
+    return !(parent instanceof View);
+  }
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.helper;
+
+import com.facebook.stetho.inspector.protocol.ChromeDevtoolsDomain;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factory for executors suitable for {@link ChromeDevtoolsDomain#getDispatchExecutor()}.
+ */
+public final class DomainExecutors {
+  private static final long KEEP_ALIVE_SEC = 30;
+
+  private DomainExecutors() {
+  }
+
+  /**
+   * Create an executor which runs tasks one at a time, in submission order, on a background
+   * thread.  This preserves the ordering of requests within a domain while freeing the socket
+   * reader thread.  The thread is a daemon and is only kept around while there is work to do.
+   *
+   * @param name Used to name the worker thread, typically the domain name.
+   */
+  public static Executor newSerialExecutor(final String name) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        1 /* corePoolSize */,
+        1 /* maximumPoolSize */,
+        KEEP_ALIVE_SEC,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "StethoDispatch-" + name);
+            // Never keep the process alive just to finish a DevTools request.
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.jsonrpc;
+
+import javax.annotation.Nullable;
+
+/**
+ * Notification params which can be merged with a later notification of the same method while
+ * the earlier one is still waiting to be sent.  {@link JsonRpcPeer} sends such notifications
+ * with {@link com.facebook.stetho.websocket.SendPolicy#COALESCE}.
+ */
+public interface CoalescableParams {
+  /**
+   * Notifications of the same method with equal keys are candidates for merging.
+   */
+  Object getCoalesceKey();
+
+  /**
+   * Merge {@code newer} into a new params object.  Neither this nor {@code newer} may be
+   * modified as the same params are typically shared between all connected peers.
+   *
+   * @return Params equivalent to sending this followed by {@code newer}, or null if the two
+   *     can't be merged.
+   */
+  @Nullable
+  CoalescableParams coalesce(CoalescableParams newer);
+}
@@ -12,13 +12,16 @@ import android.database.Observable;
 import androidx.annotation.NonNull;
 
 import com.facebook.stetho.common.Util;
-import com.facebook.stetho.inspector.jsonrpc.protocol.JsonRpcRequest;
+import com.facebook.stetho.inspector.jsonrpc.protocol.JsonRpcError;
+import com.facebook.stetho.inspector.jsonrpc.protocol.JsonRpcResponse;
 import com.facebook.stetho.json.ObjectMapper;
+import com.facebook.stetho.json.Utf8JsonWriter;
+import com.facebook.stetho.websocket.CoalescableText;
+import com.facebook.stetho.websocket.SendPolicy;
 import com.facebook.stetho.websocket.SimpleSession;
 
-import org.json.JSONObject;
-
 import java.nio.channels.NotYetConnectedException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -31,6 +34,24 @@ import javax.annotation.concurrent.ThreadSafe;
 public class JsonRpcPeer {
   private final SimpleSession mPeer;
   private final ObjectMapper mObjectMapper;
+
+  /**
+   * Reusable buffer that outgoing messages are serialized into before being handed to
+   * {@link #mPeer}.  Also serves as the lock that orders writes from concurrent senders.
+   */
+  private final Utf8JsonWriter mWriter = new Utf8JsonWriter();
+
+  /**
+   * Buffer for {@link CoalescingNotification}, which is only ever encoded on the session's
+   * writer thread.
+   */
+  private final Utf8JsonWriter mLazyWriter = new Utf8JsonWriter();
+
+  /**
+   * Size of the last {@link CoalescingNotification} we encoded, used as the estimate for the ones
+   * that are still queued.  They tend to be small and alike.
+   */
+  private volatile int mCoalescingNotificationSize = 256;
   private final Map<Class<?>, PeerService> mServices = new HashMap<>();
 
   @NonNull
@@ -65,21 +86,118 @@ public class JsonRpcPeer {
     return mPeer;
   }
 
+  /**
+   * Invoke a method on the peer, or send a notification if {@code callback} is null.
+   * Notifications whose params implement {@link CoalescableParams} are sent with
+   * {@link SendPolicy#COALESCE}, all others with {@link SendPolicy#BLOCK} since most of them
+   * carry state the peer can't do without.  Notifications that can safely be lost under load
+   * should use {@link #sendNotification} with a lossy policy.
+   */
   public void invokeMethod(String method, Object paramsObject,
       @Nullable PendingRequestCallback callback)
       throws NotYetConnectedException {
     Util.throwIfNull(method);
 
-    Long requestId = (callback != null) ? preparePendingRequest(callback) : null;
+    if (callback == null) {
+      sendNotification(
+          method,
+          paramsObject,
+          paramsObject instanceof CoalescableParams ? SendPolicy.COALESCE : SendPolicy.BLOCK);
+      return;
+    }
+
+    long requestId = preparePendingRequest(callback);
+    sendMessage(requestId, method, paramsObject, SendPolicy.BLOCK);
+  }
+
+  /**
+   * Send a notification with an explicit overflow policy.  {@link SendPolicy#DROP_OLDEST}
+   * replaces any still queued notification of the same method.
+   */
+  public void sendNotification(String method, @Nullable Object paramsObject, SendPolicy policy)
+      throws NotYetConnectedException {
+    Util.throwIfNull(method);
+    if (policy == SendPolicy.COALESCE) {
+      if (!(paramsObject instanceof CoalescableParams)) {
+        throw new IllegalArgumentException(
+            "COALESCE requires CoalescableParams, got " + paramsObject);
+      }
+      mPeer.sendText(new CoalescingNotification(method, (CoalescableParams) paramsObject));
+    } else {
+      sendMessage(null /* requestId */, method, paramsObject, policy);
+    }
+  }
 
+  private void sendMessage(
+      @Nullable Long requestId,
+      String method,
+      @Nullable Object paramsObject,
+      SendPolicy policy) {
     // magic, can basically convert anything for some amount of runtime overhead...
-    JSONObject params = mObjectMapper.convertValue(paramsObject, JSONObject.class);
+    synchronized (mWriter) {
+      writeMessage(mWriter, requestId, method, paramsObject);
+      mPeer.sendText(
+          mWriter.getBuffer(),
+          mWriter.size(),
+          policy,
+          policy == SendPolicy.DROP_OLDEST ? method : null /* key */);
+    }
+  }
 
-    JsonRpcRequest message = new JsonRpcRequest(requestId, method, params);
-    String requestString;
-    JSONObject jsonObject = mObjectMapper.convertValue(message, JSONObject.class);
-    requestString = jsonObject.toString();
-    mPeer.sendText(requestString);
+  private void writeMessage(
+      Utf8JsonWriter writer,
+      @Nullable Long requestId,
+      String method,
+      @Nullable Object paramsObject) {
+    writer.reset();
+    writer.beginObject();
+    if (requestId != null) {
+      writer.name("id").value(requestId);
+    }
+    writer.name("method").value(method);
+    if (paramsObject != null) {
+      writer.name("params");
+      mObjectMapper.writeValue(writer, paramsObject);
+    }
+    writer.endObject();
+  }
+
+  /**
+   * Send the response to a request previously received from this peer.
+   *
+   * @param requestId Id of the request, see {@link JsonRpcResponse#id}.
+   * @param result Object to be serialized as the result or null if {@code error} is set.
+   * @param error Error to report instead of a result.
+   */
+  public void sendResponse(long requestId, @Nullable Object result, @Nullable JsonRpcError error)
+      throws NotYetConnectedException {
+    synchronized (mWriter) {
+      try {
+        writeResponse(requestId, result, error);
+      } catch (OutOfMemoryError e) {
+        // The result can be too big to fit in memory along with its encoding.
+        writeResponse(
+            requestId,
+            null /* result */,
+            new JsonRpcError(JsonRpcError.ErrorCode.INTERNAL_ERROR, e.getMessage(), null));
+      }
+      mPeer.sendText(mWriter.getBuffer(), mWriter.size());
+    }
+  }
+
+  @GuardedBy("mWriter")
+  private void writeResponse(long requestId, @Nullable Object result, @Nullable JsonRpcError error) {
+    mWriter.reset();
+    mWriter.beginObject();
+    mWriter.name("id").value(requestId);
+    if (error != null) {
+      mWriter.name("error");
+      mObjectMapper.writeValue(mWriter, error);
+    } else if (result != null) {
+      mWriter.name("result");
+      mObjectMapper.writeValue(mWriter, result);
+    }
+    mWriter.endObject();
   }
 
   public void registerDisconnectReceiver(DisconnectReceiver callback) {
@@ -108,6 +226,51 @@ public class JsonRpcPeer {
     return mPendingRequests.remove(requestId);
   }
 
+  /**
+   * Notification which stays unencoded while queued so that later notifications of the same
+   * method and key can be folded into it.
+   */
+  private class CoalescingNotification implements CoalescableText {
+    private final String mMethod;
+    private final Object mKey;
+    private CoalescableParams mParams;
+
+    public CoalescingNotification(String method, CoalescableParams params) {
+      mMethod = method;
+      mKey = Arrays.asList(method, params.getCoalesceKey());
+      mParams = params;
+    }
+
+    @Override
+    public Object getCoalesceKey() {
+      return mKey;
+    }
+
+    @Override
+    public boolean coalesce(CoalescableText newer) {
+      CoalescableParams merged = mParams.coalesce(((CoalescingNotification) newer).mParams);
+      if (merged == null) {
+        return false;
+      }
+      mParams = merged;
+      return true;
+    }
+
+    @Override
+    public int getSizeEstimate() {
+      return mCoalescingNotificationSize;
+    }
+
+    @Override
+    public byte[] encode() {
+      synchronized (mLazyWriter) {
+        writeMessage(mLazyWriter, null /* requestId */, mMethod, mParams);
+        mCoalescingNotificationSize = mLazyWriter.size();
+        return Arrays.copyOf(mLazyWriter.getBuffer(), mLazyWriter.size());
+      }
+    }
+  }
+
   private static class DisconnectObservable extends Observable<DisconnectReceiver> {
     public void onDisconnect() {
       for (int i = 0, N = mObservers.size(); i < N; ++i) {
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.jsonrpc;
+
+import com.facebook.stetho.inspector.protocol.ChromeDevtoolsMethod;
+
+import javax.annotation.Nullable;
+
+/**
+ * Completes a single JSON-RPC request.  Methods annotated with {@link ChromeDevtoolsMethod} may
+ * accept this as a third argument in order to respond asynchronously, for instance once a
+ * background operation has finished.  Exactly one of {@link #sendResult} or {@link #sendError}
+ * must eventually be called; subsequent calls are ignored.
+ * <p>
+ * Implementations are thread-safe and may be invoked from any thread.
+ */
+public interface JsonRpcResponder {
+  /**
+   * @param result Result to send to the peer, or null for an empty result.
+   */
+  void sendResult(@Nullable JsonRpcResult result);
+
+  void sendError(JsonRpcException e);
+}
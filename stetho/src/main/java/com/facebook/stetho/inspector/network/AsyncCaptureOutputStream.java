@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands what is written to it off to a background thread which writes it to the given stream, so
+ * that capturing a response body costs the app's network thread a memory copy per read rather
+ * than a disk write (and possibly a decompression step).
+ * <p>
+ * Data moves through a fixed ring of {@link #SLOT_COUNT} buffers shared by a single writing
+ * thread and the background thread, without locking.  If the background thread falls so far
+ * behind that the ring fills up, the capture is abandoned rather than making the app wait: the
+ * failing write throws and the body ends up truncated, as with any other write error.
+ * <p>
+ * The buffers are drawn from a pool shared by all streams and handed back as soon as they have
+ * been written out, so a capture only holds on to memory while its data is in flight and
+ * steady traffic doesn't allocate at all.
+ * <p>
+ * {@link #close} waits for everything accepted so far to be written, so that the body is complete
+ * by the time the response is reported as finished.
+ */
+class AsyncCaptureOutputStream extends OutputStream {
+  private static final int SLOT_COUNT = 8;
+  private static final int SLOT_SIZE = 16 * 1024;
+
+  /**
+   * Enough to keep a handful of concurrent captures going without allocating.
+   */
+  private static final int MAX_POOLED_SLOTS = 16;
+
+  @GuardedBy("sPooledSlots")
+  private static final ArrayDeque<byte[]> sPooledSlots = new ArrayDeque<>();
+
+  private static final ExecutorService sExecutor = Executors.newCachedThreadPool();
+
+  private final OutputStream mOut;
+
+  /**
+   * Obtained from the pool when the writing thread starts filling them and released by the
+   * background thread once written out.  Only slots between {@link #mHead} and {@link #mTail}
+   * (and the one being filled) are non-null.
+   */
+  private final byte[][] mSlots = new byte[SLOT_COUNT][];
+  private final int[] mSlotLengths = new int[SLOT_COUNT];
+
+  /**
+   * Number of slots written out.  Only advanced with {@link #mDrainLock} held.
+   */
+  private volatile long mHead;
+
+  /**
+   * Number of slots published to the background thread.  Only the writing thread advances this.
+   */
+  private volatile long mTail;
+
+  /**
+   * Bytes written to the slot at {@link #mTail} which hasn't been published yet.  Only accessed
+   * by the writing thread.
+   */
+  private int mFillLength;
+
+  private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+  private final Object mDrainLock = new Object();
+
+  private volatile boolean mClosed;
+  private volatile boolean mAbandoned;
+  private volatile boolean mOutClosed;
+  private volatile @Nullable IOException mWriteError;
+
+  public AsyncCaptureOutputStream(OutputStream out) {
+    mOut = out;
+  }
+
+  @Override
+  public void write(int oneByte) throws IOException {
+    byte[] slot = obtainSlot();
+    slot[mFillLength++] = (byte) oneByte;
+    if (mFillLength == SLOT_SIZE) {
+      publish();
+    }
+  }
+
+  @Override
+  public void write(byte[] buffer, int offset, int length) throws IOException {
+    while (length > 0) {
+      byte[] slot = obtainSlot();
+      int count = Math.min(length, SLOT_SIZE - mFillLength);
+      System.arraycopy(buffer, offset, slot, mFillLength, count);
+      mFillLength += count;
+      offset += count;
+      length -= count;
+      if (mFillLength == SLOT_SIZE) {
+        publish();
+      }
+    }
+  }
+
+  private byte[] obtainSlot() throws IOException {
+    throwIfUnusable();
+    final long tail = mTail;
+    if (mFillLength == 0 && tail - mHead >= SLOT_COUNT) {
+      mAbandoned = true;
+      scheduleDrain();
+      throw new IOException("Response body capture fell behind and was abandoned");
+    }
+    final int index = (int) (tail % SLOT_COUNT);
+    if (mSlots[index] == null) {
+      mSlots[index] = obtainPooledSlot();
+    }
+    return mSlots[index];
+  }
+
+  private static byte[] obtainPooledSlot() {
+    synchronized (sPooledSlots) {
+      byte[] slot = sPooledSlots.pollFirst();
+      if (slot != null) {
+        return slot;
+      }
+    }
+    return new byte[SLOT_SIZE];
+  }
+
+  private static void releasePooledSlot(byte[] slot) {
+    synchronized (sPooledSlots) {
+      if (sPooledSlots.size() < MAX_POOLED_SLOTS) {
+        sPooledSlots.addFirst(slot);
+      }
+    }
+  }
+
+  // @VisibleForTesting
+  static int getPooledSlotCount() {
+    synchronized (sPooledSlots) {
+      return sPooledSlots.size();
+    }
+  }
+
+  private void throwIfUnusable() throws IOException {
+    if (mClosed || mAbandoned) {
+      throw new IOException("Stream closed");
+    }
+    IOException writeError = mWriteError;
+    if (writeError != null) {
+      throw writeError;
+    }
+  }
+
+  private void publish() {
+    if (mFillLength > 0) {
+      mSlotLengths[(int) (mTail % SLOT_COUNT)] = mFillLength;
+      mFillLength = 0;
+      // Volatile write, making the slot's contents visible to the background thread.
+      mTail = mTail + 1;
+      scheduleDrain();
+    }
+  }
+
+  private void scheduleDrain() {
+    if (mDrainScheduled.compareAndSet(false, true)) {
+      sExecutor.execute(mDrainRunnable);
+    }
+  }
+
+  /**
+   * Waits for everything written so far to reach the underlying stream before closing it.  If the
+   * capture was abandoned the underlying stream is closed in the background instead.
+   */
+  @Override
+  public void close() throws IOException {
+    if (mClosed) {
+      return;
+    }
+    if (!mAbandoned) {
+      publish();
+    }
+    mClosed = true;
+    if (mAbandoned) {
+      scheduleDrain();
+      return;
+    }
+
+    synchronized (mDrainLock) {
+      drainLocked();
+      mOutClosed = true;
+      mOut.close();
+    }
+    IOException writeError = mWriteError;
+    if (writeError != null) {
+      throw writeError;
+    }
+  }
+
+  private final Runnable mDrainRunnable = new Runnable() {
+    @Override
+    public void run() {
+      do {
+        synchronized (mDrainLock) {
+          drainLocked();
+          if (needsAbandonedClose()) {
+            mOutClosed = true;
+            closeQuietly();
+          }
+        }
+        mDrainScheduled.set(false);
+        // More work may have turned up after we stopped looking but before the flag was
+        // cleared, in which case nobody else has scheduled a drain for it.
+      } while ((mHead != mTail || needsAbandonedClose()) &&
+          mDrainScheduled.compareAndSet(false, true));
+    }
+  };
+
+  private boolean needsAbandonedClose() {
+    return mAbandoned && mClosed && !mOutClosed;
+  }
+
+  /**
+   * Must be called with {@link #mDrainLock} held.
+   */
+  private void drainLocked() {
+    long head = mHead;
+    while (head != mTail) {
+      final int index = (int) (head % SLOT_COUNT);
+      final byte[] slot = mSlots[index];
+      if (mWriteError == null) {
+        try {
+          mOut.write(slot, 0, mSlotLengths[index]);
+        } catch (IOException e) {
+          mWriteError = e;
+        }
+      }
+      mSlots[index] = null;
+      releasePooledSlot(slot);
+      // Volatile write, handing the index back to the writing thread.
+      mHead = ++head;
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      mOut.close();
+    } catch (IOException e) {
+      // The body is incomplete anyway.
+    }
+  }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes response bodies sent with a particular {@code Content-Encoding} so that they can be
+ * shown in the Network tab.  Register implementations with {@link ContentDecoderRegistry}.
+ * Decoders for gzip and deflate are built in.
+ */
+public interface ContentDecoder {
+  /**
+   * @param encoded Body as received.  Closing the returned stream must close it.
+   * @return The decoded body.
+   */
+  InputStream decode(InputStream encoded) throws IOException;
+}
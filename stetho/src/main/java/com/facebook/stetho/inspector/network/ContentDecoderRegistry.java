@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decoders for the {@code Content-Encoding} values beyond gzip and deflate that response bodies
+ * should be decoded from before they are shown in the Network tab.  The stetho-brotli and
+ * stetho-zstd modules register theirs with {@code install()}; others can be added with:
+ * <pre>
+ *   {@code
+ *   ContentDecoderRegistry.getInstance().register("x-custom", new MyContentDecoder());
+ *   }
+ * </pre>
+ * Responses with other encodings are shown as received.
+ */
+@ThreadSafe
+public final class ContentDecoderRegistry {
+  private static final ContentDecoderRegistry sInstance = new ContentDecoderRegistry();
+
+  private final Map<String, ContentDecoder> mRegistry = new HashMap<>();
+
+  public static ContentDecoderRegistry getInstance() {
+    return sInstance;
+  }
+
+  private ContentDecoderRegistry() {
+  }
+
+  /**
+   * @param contentEncoding Value of the {@code Content-Encoding} header, as in {@code "br"}.
+   */
+  public synchronized void register(String contentEncoding, ContentDecoder decoder) {
+    mRegistry.put(contentEncoding, decoder);
+  }
+
+  @Nullable
+  public synchronized ContentDecoder lookup(String contentEncoding) {
+    return mRegistry.get(contentEncoding);
+  }
+
+  public synchronized boolean unregister(String contentEncoding) {
+    return mRegistry.remove(contentEncoding) != null;
+  }
+}
@@ -12,7 +12,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 class CountingOutputStream extends FilterOutputStream {
-  private long mCount;
+  /**
+   * Only ever written by one thread, but may be read from another.
+   */
+  private volatile long mCount;
 
   public CountingOutputStream(OutputStream out) {
     super(out);
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import com.facebook.stetho.common.ExceptionUtil;
+import com.facebook.stetho.common.Util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An {@link OutputStream} filter which decodes data with a {@link ContentDecoder} before it is
+ * written to the specified destination output stream.  Decoders only need to know how to wrap an
+ * {@link InputStream}, so the data is piped through one on a background thread.
+ */
+class DecodingOutputStream extends FilterOutputStream {
+  private final Future<Void> mCopyFuture;
+
+  private static final ExecutorService sExecutor = Executors.newCachedThreadPool();
+
+  public static DecodingOutputStream create(OutputStream finalOut, ContentDecoder decoder)
+      throws IOException {
+    PipedInputStream pipeIn = new PipedInputStream();
+    PipedOutputStream pipeOut = new PipedOutputStream(pipeIn);
+
+    Future<Void> copyFuture = startDecoding(pipeIn, finalOut, decoder);
+
+    return new DecodingOutputStream(pipeOut, copyFuture);
+  }
+
+  static Future<Void> startDecoding(
+      InputStream pipeIn,
+      OutputStream finalOut,
+      ContentDecoder decoder) {
+    return sExecutor.submit(new DecodingCallable(pipeIn, finalOut, decoder));
+  }
+
+  DecodingOutputStream(OutputStream out, Future<Void> copyFuture) throws IOException {
+    super(out);
+    mCopyFuture = copyFuture;
+  }
+
+  @Override
+  public void close() throws IOException {
+    boolean success = false;
+    try {
+      super.close();
+      success = true;
+    } finally {
+      try {
+        getAndRethrow(mCopyFuture);
+      } catch (IOException e) {
+        if (success) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private static <T> T getAndRethrow(Future<T> future) throws IOException {
+    while (true) {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        // Continue...
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        ExceptionUtil.propagateIfInstanceOf(cause, IOException.class);
+        ExceptionUtil.propagate(cause);
+      }
+    }
+  }
+
+  private static class DecodingCallable implements Callable<Void> {
+    private final InputStream mIn;
+    private final OutputStream mOut;
+    private final ContentDecoder mDecoder;
+
+    public DecodingCallable(InputStream in, OutputStream out, ContentDecoder decoder) {
+      mIn = in;
+      mOut = out;
+      mDecoder = decoder;
+    }
+
+    @Override
+    public Void call() throws IOException {
+      InputStream in = null;
+      try {
+        in = mDecoder.decode(mIn);
+        Util.copy(in, mOut, new byte[1024]);
+      } finally {
+        if (in != null) {
+          in.close();
+        } else {
+          mIn.close();
+        }
+        mOut.close();
+      }
+      return null;
+    }
+  }
+}
@@ -13,6 +13,8 @@ import com.facebook.stetho.inspector.protocol.module.Log;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 import java.util.zip.InflaterOutputStream;
 
 import javax.annotation.Nullable;
@@ -22,6 +24,30 @@ public class DecompressionHelper {
   static final String GZIP_ENCODING = "gzip";
   static final String DEFLATE_ENCODING = "deflate";
 
+  static boolean isSupportedEncoding(@Nullable String contentEncoding) {
+    return GZIP_ENCODING.equals(contentEncoding) ||
+        DEFLATE_ENCODING.equals(contentEncoding) ||
+        (contentEncoding != null &&
+            ContentDecoderRegistry.getInstance().lookup(contentEncoding) != null);
+  }
+
+  /**
+   * Decode a body stored as received with one of the {@link #isSupportedEncoding supported}
+   * encodings.
+   */
+  static InputStream decompress(InputStream in, String contentEncoding) throws IOException {
+    if (GZIP_ENCODING.equals(contentEncoding)) {
+      return new GZIPInputStream(in);
+    } else if (DEFLATE_ENCODING.equals(contentEncoding)) {
+      return new InflaterInputStream(in);
+    }
+    ContentDecoder decoder = ContentDecoderRegistry.getInstance().lookup(contentEncoding);
+    if (decoder == null) {
+      throw new IOException("No decoder registered for Content-Encoding: " + contentEncoding);
+    }
+    return decoder.decode(in);
+  }
+
   public static InputStream teeInputWithDecompression(
       NetworkPeerManager peerManager,
       String requestId,
@@ -35,13 +61,18 @@ public class DecompressionHelper {
     if (contentEncoding != null) {
       boolean gzipEncoding = GZIP_ENCODING.equals(contentEncoding);
       boolean deflateEncoding = DEFLATE_ENCODING.equals(contentEncoding);
+      ContentDecoder decoder = (gzipEncoding || deflateEncoding)
+          ? null
+          : ContentDecoderRegistry.getInstance().lookup(contentEncoding);
 
-      if (gzipEncoding || deflateEncoding) {
+      if (gzipEncoding || deflateEncoding || decoder != null) {
         decompressedCounter = new CountingOutputStream(decompressedOutput);
         if (gzipEncoding) {
           output = GunzippingOutputStream.create(decompressedCounter);
         } else if (deflateEncoding) {
           output = new InflaterOutputStream(decompressedCounter);
+        } else {
+          output = DecodingOutputStream.create(decompressedCounter, decoder);
         }
       } else {
         CLog.writeToConsole(
@@ -56,7 +87,7 @@ public class DecompressionHelper {
     return new ResponseHandlingInputStream(
         availableInputStream,
         requestId,
-        output,
+        new AsyncCaptureOutputStream(output),
         decompressedCounter,
         peerManager,
         responseHandler);
@@ -8,25 +8,58 @@
 package com.facebook.stetho.inspector.network;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Simple interceptor that delegates response read events to {@link NetworkEventReporter}.
+ * <p>
+ * Progress is reported through {@link NetworkEventReporter#dataReceived} in batches of at least
+ * {@link #REPORT_BYTES_THRESHOLD} bytes, or of whatever arrived within
+ * {@link #REPORT_INTERVAL_MS} for slow responses, with the remainder reported at EOF or on error.
+ * Each event goes to every peer, so one per read would be far too many for large downloads.
  */
 public class DefaultResponseHandler implements ResponseHandler {
+  private static final int REPORT_BYTES_THRESHOLD = 64 * 1024;
+  private static final long REPORT_INTERVAL_MS = 500;
+  private static final long REPORT_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL_MS);
+
   private final NetworkEventReporter mEventReporter;
   private final String mRequestId;
 
+  /**
+   * Bytes read since the last {@link NetworkEventReporter#dataReceived}.
+   */
   private int mBytesRead = 0;
+
+  /**
+   * Decoded bytes yielded since the last {@link NetworkEventReporter#dataReceived}, or -1 if
+   * the response isn't being decoded.
+   */
   private int mDecodedBytesRead = -1;
 
+  /**
+   * {@link System#nanoTime()} of the last report, which unlike the wall clock can't jump.
+   */
+  private long mLastReportTimeNs;
+  private boolean mDataReported;
+
   public DefaultResponseHandler(NetworkEventReporter eventReporter, String requestId) {
     mEventReporter = eventReporter;
     mRequestId = requestId;
+    mLastReportTimeNs = System.nanoTime();
   }
 
   @Override
   public void onRead(int numBytes) {
     mBytesRead += numBytes;
+    if (mBytesRead >= REPORT_BYTES_THRESHOLD) {
+      reportDataReceived();
+    } else if (mBytesRead > 0) {
+      long nowNs = System.nanoTime();
+      if (nowNs - mLastReportTimeNs >= REPORT_INTERVAL_NS) {
+        reportDataReceived();
+      }
+    }
   }
 
   @Override
@@ -38,19 +71,32 @@ public class DefaultResponseHandler implements ResponseHandler {
   }
 
   public void onEOF() {
-    reportDataReceived();
+    reportRemainingDataReceived();
     mEventReporter.responseReadFinished(mRequestId);
   }
 
   public void onError(IOException e) {
-    reportDataReceived();
+    reportRemainingDataReceived();
     mEventReporter.responseReadFailed(mRequestId, e.toString());
   }
 
+  private void reportRemainingDataReceived() {
+    // Always report at least once, even for empty responses.
+    if (mBytesRead > 0 || mDecodedBytesRead > 0 || !mDataReported) {
+      reportDataReceived();
+    }
+  }
+
   private void reportDataReceived() {
+    mLastReportTimeNs = System.nanoTime();
     mEventReporter.dataReceived(
         mRequestId,
         mBytesRead,
         mDecodedBytesRead >= 0 ? mDecodedBytesRead : mBytesRead);
+    mDataReported = true;
+    mBytesRead = 0;
+    if (mDecodedBytesRead > 0) {
+      mDecodedBytesRead = 0;
+    }
   }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import com.facebook.stetho.common.LogRedirector;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stores each body in a file of its own.
+ */
+@ThreadSafe
+class FileResponseBodyStore implements ResponseBodyStore {
+  private static final String TAG = "FileResponseBodyStore";
+  static final String FILENAME_PREFIX = "network-response-body-";
+
+  private final File mDirectory;
+
+  public FileResponseBodyStore(File directory) {
+    mDirectory = directory;
+  }
+
+  @Override
+  public OutputStream openOutputStream(String requestId) throws IOException {
+    ensureDirectory(mDirectory);
+    return new FileOutputStream(getFile(requestId));
+  }
+
+  @Override
+  public InputStream openInputStream(String requestId) throws IOException {
+    return new FileInputStream(getFile(requestId));
+  }
+
+  @Override
+  public void remove(String requestId) {
+    // An open stream can keep writing to the unlinked file, it just won't be kept.
+    deleteFile(getFile(requestId));
+  }
+
+  @Override
+  public void clear() {
+    deleteFiles(mDirectory.listFiles(), FILENAME_PREFIX);
+  }
+
+  File getFile(String requestId) {
+    return new File(mDirectory, FILENAME_PREFIX + requestId);
+  }
+
+  static void ensureDirectory(File directory) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Failed to create " + directory.getAbsolutePath());
+    }
+  }
+
+  static void deleteFiles(@Nullable File[] files, String prefix) {
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.getName().startsWith(prefix)) {
+        deleteFile(file);
+      }
+    }
+  }
+
+  static void deleteFile(File file) {
+    if (!file.delete() && file.exists()) {
+      LogRedirector.w(TAG, "Failed to delete " + file.getAbsolutePath());
+    }
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import com.facebook.stetho.common.Util;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which requests show up in the Network tab and how much of their response bodies is
+ * kept.  Capturing every request of a busy app can slow it down enough to distort whatever is
+ * being looked at; requests this policy leaves out cost little more than a look at their URL.
+ * No events are sent for them and their bodies are passed through untouched.
+ * <pre>
+ *   new NetworkCapturePolicy.Builder()
+ *       .excludeHost("cdn.example.com")
+ *       .bodySizeLimit("image/*", 0)
+ *       .maxBodySize(1024 * 1024)
+ *       .sampleRate(0.25)
+ *       .build();
+ * </pre>
+ */
+@Immutable
+public final class NetworkCapturePolicy {
+  public static final long UNLIMITED = Long.MAX_VALUE;
+
+  /**
+   * Captures every request along with its full response body.
+   */
+  public static final NetworkCapturePolicy CAPTURE_ALL = new Builder().build();
+
+  private final List<Pattern> mIncludedUrls;
+  private final List<Pattern> mExcludedUrls;
+  private final List<String> mIncludedHosts;
+  private final List<String> mExcludedHosts;
+  private final double mSampleRate;
+  private final MimeMatcher<Long> mBodySizeLimits;
+  private final long mMaxBodySize;
+
+  private NetworkCapturePolicy(Builder builder) {
+    mIncludedUrls = Collections.unmodifiableList(new ArrayList<>(builder.mIncludedUrls));
+    mExcludedUrls = Collections.unmodifiableList(new ArrayList<>(builder.mExcludedUrls));
+    mIncludedHosts = Collections.unmodifiableList(new ArrayList<>(builder.mIncludedHosts));
+    mExcludedHosts = Collections.unmodifiableList(new ArrayList<>(builder.mExcludedHosts));
+    mSampleRate = builder.mSampleRate;
+    mBodySizeLimits = new MimeMatcher<>();
+    for (int i = 0, N = builder.mBodySizeLimitRules.size(); i < N; ++i) {
+      mBodySizeLimits.addRule(
+          builder.mBodySizeLimitRules.get(i),
+          builder.mBodySizeLimitValues.get(i));
+    }
+    mMaxBodySize = builder.mMaxBodySize;
+  }
+
+  /**
+   * Whether the request should be reported at all.  The answer only depends on the arguments,
+   * so it can be asked again at any later point of the request, such as with the URL of its
+   * response.
+   */
+  public boolean shouldCapture(String requestId, String url) {
+    final boolean hasIncludeRules = !mIncludedUrls.isEmpty() || !mIncludedHosts.isEmpty();
+    final boolean hasHostRules = !mIncludedHosts.isEmpty() || !mExcludedHosts.isEmpty();
+    final String host = hasHostRules ? getHost(url) : null;
+
+    if (hasIncludeRules &&
+        !matchesAnyPattern(mIncludedUrls, url) &&
+        !matchesAnyHost(mIncludedHosts, host)) {
+      return false;
+    }
+    if (matchesAnyPattern(mExcludedUrls, url) || matchesAnyHost(mExcludedHosts, host)) {
+      return false;
+    }
+    return isSampled(requestId);
+  }
+
+  /**
+   * Whether the request falls within the sample rate, for the points of a request where only
+   * its id is known.  Decided by a hash of the id rather than at random so that every point
+   * agrees.
+   */
+  public boolean isSampled(String requestId) {
+    if (mSampleRate >= 1.0) {
+      return true;
+    }
+    // Request ids are usually sequential, so spread them out before comparing (the MurmurHash3
+    // finalizer).
+    int h = requestId.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return (h & 0xffffffffL) < (long) (mSampleRate * (1L << 32));
+  }
+
+  /**
+   * @return How many bytes of a response body of this type to keep, 0 to keep none of it or
+   *     {@link #UNLIMITED}.
+   */
+  public long getBodySizeLimit(@Nullable String contentType) {
+    if (contentType != null) {
+      int index = contentType.indexOf(';');
+      String mimeType = (index >= 0) ? contentType.substring(0, index) : contentType;
+      Long limit = mBodySizeLimits.match(mimeType.trim().toLowerCase(Locale.US));
+      if (limit != null) {
+        return limit;
+      }
+    }
+    return mMaxBodySize;
+  }
+
+  private static boolean matchesAnyPattern(List<Pattern> patterns, String url) {
+    for (int i = 0, N = patterns.size(); i < N; ++i) {
+      if (patterns.get(i).matcher(url).find()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matchesAnyHost(List<String> hosts, @Nullable String host) {
+    if (host == null) {
+      return false;
+    }
+    for (int i = 0, N = hosts.size(); i < N; ++i) {
+      String rule = hosts.get(i);
+      if (host.endsWith(rule)) {
+        int prefixLength = host.length() - rule.length();
+        if (prefixLength == 0 || host.charAt(prefixLength - 1) == '.') {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Cheaper than parsing the whole URL, which we'd otherwise do for every request the app makes.
+   */
+  //@VisibleForTesting
+  @Nullable
+  static String getHost(String url) {
+    int schemeEnd = url.indexOf("://");
+    if (schemeEnd < 0) {
+      return null;
+    }
+    int start = schemeEnd + 3;
+    int end = start;
+    while (end < url.length()) {
+      char c = url.charAt(end);
+      if (c == '/' || c == '?' || c == '#') {
+        break;
+      }
+      end++;
+    }
+    int userInfoEnd = url.lastIndexOf('@', end - 1);
+    if (userInfoEnd >= start) {
+      start = userInfoEnd + 1;
+    }
+    if (start < end && url.charAt(start) == '[') {
+      int bracketEnd = url.indexOf(']', start);
+      if (bracketEnd > 0 && bracketEnd < end) {
+        return url.substring(start + 1, bracketEnd);
+      }
+    }
+    int portStart = url.indexOf(':', start);
+    if (portStart >= 0 && portStart < end) {
+      end = portStart;
+    }
+    return url.substring(start, end).toLowerCase(Locale.US);
+  }
+
+  public static class Builder {
+    private final List<Pattern> mIncludedUrls = new ArrayList<>();
+    private final List<Pattern> mExcludedUrls = new ArrayList<>();
+    private final List<String> mIncludedHosts = new ArrayList<>();
+    private final List<String> mExcludedHosts = new ArrayList<>();
+    private double mSampleRate = 1.0;
+    private final List<String> mBodySizeLimitRules = new ArrayList<>();
+    private final List<Long> mBodySizeLimitValues = new ArrayList<>();
+    private long mMaxBodySize = UNLIMITED;
+
+    /**
+     * Only capture requests whose URL contains a match for {@code regex}, or which match one of
+     * the other include rules.
+     */
+    public Builder includeUrls(String regex) {
+      mIncludedUrls.add(Pattern.compile(regex));
+      return this;
+    }
+
+    /**
+     * Don't capture requests whose URL contains a match for {@code regex}, even if they match an
+     * include rule.
+     */
+    public Builder excludeUrls(String regex) {
+      mExcludedUrls.add(Pattern.compile(regex));
+      return this;
+    }
+
+    /**
+     * Only capture requests to {@code host} or its subdomains, or which match one of the other
+     * include rules.
+     */
+    public Builder includeHost(String host) {
+      mIncludedHosts.add(host.toLowerCase(Locale.US));
+      return this;
+    }
+
+    /**
+     * Don't capture requests to {@code host} or its subdomains, even if they match an include
+     * rule.
+     */
+    public Builder excludeHost(String host) {
+      mExcludedHosts.add(host.toLowerCase(Locale.US));
+      return this;
+    }
+
+    /**
+     * Capture only this fraction of the requests that pass the URL rules, chosen by a hash of
+     * their ids.
+     */
+    public Builder sampleRate(double rate) {
+      if (!(rate >= 0.0 && rate <= 1.0)) {
+        throw new IllegalArgumentException("rate must be between 0 and 1: " + rate);
+      }
+      mSampleRate = rate;
+      return this;
+    }
+
+    /**
+     * Keep at most {@code maxBytes} of the response bodies of this type, such as "image/*" or
+     * "application/json".  0 keeps none of the body but still reports the request.  Rules are
+     * tried in the order they were added.
+     */
+    public Builder bodySizeLimit(String mimeTypeExpression, long maxBytes) {
+      Util.throwIfNull(mimeTypeExpression);
+      if (maxBytes < 0) {
+        throw new IllegalArgumentException("Negative limit");
+      }
+      mBodySizeLimitRules.add(mimeTypeExpression.toLowerCase(Locale.US));
+      mBodySizeLimitValues.add(maxBytes);
+      return this;
+    }
+
+    /**
+     * Keep at most {@code maxBytes} of the response bodies not covered by
+     * {@link #bodySizeLimit}.  Bodies are kept in full by default.
+     */
+    public Builder maxBodySize(long maxBytes) {
+      if (maxBytes < 0) {
+        throw new IllegalArgumentException("Negative limit");
+      }
+      mMaxBodySize = maxBytes;
+      return this;
+    }
+
+    public NetworkCapturePolicy build() {
+      return new NetworkCapturePolicy(this);
+    }
+  }
+}
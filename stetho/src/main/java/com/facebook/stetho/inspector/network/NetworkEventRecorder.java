@@ -0,0 +1,651 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import com.facebook.stetho.common.LogRedirector;
+import com.facebook.stetho.inspector.helper.ChromePeerManager;
+import com.facebook.stetho.inspector.jsonrpc.JsonRpcPeer;
+import com.facebook.stetho.inspector.network.NetworkEventReporter.InspectorHeaders;
+import com.facebook.stetho.inspector.network.NetworkEventReporter.InspectorRequest;
+import com.facebook.stetho.inspector.network.NetworkEventReporter.InspectorResponse;
+import com.facebook.stetho.inspector.protocol.module.Network;
+import com.facebook.stetho.inspector.protocol.module.Page;
+import com.facebook.stetho.websocket.SendPolicy;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.nio.channels.NotYetConnectedException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Keeps a bounded history of network events while no DevTools client has the Network domain
+ * enabled, so that what happened before chrome://inspect was opened (app startup, usually) can be
+ * replayed to the first client that does.
+ * <p>
+ * Events are packed as ints into a ring buffer that grows up to the budget, with strings such as
+ * URLs and headers interned into a reference counted table so that the hosts and headers repeated
+ * across requests are only paid for once.  The oldest events are dropped to stay within budget.
+ * Request bodies aren't recorded and response bodies are only counted.
+ */
+@ThreadSafe
+final class NetworkEventRecorder {
+  private static final String TAG = "NetworkEventRecorder";
+
+  /**
+   * Stands in for {@link NetworkPeerManager} while recording, so that errors reading response
+   * bodies only go to logcat.
+   */
+  static final ChromePeerManager NO_PEERS = new ChromePeerManager();
+
+  private static final int TYPE_REQUEST_WILL_BE_SENT = 1;
+  private static final int TYPE_RESPONSE_RECEIVED = 2;
+  private static final int TYPE_DATA_RECEIVED = 3;
+  private static final int TYPE_LOADING_FINISHED = 4;
+  private static final int TYPE_LOADING_FAILED = 5;
+
+  /**
+   * Every record starts with a header of {@code type << TYPE_SHIFT | length}, then the request
+   * id and timestamp.
+   */
+  private static final int TYPE_SHIFT = 24;
+  private static final int LENGTH_MASK = (1 << TYPE_SHIFT) - 1;
+  private static final int FIELD_REQUEST_ID = 1;
+  private static final int FIELD_TIMESTAMP = 2;
+  private static final int FIRST_EVENT_FIELD = 4;
+
+  private static final int NULL_STRING = -1;
+  private static final int NULL_INT = Integer.MIN_VALUE;
+
+  private static final int FLAG_CONNECTION_REUSED = 1;
+  private static final int FLAG_FROM_DISK_CACHE = 2;
+
+  /**
+   * Rough cost of a table entry on top of the string's characters.
+   */
+  private static final int STRING_OVERHEAD_BYTES = 64;
+
+  private static final int INITIAL_RING_CAPACITY = 1024;
+  private static final int INITIAL_STRING_CAPACITY = 64;
+
+  private static final Page.ResourceType[] RESOURCE_TYPES = Page.ResourceType.values();
+
+  private static volatile NetworkEventRecorder sInstance;
+
+  private final long mMaxBytes;
+
+  /**
+   * Cleared once the recorded events have been replayed, until the last peer goes away again.
+   */
+  private volatile boolean mDetached;
+
+  @GuardedBy("this")
+  private boolean mReplaying;
+
+  @GuardedBy("this")
+  private int[] mRing;
+
+  @GuardedBy("this")
+  private int mHead;
+
+  @GuardedBy("this")
+  private int mSize;
+
+  @GuardedBy("this")
+  private final HashMap<String, Integer> mStringIds = new HashMap<>();
+
+  @GuardedBy("this")
+  private String[] mStrings;
+
+  @GuardedBy("this")
+  private int[] mStringRefCounts;
+
+  @GuardedBy("this")
+  private int mStringCount;
+
+  /**
+   * Ids of removed strings to reuse, stacked in place of their reference counts.
+   */
+  @GuardedBy("this")
+  private int mFreeStringId = NULL_STRING;
+
+  @GuardedBy("this")
+  private long mStringBytes;
+
+  @GuardedBy("this")
+  private int[] mRecord = new int[64];
+
+  @GuardedBy("this")
+  private int mRecordLength;
+
+  /**
+   * Where the oldest record is read into to release its strings, while {@link #mRecord} may
+   * hold the one being added.
+   */
+  @GuardedBy("this")
+  private int[] mRemovedRecord = new int[64];
+
+  @Nullable
+  static NetworkEventRecorder getInstanceOrNull() {
+    return sInstance;
+  }
+
+  static synchronized void start(long maxBytes) {
+    if (sInstance == null) {
+      NetworkPeerManager peerManager = NetworkPeerManager.getInstanceOrNull();
+      sInstance = new NetworkEventRecorder(
+          maxBytes,
+          peerManager == null || !peerManager.hasRegisteredPeers() /* detached */);
+    }
+  }
+
+  static synchronized void stop() {
+    sInstance = null;
+  }
+
+  NetworkEventRecorder(long maxBytes, boolean detached) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be positive");
+    }
+    mMaxBytes = maxBytes;
+    mDetached = detached;
+    reset();
+  }
+
+  /**
+   * Whether events are currently being recorded rather than sent.  Only a hint; the record
+   * methods check again.
+   */
+  boolean isDetached() {
+    return mDetached;
+  }
+
+  /**
+   * Start recording again once the last peer is gone.
+   */
+  void detach() {
+    mDetached = true;
+  }
+
+  /**
+   * If still recording, send everything recorded to {@code peer} (which should be the only one)
+   * and stop recording.
+   * <p>
+   * Must not be called with any lock held that the app's network threads might need.  The events
+   * are sent without holding our own lock either: each round takes what has been recorded so far
+   * and keeps recording while it's being sent, until a round finds nothing left.  That way
+   * network threads never wait for the peer, and events still arrive in order.
+   */
+  void replayTo(JsonRpcPeer peer) {
+    synchronized (this) {
+      if (!mDetached || mReplaying) {
+        return;
+      }
+      mReplaying = true;
+    }
+    try {
+      Replay replay;
+      while ((replay = takeReplay()) != null) {
+        replay.sendTo(peer);
+      }
+    } catch (NotYetConnectedException e) {
+      // Whatever was recorded meanwhile is kept for the next peer.
+      LogRedirector.w(TAG, "Peer went away while replaying network events", e);
+    } finally {
+      synchronized (this) {
+        mReplaying = false;
+      }
+    }
+  }
+
+  /**
+   * @return Everything recorded so far, leaving us empty, or null if there's nothing left in
+   *     which case we've stopped recording.
+   */
+  @Nullable
+  private synchronized Replay takeReplay() {
+    if (!mDetached) {
+      return null;
+    }
+    if (mSize == 0) {
+      reset();
+      mDetached = false;
+      return null;
+    }
+    Replay replay = new Replay(mRing, mHead, mSize, mStrings);
+    reset();
+    return replay;
+  }
+
+  synchronized boolean recordRequestWillBeSent(InspectorRequest request, long timestamp) {
+    if (!mDetached) {
+      return false;
+    }
+    beginRecord(TYPE_REQUEST_WILL_BE_SENT, request.id(), timestamp);
+    putString(request.url());
+    putString(request.method());
+    putString(request.friendlyName());
+    Integer friendlyNameExtra = request.friendlyNameExtra();
+    put(friendlyNameExtra != null ? friendlyNameExtra : NULL_INT);
+    putHeaders(request);
+    endRecord();
+    return true;
+  }
+
+  synchronized boolean recordResponseReceived(
+      InspectorResponse response,
+      String mimeType,
+      Page.ResourceType type,
+      long timestamp) {
+    if (!mDetached) {
+      return false;
+    }
+    beginRecord(TYPE_RESPONSE_RECEIVED, response.requestId(), timestamp);
+    putString(response.url());
+    put(response.statusCode());
+    putString(response.reasonPhrase());
+    putString(mimeType);
+    put((response.connectionReused() ? FLAG_CONNECTION_REUSED : 0) |
+        (response.fromDiskCache() ? FLAG_FROM_DISK_CACHE : 0));
+    put(response.connectionId());
+    put(type.ordinal());
+    putHeaders(response);
+    endRecord();
+    return true;
+  }
+
+  synchronized boolean recordDataReceived(
+      String requestId,
+      int dataLength,
+      int encodedDataLength,
+      long timestamp) {
+    if (!mDetached) {
+      return false;
+    }
+    beginRecord(TYPE_DATA_RECEIVED, requestId, timestamp);
+    put(dataLength);
+    put(encodedDataLength);
+    endRecord();
+    return true;
+  }
+
+  synchronized boolean recordLoadingFinished(String requestId, long timestamp) {
+    if (!mDetached) {
+      return false;
+    }
+    beginRecord(TYPE_LOADING_FINISHED, requestId, timestamp);
+    endRecord();
+    return true;
+  }
+
+  synchronized boolean recordLoadingFailed(String requestId, String errorText, long timestamp) {
+    if (!mDetached) {
+      return false;
+    }
+    beginRecord(TYPE_LOADING_FAILED, requestId, timestamp);
+    putString(errorText);
+    endRecord();
+    return true;
+  }
+
+  private static void send(JsonRpcPeer peer, String method, Object params) {
+    // Far more than is normally queued at once, so wait rather than drop any.
+    peer.sendNotification(method, params, SendPolicy.BLOCK);
+  }
+
+  @GuardedBy("this")
+  private void beginRecord(int type, String requestId, long timestamp) {
+    mRecordLength = 0;
+    put(type << TYPE_SHIFT);
+    putString(requestId);
+    put((int) (timestamp >>> 32));
+    put((int) timestamp);
+  }
+
+  @GuardedBy("this")
+  private void putHeaders(InspectorHeaders headers) {
+    final int count = headers.headerCount();
+    put(count);
+    for (int i = 0; i < count; i++) {
+      putString(headers.headerName(i));
+      putString(headers.headerValue(i));
+    }
+  }
+
+  @GuardedBy("this")
+  private void putString(@Nullable String value) {
+    put(intern(value));
+  }
+
+  @GuardedBy("this")
+  private void put(int value) {
+    if (mRecordLength == mRecord.length) {
+      mRecord = Arrays.copyOf(mRecord, mRecord.length * 2);
+    }
+    mRecord[mRecordLength++] = value;
+  }
+
+  /**
+   * Append the record built since {@link #beginRecord}, dropping the oldest ones to make room.
+   */
+  @GuardedBy("this")
+  private void endRecord() {
+    final int length = mRecordLength;
+    mRecord[0] |= length;
+    while (mSize + length > mRing.length) {
+      if ((long) mRing.length * 2 * 4 + getTableBytes() <= mMaxBytes) {
+        growRing();
+      } else if (mSize > 0) {
+        removeOldestRecord();
+      } else {
+        // Wouldn't fit even on its own.
+        releaseRecord(mRecord);
+        return;
+      }
+    }
+    final int capacity = mRing.length;
+    final int tail = (mHead + mSize) % capacity;
+    final int firstPart = Math.min(length, capacity - tail);
+    System.arraycopy(mRecord, 0, mRing, tail, firstPart);
+    System.arraycopy(mRecord, firstPart, mRing, 0, length - firstPart);
+    mSize += length;
+
+    // New strings may have taken us over budget too, though we always keep the latest record.
+    while (getRingBytes() + getTableBytes() > mMaxBytes && mSize > length) {
+      removeOldestRecord();
+    }
+  }
+
+  @GuardedBy("this")
+  private void growRing() {
+    int[] ring = new int[mRing.length * 2];
+    final int firstPart = Math.min(mSize, mRing.length - mHead);
+    System.arraycopy(mRing, mHead, ring, 0, firstPart);
+    System.arraycopy(mRing, 0, ring, firstPart, mSize - firstPart);
+    mRing = ring;
+    mHead = 0;
+  }
+
+  @GuardedBy("this")
+  private void removeOldestRecord() {
+    mRemovedRecord = readRecord(mRing, mHead, 0, mRemovedRecord);
+    releaseRecord(mRemovedRecord);
+    final int length = mRemovedRecord[0] & LENGTH_MASK;
+    mHead = (mHead + length) % mRing.length;
+    mSize -= length;
+  }
+
+  /**
+   * Copy the record at {@code offset} from the oldest (at {@code head}) into {@code buffer}, or a
+   * larger one if it doesn't fit.
+   */
+  private static int[] readRecord(int[] ring, int head, int offset, int[] buffer) {
+    final int capacity = ring.length;
+    final int start = (head + offset) % capacity;
+    final int length = ring[start] & LENGTH_MASK;
+    if (buffer.length < length) {
+      buffer = new int[Math.max(length, buffer.length * 2)];
+    }
+    final int firstPart = Math.min(length, capacity - start);
+    System.arraycopy(ring, start, buffer, 0, firstPart);
+    System.arraycopy(ring, 0, buffer, firstPart, length - firstPart);
+    return buffer;
+  }
+
+  @GuardedBy("this")
+  private void releaseRecord(int[] record) {
+    release(record[FIELD_REQUEST_ID]);
+    int field = FIRST_EVENT_FIELD;
+    switch (record[0] >>> TYPE_SHIFT) {
+      case TYPE_REQUEST_WILL_BE_SENT:
+        release(record[field++]); // url
+        release(record[field++]); // method
+        release(record[field++]); // friendlyName
+        field++;
+        releaseHeaders(record, field);
+        break;
+      case TYPE_RESPONSE_RECEIVED:
+        release(record[field++]); // url
+        field++;
+        release(record[field++]); // reasonPhrase
+        release(record[field++]); // mimeType
+        field += 3;
+        releaseHeaders(record, field);
+        break;
+      case TYPE_LOADING_FAILED:
+        release(record[field]); // errorText
+        break;
+    }
+  }
+
+  @GuardedBy("this")
+  private void releaseHeaders(int[] record, int field) {
+    final int end = field + 1 + record[field] * 2;
+    for (int i = field + 1; i < end; i++) {
+      release(record[i]);
+    }
+  }
+
+  @GuardedBy("this")
+  private int intern(@Nullable String value) {
+    if (value == null) {
+      return NULL_STRING;
+    }
+    Integer existingId = mStringIds.get(value);
+    if (existingId != null) {
+      mStringRefCounts[existingId]++;
+      return existingId;
+    }
+    final int id;
+    if (mFreeStringId != NULL_STRING) {
+      id = mFreeStringId;
+      mFreeStringId = mStringRefCounts[id];
+    } else {
+      if (mStringCount == mStrings.length) {
+        mStrings = Arrays.copyOf(mStrings, mStrings.length * 2);
+        mStringRefCounts = Arrays.copyOf(mStringRefCounts, mStringRefCounts.length * 2);
+      }
+      id = mStringCount++;
+    }
+    mStrings[id] = value;
+    mStringRefCounts[id] = 1;
+    mStringIds.put(value, id);
+    mStringBytes += STRING_OVERHEAD_BYTES + value.length() * 2;
+    return id;
+  }
+
+  @GuardedBy("this")
+  private void release(int id) {
+    if (id == NULL_STRING || --mStringRefCounts[id] > 0) {
+      return;
+    }
+    String value = mStrings[id];
+    mStringIds.remove(value);
+    mStringBytes -= STRING_OVERHEAD_BYTES + value.length() * 2;
+    mStrings[id] = null;
+    mStringRefCounts[id] = mFreeStringId;
+    mFreeStringId = id;
+  }
+
+  @GuardedBy("this")
+  private long getRingBytes() {
+    return (long) mRing.length * 4;
+  }
+
+  @GuardedBy("this")
+  private long getTableBytes() {
+    return mStringBytes + (long) mStrings.length * 8;
+  }
+
+  @GuardedBy("this")
+  private void reset() {
+    final int ringCapacity = (int) Math.max(16, Math.min(INITIAL_RING_CAPACITY, mMaxBytes / 8));
+    mRing = new int[ringCapacity];
+    mHead = 0;
+    mSize = 0;
+    mStringIds.clear();
+    mStrings = new String[INITIAL_STRING_CAPACITY];
+    mStringRefCounts = new int[INITIAL_STRING_CAPACITY];
+    mStringCount = 0;
+    mFreeStringId = NULL_STRING;
+    mStringBytes = 0;
+  }
+
+  //@VisibleForTesting
+  synchronized int getRecordedBytes() {
+    return (int) (getRingBytes() + getTableBytes());
+  }
+
+  /**
+   * Events taken from the recorder to be sent without holding its lock.
+   */
+  private static final class Replay {
+    private final int[] mRing;
+    private final int mHead;
+    private final int mSize;
+    private final String[] mStrings;
+    private int[] mRecord = new int[64];
+
+    public Replay(int[] ring, int head, int size, String[] strings) {
+      mRing = ring;
+      mHead = head;
+      mSize = size;
+      mStrings = strings;
+    }
+
+    public void sendTo(JsonRpcPeer peer) {
+      for (int offset = 0; offset < mSize; offset += mRecord[0] & LENGTH_MASK) {
+        mRecord = readRecord(mRing, mHead, offset, mRecord);
+        replayRecord(peer);
+      }
+    }
+
+    private void replayRecord(JsonRpcPeer peer) {
+      final int type = mRecord[0] >>> TYPE_SHIFT;
+      final String requestId = mStrings[mRecord[FIELD_REQUEST_ID]];
+      final long timestamp =
+          ((long) mRecord[FIELD_TIMESTAMP] << 32) | (mRecord[FIELD_TIMESTAMP + 1] & 0xffffffffL);
+      int field = FIRST_EVENT_FIELD;
+      switch (type) {
+        case TYPE_REQUEST_WILL_BE_SENT: {
+          String url = getString(field++);
+          String method = getString(field++);
+          String friendlyName = getString(field++);
+          int friendlyNameExtra = mRecord[field++];
+          Network.RequestWillBeSentParams params =
+              NetworkEventReporterImpl.createRequestWillBeSentParams(
+                  requestId,
+                  url,
+                  method,
+                  NetworkEventReporterImpl.formatHeadersAsJSON(new RecordedHeaders(field)),
+                  null /* postData */,
+                  friendlyName,
+                  friendlyNameExtra != NULL_INT ? friendlyNameExtra : null,
+                  timestamp);
+          send(peer, "Network.requestWillBeSent", params);
+          break;
+        }
+        case TYPE_RESPONSE_RECEIVED: {
+          Network.Response responseJSON = new Network.Response();
+          responseJSON.url = getString(field++);
+          responseJSON.status = mRecord[field++];
+          responseJSON.statusText = getString(field++);
+          responseJSON.mimeType = getString(field++);
+          int flags = mRecord[field++];
+          responseJSON.connectionReused = (flags & FLAG_CONNECTION_REUSED) != 0;
+          responseJSON.fromDiskCache = (flags & FLAG_FROM_DISK_CACHE) != 0;
+          responseJSON.connectionId = mRecord[field++];
+          Page.ResourceType resourceType = RESOURCE_TYPES[mRecord[field++]];
+          responseJSON.headers =
+              NetworkEventReporterImpl.formatHeadersAsJSON(new RecordedHeaders(field));
+          Network.ResponseReceivedParams params = new Network.ResponseReceivedParams();
+          params.requestId = requestId;
+          params.frameId = "1";
+          params.loaderId = "1";
+          params.timestamp = timestamp / 1000.0;
+          params.response = responseJSON;
+          params.type = resourceType;
+          send(peer, "Network.responseReceived", params);
+          break;
+        }
+        case TYPE_DATA_RECEIVED: {
+          Network.DataReceivedParams params = new Network.DataReceivedParams();
+          params.requestId = requestId;
+          params.timestamp = timestamp / 1000.0;
+          params.dataLength = mRecord[field++];
+          params.encodedDataLength = mRecord[field++];
+          send(peer, "Network.dataReceived", params);
+          break;
+        }
+        case TYPE_LOADING_FINISHED: {
+          Network.LoadingFinishedParams params = new Network.LoadingFinishedParams();
+          params.requestId = requestId;
+          params.timestamp = timestamp / 1000.0;
+          send(peer, "Network.loadingFinished", params);
+          break;
+        }
+        case TYPE_LOADING_FAILED: {
+          Network.LoadingFailedParams params = new Network.LoadingFailedParams();
+          params.requestId = requestId;
+          params.timestamp = timestamp / 1000.0;
+          params.errorText = getString(field++);
+          params.type = Page.ResourceType.OTHER;
+          send(peer, "Network.loadingFailed", params);
+          break;
+        }
+        default:
+          throw new IllegalStateException("Unknown record type " + type);
+      }
+    }
+
+    @Nullable
+    private String getString(int field) {
+      final int id = mRecord[field];
+      return id != NULL_STRING ? mStrings[id] : null;
+    }
+
+    /**
+     * Headers of the record in {@link #mRecord}, starting with their count at {@code field}.
+     */
+    private class RecordedHeaders implements InspectorHeaders {
+      private final int mField;
+
+      public RecordedHeaders(int field) {
+        mField = field;
+      }
+
+      @Override
+      public int headerCount() {
+        return mRecord[mField];
+      }
+
+      @Override
+      public String headerName(int index) {
+        return getString(mField + 1 + index * 2);
+      }
+
+      @Override
+      public String headerValue(int index) {
+        return getString(mField + 2 + index * 2);
+      }
+
+      @Nullable
+      @Override
+      public String firstHeaderValue(String name) {
+        for (int i = 0, count = headerCount(); i < count; i++) {
+          if (name.equalsIgnoreCase(headerName(i))) {
+            return headerValue(i);
+          }
+        }
+        return null;
+      }
+    }
+  }
+}
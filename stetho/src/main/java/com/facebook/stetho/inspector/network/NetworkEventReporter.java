@@ -262,6 +262,48 @@ public interface NetworkEventReporter {
      * True if the response was furnished by disk cache; false otherwise or if unknown.
      */
     boolean fromDiskCache();
+
+    /**
+     * Where the time went before the response headers arrived, if known.
+     */
+    @Nullable
+    default InspectorResourceTiming timing() {
+      return null;
+    }
+  }
+
+  /**
+   * Breakdown of a request into the phases shown in the Network tab's waterfall.  All but
+   * {@link #requestTime} are milliseconds since it, or -1 for phases that didn't happen (such as
+   * DNS and connecting when an existing connection was reused).
+   */
+  interface InspectorResourceTiming {
+    /**
+     * When the request started, in seconds on the {@code SystemClock.elapsedRealtime()} timeline
+     * that all other events are reported on.
+     */
+    double requestTime();
+
+    double dnsStart();
+    double dnsEnd();
+
+    double connectStart();
+    double connectEnd();
+
+    /**
+     * TLS handshake, which falls within connecting.
+     */
+    double sslStart();
+    double sslEnd();
+
+    double sendStart();
+    double sendEnd();
+
+    /**
+     * First byte of the response.
+     */
+    double receiveHeadersStart();
+    double receiveHeadersEnd();
   }
 
   interface InspectorWebSocketRequest extends InspectorRequestCommon {
@@ -22,6 +22,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
@@ -35,6 +38,15 @@ import javax.annotation.Nullable;
  */
 public class NetworkEventReporterImpl implements NetworkEventReporter {
   private final AtomicInteger mNextRequestId = new AtomicInteger(0);
+
+  /**
+   * Requests left out by the URL rules of the {@link NetworkCapturePolicy}, whose later events
+   * are dropped.  Ids stay here until the request is over, however many there are; sampled out
+   * requests don't need to be remembered since the policy can tell from the id alone.
+   */
+  private final Set<String> mIgnoredRequestIds =
+      Collections.synchronizedSet(new HashSet<String>());
+
   @Nullable
   private ResourceTypeHelper mResourceTypeHelper;
 
@@ -54,10 +66,29 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
     return sInstance;
   }
 
+  /**
+   * Keep up to about {@code maxBytes} worth of network events in memory while no DevTools client
+   * has the Network domain enabled, and replay them to the first one that does.  This is how
+   * requests made during app startup, before there was a chance to open chrome://inspect, can be
+   * looked at.  Call this before {@link com.facebook.stetho.Stetho#initialize}.
+   * <p>
+   * Only the requests and responses are recorded, not their bodies.  Recording stops when
+   * events are replayed and starts again once the last client goes away.
+   */
+  public static void startRecording(long maxBytes) {
+    NetworkEventRecorder.start(maxBytes);
+  }
+
+  /**
+   * Stop recording and throw away anything recorded so far.
+   */
+  public static void stopRecording() {
+    NetworkEventRecorder.stop();
+  }
+
   @Override
   public boolean isEnabled() {
-    NetworkPeerManager peerManager = getPeerManagerIfEnabled();
-    return peerManager != null;
+    return getPeerManagerIfEnabled() != null || getRecorderIfDetached() != null;
   }
 
   @Nullable
@@ -69,47 +100,100 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
     return null;
   }
 
+  /**
+   * The recorder, if events should currently go to it rather than to peers.
+   */
+  @Nullable
+  private static NetworkEventRecorder getRecorderIfDetached() {
+    NetworkEventRecorder recorder = NetworkEventRecorder.getInstanceOrNull();
+    return recorder != null && recorder.isDetached() ? recorder : null;
+  }
+
+  private static NetworkCapturePolicy getCapturePolicy() {
+    NetworkPeerManager peerManager = NetworkPeerManager.getInstanceOrNull();
+    return peerManager != null ?
+        peerManager.getCapturePolicy() :
+        NetworkCapturePolicy.CAPTURE_ALL;
+  }
+
+  /**
+   * Whether the capture policy left out this request.
+   */
+  private boolean isIgnored(String requestId) {
+    return !getCapturePolicy().isSampled(requestId) ||
+        (!mIgnoredRequestIds.isEmpty() && mIgnoredRequestIds.contains(requestId));
+  }
+
   @Override
   public void requestWillBeSent(InspectorRequest request) {
+    NetworkEventRecorder recorder = getRecorderIfDetached();
     NetworkPeerManager peerManager = getPeerManagerIfEnabled();
+    if (recorder == null && peerManager == null) {
+      return;
+    }
+    if (!getCapturePolicy().shouldCapture(request.id(), request.url())) {
+      mIgnoredRequestIds.add(request.id());
+      return;
+    }
+    if (recorder != null && recorder.recordRequestWillBeSent(request, stethoNow())) {
+      return;
+    }
     if (peerManager != null) {
-      Network.Request requestJSON = new Network.Request();
-      requestJSON.url = request.url();
-      requestJSON.method = request.method();
-      requestJSON.headers = formatHeadersAsJSON(request);
-      requestJSON.postData = readBodyAsString(peerManager, request);
-
-      // Hack to use the initiator of SCRIPT to generate a fake call stack that includes
-      // the request's "friendly" name.
-      String requestFriendlyName = request.friendlyName();
-      Integer requestPriority = request.friendlyNameExtra();
-      Network.Initiator initiatorJSON = new Network.Initiator();
-      initiatorJSON.type = Network.InitiatorType.SCRIPT;
-      initiatorJSON.stackTrace = new ArrayList<Log.CallFrame>();
-      initiatorJSON.stackTrace.add(new Log.CallFrame(requestFriendlyName,
-          requestFriendlyName,
-          requestPriority != null ? requestPriority : 0 /* lineNumber */,
-          0 /* columnNumber */));
-
-      Network.RequestWillBeSentParams params = new Network.RequestWillBeSentParams();
-      params.requestId = request.id();
-      params.frameId = "1";
-      params.loaderId = "1";
-      params.documentURL = request.url();
-      params.request = requestJSON;
-      params.timestamp = stethoNow() / 1000.0;
-      params.initiator = initiatorJSON;
-      params.redirectResponse = null;
-
-      // Type is now required as of at least WebKit Inspector rev @188492.  If you don't send
-      // it, Chrome will refuse to draw the row in the Network tab until the response is
-      // received (providing the type).  This delay is very noticable on slow networks.
-      params.type = Page.ResourceType.OTHER;
-
+      Network.RequestWillBeSentParams params = createRequestWillBeSentParams(
+          request.id(),
+          request.url(),
+          request.method(),
+          formatHeadersAsJSON(request),
+          readBodyAsString(peerManager, request),
+          request.friendlyName(),
+          request.friendlyNameExtra(),
+          stethoNow());
       peerManager.sendNotificationToPeers("Network.requestWillBeSent", params);
     }
   }
 
+  static Network.RequestWillBeSentParams createRequestWillBeSentParams(
+      String requestId,
+      String url,
+      String method,
+      JSONObject headers,
+      @Nullable String postData,
+      String friendlyName,
+      @Nullable Integer friendlyNameExtra,
+      long timestamp) {
+    Network.Request requestJSON = new Network.Request();
+    requestJSON.url = url;
+    requestJSON.method = method;
+    requestJSON.headers = headers;
+    requestJSON.postData = postData;
+
+    // Hack to use the initiator of SCRIPT to generate a fake call stack that includes
+    // the request's "friendly" name.
+    Network.Initiator initiatorJSON = new Network.Initiator();
+    initiatorJSON.type = Network.InitiatorType.SCRIPT;
+    initiatorJSON.stackTrace = new ArrayList<Log.CallFrame>();
+    initiatorJSON.stackTrace.add(new Log.CallFrame(friendlyName,
+        friendlyName,
+        friendlyNameExtra != null ? friendlyNameExtra : 0 /* lineNumber */,
+        0 /* columnNumber */));
+
+    Network.RequestWillBeSentParams params = new Network.RequestWillBeSentParams();
+    params.requestId = requestId;
+    params.frameId = "1";
+    params.loaderId = "1";
+    params.documentURL = url;
+    params.request = requestJSON;
+    params.timestamp = timestamp / 1000.0;
+    params.initiator = initiatorJSON;
+    params.redirectResponse = null;
+
+    // Type is now required as of at least WebKit Inspector rev @188492.  If you don't send
+    // it, Chrome will refuse to draw the row in the Network tab until the response is
+    // received (providing the type).  This delay is very noticable on slow networks.
+    params.type = Page.ResourceType.OTHER;
+    return params;
+  }
+
   @Nullable
   private static String readBodyAsString(
       NetworkPeerManager peerManager,
@@ -131,6 +215,30 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
 
   @Override
   public void responseHeadersReceived(InspectorResponse response) {
+    if (isIgnored(response.requestId())) {
+      return;
+    }
+    // The response may have come from somewhere else than the request was sent to.
+    if (!getCapturePolicy().shouldCapture(response.requestId(), response.url())) {
+      mIgnoredRequestIds.add(response.requestId());
+      return;
+    }
+    NetworkEventRecorder recorder = getRecorderIfDetached();
+    if (recorder != null) {
+      String contentType = getContentType(response);
+      boolean recorded = recorder.recordResponseReceived(
+          response,
+          contentType != null ?
+              getResourceTypeHelper().stripContentExtras(contentType) :
+              "application/octet-stream",
+          contentType != null ?
+              getResourceTypeHelper().determineResourceType(contentType) :
+              Page.ResourceType.OTHER,
+          stethoNow());
+      if (recorded) {
+        return;
+      }
+    }
     NetworkPeerManager peerManager = getPeerManagerIfEnabled();
     if (peerManager != null) {
       Network.Response responseJSON = new Network.Response();
@@ -145,6 +253,10 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
       responseJSON.connectionReused = response.connectionReused();
       responseJSON.connectionId = response.connectionId();
       responseJSON.fromDiskCache = response.fromDiskCache();
+      InspectorResourceTiming timing = response.timing();
+      if (timing != null) {
+        responseJSON.timing = formatTiming(timing);
+      }
       Network.ResponseReceivedParams receivedParams = new Network.ResponseReceivedParams();
       receivedParams.requestId = response.requestId();
       receivedParams.frameId = "1";
@@ -159,6 +271,22 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
     }
   }
 
+  private static Network.ResourceTiming formatTiming(InspectorResourceTiming timing) {
+    Network.ResourceTiming timingJSON = new Network.ResourceTiming();
+    timingJSON.requestTime = timing.requestTime();
+    timingJSON.dnsStart = timing.dnsStart();
+    timingJSON.dnsEnd = timing.dnsEnd();
+    timingJSON.connectStart = timing.connectStart();
+    timingJSON.connectEnd = timing.connectEnd();
+    timingJSON.sslStart = timing.sslStart();
+    timingJSON.sslEnd = timing.sslEnd();
+    timingJSON.sendStart = timing.sendStart();
+    timingJSON.sendEnd = timing.sendEnd();
+    timingJSON.receiveHeadersStart = timing.receiveHeadersStart();
+    timingJSON.receiveHeadersEnd = timing.receiveHeadersEnd();
+    return timingJSON;
+  }
+
   @Nullable
   private static AsyncPrettyPrinter initAsyncPrettyPrinterForResponse(
       InspectorResponse response,
@@ -212,6 +340,25 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
       @Nullable String contentEncoding,
       @Nullable InputStream availableInputStream,
       ResponseHandler responseHandler) {
+    if (isIgnored(requestId)) {
+      // The body is passed through untouched, so nothing more will be reported for it.
+      mIgnoredRequestIds.remove(requestId);
+      return availableInputStream;
+    }
+    if (getRecorderIfDetached() != null) {
+      if (availableInputStream == null) {
+        responseHandler.onEOF();
+        return null;
+      }
+      // Only read through to report progress and completion, the body isn't recorded.
+      return new ResponseHandlingInputStream(
+          availableInputStream,
+          requestId,
+          new DiscardingOutputStream(),
+          null /* decompressedCounter */,
+          NetworkEventRecorder.NO_PEERS,
+          responseHandler);
+    }
     NetworkPeerManager peerManager = getPeerManagerIfEnabled();
     if (peerManager != null) {
       if (availableInputStream == null) {
@@ -230,11 +377,34 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
         base64Encode = true;
       }
 
+      long bodySizeLimit = peerManager.getCapturePolicy().getBodySizeLimit(contentType);
+
       try {
-        OutputStream fileOutputStream =
-            peerManager.getResponseBodyFileManager().openResponseBodyFile(
-                requestId,
-                base64Encode);
+        ResponseBodyFileManager responseBodyFileManager =
+            peerManager.getResponseBodyFileManager();
+        OutputStream fileOutputStream;
+        if (bodySizeLimit == 0) {
+          // Still counted and reported, just not kept.  Leaving it encoded saves decoding it
+          // for nothing, at the cost of the Network tab showing the encoded size for both.
+          fileOutputStream = new DiscardingOutputStream();
+          contentEncoding = null;
+        } else if (bodySizeLimit == NetworkCapturePolicy.UNLIMITED &&
+            responseBodyFileManager.shouldStoreEncoded(contentEncoding)) {
+          // A truncated encoded body can't be decoded, so this is only done when it's kept whole.
+          // Decoded on demand by ResponseBodyFileManager instead.
+          fileOutputStream = responseBodyFileManager.openResponseBodyFile(
+              requestId,
+              base64Encode,
+              contentEncoding);
+          contentEncoding = null;
+        } else {
+          fileOutputStream = responseBodyFileManager.openResponseBodyFile(
+              requestId,
+              base64Encode);
+          if (bodySizeLimit != NetworkCapturePolicy.UNLIMITED) {
+            fileOutputStream = new TruncatingOutputStream(fileOutputStream, bodySizeLimit);
+          }
+        }
         return DecompressionHelper.teeInputWithDecompression(
             peerManager,
             requestId,
@@ -256,6 +426,7 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
   @Override
   public void httpExchangeFailed(String requestId, String errorText) {
     loadingFailed(requestId, errorText);
+    mIgnoredRequestIds.remove(requestId);
   }
 
   @Override
@@ -264,6 +435,13 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
   }
 
   private void loadingFinished(String requestId) {
+    if (isIgnored(requestId)) {
+      return;
+    }
+    NetworkEventRecorder recorder = getRecorderIfDetached();
+    if (recorder != null && recorder.recordLoadingFinished(requestId, stethoNow())) {
+      return;
+    }
     NetworkPeerManager peerManager = getPeerManagerIfEnabled();
     if (peerManager != null) {
       Network.LoadingFinishedParams finishedParams = new Network.LoadingFinishedParams();
@@ -279,6 +457,13 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
   }
 
   private void loadingFailed(String requestId, String errorText) {
+    if (isIgnored(requestId)) {
+      return;
+    }
+    NetworkEventRecorder recorder = getRecorderIfDetached();
+    if (recorder != null && recorder.recordLoadingFailed(requestId, errorText, stethoNow())) {
+      return;
+    }
     NetworkPeerManager peerManager = getPeerManagerIfEnabled();
     if (peerManager != null) {
       Network.LoadingFailedParams failedParams = new Network.LoadingFailedParams();
@@ -306,6 +491,14 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
       String requestId,
       int dataLength,
       int encodedDataLength) {
+    if (isIgnored(requestId)) {
+      return;
+    }
+    NetworkEventRecorder recorder = getRecorderIfDetached();
+    if (recorder != null &&
+        recorder.recordDataReceived(requestId, dataLength, encodedDataLength, stethoNow())) {
+      return;
+    }
     NetworkPeerManager peerManager = getPeerManagerIfEnabled();
     if (peerManager != null) {
       Network.DataReceivedParams dataReceivedParams = new Network.DataReceivedParams();
@@ -433,7 +626,7 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
     }
   }
 
-  private static JSONObject formatHeadersAsJSON(InspectorHeaders headers) {
+  static JSONObject formatHeadersAsJSON(InspectorHeaders headers) {
     JSONObject json = new JSONObject();
     for (int i = 0; i < headers.headerCount(); i++) {
       String name = headers.headerName(i);
@@ -463,4 +656,14 @@ public class NetworkEventReporterImpl implements NetworkEventReporter {
   private static long stethoNow() {
     return SystemClock.elapsedRealtime();
   }
+
+  private static class DiscardingOutputStream extends OutputStream {
+    @Override
+    public void write(int oneByte) {
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+    }
+  }
 }
@@ -12,6 +12,7 @@ import android.content.Context;
 import com.facebook.stetho.common.Util;
 import com.facebook.stetho.inspector.helper.ChromePeerManager;
 import com.facebook.stetho.inspector.helper.PeersRegisteredListener;
+import com.facebook.stetho.inspector.jsonrpc.JsonRpcPeer;
 
 import javax.annotation.Nullable;
 
@@ -21,6 +22,7 @@ public class NetworkPeerManager extends ChromePeerManager {
   private final ResponseBodyFileManager mResponseBodyFileManager;
   private AsyncPrettyPrinterInitializer mPrettyPrinterInitializer;
   private AsyncPrettyPrinterRegistry mAsyncPrettyPrinterRegistry;
+  private volatile NetworkCapturePolicy mCapturePolicy = NetworkCapturePolicy.CAPTURE_ALL;
 
   @Nullable
   public static synchronized NetworkPeerManager getInstanceOrNull() {
@@ -28,10 +30,20 @@ public class NetworkPeerManager extends ChromePeerManager {
   }
 
   public static synchronized NetworkPeerManager getOrCreateInstance(Context context) {
+    return getOrCreateInstance(context, ResponseBodyStoreOptions.DEFAULT);
+  }
+
+  /**
+   * @param options Only used if the instance doesn't exist yet.
+   */
+  public static synchronized NetworkPeerManager getOrCreateInstance(
+      Context context,
+      ResponseBodyStoreOptions options) {
     if (sInstance == null) {
       sInstance = new NetworkPeerManager(
           new ResponseBodyFileManager(
-              Util.getApplication(context)));
+              Util.getApplication(context),
+              options));
     }
     return sInstance;
   }
@@ -42,6 +54,23 @@ public class NetworkPeerManager extends ChromePeerManager {
     setListener(mTempFileCleanup);
   }
 
+  /**
+   * Also replays the network events recorded before the first peer showed up.  That happens
+   * after the peer is registered, outside our lock, since the app's network threads check
+   * {@link #hasRegisteredPeers} for every event and mustn't wait for the replay.
+   */
+  @Override
+  public boolean addPeer(JsonRpcPeer peer) {
+    if (!super.addPeer(peer)) {
+      return false;
+    }
+    NetworkEventRecorder recorder = NetworkEventRecorder.getInstanceOrNull();
+    if (recorder != null) {
+      recorder.replayTo(peer);
+    }
+    return true;
+  }
+
   public ResponseBodyFileManager getResponseBodyFileManager() {
     return mResponseBodyFileManager;
   }
@@ -56,6 +85,17 @@ public class NetworkPeerManager extends ChromePeerManager {
     mPrettyPrinterInitializer = Util.throwIfNull(initializer);
   }
 
+  public NetworkCapturePolicy getCapturePolicy() {
+    return mCapturePolicy;
+  }
+
+  /**
+   * Applies to requests made from now on.
+   */
+  public void setCapturePolicy(NetworkCapturePolicy policy) {
+    mCapturePolicy = Util.throwIfNull(policy);
+  }
+
   private final PeersRegisteredListener mTempFileCleanup = new PeersRegisteredListener() {
     @Override
     protected void onFirstPeerRegistered() {
@@ -69,6 +109,10 @@ public class NetworkPeerManager extends ChromePeerManager {
 
     @Override
     protected void onLastPeerUnregistered() {
+      NetworkEventRecorder recorder = NetworkEventRecorder.getInstanceOrNull();
+      if (recorder != null) {
+        recorder.detach();
+      }
       mResponseBodyFileManager.cleanupFiles();
       AsyncPrettyPrinterExecutorHolder.shutdown();
     }
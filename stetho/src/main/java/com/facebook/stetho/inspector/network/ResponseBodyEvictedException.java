@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link ResponseBodyFileManager#readFile} when a body was captured but has since been
+ * evicted to stay within the {@link ResponseBodyStoreOptions} limits.
+ */
+public class ResponseBodyEvictedException extends IOException {
+  public ResponseBodyEvictedException(String requestId) {
+    super("Response body for request " + requestId +
+        " is no longer available; it was evicted to make room for newer responses");
+  }
+}
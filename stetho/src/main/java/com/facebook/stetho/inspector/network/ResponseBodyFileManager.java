@@ -9,123 +9,390 @@ package com.facebook.stetho.inspector.network;
 
 import android.content.Context;
 import android.util.Base64;
+import android.util.Base64InputStream;
 import android.util.Base64OutputStream;
 
-import com.facebook.stetho.common.ExceptionUtil;
 import com.facebook.stetho.common.LogRedirector;
 import com.facebook.stetho.common.Util;
 
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
 /**
  * Manages temporary files created by {@link ChromeHttpFlowObserver} to serve request bodies.
+ * <p>
+ * Bodies are kept in the app's cache directory, by a {@link FileResponseBodyStore} or
+ * {@link SegmentedResponseBodyStore} depending on {@link ResponseBodyStoreOptions#segmentSize},
+ * within the limits given by {@link ResponseBodyStoreOptions}, evicting the least recently used
+ * ones (along with their pretty printers) as newer responses arrive.  Nothing outlives a capture
+ * session: everything is deleted by {@link #cleanupFiles} when the first peer connects and after
+ * the last one leaves.
+ * <p>
+ * Bodies can also be {@link ResponseBodyStoreOptions#storeEncodedBodies stored encoded}, in which
+ * case they are decoded here when read.
+ * <p>
+ * Pretty printing happens in the background and its output is kept in memory (within
+ * {@link #MAX_PRETTY_PRINTED_CHARS}) so that looking at the same response again is free.
  */
 public class ResponseBodyFileManager {
   private static final String TAG = "ResponseBodyFileManager";
-  private static final String FILENAME_PREFIX = "network-response-body-";
+  private static final String DIRECTORY_NAME = "stetho-network-bodies";
   private static final int PRETTY_PRINT_TIMEOUT_SEC = 10;
 
+  /**
+   * How much a body may grow between updates of our size accounting, so that huge downloads are
+   * noticed before they complete without taking a lock for every write.
+   */
+  private static final int SIZE_REPORTING_INTERVAL = 64 * 1024;
+
+  /**
+   * Budget for cached pretty printed bodies across all requests, in chars.  A single body may use
+   * at most a quarter of it.
+   */
+  private static final int MAX_PRETTY_PRINTED_CHARS = 4 * 1024 * 1024;
+
   private final Context mContext;
-  private final Map<String, AsyncPrettyPrinter> mRequestIdMap = Collections.synchronizedMap(
-      new HashMap<String, AsyncPrettyPrinter>());
+  private final ResponseBodyStoreOptions mOptions;
+  private final ResponseBodyStore mStore;
+
+  /**
+   * All requests we know about, in least to most recently used order.
+   */
+  @GuardedBy("this")
+  private final LinkedHashMap<String, Entry> mEntries =
+      new LinkedHashMap<>(16 /* initialCapacity */, 0.75f /* loadFactor */, true /* accessOrder */);
+
+  /**
+   * Remembers recently evicted requests so that we can say why their bodies are missing.
+   */
+  @GuardedBy("this")
+  private final LinkedHashMap<String, Boolean> mEvictedRequestIds;
+
+  @GuardedBy("this")
+  private long mTotalBytes;
+
+  @GuardedBy("this")
+  private long mPrettyPrintedChars;
 
   public ResponseBodyFileManager(Context context) {
+    this(context, ResponseBodyStoreOptions.DEFAULT);
+  }
+
+  public ResponseBodyFileManager(Context context, ResponseBodyStoreOptions options) {
     mContext = context;
+    mOptions = options;
+    File directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+    mStore = (options.segmentSize > 0)
+        ? new SegmentedResponseBodyStore(directory, options.segmentSize, options.maxBytes)
+        : new FileResponseBodyStore(directory);
+    final int maxEvictedRequestIds = options.maxEntries;
+    mEvictedRequestIds = new LinkedHashMap<String, Boolean>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > maxEvictedRequestIds;
+      }
+    };
   }
 
   public void cleanupFiles() {
-    File[] files = mContext.getFilesDir().listFiles();
-    if (files == null) {
-      return;
-    }
-    for (File file : files) {
-      if (file.getName().startsWith(FILENAME_PREFIX)) {
-        if (!file.delete()) {
-          LogRedirector.w(TAG, "Failed to delete " + file.getAbsolutePath());
-        }
-      }
+    synchronized (this) {
+      mEntries.clear();
+      mEvictedRequestIds.clear();
+      mTotalBytes = 0;
+      mPrettyPrintedChars = 0;
+      mStore.clear();
     }
+
+    // Older versions kept bodies in the files directory.
+    FileResponseBodyStore.deleteFiles(
+        mContext.getFilesDir().listFiles(),
+        FileResponseBodyStore.FILENAME_PREFIX);
+
     LogRedirector.i(TAG, "Cleaned up temporary network files.");
   }
 
+  /**
+   * Blocking version of {@link #readFileAsync}.
+   *
+   * @throws ResponseBodyEvictedException If the body was evicted to make room for newer ones.
+   * @throws FileNotFoundException If no body was ever stored for {@code requestId}.
+   */
   public ResponseBodyData readFile(String requestId) throws IOException {
-    InputStream in = mContext.openFileInput(getFilename(requestId));
+    final ResponseBodyData[] result = new ResponseBodyData[1];
+    final IOException[] failure = new IOException[1];
+    final CountDownLatch latch = new CountDownLatch(1);
+    readFileAsync(requestId, new ReadCallback() {
+      @Override
+      public void onBodyRead(ResponseBodyData bodyData) {
+        result[0] = bodyData;
+        latch.countDown();
+      }
+
+      @Override
+      public void onFailure(IOException e) {
+        failure[0] = e;
+        latch.countDown();
+      }
+    });
+    Util.awaitUninterruptibly(latch);
+    if (failure[0] != null) {
+      throw failure[0];
+    }
+    return result[0];
+  }
+
+  /**
+   * Read the body of {@code requestId}, pretty printed if a pretty printer was associated with it.
+   * {@code callback} is called exactly once, either before this method returns or later from a
+   * background thread once pretty printing has finished.  Failures are reported as with
+   * {@link #readFile}.
+   */
+  public void readFileAsync(String requestId, ReadCallback callback) {
+    final Entry entry;
+    final AsyncPrettyPrinter asyncPrettyPrinter;
+    final String contentEncoding;
+    final String prettyPrintedBody;
+    final boolean prettyPrintedBase64Encoded;
+    IOException notFoundException = null;
+    synchronized (this) {
+      entry = mEntries.get(requestId);
+      if (entry == null || !entry.hasBody) {
+        notFoundException = newBodyNotFoundException(requestId);
+      }
+      asyncPrettyPrinter = entry != null ? entry.prettyPrinter : null;
+      contentEncoding = entry != null ? entry.contentEncoding : null;
+      prettyPrintedBody = entry != null ? entry.prettyPrintedBody : null;
+      prettyPrintedBase64Encoded = entry != null && entry.base64Encoded;
+    }
+    if (notFoundException != null) {
+      callback.onFailure(notFoundException);
+      return;
+    }
+    if (prettyPrintedBody != null) {
+      callback.onBodyRead(newBodyData(prettyPrintedBody, prettyPrintedBase64Encoded));
+      return;
+    }
+
+    InputStream in = null;
     try {
+      in = openBody(requestId);
       int firstByte = in.read();
       if (firstByte == -1) {
         throw new EOFException("Failed to read base64Encode byte");
       }
-      ResponseBodyData bodyData = new ResponseBodyData();
-      bodyData.base64Encoded = firstByte != 0;
+      boolean base64Encoded = firstByte != 0;
+      in = decodeBody(in, contentEncoding, base64Encoded);
 
-      AsyncPrettyPrinter asyncPrettyPrinter = mRequestIdMap.get(requestId);
-      if (asyncPrettyPrinter != null) {
-        // TODO: this line blocks for up to 10 seconds and create problems as described
-        // in issue #243 allow asynchronous dispatch for MethodDispatcher
-        bodyData.data = prettyPrintContentWithTimeOut(asyncPrettyPrinter, in);
-      } else {
-        bodyData.data = Util.readAsUTF8(in);
+      ExecutorService executorService = (asyncPrettyPrinter != null)
+          ? AsyncPrettyPrinterExecutorHolder.getExecutorService()
+          : null;
+      if (executorService != null) {
+        Future<String> future = executorService.submit(
+            new AsyncPrettyPrintingCallable(in, asyncPrettyPrinter));
+        // Now owned by the callable.
+        in = null;
+        executorService.execute(
+            new PrettyPrintCompletion(entry, contentEncoding, base64Encoded, future, callback));
+        return;
       }
-      return bodyData;
 
+      String data = Util.readAsUTF8(in);
+      callback.onBodyRead(newBodyData(data, base64Encoded));
+    } catch (IOException e) {
+      callback.onFailure(e);
+    } catch (RejectedExecutionException e) {
+      // The last peer went away in the meantime, so nobody is going to see this anyway.
+      callback.onFailure(new IOException("Pretty printing is shut down", e));
+    } catch (OutOfMemoryError e) {
+      callback.onFailure(new IOException("Response body too large: " + e));
     } finally {
-      in.close();
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // Nothing we can do.
+        }
+      }
     }
   }
 
-  private String prettyPrintContentWithTimeOut(
-      AsyncPrettyPrinter asyncPrettyPrinter,
-      InputStream in) throws IOException {
-    AsyncPrettyPrintingCallable prettyPrintingCallable = new AsyncPrettyPrintingCallable(
-        in,
-        asyncPrettyPrinter);
-    ExecutorService executorService = AsyncPrettyPrinterExecutorHolder.getExecutorService();
-    if (executorService == null) {
-      //last peer is unregistered...
-      return null;
-    }
-    Future<String> future = executorService.submit(prettyPrintingCallable);
+  private InputStream openBody(String requestId) throws IOException {
     try {
-      return Util.getUninterruptibly(future, PRETTY_PRINT_TIMEOUT_SEC, TimeUnit.SECONDS);
-    } catch (TimeoutException e) {
-      future.cancel(true);
-      return "Time out after " + PRETTY_PRINT_TIMEOUT_SEC +
-          " seconds of attempting to pretty print\n" + Util.readAsUTF8(in);
-    }  catch (ExecutionException e) {
-      Throwable cause = e.getCause();
-      ExceptionUtil.propagateIfInstanceOf(cause, IOException.class);
-      throw ExceptionUtil.propagate(cause);
+      return mStore.openInputStream(requestId);
+    } catch (FileNotFoundException e) {
+      // Evicted since we looked it up.
+      synchronized (this) {
+        throw newBodyNotFoundException(requestId);
+      }
+    }
+  }
+
+  /**
+   * Undo the encoding of a body stored as received, producing what would have been stored had it
+   * been decoded on the way in.
+   */
+  private static InputStream decodeBody(
+      InputStream in,
+      @Nullable String contentEncoding,
+      boolean base64Encode) throws IOException {
+    if (contentEncoding == null) {
+      return in;
+    }
+    InputStream decoded = DecompressionHelper.decompress(in, contentEncoding);
+    if (base64Encode) {
+      decoded = new Base64InputStream(decoded, Base64.DEFAULT, true /* encode */);
     }
+    return decoded;
+  }
+
+  private static ResponseBodyData newBodyData(String data, boolean base64Encoded) {
+    ResponseBodyData bodyData = new ResponseBodyData();
+    bodyData.data = data;
+    bodyData.base64Encoded = base64Encoded;
+    return bodyData;
+  }
+
+  @GuardedBy("this")
+  private IOException newBodyNotFoundException(String requestId) {
+    if (mEvictedRequestIds.containsKey(requestId)) {
+      return new ResponseBodyEvictedException(requestId);
+    }
+    return new FileNotFoundException("No response body stored for request " + requestId);
+  }
+
+  private synchronized void cachePrettyPrintedBody(
+      Entry entry,
+      String prettyPrintedBody,
+      boolean base64Encoded) {
+    if (entry.evicted ||
+        entry.prettyPrintedBody != null ||
+        prettyPrintedBody.length() > MAX_PRETTY_PRINTED_CHARS / 4) {
+      return;
+    }
+    entry.prettyPrintedBody = prettyPrintedBody;
+    entry.base64Encoded = base64Encoded;
+    mPrettyPrintedChars += prettyPrintedBody.length();
+
+    Iterator<Entry> iterator = mEntries.values().iterator();
+    while (mPrettyPrintedChars > MAX_PRETTY_PRINTED_CHARS && iterator.hasNext()) {
+      dropPrettyPrintedBody(iterator.next());
+    }
+  }
+
+  @GuardedBy("this")
+  private void dropPrettyPrintedBody(Entry entry) {
+    if (entry.prettyPrintedBody != null) {
+      mPrettyPrintedChars -= entry.prettyPrintedBody.length();
+      entry.prettyPrintedBody = null;
+    }
+  }
+
+  /**
+   * Whether bodies with the given {@code Content-Encoding} should be passed to
+   * {@link #openResponseBodyFile(String, boolean, String)} without being decoded first.
+   */
+  public boolean shouldStoreEncoded(@Nullable String contentEncoding) {
+    return mOptions.storeEncodedBodies && DecompressionHelper.isSupportedEncoding(contentEncoding);
   }
 
   public OutputStream openResponseBodyFile(String requestId, boolean base64Encode)
       throws IOException {
-    OutputStream out = mContext.openFileOutput(getFilename(requestId), Context.MODE_PRIVATE);
+    return openResponseBodyFile(requestId, base64Encode, null /* contentEncoding */);
+  }
+
+  /**
+   * @param contentEncoding Encoding of the bytes written to the returned stream, which must be
+   *     one that {@link #shouldStoreEncoded} agreed to, or null if they are already decoded.
+   *     Encoded bodies are stored as is and {@code base64Encode} is only applied when reading
+   *     them back.
+   */
+  public OutputStream openResponseBodyFile(
+      String requestId,
+      boolean base64Encode,
+      @Nullable String contentEncoding) throws IOException {
+    Entry entry;
+    synchronized (this) {
+      entry = obtainEntry(requestId);
+      dropPrettyPrintedBody(entry);
+      mTotalBytes -= entry.size;
+      entry.size = 0;
+      entry.hasBody = true;
+      entry.contentEncoding = contentEncoding;
+    }
+
+    OutputStream out = new BodyOutputStream(entry, mStore.openOutputStream(requestId));
     out.write(base64Encode ? 1 : 0);
-    if (base64Encode) {
+    if (base64Encode && contentEncoding == null) {
       return new Base64OutputStream(out, Base64.DEFAULT);
     } else {
       return out;
     }
   }
 
-  private static String getFilename(String requestId) {
-    return FILENAME_PREFIX + requestId;
+  @GuardedBy("this")
+  private Entry obtainEntry(String requestId) {
+    Entry entry = mEntries.get(requestId);
+    if (entry == null) {
+      entry = new Entry(requestId);
+      mEntries.put(requestId, entry);
+      mEvictedRequestIds.remove(requestId);
+      trimToSize();
+    }
+    return entry;
+  }
+
+  private synchronized void onBodyClosed(Entry entry) {
+    if (entry.evicted) {
+      // Evicted while it was still being written, which the store may not have been ready for.
+      mStore.remove(entry.requestId);
+    }
+  }
+
+  private synchronized void onBodyGrew(Entry entry, long delta) {
+    if (entry.evicted) {
+      return;
+    }
+    entry.size += delta;
+    mTotalBytes += delta;
+    trimToSize();
+  }
+
+  @GuardedBy("this")
+  private void trimToSize() {
+    Iterator<Entry> iterator = mEntries.values().iterator();
+    while ((mTotalBytes > mOptions.maxBytes || mEntries.size() > mOptions.maxEntries) &&
+        iterator.hasNext()) {
+      Entry eldest = iterator.next();
+      iterator.remove();
+      eldest.evicted = true;
+      mTotalBytes -= eldest.size;
+      dropPrettyPrintedBody(eldest);
+      mEvictedRequestIds.put(eldest.requestId, Boolean.TRUE);
+      if (eldest.hasBody) {
+        mStore.remove(eldest.requestId);
+      }
+    }
   }
 
   /**
@@ -140,13 +407,91 @@ public class ResponseBodyFileManager {
   public void associateAsyncPrettyPrinterWithId(
       String requestId,
       AsyncPrettyPrinter asyncPrettyPrinter) {
-    if (mRequestIdMap.put(requestId, asyncPrettyPrinter) != null) {
-      throw new IllegalArgumentException("cannot associate different " +
-          "pretty printers with the same request id: "+requestId);
+    synchronized (this) {
+      Entry entry = obtainEntry(requestId);
+      if (entry.prettyPrinter != null) {
+        throw new IllegalArgumentException("cannot associate different " +
+            "pretty printers with the same request id: "+requestId);
+      }
+      entry.prettyPrinter = asyncPrettyPrinter;
     }
   }
 
-  private class AsyncPrettyPrintingCallable implements Callable<String> {
+  private static class Entry {
+    public final String requestId;
+
+    /**
+     * Guarded by the owning {@link ResponseBodyFileManager}, as are all other fields.
+     */
+    public long size;
+    public boolean hasBody;
+    public boolean evicted;
+    public @Nullable AsyncPrettyPrinter prettyPrinter;
+    public @Nullable String contentEncoding;
+    public @Nullable String prettyPrintedBody;
+    public boolean base64Encoded;
+
+    public Entry(String requestId) {
+      this.requestId = requestId;
+    }
+  }
+
+  /**
+   * Keeps our size accounting up to date as a body is written.
+   */
+  private class BodyOutputStream extends FilterOutputStream {
+    private final Entry mEntry;
+    private int mUnreportedBytes;
+
+    public BodyOutputStream(Entry entry, OutputStream out) {
+      super(out);
+      mEntry = entry;
+    }
+
+    @Override
+    public void write(int oneByte) throws IOException {
+      out.write(oneByte);
+      onWritten(1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+      out.write(buffer, offset, length);
+      onWritten(length);
+    }
+
+    private void onWritten(int length) {
+      mUnreportedBytes += length;
+      if (mUnreportedBytes >= SIZE_REPORTING_INTERVAL) {
+        reportGrowth();
+      }
+    }
+
+    private void reportGrowth() {
+      if (mUnreportedBytes > 0) {
+        onBodyGrew(mEntry, mUnreportedBytes);
+        mUnreportedBytes = 0;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        reportGrowth();
+        onBodyClosed(mEntry);
+      }
+    }
+  }
+
+  public interface ReadCallback {
+    void onBodyRead(ResponseBodyData bodyData);
+
+    void onFailure(IOException e);
+  }
+
+  private static class AsyncPrettyPrintingCallable implements Callable<String> {
     private final InputStream mInputStream;
     private final AsyncPrettyPrinter mAsyncPrettyPrinter;
 
@@ -159,7 +504,11 @@ public class ResponseBodyFileManager {
 
     @Override
     public String call() throws IOException {
-      return prettyPrintContent(mInputStream, mAsyncPrettyPrinter);
+      try {
+        return prettyPrintContent(mInputStream, mAsyncPrettyPrinter);
+      } finally {
+        mInputStream.close();
+      }
     }
 
     private String prettyPrintContent(InputStream in, AsyncPrettyPrinter asyncPrettyPrinter)
@@ -171,4 +520,69 @@ public class ResponseBodyFileManager {
       return out.toString("UTF-8");
     }
   }
+
+  /**
+   * Waits for pretty printing to finish (or give up on it) on a pretty printing thread and
+   * delivers the outcome, so that neither the caller of {@link #readFileAsync} nor any thread
+   * serving the protocol has to.
+   */
+  private class PrettyPrintCompletion implements Runnable {
+    private final Entry mEntry;
+    private final @Nullable String mContentEncoding;
+    private final boolean mBase64Encoded;
+    private final Future<String> mFuture;
+    private final ReadCallback mCallback;
+
+    public PrettyPrintCompletion(
+        Entry entry,
+        @Nullable String contentEncoding,
+        boolean base64Encoded,
+        Future<String> future,
+        ReadCallback callback) {
+      mEntry = entry;
+      mContentEncoding = contentEncoding;
+      mBase64Encoded = base64Encoded;
+      mFuture = future;
+      mCallback = callback;
+    }
+
+    @Override
+    public void run() {
+      String data;
+      try {
+        data = Util.getUninterruptibly(mFuture, PRETTY_PRINT_TIMEOUT_SEC, TimeUnit.SECONDS);
+        cachePrettyPrintedBody(mEntry, data, mBase64Encoded);
+      } catch (TimeoutException e) {
+        mFuture.cancel(true /* mayInterruptIfRunning */);
+        try {
+          data = "Time out after " + PRETTY_PRINT_TIMEOUT_SEC +
+              " seconds of attempting to pretty print\n" + readRawBody();
+        } catch (IOException ioe) {
+          mCallback.onFailure(ioe);
+          return;
+        }
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        mCallback.onFailure(cause instanceof IOException
+            ? (IOException) cause
+            : new IOException("Pretty printing failed", cause));
+        return;
+      }
+      mCallback.onBodyRead(newBodyData(data, mBase64Encoded));
+    }
+
+    private String readRawBody() throws IOException {
+      InputStream in = openBody(mEntry.requestId);
+      try {
+        // Skip the base64Encode byte.
+        if (in.read() == -1) {
+          throw new EOFException("Failed to read base64Encode byte");
+        }
+        in = decodeBody(in, mContentEncoding, mBase64Encoded);
+        return Util.readAsUTF8(in);
+      } finally {
+        in.close();
+      }
+    }
+  }
 }
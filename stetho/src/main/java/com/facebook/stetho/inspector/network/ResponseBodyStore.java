@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Raw storage for the bodies managed by {@link ResponseBodyFileManager}, which takes care of
+ * deciding what to keep.  Implementations must be thread safe; bodies are written from the app's
+ * network threads while they are read from the inspector's.
+ */
+interface ResponseBodyStore {
+  /**
+   * Start storing the body of {@code requestId}, replacing any previous one.  The body may not
+   * be readable until the returned stream is closed.
+   */
+  OutputStream openOutputStream(String requestId) throws IOException;
+
+  /**
+   * @throws FileNotFoundException If there's no body stored for {@code requestId}.
+   */
+  InputStream openInputStream(String requestId) throws IOException;
+
+  void remove(String requestId);
+
+  /**
+   * Remove all bodies, including any left behind by a previous process.
+   */
+  void clear();
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+/**
+ * Limits on the response bodies kept around by {@link ResponseBodyFileManager} for the Network
+ * tab.  When either limit is exceeded the least recently used bodies are evicted.
+ */
+public final class ResponseBodyStoreOptions {
+  /**
+   * Comparable to what Chrome itself keeps for a page, and enough for the last few hundred
+   * responses of a typical app.
+   */
+  public static final ResponseBodyStoreOptions DEFAULT = new ResponseBodyStoreOptions(
+      64L * 1024 * 1024 /* maxBytes */,
+      1000 /* maxEntries */,
+      0 /* segmentSize */,
+      false /* storeEncodedBodies */);
+
+  /**
+   * Upper bound on the disk space used by stored bodies.
+   */
+  public final long maxBytes;
+
+  /**
+   * Upper bound on the number of requests we keep bodies (and pretty printers) for.
+   */
+  public final int maxEntries;
+
+  /**
+   * When non-zero, bodies are appended to shared segment files of about this many bytes rather
+   * than each getting a file of their own.  This is much cheaper for apps making lots of requests
+   * with small responses.
+   */
+  public final long segmentSize;
+
+  /**
+   * When true, bodies in an encoding we know how to decode (gzip, deflate or one registered with
+   * {@link ContentDecoderRegistry}) are stored exactly as received and only decoded when they are
+   * looked at in the Network tab, rather than on the app's network thread as they are read.
+   * Most bodies are never looked at.  The catch is that the decoded size is not known up front,
+   * so the Network tab shows the encoded size for both.
+   */
+  public final boolean storeEncodedBodies;
+
+  public ResponseBodyStoreOptions(long maxBytes, int maxEntries) {
+    this(maxBytes, maxEntries, 0 /* segmentSize */);
+  }
+
+  public ResponseBodyStoreOptions(long maxBytes, int maxEntries, long segmentSize) {
+    this(maxBytes, maxEntries, segmentSize, false /* storeEncodedBodies */);
+  }
+
+  public ResponseBodyStoreOptions(
+      long maxBytes,
+      int maxEntries,
+      long segmentSize,
+      boolean storeEncodedBodies) {
+    if (maxBytes < 0 || segmentSize < 0) {
+      throw new IllegalArgumentException("Negative limit");
+    }
+    if (maxEntries < 1) {
+      throw new IllegalArgumentException("maxEntries must be at least 1");
+    }
+    this.maxBytes = maxBytes;
+    this.maxEntries = maxEntries;
+    this.segmentSize = segmentSize;
+    this.storeEncodedBodies = storeEncodedBodies;
+  }
+}
@@ -41,12 +41,11 @@ public final class ResponseHandlingInputStream extends FilterInputStream {
 
   /**
    * This stream will no longer be usable if {@link #close()} has been called on this stream.
+   * Only written with the lock held, but checked without it on every read.
    */
-  @GuardedBy("this")
-  private boolean mClosed;
+  private volatile boolean mClosed;
 
-  @GuardedBy("this")
-  private boolean mEofSeen;
+  private volatile boolean mEofSeen;
 
   @Nullable
   @GuardedBy("this")
@@ -57,7 +56,8 @@ public final class ResponseHandlingInputStream extends FilterInputStream {
   /**
    * @param inputStream
    * @param requestId the requestId to use when we call the {@link NetworkEventReporter}
-   * @param outputStream stream to write to.
+   * @param outputStream stream to write to.  This happens on the thread reading the response,
+   *     so it should be cheap; see {@link AsyncCaptureOutputStream}.
    * @param decompressedCounter Optional decompressing counting output stream which
    *     can be queried after each write to determine the number of decompressed bytes
    *     yielded.  Used to implement {@link ResponseHandler#onReadDecoded(int)}.
@@ -82,7 +82,7 @@ public final class ResponseHandlingInputStream extends FilterInputStream {
     mClosed = false;
   }
 
-  private synchronized int checkEOF(int n) {
+  private int checkEOF(int n) {
     if (n == -1) {
       closeOutputStreamQuietly();
       mResponseHandler.onEOF();
@@ -96,8 +96,9 @@ public final class ResponseHandlingInputStream extends FilterInputStream {
     try {
       int result = checkEOF(in.read());
       if (result != -1) {
-        mResponseHandler.onRead(1);
+        // Written first so that decoded bytes are counted before the read is reported.
         writeToOutputStream(result);
+        mResponseHandler.onRead(1);
       }
       return result;
     } catch (IOException ex) {
@@ -115,8 +116,8 @@ public final class ResponseHandlingInputStream extends FilterInputStream {
     try {
       int result = checkEOF(in.read(b, off, len));
       if (result != -1) {
-        mResponseHandler.onRead(result);
         writeToOutputStream(b, off, result);
+        mResponseHandler.onRead(result);
       }
       return result;
     } catch (IOException ex) {
@@ -235,7 +236,7 @@ public final class ResponseHandlingInputStream extends FilterInputStream {
    * of the streams, we close all the streams, and then propagate the first exception that
    * occurred when writing.
    */
-  private synchronized void writeToOutputStream(int oneByte) {
+  private void writeToOutputStream(int oneByte) {
     if (mClosed) {
       return;
     }
@@ -251,7 +252,7 @@ public final class ResponseHandlingInputStream extends FilterInputStream {
   /**
    * Same as {@link #writeToOutputStream(int)}, but we write a buffer instead.
    */
-  private synchronized void writeToOutputStream(byte[] b, int offset, int count) {
+  private void writeToOutputStream(byte[] b, int offset, int count) {
     if (mClosed) {
       return;
     }
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import com.facebook.stetho.common.LogRedirector;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Appends bodies to a small number of shared segment files instead of creating a file for each
+ * one, which for the typical API response of a few hundred bytes costs far more than writing the
+ * body itself.  An in-memory index maps each request to its slice of a segment, which is read
+ * back with a positioned read.
+ * <p>
+ * Removing a body only drops it from the index.  Segments whose bodies have all been removed are
+ * deleted, and once the segments take up more than the size budget the one with the most removed
+ * bytes is compacted by copying its remaining bodies forward.
+ * <p>
+ * Bodies are buffered in memory until they are complete so that concurrent responses don't
+ * interleave.  Those that outgrow {@link #MAX_BUFFERED_BODY_SIZE} are moved to a file of their
+ * own, as with {@link FileResponseBodyStore}.
+ */
+@ThreadSafe
+class SegmentedResponseBodyStore implements ResponseBodyStore {
+  private static final String TAG = "SegmentedResponseBodyStore";
+  private static final String SEGMENT_FILENAME_PREFIX = "network-response-segment-";
+
+  private static final int MAX_BUFFERED_BODY_SIZE = 64 * 1024;
+
+  private final File mDirectory;
+  private final long mSegmentSize;
+  private final long mMaxBytes;
+  private final FileResponseBodyStore mLargeBodyStore;
+
+  @GuardedBy("this")
+  private final HashMap<String, Location> mIndex = new HashMap<>();
+
+  /**
+   * Oldest first.  The last one is where new bodies are appended.
+   */
+  @GuardedBy("this")
+  private final ArrayList<Segment> mSegments = new ArrayList<>();
+
+  @GuardedBy("this")
+  private long mSegmentBytes;
+
+  @GuardedBy("this")
+  private int mNextSegmentId;
+
+  /**
+   * @param segmentSize Size after which a new segment is started.
+   * @param maxBytes Space the segments may take up before they are compacted.
+   */
+  public SegmentedResponseBodyStore(File directory, long segmentSize, long maxBytes) {
+    mDirectory = directory;
+    mSegmentSize = segmentSize;
+    mMaxBytes = maxBytes;
+    mLargeBodyStore = new FileResponseBodyStore(directory);
+  }
+
+  @Override
+  public OutputStream openOutputStream(String requestId) throws IOException {
+    return new PendingBody(requestId);
+  }
+
+  @Override
+  public synchronized InputStream openInputStream(String requestId) throws IOException {
+    Location location = mIndex.get(requestId);
+    if (location == null) {
+      throw new FileNotFoundException("No body stored for request " + requestId);
+    }
+    if (location.segment == null) {
+      return mLargeBodyStore.openInputStream(requestId);
+    }
+    byte[] body = new byte[location.length];
+    location.segment.read(location.offset, body);
+    return new ByteArrayInputStream(body);
+  }
+
+  @Override
+  public synchronized void remove(String requestId) {
+    Location location = mIndex.remove(requestId);
+    if (location != null) {
+      release(requestId, location);
+      compactIfNeeded();
+    }
+  }
+
+  @Override
+  public synchronized void clear() {
+    for (int i = 0, N = mSegments.size(); i < N; ++i) {
+      mSegments.get(i).close();
+    }
+    mSegments.clear();
+    mIndex.clear();
+    mSegmentBytes = 0;
+
+    FileResponseBodyStore.deleteFiles(mDirectory.listFiles(), SEGMENT_FILENAME_PREFIX);
+    mLargeBodyStore.clear();
+  }
+
+  private synchronized void commitBufferedBody(String requestId, byte[] body, int length)
+      throws IOException {
+    Segment segment = obtainActiveSegment();
+    long offset = segment.append(body, length);
+    mSegmentBytes += length;
+
+    Location oldLocation = mIndex.put(requestId, new Location(segment, offset, length));
+    if (oldLocation != null) {
+      release(requestId, oldLocation);
+    }
+    compactIfNeeded();
+  }
+
+  private synchronized void commitLargeBody(String requestId) {
+    Location oldLocation = mIndex.put(requestId, new Location(null, 0, 0));
+    if (oldLocation != null && oldLocation.segment != null) {
+      release(requestId, oldLocation);
+      compactIfNeeded();
+    }
+  }
+
+  @GuardedBy("this")
+  private void release(String requestId, Location location) {
+    final Segment segment = location.segment;
+    if (segment == null) {
+      mLargeBodyStore.remove(requestId);
+      return;
+    }
+    segment.liveBytes -= location.length;
+    if (segment.liveBytes == 0 && segment != getActiveSegment()) {
+      deleteSegment(segment);
+    }
+  }
+
+  @GuardedBy("this")
+  @Nullable
+  private Segment getActiveSegment() {
+    return mSegments.isEmpty() ? null : mSegments.get(mSegments.size() - 1);
+  }
+
+  @GuardedBy("this")
+  private Segment obtainActiveSegment() throws IOException {
+    Segment segment = getActiveSegment();
+    if (segment == null || segment.length >= mSegmentSize) {
+      FileResponseBodyStore.ensureDirectory(mDirectory);
+      segment = new Segment(new File(mDirectory, SEGMENT_FILENAME_PREFIX + mNextSegmentId++));
+      mSegments.add(segment);
+    }
+    return segment;
+  }
+
+  @GuardedBy("this")
+  private void deleteSegment(Segment segment) {
+    mSegments.remove(segment);
+    mSegmentBytes -= segment.length;
+    segment.close();
+    FileResponseBodyStore.deleteFile(segment.file);
+  }
+
+  @GuardedBy("this")
+  private void compactIfNeeded() {
+    while (mSegmentBytes > mMaxBytes) {
+      Segment victim = null;
+      long victimRemovedBytes = 0;
+      for (int i = 0, N = mSegments.size() - 1; i < N; ++i) {
+        final Segment segment = mSegments.get(i);
+        final long removedBytes = segment.length - segment.liveBytes;
+        if (removedBytes > victimRemovedBytes) {
+          victim = segment;
+          victimRemovedBytes = removedBytes;
+        }
+      }
+      if (victim == null) {
+        return;
+      }
+
+      try {
+        compact(victim);
+      } catch (IOException e) {
+        LogRedirector.w(TAG, "Failed to compact " + victim.file.getAbsolutePath(), e);
+        return;
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private void compact(Segment victim) throws IOException {
+    for (Map.Entry<String, Location> entry : mIndex.entrySet()) {
+      final Location location = entry.getValue();
+      if (location.segment == victim) {
+        byte[] body = new byte[location.length];
+        victim.read(location.offset, body);
+
+        Segment segment = obtainActiveSegment();
+        long offset = segment.append(body, body.length);
+        mSegmentBytes += body.length;
+        victim.liveBytes -= body.length;
+        entry.setValue(new Location(segment, offset, body.length));
+      }
+    }
+    deleteSegment(victim);
+  }
+
+  private static class Location {
+    /**
+     * Null for bodies stored in a file of their own.
+     */
+    public final @Nullable Segment segment;
+    public final long offset;
+    public final int length;
+
+    public Location(@Nullable Segment segment, long offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Guarded by the owning {@link SegmentedResponseBodyStore}.
+   */
+  private static class Segment {
+    public final File file;
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    public long length;
+    public long liveBytes;
+
+    public Segment(File file) throws IOException {
+      this.file = file;
+      mFile = new RandomAccessFile(file, "rw");
+      mChannel = mFile.getChannel();
+    }
+
+    /**
+     * @return Offset at which {@code body} was written.
+     */
+    public long append(byte[] body, int bodyLength) throws IOException {
+      final long offset = length;
+      ByteBuffer buffer = ByteBuffer.wrap(body, 0, bodyLength);
+      while (buffer.hasRemaining()) {
+        mChannel.write(buffer, offset + buffer.position());
+      }
+      length += bodyLength;
+      liveBytes += bodyLength;
+      return offset;
+    }
+
+    public void read(long offset, byte[] body) throws IOException {
+      ByteBuffer buffer = ByteBuffer.wrap(body);
+      while (buffer.hasRemaining()) {
+        if (mChannel.read(buffer, offset + buffer.position()) < 0) {
+          throw new EOFException("Truncated segment " + file.getAbsolutePath());
+        }
+      }
+    }
+
+    public void close() {
+      try {
+        mFile.close();
+      } catch (IOException e) {
+        LogRedirector.w(TAG, "Failed to close " + file.getAbsolutePath(), e);
+      }
+    }
+  }
+
+  private static class BodyBuffer extends ByteArrayOutputStream {
+    public byte[] getBuffer() {
+      return buf;
+    }
+  }
+
+  private class PendingBody extends OutputStream {
+    private final String mRequestId;
+    private @Nullable BodyBuffer mBuffer = new BodyBuffer();
+    private @Nullable OutputStream mLargeBodyOut;
+    private boolean mClosed;
+
+    public PendingBody(String requestId) {
+      mRequestId = requestId;
+    }
+
+    @Override
+    public void write(int oneByte) throws IOException {
+      if (mLargeBodyOut == null && mBuffer.size() + 1 > MAX_BUFFERED_BODY_SIZE) {
+        moveToLargeBodyStore();
+      }
+      if (mLargeBodyOut != null) {
+        mLargeBodyOut.write(oneByte);
+      } else {
+        mBuffer.write(oneByte);
+      }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+      if (mLargeBodyOut == null && mBuffer.size() + length > MAX_BUFFERED_BODY_SIZE) {
+        moveToLargeBodyStore();
+      }
+      if (mLargeBodyOut != null) {
+        mLargeBodyOut.write(buffer, offset, length);
+      } else {
+        mBuffer.write(buffer, offset, length);
+      }
+    }
+
+    private void moveToLargeBodyStore() throws IOException {
+      mLargeBodyOut = mLargeBodyStore.openOutputStream(mRequestId);
+      mLargeBodyOut.write(mBuffer.getBuffer(), 0, mBuffer.size());
+      mBuffer = null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (mLargeBodyOut != null) {
+        mLargeBodyOut.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (mClosed) {
+        return;
+      }
+      mClosed = true;
+      if (mLargeBodyOut != null) {
+        mLargeBodyOut.close();
+        commitLargeBody(mRequestId);
+      } else {
+        commitBufferedBody(mRequestId, mBuffer.getBuffer(), mBuffer.size());
+        mBuffer = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes on the first {@code maxBytes} written and quietly drops the rest, so that the stream
+ * being teed from is read to the end as usual.
+ */
+class TruncatingOutputStream extends FilterOutputStream {
+  private long mRemaining;
+
+  public TruncatingOutputStream(OutputStream out, long maxBytes) {
+    super(out);
+    mRemaining = maxBytes;
+  }
+
+  @Override
+  public void write(int oneByte) throws IOException {
+    if (mRemaining > 0) {
+      out.write(oneByte);
+      mRemaining--;
+    }
+  }
+
+  @Override
+  public void write(byte[] buffer) throws IOException {
+    write(buffer, 0, buffer.length);
+  }
+
+  @Override
+  public void write(byte[] buffer, int offset, int length) throws IOException {
+    int toWrite = (int) Math.min(length, mRemaining);
+    if (toWrite > 0) {
+      out.write(buffer, offset, toWrite);
+      mRemaining -= toWrite;
+    }
+  }
+}
@@ -9,9 +9,27 @@ package com.facebook.stetho.inspector.protocol;
 
 import com.facebook.stetho.inspector.DomainContext;
 
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
+
 /**
  * Marker interface that identifies implementations of subsystems in the WebKit Inspector protocol.
  */
 public interface ChromeDevtoolsDomain {
     default void onAttachContext(DomainContext domainContext) {}
+
+    /**
+     * Executor on which this domain's {@link ChromeDevtoolsMethod}s are invoked.  Domains with
+     * slow methods should provide one (see
+     * {@link com.facebook.stetho.inspector.helper.DomainExecutors}) so that they do not stall
+     * requests to other domains from the same peer.
+     *
+     * @return The executor to use, or null to invoke methods directly on the socket's reader
+     *     thread.
+     */
+    @Nullable
+    default Executor getDispatchExecutor() {
+        return null;
+    }
 }
@@ -8,17 +8,22 @@
 package com.facebook.stetho.inspector.protocol.module;
 
 import android.annotation.SuppressLint;
+import android.view.View;
 
+import com.facebook.stetho.common.Accumulator;
 import com.facebook.stetho.common.ListUtil;
 import com.facebook.stetho.common.LogUtil;
 import com.facebook.stetho.common.StringUtil;
 import com.facebook.stetho.common.Util;
 import com.facebook.stetho.inspector.elements.ComputedStyleAccumulator;
 import com.facebook.stetho.inspector.elements.Document;
+import com.facebook.stetho.inspector.elements.DocumentView;
+import com.facebook.stetho.inspector.elements.ElementInfo;
 import com.facebook.stetho.inspector.elements.Origin;
 import com.facebook.stetho.inspector.elements.StyleAccumulator;
 import com.facebook.stetho.inspector.elements.StyleRuleNameAccumulator;
 import com.facebook.stetho.inspector.helper.ChromePeerManager;
+import com.facebook.stetho.inspector.helper.DomainExecutors;
 import com.facebook.stetho.inspector.helper.PeersRegisteredListener;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcPeer;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcResult;
@@ -30,12 +35,46 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 public class CSS implements ChromeDevtoolsDomain {
   private final ChromePeerManager mPeerManager;
   private final Document mDocument;
   private final ObjectMapper mObjectMapper;
+  private final Executor mDispatchExecutor = DomainExecutors.newSerialExecutor("CSS");
+  private final StyleCacheInvalidator mStyleCacheInvalidator = new StyleCacheInvalidator();
+
+  /**
+   * Styles we've already sent, by node id.  DevTools asks for them again a lot (after every
+   * highlight, for instance), and this way it doesn't have to wait on the UI thread each time.
+   * Each entry also remembers enough about its view to notice, when it's looked up, the changes
+   * that come without an event, such as animations or the pressed state.
+   * Entries are only added and removed on the UI thread so that a result computed before an
+   * invalidation can't be stored after it, and only added while a peer has enabled us, since
+   * that's when we're told about changes.  The one exception is clearing them all once the last
+   * peer is gone, which {@link #mStyleCacheLock} keeps from racing with adding.
+   */
+  private final ConcurrentHashMap<Integer, CachedStyles<GetComputedStyleForNodeResult>>
+      mComputedStyles = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Integer, CachedStyles<GetMatchedStylesForNodeResult>>
+      mMatchedStyles = new ConcurrentHashMap<>();
+
+  /**
+   * Held to check {@link #mCachingStyles} and store a result together, so that the caches can't
+   * be cleared in between when the last peer goes away.  Never held while waiting on the UI
+   * thread.
+   */
+  private final Object mStyleCacheLock = new Object();
+
+  @GuardedBy("mStyleCacheLock")
+  private boolean mCachingStyles;
 
   public CSS(Document document) {
     mDocument = Util.throwIfNull(document);
@@ -44,12 +83,19 @@ public class CSS implements ChromeDevtoolsDomain {
     mPeerManager.setListener(new PeerManagerListener());
   }
 
+  @Override
+  public Executor getDispatchExecutor() {
+    return mDispatchExecutor;
+  }
+
   @ChromeDevtoolsMethod
   public void enable(JsonRpcPeer peer, JSONObject params) {
+    mPeerManager.addPeer(peer);
   }
 
   @ChromeDevtoolsMethod
   public void disable(JsonRpcPeer peer, JSONObject params) {
+    mPeerManager.removePeer(peer);
   }
 
   @ChromeDevtoolsMethod
@@ -58,6 +104,12 @@ public class CSS implements ChromeDevtoolsDomain {
         params,
         GetComputedStyleForNodeRequest.class);
 
+    final GetComputedStyleForNodeResult cachedResult =
+        getCachedStyles(mComputedStyles, request.nodeId);
+    if (cachedResult != null) {
+      return cachedResult;
+    }
+
     final GetComputedStyleForNodeResult result = new GetComputedStyleForNodeResult();
     result.computedStyle = new ArrayList<>();
 
@@ -84,6 +136,8 @@ public class CSS implements ChromeDevtoolsDomain {
                 result.computedStyle.add(property);
               }
             });
+
+        cacheStyles(mComputedStyles, request.nodeId, element, result);
       }
     });
 
@@ -97,6 +151,12 @@ public class CSS implements ChromeDevtoolsDomain {
         params,
         GetMatchedStylesForNodeRequest.class);
 
+    final GetMatchedStylesForNodeResult cachedResult =
+        getCachedStyles(mMatchedStyles, request.nodeId);
+    if (cachedResult != null) {
+      return cachedResult;
+    }
+
     final GetMatchedStylesForNodeResult result = new GetMatchedStylesForNodeResult();
     result.matchedCSSRules = new ArrayList<>();
     result.inherited = Collections.emptyList();
@@ -153,6 +213,8 @@ public class CSS implements ChromeDevtoolsDomain {
             result.matchedCSSRules.add(match);
           }
         });
+
+        cacheStyles(mMatchedStyles, request.nodeId, elementForNodeId, result);
       }
     });
 
@@ -199,6 +261,7 @@ public class CSS implements ChromeDevtoolsDomain {
 
         if (key != null) {
           mDocument.setElementStyle(elementForNodeId, ruleName, key, value);
+          invalidateStyles(nodeId);
         }
 
         mDocument.getElementStyles(elementForNodeId, ruleName, new StyleAccumulator() {
@@ -216,18 +279,238 @@ public class CSS implements ChromeDevtoolsDomain {
     return result;
   }
 
+  @Nullable
+  private <T> T getCachedStyles(Map<Integer, CachedStyles<T>> styles, int nodeId) {
+    final CachedStyles<T> cachedStyles = styles.get(nodeId);
+    if (cachedStyles == null) {
+      return null;
+    }
+    if (cachedStyles.viewSnapshot != null &&
+        !cachedStyles.viewSnapshot.matches(mDocument.getElementForNodeId(nodeId))) {
+      // Unless the UI thread has already replaced it.
+      styles.remove(nodeId, cachedStyles);
+      return null;
+    }
+    return cachedStyles.result;
+  }
+
+  private <T> void cacheStyles(
+      Map<Integer, CachedStyles<T>> styles,
+      int nodeId,
+      Object element,
+      T result) {
+    final CachedStyles<T> cachedStyles =
+        new CachedStyles<>(result, ViewSnapshot.takeIfView(element));
+    synchronized (mStyleCacheLock) {
+      if (mCachingStyles) {
+        styles.put(nodeId, cachedStyles);
+      }
+    }
+  }
+
+  private void invalidateStyles(int nodeId) {
+    mComputedStyles.remove(nodeId);
+    mMatchedStyles.remove(nodeId);
+  }
+
+  private void invalidateAllStyles() {
+    mComputedStyles.clear();
+    mMatchedStyles.clear();
+  }
+
+  private void invalidateStylesInSubtree(Object rootElement) {
+    if (mComputedStyles.isEmpty() && mMatchedStyles.isEmpty()) {
+      return;
+    }
+
+    final DocumentView view = mDocument.getDocumentView();
+    removeStylesInSubtree(mComputedStyles, rootElement, view);
+    removeStylesInSubtree(mMatchedStyles, rootElement, view);
+  }
+
+  private void removeStylesInSubtree(
+      Map<Integer, ?> styles,
+      Object rootElement,
+      DocumentView view) {
+    for (Iterator<Integer> iterator = styles.keySet().iterator(); iterator.hasNext(); ) {
+      final Object element = mDocument.getElementForNodeId(iterator.next());
+      // Elements that have left the tree are dropped too.
+      if (element == null || isInSubtree(element, rootElement, view)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private static boolean isInSubtree(Object element, Object rootElement, DocumentView view) {
+    while (element != null) {
+      if (element == rootElement) {
+        return true;
+      }
+      final ElementInfo info = view.getElementInfo(element);
+      element = (info != null) ? info.parentElement : null;
+    }
+    return false;
+  }
+
   private final class PeerManagerListener extends PeersRegisteredListener {
     @Override
     protected synchronized void onFirstPeerRegistered() {
       mDocument.addRef();
+      mDocument.addUpdateListener(mStyleCacheInvalidator);
+      synchronized (mStyleCacheLock) {
+        mCachingStyles = true;
+      }
     }
 
     @Override
     protected synchronized void onLastPeerUnregistered() {
+      synchronized (mStyleCacheLock) {
+        mCachingStyles = false;
+        invalidateAllStyles();
+      }
+      mDocument.removeUpdateListener(mStyleCacheInvalidator);
       mDocument.release();
     }
   }
 
+  /**
+   * Called on the UI thread, like everything that adds to the style caches.
+   */
+  private final class StyleCacheInvalidator implements Document.UpdateListener {
+    @Override
+    public void onAttributeModified(Object element, String name, String value) {
+      invalidateStyles(element);
+    }
+
+    @Override
+    public void onAttributeRemoved(Object element, String name) {
+      invalidateStyles(element);
+    }
+
+    @Override
+    public void onInspectRequested(Object element) {
+    }
+
+    @Override
+    public void onChildNodeRemoved(int parentNodeId, int nodeId) {
+      // Siblings and ancestors are likely to be laid out differently now.
+      invalidateAllStyles();
+    }
+
+    @Override
+    public void onChildNodeInserted(
+        DocumentView view,
+        Object element,
+        int parentNodeId,
+        int previousNodeId,
+        Accumulator<Object> insertedItems) {
+      invalidateAllStyles();
+    }
+
+    @Override
+    public void onStylesPossiblyChanged(Object element) {
+      invalidateStylesInSubtree(element);
+    }
+
+    private void invalidateStyles(Object element) {
+      Integer nodeId = mDocument.getNodeIdForElement(element);
+      if (nodeId != null) {
+        CSS.this.invalidateStyles(nodeId);
+      }
+    }
+  }
+
+  private static final class CachedStyles<T> {
+    public final T result;
+    public final @Nullable ViewSnapshot viewSnapshot;
+
+    public CachedStyles(T result, @Nullable ViewSnapshot viewSnapshot) {
+      this.result = result;
+      this.viewSnapshot = viewSnapshot;
+    }
+  }
+
+  /**
+   * The state of a view that most often changes between layout passes without any other event,
+   * and which is cheap enough to compare on every lookup.  Only plain fields are read, so it's
+   * harmless to do that off the UI thread; at worst a change is noticed on the next lookup.
+   */
+  private static final class ViewSnapshot {
+    private final int mLeft;
+    private final int mTop;
+    private final int mRight;
+    private final int mBottom;
+    private final float mAlpha;
+    private final float mTranslationX;
+    private final float mTranslationY;
+    private final float mScaleX;
+    private final float mScaleY;
+    private final float mRotation;
+    private final int mVisibility;
+    private final int mScrollX;
+    private final int mScrollY;
+    private final int mStateFlags;
+
+    @Nullable
+    public static ViewSnapshot takeIfView(Object element) {
+      return (element instanceof View) ? new ViewSnapshot((View) element) : null;
+    }
+
+    private ViewSnapshot(View view) {
+      mLeft = view.getLeft();
+      mTop = view.getTop();
+      mRight = view.getRight();
+      mBottom = view.getBottom();
+      mAlpha = view.getAlpha();
+      mTranslationX = view.getTranslationX();
+      mTranslationY = view.getTranslationY();
+      mScaleX = view.getScaleX();
+      mScaleY = view.getScaleY();
+      mRotation = view.getRotation();
+      mVisibility = view.getVisibility();
+      mScrollX = view.getScrollX();
+      mScrollY = view.getScrollY();
+      mStateFlags = getStateFlags(view);
+    }
+
+    /**
+     * @param element The element the snapshot was taken of, or null if it's gone.
+     */
+    public boolean matches(@Nullable Object element) {
+      if (!(element instanceof View)) {
+        return false;
+      }
+      final View view = (View) element;
+      return mLeft == view.getLeft() &&
+          mTop == view.getTop() &&
+          mRight == view.getRight() &&
+          mBottom == view.getBottom() &&
+          mAlpha == view.getAlpha() &&
+          mTranslationX == view.getTranslationX() &&
+          mTranslationY == view.getTranslationY() &&
+          mScaleX == view.getScaleX() &&
+          mScaleY == view.getScaleY() &&
+          mRotation == view.getRotation() &&
+          mVisibility == view.getVisibility() &&
+          mScrollX == view.getScrollX() &&
+          mScrollY == view.getScrollY() &&
+          mStateFlags == getStateFlags(view);
+    }
+
+    /**
+     * What the drawable state is made from.  {@link View#getDrawableState()} itself may rebuild
+     * it, which is only safe on the UI thread.
+     */
+    private static int getStateFlags(View view) {
+      return (view.isEnabled() ? 1 : 0) |
+          (view.isPressed() ? 1 << 1 : 0) |
+          (view.isSelected() ? 1 << 2 : 0) |
+          (view.isActivated() ? 1 << 3 : 0) |
+          (view.isFocused() ? 1 << 4 : 0) |
+          (view.isHovered() ? 1 << 5 : 0);
+    }
+  }
+
   private static class CSSComputedStyleProperty {
     @JsonProperty(required = true)
     public String name;
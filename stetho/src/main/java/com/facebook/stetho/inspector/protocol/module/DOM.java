@@ -23,6 +23,7 @@ import com.facebook.stetho.inspector.elements.NodeDescriptor;
 import com.facebook.stetho.inspector.elements.NodeType;
 import com.facebook.stetho.inspector.elements.android.ActivityTracker;
 import com.facebook.stetho.inspector.helper.ChromePeerManager;
+import com.facebook.stetho.inspector.helper.DomainExecutors;
 import com.facebook.stetho.inspector.helper.PeersRegisteredListener;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcException;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcPeer;
@@ -37,12 +38,17 @@ import com.facebook.stetho.json.annotation.JsonProperty;
 
 import org.json.JSONObject;
 
+import java.nio.channels.NotYetConnectedException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
@@ -54,10 +60,18 @@ public class DOM implements ChromeDevtoolsDomain {
   private final AtomicInteger mResultCounter;
   private final ChromePeerManager mPeerManager;
   private final DocumentUpdateListener mListener;
+  private final Executor mDispatchExecutor = DomainExecutors.newSerialExecutor("DOM");
 
   private ChildNodeRemovedEvent mCachedChildNodeRemovedEvent;
   private ChildNodeInsertedEvent mCachedChildNodeInsertedEvent;
 
+  /**
+   * What has been sent to each enabled peer, whose frontends expand the tree independently.
+   * Peers are added and removed on any thread, but their {@link PeerState} is only accessed on
+   * the {@link Document}'s thread.
+   */
+  private final Map<JsonRpcPeer, PeerState> mPeerStates = new ConcurrentHashMap<>();
+
   public DOM(Document document) {
     mObjectMapper = new ObjectMapper();
     mDocument = Util.throwIfNull(document);
@@ -69,6 +83,11 @@ public class DOM implements ChromeDevtoolsDomain {
     mListener = new DocumentUpdateListener();
   }
 
+  @Override
+  public Executor getDispatchExecutor() {
+    return mDispatchExecutor;
+  }
+
   @ChromeDevtoolsMethod
   public void enable(JsonRpcPeer peer, JSONObject params) {
     mPeerManager.addPeer(peer);
@@ -81,19 +100,62 @@ public class DOM implements ChromeDevtoolsDomain {
 
   @ChromeDevtoolsMethod
   public JsonRpcResult getDocument(JsonRpcPeer peer, JSONObject params) {
+    final GetDocumentRequest request =
+        mObjectMapper.convertValue(params, GetDocumentRequest.class);
+    final int depth = getDepth(params, request != null ? request.depth : 0);
     final GetDocumentResponse result = new GetDocumentResponse();
 
     result.root = mDocument.postAndWait(new UncheckedCallable<Node>() {
       @Override
       public Node call() {
+        // The frontend starts over with whatever we send it now.
+        PeerState state = getPeerState(peer);
+        state.expandedNodeIds.clear();
+        state.childNodeCountChangedNodeIds.clear();
         Object element = mDocument.getRootElement();
-        return createNodeForElement(element, mDocument.getDocumentView(), null);
+        return createNodeForElement(element, mDocument.getDocumentView(), depth, state, null);
       }
     });
 
     return result;
   }
 
+  @ChromeDevtoolsMethod
+  public void requestChildNodes(JsonRpcPeer peer, JSONObject params) throws JsonRpcException {
+    final RequestChildNodesRequest request =
+        mObjectMapper.convertValue(params, RequestChildNodesRequest.class);
+    final int depth = getDepth(params, request.depth);
+
+    boolean found = mDocument.postAndWait(() -> {
+      Object element = mDocument.getElementForNodeId(request.nodeId);
+      if (element == null) {
+        return false;
+      }
+      sendChildNodes(getPeerState(peer), element, mDocument.getDocumentView(), depth);
+      return true;
+    });
+
+    if (!found) {
+      throw new JsonRpcException(
+          new JsonRpcError(
+              JsonRpcError.ErrorCode.INVALID_PARAMS,
+              "No known nodeId=" + request.nodeId,
+              null /* data */));
+    }
+  }
+
+  /**
+   * @return The {@code depth} to send children to, as per the protocol's default of 1 and -1
+   *     meaning the entire sub-tree.  {@link ObjectMapper} fills in 0 for a missing field, so
+   *     whether it was given at all has to be checked on {@code params}.
+   */
+  private static int getDepth(@Nullable JSONObject params, int depth) {
+    if (params == null || !params.has("depth")) {
+      return 1;
+    }
+    return depth < 0 ? -1 : depth;
+  }
+
   @ChromeDevtoolsMethod
   public void setInspectedNode(JsonRpcPeer peer, JSONObject params) {
     final SetInspectedNodeRequest request = mObjectMapper.convertValue(
@@ -114,6 +176,16 @@ public class DOM implements ChromeDevtoolsDomain {
     );
     final PushNodesByBackendIdsToFrontendResponse response = new PushNodesByBackendIdsToFrontendResponse();
     response.nodeIds = request.backendNodeIds;
+    if (request.backendNodeIds != null) {
+      mDocument.postAndWait(() -> {
+        for (int i = 0, N = request.backendNodeIds.size(); i < N; ++i) {
+          Object element = mDocument.getElementForNodeId(request.backendNodeIds.get(i));
+          if (element != null) {
+            pushNodePath(getPeerState(peer), element);
+          }
+        }
+      });
+    }
     return response;
   }
 
@@ -135,6 +207,9 @@ public class DOM implements ChromeDevtoolsDomain {
       int y = (int) (request.y / tmp[1]);
       FindResult findResult = new FindResult();
       findNodeContainsPoint(element, mDocument.getDocumentView(), x, y, findResult);
+      if (findResult.id != 0) {
+        pushNodePath(getPeerState(peer), mDocument.getElementForNodeId(findResult.id));
+      }
       return findResult.id;
     });
 
@@ -299,14 +374,9 @@ public class DOM implements ChromeDevtoolsDomain {
         params,
         PerformSearchRequest.class);
 
+    // includeUserAgentShadowDOM has no equivalent for us, every element we know of is searched.
     final ArrayListAccumulator<Integer> resultNodeIds = new ArrayListAccumulator<>();
-
-    mDocument.postAndWait(new Runnable() {
-      @Override
-      public void run() {
-        mDocument.findMatchingElements(request.query, resultNodeIds);
-      }
-    });
+    mDocument.findMatchingElements(request.query, resultNodeIds);
 
     // Each search action has a unique ID so that
     // it can be queried later.
@@ -322,7 +392,8 @@ public class DOM implements ChromeDevtoolsDomain {
   }
 
   @ChromeDevtoolsMethod
-  public GetSearchResultsResponse getSearchResults(JsonRpcPeer peer, JSONObject params) {
+  public GetSearchResultsResponse getSearchResults(JsonRpcPeer peer, JSONObject params)
+      throws JsonRpcException {
     final GetSearchResultsRequest request = mObjectMapper.convertValue(
         params,
         GetSearchResultsRequest.class);
@@ -339,7 +410,26 @@ public class DOM implements ChromeDevtoolsDomain {
       return null;
     }
 
+    if (request.fromIndex < 0 ||
+        request.fromIndex > request.toIndex ||
+        request.toIndex > results.size()) {
+      throw new JsonRpcException(
+          new JsonRpcError(
+              JsonRpcError.ErrorCode.INVALID_PARAMS,
+              "Invalid range [" + request.fromIndex + ", " + request.toIndex + ") of " +
+                  results.size() + " results",
+              null /* data */));
+    }
+
     final List<Integer> resultsRange = results.subList(request.fromIndex, request.toIndex);
+    mDocument.postAndWait(() -> {
+      for (int i = 0, N = resultsRange.size(); i < N; ++i) {
+        Object element = mDocument.getElementForNodeId(resultsRange.get(i));
+        if (element != null) {
+          pushNodePath(getPeerState(peer), element);
+        }
+      }
+    });
 
     final GetSearchResultsResponse response = new GetSearchResultsResponse();
     response.nodeIds = resultsRange;
@@ -406,9 +496,36 @@ public class DOM implements ChromeDevtoolsDomain {
     }
   }
 
+  /**
+   * Only call on the {@link Document}'s thread.
+   */
+  private PeerState getPeerState(JsonRpcPeer peer) {
+    PeerState state = mPeerStates.get(peer);
+    // A peer which hasn't enabled us isn't sent any updates, so there's nothing to remember
+    // about what it knows.
+    return state != null ? state : new PeerState(peer);
+  }
+
+  private static void sendNotification(JsonRpcPeer peer, String method, Object params) {
+    try {
+      peer.invokeMethod(method, params, null /* callback */);
+    } catch (NotYetConnectedException e) {
+      LogUtil.e(e, "Error delivering %s", method);
+    }
+  }
+
+  /**
+   * @param depth How many levels of children to include, or -1 for all of them.
+   * @param state Records the nodes whose children are included.  May only be null if
+   *     {@code depth} is 0.
+   * @param processedElements Receives the element and all of its descendants, including those
+   *     below {@code depth}.
+   */
   private Node createNodeForElement(
       Object element,
       DocumentView view,
+      int depth,
+      @Nullable PeerState state,
       @Nullable Accumulator<Object> processedElements) {
     if (processedElements != null) {
       processedElements.store(element);
@@ -431,20 +548,107 @@ public class DOM implements ChromeDevtoolsDomain {
 
     // Children
     ElementInfo elementInfo = view.getElementInfo(element);
-    List<Node> childrenNodes = (elementInfo.children.size() == 0)
+    node.childNodeCount = elementInfo.children.size();
+    if (depth != 0) {
+      node.children =
+          createChildNodes(node.nodeId, elementInfo, view, depth, state, processedElements);
+    } else if (processedElements != null) {
+      storeDescendants(elementInfo, view, processedElements);
+    }
+
+    return node;
+  }
+
+  private List<Node> createChildNodes(
+      int parentNodeId,
+      ElementInfo parentInfo,
+      DocumentView view,
+      int depth,
+      PeerState state,
+      @Nullable Accumulator<Object> processedElements) {
+    state.expandedNodeIds.add(parentNodeId);
+
+    final int childDepth = depth > 0 ? depth - 1 : depth;
+    List<Node> childrenNodes = (parentInfo.children.size() == 0)
         ? Collections.<Node>emptyList()
-        : new ArrayList<Node>(elementInfo.children.size());
+        : new ArrayList<Node>(parentInfo.children.size());
 
-    for (int i = 0, N = elementInfo.children.size(); i < N; ++i) {
-      final Object childElement = elementInfo.children.get(i);
-      Node childNode = createNodeForElement(childElement, view, processedElements);
-      childrenNodes.add(childNode);
+    for (int i = 0, N = parentInfo.children.size(); i < N; ++i) {
+      final Object childElement = parentInfo.children.get(i);
+      childrenNodes.add(
+          createNodeForElement(childElement, view, childDepth, state, processedElements));
     }
+    return childrenNodes;
+  }
 
-    node.children = childrenNodes;
-    node.childNodeCount = childrenNodes.size();
+  private static void storeDescendants(
+      ElementInfo info,
+      DocumentView view,
+      Accumulator<Object> processedElements) {
+    for (int i = 0, N = info.children.size(); i < N; ++i) {
+      final Object childElement = info.children.get(i);
+      processedElements.store(childElement);
+      storeDescendants(view.getElementInfo(childElement), view, processedElements);
+    }
+  }
 
-    return node;
+  private void sendChildNodes(PeerState state, Object element, DocumentView view, int depth) {
+    SetChildNodesEvent event = new SetChildNodesEvent();
+    event.parentId = mDocument.getNodeIdForElement(element);
+    event.nodes = createChildNodes(
+        event.parentId,
+        view.getElementInfo(element),
+        view,
+        depth,
+        state,
+        null /* processedElements */);
+    sendNotification(state.peer, "DOM.setChildNodes", event);
+  }
+
+  /**
+   * Make sure the peer's frontend knows about {@code element}, which it must before we can refer
+   * to it, by sending it the children of those ancestors it hasn't seen yet.
+   */
+  private void pushNodePath(PeerState state, Object element) {
+    final DocumentView view = mDocument.getDocumentView();
+    final ArrayList<Object> ancestors = new ArrayList<>();
+    ElementInfo info = view.getElementInfo(element);
+    while (info != null && info.parentElement != null) {
+      ancestors.add(info.parentElement);
+      info = view.getElementInfo(info.parentElement);
+    }
+
+    for (int i = ancestors.size() - 1; i >= 0; --i) {
+      final Object ancestor = ancestors.get(i);
+      if (!state.expandedNodeIds.contains(mDocument.getNodeIdForElement(ancestor))) {
+        sendChildNodes(state, ancestor, view, 1 /* depth */);
+      }
+    }
+  }
+
+  /**
+   * Stop considering the node and its descendants expanded.  Must be called before the update
+   * removing the node is committed, while {@link Document#getDocumentView} still has its old
+   * children.
+   */
+  private void forgetExpandedSubtree(Set<Integer> expandedNodeIds, int nodeId) {
+    // The frontend only knows the children of expanded nodes, so a node which isn't expanded
+    // can't have any expanded descendants either.
+    if (!expandedNodeIds.remove(nodeId)) {
+      return;
+    }
+    final Object element = mDocument.getElementForNodeId(nodeId);
+    final ElementInfo info =
+        (element != null) ? mDocument.getDocumentView().getElementInfo(element) : null;
+    if (info == null) {
+      return;
+    }
+    for (int i = 0, N = info.children.size(); i < N; ++i) {
+      final Integer childNodeId = mDocument.getNodeIdForElement(info.children.get(i));
+      if (childNodeId != null) {
+        forgetExpandedSubtree(expandedNodeIds, childNodeId);
+      }
+    }
   }
 
   private ChildNodeInsertedEvent acquireChildNodeInsertedEvent() {
@@ -508,7 +712,10 @@ public class DOM implements ChromeDevtoolsDomain {
       } else {
         InspectNodeRequestedEvent message = new InspectNodeRequestedEvent();
         message.nodeId = nodeId;
-        mPeerManager.sendNotificationToPeers("DOM.inspectNodeRequested", message);
+        for (PeerState state : mPeerStates.values()) {
+          pushNodePath(state, element);
+          sendNotification(state.peer, "DOM.inspectNodeRequested", message);
+        }
       }
     }
 
@@ -519,7 +726,15 @@ public class DOM implements ChromeDevtoolsDomain {
 
       removedEvent.parentNodeId = parentNodeId;
       removedEvent.nodeId = nodeId;
-      mPeerManager.sendNotificationToPeers("DOM.childNodeRemoved", removedEvent);
+      for (PeerState state : mPeerStates.values()) {
+        // The frontend drops the node's entire sub-tree.
+        forgetExpandedSubtree(state.expandedNodeIds, nodeId);
+        if (state.expandedNodeIds.contains(parentNodeId)) {
+          sendNotification(state.peer, "DOM.childNodeRemoved", removedEvent);
+        } else {
+          state.childNodeCountChangedNodeIds.add(parentNodeId);
+        }
+      }
 
       releaseChildNodeRemovedEvent(removedEvent);
     }
@@ -530,15 +745,51 @@ public class DOM implements ChromeDevtoolsDomain {
         int parentNodeId,
         int previousNodeId,
         Accumulator<Object> insertedElements) {
-      ChildNodeInsertedEvent insertedEvent = acquireChildNodeInsertedEvent();
-
-      insertedEvent.parentNodeId = parentNodeId;
-      insertedEvent.previousNodeId = previousNodeId;
-      insertedEvent.node = createNodeForElement(element, view, insertedElements);
+      ChildNodeInsertedEvent insertedEvent = null;
+      for (PeerState state : mPeerStates.values()) {
+        if (!state.expandedNodeIds.contains(parentNodeId)) {
+          state.childNodeCountChangedNodeIds.add(parentNodeId);
+          continue;
+        }
+        if (insertedEvent == null) {
+          insertedEvent = acquireChildNodeInsertedEvent();
+          insertedEvent.parentNodeId = parentNodeId;
+          insertedEvent.previousNodeId = previousNodeId;
+          insertedEvent.node = createNodeForElement(
+              element,
+              view,
+              0 /* depth */,
+              null /* state */,
+              insertedElements);
+        }
+        sendNotification(state.peer, "DOM.childNodeInserted", insertedEvent);
+      }
 
-      mPeerManager.sendNotificationToPeers("DOM.childNodeInserted", insertedEvent);
+      if (insertedEvent != null) {
+        releaseChildNodeInsertedEvent(insertedEvent);
+      } else {
+        insertedElements.store(element);
+        storeDescendants(view.getElementInfo(element), view, insertedElements);
+      }
+    }
 
-      releaseChildNodeInsertedEvent(insertedEvent);
+    public void onDocumentUpdated() {
+      DocumentView view = mDocument.getDocumentView();
+      for (PeerState state : mPeerStates.values()) {
+        if (state.childNodeCountChangedNodeIds.isEmpty()) {
+          continue;
+        }
+        for (Integer nodeId : state.childNodeCountChangedNodeIds) {
+          Object element = mDocument.getElementForNodeId(nodeId);
+          if (element != null) {
+            ChildNodeCountUpdatedEvent message = new ChildNodeCountUpdatedEvent();
+            message.nodeId = nodeId;
+            message.childNodeCount = view.getElementInfo(element).children.size();
+            sendNotification(state.peer, "DOM.childNodeCountUpdated", message);
+          }
+        }
+        state.childNodeCountChangedNodeIds.clear();
+      }
     }
   }
 
@@ -555,6 +806,44 @@ public class DOM implements ChromeDevtoolsDomain {
       mDocument.removeUpdateListener(mListener);
       mDocument.release();
     }
+
+    @Override
+    protected void onPeerAdded(JsonRpcPeer peer) {
+      mPeerStates.put(peer, new PeerState(peer));
+    }
+
+    @Override
+    protected void onPeerRemoved(JsonRpcPeer peer) {
+      mPeerStates.remove(peer);
+    }
+  }
+
+  private static final class PeerState {
+    public final JsonRpcPeer peer;
+
+    /**
+     * Nodes whose children have been sent to the peer's frontend.  It only knows about those
+     * children, so changes under any other node just update its child count until it is expanded
+     * and asks for them with {@code DOM.requestChildNodes}.
+     */
+    public final Set<Integer> expandedNodeIds = new HashSet<>();
+
+    /**
+     * Unexpanded nodes whose children changed during the current document update.
+     */
+    public final Set<Integer> childNodeCountChangedNodeIds = new HashSet<>();
+
+    public PeerState(JsonRpcPeer peer) {
+      this.peer = peer;
+    }
+  }
+
+  private static class GetDocumentRequest {
+    @JsonProperty
+    public int depth;
+
+    @JsonProperty
+    public Boolean pierce;
   }
 
   private static class GetDocumentResponse implements JsonRpcResult {
@@ -683,6 +972,33 @@ public class DOM implements ChromeDevtoolsDomain {
     public Node node;
   }
 
+  private static class RequestChildNodesRequest {
+    @JsonProperty(required = true)
+    public int nodeId;
+
+    @JsonProperty
+    public int depth;
+
+    @JsonProperty
+    public Boolean pierce;
+  }
+
+  private static class SetChildNodesEvent {
+    @JsonProperty(required = true)
+    public int parentId;
+
+    @JsonProperty(required = true)
+    public List<Node> nodes;
+  }
+
+  private static class ChildNodeCountUpdatedEvent {
+    @JsonProperty(required = true)
+    public int nodeId;
+
+    @JsonProperty(required = true)
+    public int childNodeCount;
+  }
+
   private static class ChildNodeRemovedEvent {
     @JsonProperty(required = true)
     public int parentNodeId;
@@ -15,6 +15,7 @@ import android.util.SparseArray;
 import com.facebook.stetho.common.LogUtil;
 import com.facebook.stetho.common.Util;
 import com.facebook.stetho.inspector.helper.ChromePeerManager;
+import com.facebook.stetho.inspector.helper.DomainExecutors;
 import com.facebook.stetho.inspector.helper.ObjectIdMapper;
 import com.facebook.stetho.inspector.helper.PeersRegisteredListener;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcException;
@@ -33,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
@@ -63,6 +65,7 @@ public class Database implements ChromeDevtoolsDomain {
   private final ChromePeerManager mChromePeerManager;
   private final DatabasePeerRegistrationListener mPeerListener;
   private final ObjectMapper mObjectMapper;
+  private final Executor mDispatchExecutor = DomainExecutors.newSerialExecutor("Database");
 
   /**
    * Constructs the object.
@@ -75,6 +78,11 @@ public class Database implements ChromeDevtoolsDomain {
     mObjectMapper = new ObjectMapper();
   }
 
+  @Override
+  public Executor getDispatchExecutor() {
+    return mDispatchExecutor;
+  }
+
   public void add(DatabaseDriver2 databaseDriver) {
     mDatabaseDrivers.add(databaseDriver);
   }
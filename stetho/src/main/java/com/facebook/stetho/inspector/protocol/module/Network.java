@@ -10,14 +10,20 @@ package com.facebook.stetho.inspector.protocol.module;
 import android.content.Context;
 
 import com.facebook.stetho.common.Util;
+import com.facebook.stetho.inspector.helper.DomainExecutors;
+import com.facebook.stetho.inspector.jsonrpc.CoalescableParams;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcException;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcPeer;
+import com.facebook.stetho.inspector.jsonrpc.JsonRpcResponder;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcResult;
 import com.facebook.stetho.inspector.jsonrpc.protocol.JsonRpcError;
 import com.facebook.stetho.inspector.network.AsyncPrettyPrinterInitializer;
+import com.facebook.stetho.inspector.network.NetworkCapturePolicy;
 import com.facebook.stetho.inspector.network.NetworkPeerManager;
 import com.facebook.stetho.inspector.network.ResponseBodyData;
+import com.facebook.stetho.inspector.network.ResponseBodyEvictedException;
 import com.facebook.stetho.inspector.network.ResponseBodyFileManager;
+import com.facebook.stetho.inspector.network.ResponseBodyStoreOptions;
 import com.facebook.stetho.inspector.protocol.ChromeDevtoolsDomain;
 import com.facebook.stetho.inspector.protocol.ChromeDevtoolsMethod;
 import com.facebook.stetho.json.annotation.JsonProperty;
@@ -26,18 +32,33 @@ import com.facebook.stetho.json.annotation.JsonValue;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nullable;
 
 public class Network implements ChromeDevtoolsDomain {
   private final NetworkPeerManager mNetworkPeerManager;
   private final ResponseBodyFileManager mResponseBodyFileManager;
+  private final Executor mDispatchExecutor = DomainExecutors.newSerialExecutor("Network");
 
   public Network(Context context) {
-    mNetworkPeerManager = NetworkPeerManager.getOrCreateInstance(context);
+    this(context, ResponseBodyStoreOptions.DEFAULT);
+  }
+
+  public Network(Context context, ResponseBodyStoreOptions responseBodyStoreOptions) {
+    mNetworkPeerManager =
+        NetworkPeerManager.getOrCreateInstance(context, responseBodyStoreOptions);
     mResponseBodyFileManager = mNetworkPeerManager.getResponseBodyFileManager();
   }
 
+  @Override
+  public Executor getDispatchExecutor() {
+    return mDispatchExecutor;
+  }
+
   @ChromeDevtoolsMethod
   public void enable(JsonRpcPeer peer, JSONObject params) {
     mNetworkPeerManager.addPeer(peer);
@@ -53,37 +74,50 @@ public class Network implements ChromeDevtoolsDomain {
     // Not implemented...
   }
 
+  /**
+   * Responds once the body has been read (and pretty printed, which can take a while), without
+   * holding up the other Network methods in the meantime.
+   */
   @ChromeDevtoolsMethod
-  public JsonRpcResult getResponseBody(JsonRpcPeer peer, JSONObject params)
-      throws JsonRpcException {
+  public void getResponseBody(
+      JsonRpcPeer peer,
+      JSONObject params,
+      final JsonRpcResponder responder) {
+    String requestId;
     try {
-      String requestId = params.getString("requestId");
-      return readResponseBody(requestId);
-    } catch (IOException e) {
-      throw new JsonRpcException(new JsonRpcError(JsonRpcError.ErrorCode.INTERNAL_ERROR,
-          e.toString(),
-          null /* data */));
+      requestId = params.getString("requestId");
     } catch (JSONException e) {
-      throw new JsonRpcException(new JsonRpcError(JsonRpcError.ErrorCode.INTERNAL_ERROR,
+      responder.sendError(new JsonRpcException(new JsonRpcError(
+          JsonRpcError.ErrorCode.INTERNAL_ERROR,
           e.toString(),
-          null /* data */));
+          null /* data */)));
+      return;
     }
-  }
 
-  private GetResponseBodyResponse readResponseBody(String requestId)
-      throws IOException, JsonRpcException {
-    GetResponseBodyResponse response = new GetResponseBodyResponse();
-    ResponseBodyData bodyData;
-    try {
-      bodyData = mResponseBodyFileManager.readFile(requestId);
-    } catch (OutOfMemoryError e) {
-      throw new JsonRpcException(new JsonRpcError(JsonRpcError.ErrorCode.INTERNAL_ERROR,
-          e.toString(),
-          null /* data */));
-    }
-    response.body = bodyData.data;
-    response.base64Encoded = bodyData.base64Encoded;
-    return response;
+    mResponseBodyFileManager.readFileAsync(requestId, new ResponseBodyFileManager.ReadCallback() {
+      @Override
+      public void onBodyRead(ResponseBodyData bodyData) {
+        GetResponseBodyResponse response = new GetResponseBodyResponse();
+        response.body = bodyData.data;
+        response.base64Encoded = bodyData.base64Encoded;
+        responder.sendResult(response);
+      }
+
+      @Override
+      public void onFailure(IOException e) {
+        if (e instanceof ResponseBodyEvictedException || e instanceof FileNotFoundException) {
+          responder.sendError(new JsonRpcException(new JsonRpcError(
+              JsonRpcError.ErrorCode.INVALID_PARAMS,
+              e.getMessage(),
+              null /* data */)));
+        } else {
+          responder.sendError(new JsonRpcException(new JsonRpcError(
+              JsonRpcError.ErrorCode.INTERNAL_ERROR,
+              e.toString(),
+              null /* data */)));
+        }
+      }
+    });
   }
 
   /**
@@ -98,6 +132,14 @@ public class Network implements ChromeDevtoolsDomain {
     mNetworkPeerManager.setPrettyPrinterInitializer(initializer);
   }
 
+  /**
+   * Limit which requests are shown and how much of their bodies is kept, to keep the cost of
+   * inspecting a busy app down.  Everything is captured by default.
+   */
+  public void setCapturePolicy(NetworkCapturePolicy policy) {
+    mNetworkPeerManager.setCapturePolicy(policy);
+  }
+
   private static class GetResponseBodyResponse implements JsonRpcResult {
     @JsonProperty(required = true)
     public String body;
@@ -181,7 +223,7 @@ public class Network implements ChromeDevtoolsDomain {
     public Page.ResourceType type;
   }
 
-  public static class DataReceivedParams {
+  public static class DataReceivedParams implements CoalescableParams {
     @JsonProperty(required = true)
     public String requestId;
 
@@ -193,6 +235,23 @@ public class Network implements ChromeDevtoolsDomain {
 
     @JsonProperty(required = true)
     public int encodedDataLength;
+
+    @Override
+    public Object getCoalesceKey() {
+      return requestId;
+    }
+
+    @Nullable
+    @Override
+    public CoalescableParams coalesce(CoalescableParams newer) {
+      DataReceivedParams newerParams = (DataReceivedParams) newer;
+      DataReceivedParams merged = new DataReceivedParams();
+      merged.requestId = requestId;
+      merged.timestamp = newerParams.timestamp;
+      merged.dataLength = dataLength + newerParams.dataLength;
+      merged.encodedDataLength = encodedDataLength + newerParams.encodedDataLength;
+      return merged;
+    }
   }
 
   public static class Request {
@@ -272,42 +331,62 @@ public class Network implements ChromeDevtoolsDomain {
     public ResourceTiming timing;
   }
 
+  /**
+   * All but {@link #requestTime} (in seconds) are milliseconds relative to it, or -1 for phases
+   * that didn't happen.  {@link #pushStart} and {@link #pushEnd} are the exception: they're
+   * seconds like {@link #requestTime}, and 0 when nothing was pushed.
+   */
   public static class ResourceTiming {
     @JsonProperty(required = true)
     public double requestTime;
 
     @JsonProperty(required = true)
-    public double proxyStart;
+    public double proxyStart = -1;
+
+    @JsonProperty(required = true)
+    public double proxyEnd = -1;
 
     @JsonProperty(required = true)
-    public double proxyEnd;
+    public double dnsStart = -1;
 
     @JsonProperty(required = true)
-    public double dnsStart;
+    public double dnsEnd = -1;
 
     @JsonProperty(required = true)
-    public double dnsEnd;
+    public double connectStart = -1;
 
     @JsonProperty(required = true)
-    public double connectionStart;
+    public double connectEnd = -1;
 
     @JsonProperty(required = true)
-    public double connectionEnd;
+    public double sslStart = -1;
 
     @JsonProperty(required = true)
-    public double sslStart;
+    public double sslEnd = -1;
 
     @JsonProperty(required = true)
-    public double sslEnd;
+    public double workerStart = -1;
 
     @JsonProperty(required = true)
-    public double sendStart;
+    public double workerReady = -1;
 
     @JsonProperty(required = true)
-    public double sendEnd;
+    public double sendStart = -1;
+
+    @JsonProperty(required = true)
+    public double sendEnd = -1;
+
+    @JsonProperty(required = true)
+    public double pushStart;
+
+    @JsonProperty(required = true)
+    public double pushEnd;
+
+    @JsonProperty
+    public double receiveHeadersStart = -1;
 
     @JsonProperty(required = true)
-    public double receivedHeadersEnd;
+    public double receiveHeadersEnd = -1;
   }
 
   public static class WebSocketCreatedParams {
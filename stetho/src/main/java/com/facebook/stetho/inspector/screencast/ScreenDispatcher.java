@@ -22,6 +22,7 @@ import com.facebook.stetho.common.LogUtil;
 import com.facebook.stetho.inspector.jsonrpc.JsonRpcPeer;
 import com.facebook.stetho.inspector.jsonrpc.PeerService;
 import com.facebook.stetho.inspector.protocol.module.Page;
+import com.facebook.stetho.websocket.SendPolicy;
 
 import java.io.ByteArrayOutputStream;
 import java.util.Objects;
@@ -189,7 +190,8 @@ public class ScreenDispatcher extends PeerService implements InspectingObject.On
         mMetadata.deviceHeight = bitmap.getHeight();
         mMetadata.timestamp = System.currentTimeMillis() / 1000.;
         mEvent.metadata = mMetadata;
-        getPeer().invokeMethod("Page.screencastFrame", mEvent, null);
+        // Only the latest frame matters, so let it replace any frame the peer hasn't read yet.
+        getPeer().sendNotification("Page.screencastFrame", mEvent, SendPolicy.DROP_OLDEST);
     }
 
     private void updateCasting() {
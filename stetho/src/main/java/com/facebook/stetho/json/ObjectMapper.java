@@ -24,7 +24,9 @@ import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -48,6 +50,12 @@ public class ObjectMapper {
   @GuardedBy("mJsonValueMethodCache")
   private final Map<Class<?>, Method> mJsonValueMethodCache = new IdentityHashMap<>();
 
+  @GuardedBy("mClassBindingCache")
+  private final Map<Class<?>, ClassBinding> mClassBindingCache = new IdentityHashMap<>();
+
+  @GuardedBy("mEnumBindingCache")
+  private final Map<Class<?>, EnumBinding> mEnumBindingCache = new IdentityHashMap<>();
+
   /**
    * Support mapping between arbitrary classes and {@link JSONObject}.
    * <note>
@@ -97,23 +105,19 @@ public class ObjectMapper {
   private <T> T _convertFromJSONObject(JSONObject jsonObject, Class<T> type)
       throws NoSuchMethodException, IllegalAccessException, InvocationTargetException,
       InstantiationException, JSONException {
-    Constructor<T> constructor = type.getDeclaredConstructor((Class[]) null);
-    constructor.setAccessible(true);
-    T instance = constructor.newInstance();
-    Field[] fields = type.getFields();
+    ClassBinding binding = getClassBinding(type);
+    T instance = type.cast(binding.getConstructor().newInstance());
+    FieldBinding[] fields = binding.fields;
     for (int i = 0; i < fields.length; ++i) {
-      Field field = fields[i];
-      if (Modifier.isStatic(field.getModifiers())) {
-        continue;
-      }
-      Object value = jsonObject.opt(field.getName());
-      Object setValue = getValueForField(field, value);
+      FieldBinding fieldBinding = fields[i];
+      Object value = jsonObject.opt(fieldBinding.name);
+      Object setValue = getValueForField(fieldBinding, value);
       try {
-        field.set(instance, setValue);
+        fieldBinding.field.set(instance, setValue);
       } catch (IllegalArgumentException e) {
         throw new IllegalArgumentException(
             "Class: " + type.getSimpleName() + " " +
-            "Field: " + field.getName() + " type " + (setValue != null ?
+            "Field: " + fieldBinding.name + " type " + (setValue != null ?
                 setValue.getClass().getName()
                 : "null"),
             e);
@@ -122,165 +126,95 @@ public class ObjectMapper {
     return instance;
   }
 
-  private Object getValueForField(Field field, Object value)
+  private Object getValueForField(FieldBinding fieldBinding, Object value)
       throws JSONException {
-    try {
-      if (value != null) {
-        if (value == JSONObject.NULL) {
-          return null;
-        }
-        if (value.getClass() == field.getType()) {
-          return value;
-        }
-        if (value instanceof JSONObject) {
-          return convertValue(value, field.getType());
-        } else {
-          if (field.getType().isEnum()) {
-            return getEnumValue((String) value, field.getType().asSubclass(Enum.class));
-          } else if (value instanceof JSONArray) {
-            return convertArrayToList(field, (JSONArray) value);
-          } else if (value instanceof Number) {
-            // Need to convert value to Number This happens because json treats 1 as an Integer even
-            // if the field is supposed to be a Long
-            Number numberValue = (Number) value;
-            Class<?> clazz = field.getType();
-            if (clazz == Integer.class || clazz == int.class) {
-              return numberValue.intValue();
-            } else if (clazz == Long.class || clazz == long.class) {
-              return numberValue.longValue();
-            } else if (clazz == Double.class || clazz == double.class) {
-              return numberValue.doubleValue();
-            } else if (clazz == Float.class || clazz == float.class) {
-              return numberValue.floatValue();
-            } else if (clazz == Byte.class || clazz == byte.class) {
-              return numberValue.byteValue();
-            } else if (clazz == Short.class || clazz == short.class) {
-              return numberValue.shortValue();
-            } else {
-              throw new IllegalArgumentException("Not setup to handle class " + clazz.getName());
-            }
-          }
-        }
+    if (value == null) {
+      return fieldBinding.defaultValue;
+    }
+    if (value == JSONObject.NULL) {
+      return null;
+    }
+    Class<?> clazz = fieldBinding.type;
+    if (value.getClass() == clazz) {
+      return value;
+    }
+    if (value instanceof JSONObject) {
+      return convertValue(value, clazz);
+    } else if (fieldBinding.enumBinding != null) {
+      return fieldBinding.enumBinding.valueOf(value.toString());
+    } else if (value instanceof JSONArray) {
+      return convertArrayToList(fieldBinding, (JSONArray) value);
+    } else if (value instanceof Number) {
+      // Need to convert value to Number This happens because json treats 1 as an Integer even
+      // if the field is supposed to be a Long
+      Number numberValue = (Number) value;
+      if (clazz == Integer.class || clazz == int.class) {
+        return numberValue.intValue();
+      } else if (clazz == Long.class || clazz == long.class) {
+        return numberValue.longValue();
+      } else if (clazz == Double.class || clazz == double.class) {
+        return numberValue.doubleValue();
+      } else if (clazz == Float.class || clazz == float.class) {
+        return numberValue.floatValue();
+      } else if (clazz == Byte.class || clazz == byte.class) {
+        return numberValue.byteValue();
+      } else if (clazz == Short.class || clazz == short.class) {
+        return numberValue.shortValue();
       } else {
-        Class<?> clazz = field.getType();
-        if (clazz == Integer.class || clazz == int.class) {
-          return (int) 0;
-        } else if (clazz == Long.class || clazz == long.class) {
-          return (long) 0;
-        } else if (clazz == Double.class || clazz == double.class) {
-          return (double) 0;
-        } else if (clazz == Float.class || clazz == float.class) {
-          return (float) 0;
-        } else if (clazz == Byte.class || clazz == byte.class) {
-          return (byte) 0;
-        } else if (clazz == Short.class || clazz == short.class) {
-          return (short) 0;
-        } else if (clazz == Boolean.class || clazz == boolean.class) {
-          return false;
-        }
+        throw new IllegalArgumentException("Not setup to handle class " + clazz.getName());
       }
-    } catch (IllegalAccessException e) {
-      throw new IllegalArgumentException("Unable to set value for field " + field.getName(), e);
     }
     return value;
   }
 
-  private Enum getEnumValue(String value, Class<? extends Enum> clazz) {
-    Method method = getJsonValueMethod(clazz);
-    if (method != null) {
-      return getEnumByMethod(value, clazz, method);
-    } else {
-      return Enum.valueOf(clazz, value);
-    }
-  }
-
-  /**
-   * In this case we know that there is an {@link Enum} decorated with {@link JsonValue}. This means
-   * that we need to iterate through all of the values of the {@link Enum} returned by the given
-   * {@link Method} to check the given value.
-   * @param value
-   * @param clazz
-   * @param method
-   * @return
-   */
-  private Enum getEnumByMethod(String value, Class<? extends Enum> clazz, Method method) {
-    Enum[] enumValues = clazz.getEnumConstants();
-    // Start at the front to ensure first always wins
-    for (int i = 0; i < enumValues.length; ++i) {
-      Enum enumValue = enumValues[i];
-      try {
-        Object o = method.invoke(enumValue);
-        if (o != null) {
-          if (o.toString().equals(value)) {
-            return enumValue;
-          }
-        }
-      } catch (Exception ex) {
-        throw new IllegalArgumentException(ex);
-      }
+  private List<Object> convertArrayToList(FieldBinding fieldBinding, JSONArray array)
+      throws JSONException {
+    Class<?> arrayClass = fieldBinding.listElementType;
+    if (arrayClass == null) {
+      throw new IllegalArgumentException(fieldBinding.listElementTypeError);
     }
-    throw new IllegalArgumentException("No enum constant " + clazz.getName() + "." + value);
-  }
-
-  private List<Object> convertArrayToList(Field field, JSONArray array)
-      throws IllegalAccessException, JSONException {
-    if (List.class.isAssignableFrom(field.getType())) {
-      ParameterizedType parameterizedType = (ParameterizedType) field.getGenericType();
-      Type[] types = parameterizedType.getActualTypeArguments();
-      if (types.length != 1) {
-        throw new IllegalArgumentException("Only able to handle a single type in a list " +
-            field.getName());
-      }
-      Class arrayClass = (Class)types[0];
-      List<Object> objectList = new ArrayList<Object>();
-      for (int i = 0; i < array.length(); ++i) {
-        if (arrayClass.isEnum()) {
-          objectList.add(getEnumValue(array.getString(i), arrayClass));
-        } else if (canDirectlySerializeClass(arrayClass)) {
-          objectList.add(array.get(i));
+    EnumBinding enumBinding = fieldBinding.listElementEnumBinding;
+    boolean directlySerializable = canDirectlySerializeClass(arrayClass);
+    int length = array.length();
+    List<Object> objectList = new ArrayList<Object>(length);
+    for (int i = 0; i < length; ++i) {
+      if (enumBinding != null) {
+        objectList.add(enumBinding.valueOf(array.getString(i)));
+      } else if (directlySerializable) {
+        objectList.add(array.get(i));
+      } else {
+        JSONObject jsonObject = array.getJSONObject(i);
+        if (jsonObject == null) {
+          objectList.add(null);
         } else {
-          JSONObject jsonObject = array.getJSONObject(i);
-          if (jsonObject == null) {
-            objectList.add(null);
-          } else {
-            objectList.add(convertValue(jsonObject, arrayClass));
-          }
+          objectList.add(convertValue(jsonObject, arrayClass));
         }
       }
-      return objectList;
-    } else {
-      throw new IllegalArgumentException("only know how to deserialize List<?> on field "
-          + field.getName());
     }
+    return objectList;
   }
 
   private JSONObject _convertToJSONObject(Object fromValue)
       throws JSONException, InvocationTargetException, IllegalAccessException {
     JSONObject jsonObject = new JSONObject();
-    Field[] fields = fromValue.getClass().getFields();
+    FieldBinding[] fields = getClassBinding(fromValue.getClass()).properties;
     for (int i = 0; i < fields.length; ++i) {
-      Field field = fields[i];
-      if (Modifier.isStatic(field.getModifiers())) {
-        continue;
+      FieldBinding propertyField = fields[i];
+      Field field = propertyField.field;
+      // AutoBox here ...
+      Object value = field.get(fromValue);
+      Class clazz = field.getType();
+      if (value != null) {
+        clazz = value.getClass();
       }
-      JsonProperty property = field.getAnnotation(JsonProperty.class);
-      if (property != null) {
-        // AutoBox here ...
-        Object value = field.get(fromValue);
-        Class clazz = field.getType();
-        if (value != null) {
-          clazz = value.getClass();
-        }
-        String name = field.getName();
-        if (property.required() && value == null) {
-          value = JSONObject.NULL;
-        } else if (value == JSONObject.NULL) {
-          // Leave it as null in this case.
-        } else {
-          value = getJsonValue(value, clazz, field);
-        }
-        jsonObject.put(name, value);
+      if (propertyField.required && value == null) {
+        value = JSONObject.NULL;
+      } else if (value == JSONObject.NULL) {
+        // Leave it as null in this case.
+      } else {
+        value = getJsonValue(value, clazz, field);
       }
+      jsonObject.put(propertyField.name, value);
     }
     return jsonObject;
   }
@@ -330,6 +264,163 @@ public class ObjectMapper {
     return array;
   }
 
+  /**
+   * Streaming alternative to {@code convertValue(fromValue, JSONObject.class).toString()} which
+   * writes directly into {@code writer} without building an intermediate {@link JSONObject} tree
+   * or {@link String}.  The output is identical to the {@link JSONObject} path.
+   * <p>
+   * {@code fromValue} may be an arbitrary object with {@link JsonProperty} fields, a
+   * {@link JSONObject}, a {@link JSONArray}, a {@link List} or any directly serializable value.
+   *
+   * @throws IllegalArgumentException when there is an error converting.
+   */
+  public void writeValue(Utf8JsonWriter writer, @Nullable Object fromValue)
+      throws IllegalArgumentException {
+    try {
+      writeJsonValue(writer, fromValue);
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException(e);
+    } catch (JSONException e) {
+      throw new IllegalArgumentException(e);
+    } catch (InvocationTargetException e) {
+      throw ExceptionUtil.propagate(e.getCause());
+    }
+  }
+
+  private void writeJsonValue(Utf8JsonWriter writer, @Nullable Object value)
+      throws IllegalAccessException, InvocationTargetException, JSONException {
+    if (value == null || value == JSONObject.NULL) {
+      writer.nullValue();
+      return;
+    }
+    Class<?> clazz = value.getClass();
+    if (clazz == String.class) {
+      writer.value((String) value);
+    } else if (clazz == Boolean.class) {
+      writer.value(((Boolean) value).booleanValue());
+    } else if (clazz == Integer.class || clazz == Long.class
+        || clazz == Short.class || clazz == Byte.class) {
+      writer.value(((Number) value).longValue());
+    } else if (value instanceof Number) {
+      writeNumber(writer, (Number) value);
+    } else if (clazz == Character.class) {
+      writer.value(value.toString());
+    } else if (value instanceof JSONObject) {
+      writeJSONObject(writer, (JSONObject) value);
+    } else if (value instanceof JSONArray) {
+      writeJSONArray(writer, (JSONArray) value);
+    } else if (value instanceof List) {
+      writer.beginArray();
+      List<?> list = (List<?>) value;
+      for (int i = 0, N = list.size(); i < N; ++i) {
+        writeJsonValue(writer, list.get(i));
+      }
+      writer.endArray();
+    } else {
+      Method m = getJsonValueMethod(clazz);
+      if (m != null) {
+        writeJsonValue(writer, m.invoke(value));
+      } else {
+        writeObject(writer, value);
+      }
+    }
+  }
+
+  private void writeObject(Utf8JsonWriter writer, Object fromValue)
+      throws IllegalAccessException, InvocationTargetException, JSONException {
+    writer.beginObject();
+    FieldBinding[] fields = getClassBinding(fromValue.getClass()).properties;
+    for (int i = 0; i < fields.length; ++i) {
+      FieldBinding propertyField = fields[i];
+      Object value = propertyField.field.get(fromValue);
+      if (value == null) {
+        // Mirrors JSONObject.put(name, null) which removes the mapping entirely.
+        if (propertyField.required) {
+          writer.name(propertyField.name).nullValue();
+        }
+      } else {
+        writer.name(propertyField.name);
+        writeJsonValue(writer, value);
+      }
+    }
+    writer.endObject();
+  }
+
+  private void writeJSONObject(Utf8JsonWriter writer, JSONObject jsonObject)
+      throws IllegalAccessException, InvocationTargetException, JSONException {
+    writer.beginObject();
+    Iterator<String> keys = jsonObject.keys();
+    while (keys.hasNext()) {
+      String key = keys.next();
+      writer.name(key);
+      writeJsonValue(writer, jsonObject.get(key));
+    }
+    writer.endObject();
+  }
+
+  private void writeJSONArray(Utf8JsonWriter writer, JSONArray jsonArray)
+      throws IllegalAccessException, InvocationTargetException, JSONException {
+    writer.beginArray();
+    for (int i = 0, N = jsonArray.length(); i < N; ++i) {
+      writeJsonValue(writer, jsonArray.opt(i));
+    }
+    writer.endArray();
+  }
+
+  private static void writeNumber(Utf8JsonWriter writer, Number value) {
+    // JSON has no support for NaN, Infinity or -Infinity, so we serialize
+    // then as strings. Google Chrome's inspector will accept them just fine.
+    double doubleValue = value.doubleValue();
+    if (Double.isNaN(doubleValue)) {
+      writer.value("NaN");
+    } else if (doubleValue == Double.POSITIVE_INFINITY) {
+      writer.value("Infinity");
+    } else if (doubleValue == Double.NEGATIVE_INFINITY) {
+      writer.value("-Infinity");
+    } else {
+      writer.value(value);
+    }
+  }
+
+  /**
+   * @return the reflective metadata for {@code clazz}, resolved once and cached so that neither
+   *     serialization nor deserialization reflect over the class on every call.
+   */
+  private ClassBinding getClassBinding(Class<?> clazz) {
+    synchronized (mClassBindingCache) {
+      ClassBinding binding = mClassBindingCache.get(clazz);
+      if (binding == null) {
+        binding = new ClassBinding(clazz, getFieldBindings(clazz));
+        mClassBindingCache.put(clazz, binding);
+      }
+      return binding;
+    }
+  }
+
+  private FieldBinding[] getFieldBindings(Class<?> clazz) {
+    Field[] fields = clazz.getFields();
+    ArrayList<FieldBinding> fieldBindings = new ArrayList<>(fields.length);
+    for (int i = 0; i < fields.length; ++i) {
+      Field field = fields[i];
+      if (Modifier.isStatic(field.getModifiers())) {
+        continue;
+      }
+      fieldBindings.add(new FieldBinding(field));
+    }
+    return fieldBindings.toArray(new FieldBinding[fieldBindings.size()]);
+  }
+
+  private EnumBinding getEnumBinding(Class<? extends Enum> clazz) {
+    synchronized (mEnumBindingCache) {
+      EnumBinding binding = mEnumBindingCache.get(clazz);
+      if (binding == null) {
+        binding = new EnumBinding(clazz, getJsonValueMethod(clazz));
+        mEnumBindingCache.put(clazz, binding);
+      }
+      return binding;
+    }
+  }
+
   /**
    *
    * @param clazz
@@ -364,6 +455,180 @@ public class ObjectMapper {
         clazz.equals(String.class);
   }
 
+  /**
+   * Per-class metadata shared by serialization and deserialization.
+   */
+  private static class ClassBinding {
+    private final Class<?> mType;
+
+    /**
+     * All public, non-static fields.  These are populated when deserializing.
+     */
+    public final FieldBinding[] fields;
+
+    /**
+     * Subset of {@link #fields} annotated with {@link JsonProperty}.  Only these are serialized.
+     */
+    public final FieldBinding[] properties;
+
+    /**
+     * Resolved lazily since types that are only ever serialized need not have a default
+     * constructor.
+     */
+    @Nullable
+    private volatile Constructor<?> mConstructor;
+
+    public ClassBinding(Class<?> type, FieldBinding[] fields) {
+      mType = type;
+      this.fields = fields;
+      ArrayList<FieldBinding> properties = new ArrayList<>(fields.length);
+      for (int i = 0; i < fields.length; ++i) {
+        if (fields[i].isProperty) {
+          properties.add(fields[i]);
+        }
+      }
+      this.properties = properties.toArray(new FieldBinding[properties.size()]);
+    }
+
+    public Constructor<?> getConstructor() throws NoSuchMethodException {
+      Constructor<?> constructor = mConstructor;
+      if (constructor == null) {
+        constructor = mType.getDeclaredConstructor((Class[]) null);
+        constructor.setAccessible(true);
+        mConstructor = constructor;
+      }
+      return constructor;
+    }
+  }
+
+  private class FieldBinding {
+    public final Field field;
+    public final String name;
+    public final Class<?> type;
+    public final boolean isProperty;
+    public final boolean required;
+
+    /**
+     * Value to assign when the field is absent from the JSON input.
+     */
+    @Nullable
+    public final Object defaultValue;
+
+    @Nullable
+    public final EnumBinding enumBinding;
+
+    /**
+     * Element type when {@link #type} is a {@link List}, or null if it could not be resolved in
+     * which case {@link #listElementTypeError} explains why.
+     */
+    @Nullable
+    public final Class<?> listElementType;
+    @Nullable
+    public final EnumBinding listElementEnumBinding;
+    @Nullable
+    public final String listElementTypeError;
+
+    public FieldBinding(Field field) {
+      // Public fields of the private request classes used by the domains still need this.
+      field.setAccessible(true);
+      this.field = field;
+      this.name = field.getName();
+      this.type = field.getType();
+      JsonProperty property = field.getAnnotation(JsonProperty.class);
+      this.isProperty = property != null;
+      this.required = property != null && property.required();
+      this.defaultValue = getDefaultValue(type);
+      this.enumBinding = type.isEnum() ? getEnumBinding(type.asSubclass(Enum.class)) : null;
+
+      Class<?> elementType = null;
+      String elementTypeError = null;
+      if (!List.class.isAssignableFrom(type)) {
+        elementTypeError = "only know how to deserialize List<?> on field " + name;
+      } else if (!(field.getGenericType() instanceof ParameterizedType)) {
+        elementTypeError = "Unable to resolve list element type of field " + name;
+      } else {
+        Type[] types = ((ParameterizedType) field.getGenericType()).getActualTypeArguments();
+        if (types.length != 1) {
+          elementTypeError = "Only able to handle a single type in a list " + name;
+        } else if (!(types[0] instanceof Class)) {
+          elementTypeError = "Unable to resolve list element type of field " + name;
+        } else {
+          elementType = (Class<?>) types[0];
+        }
+      }
+      this.listElementType = elementType;
+      this.listElementTypeError = elementTypeError;
+      this.listElementEnumBinding = (elementType != null && elementType.isEnum())
+          ? getEnumBinding(elementType.asSubclass(Enum.class))
+          : null;
+    }
+  }
+
+  /**
+   * Lookup table from the JSON representation of each constant to the constant itself.  The
+   * JSON representation is the result of the {@link JsonValue} method if present, otherwise the
+   * constant's name.
+   */
+  private static class EnumBinding {
+    private final Class<? extends Enum> mType;
+    private final HashMap<String, Enum> mConstants = new HashMap<>();
+
+    public EnumBinding(Class<? extends Enum> type, @Nullable Method jsonValueMethod) {
+      mType = type;
+      Enum[] enumValues = type.getEnumConstants();
+      for (int i = 0; i < enumValues.length; ++i) {
+        Enum enumValue = enumValues[i];
+        String key;
+        if (jsonValueMethod != null) {
+          Object o;
+          try {
+            o = jsonValueMethod.invoke(enumValue);
+          } catch (Exception ex) {
+            throw new IllegalArgumentException(ex);
+          }
+          if (o == null) {
+            continue;
+          }
+          key = o.toString();
+        } else {
+          key = enumValue.name();
+        }
+        // Start at the front to ensure first always wins
+        if (!mConstants.containsKey(key)) {
+          mConstants.put(key, enumValue);
+        }
+      }
+    }
+
+    public Enum valueOf(String value) {
+      Enum enumValue = mConstants.get(value);
+      if (enumValue == null) {
+        throw new IllegalArgumentException("No enum constant " + mType.getName() + "." + value);
+      }
+      return enumValue;
+    }
+  }
+
+  @Nullable
+  private static Object getDefaultValue(Class<?> clazz) {
+    if (clazz == Integer.class || clazz == int.class) {
+      return (int) 0;
+    } else if (clazz == Long.class || clazz == long.class) {
+      return (long) 0;
+    } else if (clazz == Double.class || clazz == double.class) {
+      return (double) 0;
+    } else if (clazz == Float.class || clazz == float.class) {
+      return (float) 0;
+    } else if (clazz == Byte.class || clazz == byte.class) {
+      return (byte) 0;
+    } else if (clazz == Short.class || clazz == short.class) {
+      return (short) 0;
+    } else if (clazz == Boolean.class || clazz == boolean.class) {
+      return false;
+    }
+    return null;
+  }
+
   private static boolean isWrapperOrPrimitiveType(Class<?> clazz) {
     return clazz.isPrimitive() ||
         clazz.equals(Boolean.class) ||
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.json;
+
+import com.facebook.stetho.common.Utf8Charset;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Minimal streaming JSON writer that encodes directly into a growable UTF-8 byte buffer.  Unlike
+ * {@link org.json.JSONStringer} no intermediate {@link String} is produced so the buffer can be
+ * handed straight to the transport and then {@link #reset} for the next message.
+ * <p>
+ * Output is intended to be byte-for-byte compatible with {@code JSONObject.toString()} so that
+ * the two serialization paths in {@link ObjectMapper} are interchangeable.
+ */
+@NotThreadSafe
+public class Utf8JsonWriter {
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /**
+   * Buffers which grew beyond this size to hold an unusually large message (for instance a full
+   * {@code DOM.getDocument} response) are released on {@link #reset} rather than pinned forever.
+   */
+  private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+  /**
+   * Strings are escaped in chunks of this many chars so that a huge value (e.g. a base64 encoded
+   * response body) doesn't require reserving a worst case buffer for the whole thing up front.
+   */
+  private static final int CHUNK_CHARS = 4096;
+
+  private static final byte[] HEX = {
+      '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+  };
+
+  private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+  private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+  private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+  private static final Double NEGATIVE_ZERO = -0d;
+
+  private byte[] mBuffer = new byte[INITIAL_CAPACITY];
+  private int mSize;
+
+  /**
+   * One entry per open object or array; true until the first element has been written so we
+   * know whether a separating comma is needed.
+   */
+  private boolean[] mFirstInScope = new boolean[16];
+  private int mDepth;
+
+  /**
+   * Set after {@link #name} so that the following value does not emit a separator.
+   */
+  private boolean mAfterName;
+
+  public byte[] getBuffer() {
+    return mBuffer;
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  @Override
+  public String toString() {
+    return new String(mBuffer, 0, mSize, Utf8Charset.INSTANCE);
+  }
+
+  /**
+   * Discard all written content so the writer can be used for another message.
+   */
+  public void reset() {
+    mSize = 0;
+    mDepth = 0;
+    mAfterName = false;
+    if (mBuffer.length > MAX_RETAINED_CAPACITY) {
+      mBuffer = new byte[INITIAL_CAPACITY];
+    }
+  }
+
+  public Utf8JsonWriter beginObject() {
+    open();
+    writeByte('{');
+    return this;
+  }
+
+  public Utf8JsonWriter endObject() {
+    close();
+    writeByte('}');
+    return this;
+  }
+
+  public Utf8JsonWriter beginArray() {
+    open();
+    writeByte('[');
+    return this;
+  }
+
+  public Utf8JsonWriter endArray() {
+    close();
+    writeByte(']');
+    return this;
+  }
+
+  public Utf8JsonWriter name(String name) {
+    beforeValue();
+    writeQuoted(name);
+    writeByte(':');
+    mAfterName = true;
+    return this;
+  }
+
+  public Utf8JsonWriter nullValue() {
+    beforeValue();
+    writeBytes(NULL);
+    return this;
+  }
+
+  public Utf8JsonWriter value(boolean value) {
+    beforeValue();
+    writeBytes(value ? TRUE : FALSE);
+    return this;
+  }
+
+  public Utf8JsonWriter value(long value) {
+    beforeValue();
+    writeAscii(Long.toString(value));
+    return this;
+  }
+
+  /**
+   * Writes a number using the same rules as {@code JSONObject.numberToString}: numbers with an
+   * integral value of any type are written without a fractional part, except that a {@link Double}
+   * negative zero is written as {@code -0}, and all other numbers use {@link Object#toString}.
+   */
+  public Utf8JsonWriter value(Number value) {
+    beforeValue();
+    if (value.equals(NEGATIVE_ZERO)) {
+      writeAscii("-0");
+      return this;
+    }
+    long longValue = value.longValue();
+    if (value.doubleValue() == (double) longValue) {
+      writeAscii(Long.toString(longValue));
+    } else {
+      writeAscii(value.toString());
+    }
+    return this;
+  }
+
+  public Utf8JsonWriter value(String value) {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    writeQuoted(value);
+    return this;
+  }
+
+  private void open() {
+    beforeValue();
+    if (mDepth == mFirstInScope.length) {
+      boolean[] newScopes = new boolean[mDepth * 2];
+      System.arraycopy(mFirstInScope, 0, newScopes, 0, mDepth);
+      mFirstInScope = newScopes;
+    }
+    mFirstInScope[mDepth++] = true;
+  }
+
+  private void close() {
+    if (mDepth == 0) {
+      throw new IllegalStateException("Nesting problem");
+    }
+    mDepth--;
+    mAfterName = false;
+  }
+
+  private void beforeValue() {
+    if (mAfterName) {
+      mAfterName = false;
+      return;
+    }
+    if (mDepth > 0) {
+      if (mFirstInScope[mDepth - 1]) {
+        mFirstInScope[mDepth - 1] = false;
+      } else {
+        writeByte(',');
+      }
+    }
+  }
+
+  private void writeQuoted(String value) {
+    writeByte('"');
+    int length = value.length();
+    int start = 0;
+    while (start < length) {
+      start = writeEscapedChunk(value, start, Math.min(length, start + CHUNK_CHARS));
+    }
+    writeByte('"');
+  }
+
+  /**
+   * @return index of the next char to be written.
+   */
+  private int writeEscapedChunk(String value, int start, int end) {
+    // Worst case is a 6 byte \\u escape per char (one extra char may be pulled in to complete a
+    // surrogate pair, which still fits since pairs only need 4 bytes).
+    ensureCapacity((end - start) * 6 + 6);
+    byte[] buf = mBuffer;
+    int pos = mSize;
+    int i;
+    for (i = start; i < end; i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+          buf[pos++] = '\\';
+          buf[pos++] = (byte) c;
+          break;
+        case '\t':
+          buf[pos++] = '\\';
+          buf[pos++] = 't';
+          break;
+        case '\b':
+          buf[pos++] = '\\';
+          buf[pos++] = 'b';
+          break;
+        case '\n':
+          buf[pos++] = '\\';
+          buf[pos++] = 'n';
+          break;
+        case '\r':
+          buf[pos++] = '\\';
+          buf[pos++] = 'r';
+          break;
+        case '\f':
+          buf[pos++] = '\\';
+          buf[pos++] = 'f';
+          break;
+        default:
+          if (c <= 0x1f) {
+            buf[pos++] = '\\';
+            buf[pos++] = 'u';
+            buf[pos++] = '0';
+            buf[pos++] = '0';
+            buf[pos++] = HEX[(c >> 4) & 0xf];
+            buf[pos++] = HEX[c & 0xf];
+          } else if (c < 0x80) {
+            buf[pos++] = (byte) c;
+          } else if (c < 0x800) {
+            buf[pos++] = (byte) (0xc0 | (c >> 6));
+            buf[pos++] = (byte) (0x80 | (c & 0x3f));
+          } else if (Character.isHighSurrogate(c)
+              && i + 1 < value.length()
+              && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(++i));
+            buf[pos++] = (byte) (0xf0 | (codePoint >> 18));
+            buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            buf[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+          } else if (Character.isSurrogate(c)) {
+            // Unpaired surrogate, encode as '?' just like String.getBytes("UTF-8") does.
+            buf[pos++] = '?';
+          } else {
+            buf[pos++] = (byte) (0xe0 | (c >> 12));
+            buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buf[pos++] = (byte) (0x80 | (c & 0x3f));
+          }
+          break;
+      }
+    }
+    mSize = pos;
+    return i;
+  }
+
+  private void writeAscii(String value) {
+    int length = value.length();
+    ensureCapacity(length);
+    for (int i = 0; i < length; i++) {
+      mBuffer[mSize++] = (byte) value.charAt(i);
+    }
+  }
+
+  private void writeBytes(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, mBuffer, mSize, bytes.length);
+    mSize += bytes.length;
+  }
+
+  private void writeByte(char b) {
+    ensureCapacity(1);
+    mBuffer[mSize++] = (byte) b;
+  }
+
+  private void ensureCapacity(int additional) {
+    int required = mSize + additional;
+    if (required > mBuffer.length) {
+      byte[] newBuffer = new byte[Math.max(required, mBuffer.length * 2)];
+      System.arraycopy(mBuffer, 0, newBuffer, 0, mSize);
+      mBuffer = newBuffer;
+    }
+  }
+}
@@ -19,7 +19,6 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.BindException;
 import java.net.SocketException;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class LocalSocketServer {
   private static final String WORKER_THREAD_NAME_PREFIX = "StethoWorker";
@@ -29,7 +28,7 @@ public class LocalSocketServer {
   private final String mFriendlyName;
   private final String mAddress;
   private final SocketHandler mSocketHandler;
-  private final AtomicInteger mThreadId = new AtomicInteger();
+  private final WorkerPool mWorkerPool;
 
   private Thread mListenerThread;
   private boolean mStopped;
@@ -44,15 +43,36 @@ public class LocalSocketServer {
       String friendlyName,
       String address,
       SocketHandler socketHandler) {
+    this(friendlyName, address, socketHandler, WorkerPoolOptions.DEFAULT);
+  }
+
+  /**
+   * @param workerPoolOptions sizing of the pool of threads serving accepted sockets.
+   */
+  public LocalSocketServer(
+      String friendlyName,
+      String address,
+      SocketHandler socketHandler,
+      WorkerPoolOptions workerPoolOptions) {
     mFriendlyName = Util.throwIfNull(friendlyName);
     mAddress = Util.throwIfNull(address);
     mSocketHandler = socketHandler;
+    mWorkerPool = new WorkerPool(
+        WORKER_THREAD_NAME_PREFIX + "-" + mFriendlyName,
+        Util.throwIfNull(workerPoolOptions));
   }
 
   public String getName() {
     return mFriendlyName;
   }
 
+  /**
+   * Exposes connection and thread churn counters.
+   */
+  public WorkerPool getWorkerPool() {
+    return mWorkerPool;
+  }
+
   /**
    * Binds to the address and listens for connections.
    * <p/>
@@ -82,14 +102,10 @@ public class LocalSocketServer {
         // accept another.
         LocalSocket socket = mServerSocket.accept();
 
-        // Start worker thread
-        Thread t = new WorkerThread(socket, mSocketHandler);
-        t.setName(
-            WORKER_THREAD_NAME_PREFIX +
-            "-" + mFriendlyName +
-            "-" + mThreadId.incrementAndGet());
-        t.setDaemon(true);
-        t.start();
+        if (!mWorkerPool.execute(new ConnectionTask(socket, mSocketHandler))) {
+          LogUtil.w("Too many connections, refusing");
+          closeQuietly(socket);
+        }
       } catch (SocketException se) {
         // ignore exception if interrupting the thread
         if (Thread.interrupted()) {
@@ -104,6 +120,9 @@ public class LocalSocketServer {
       }
     }
 
+    for (Runnable pending : mWorkerPool.shutdown()) {
+      ((ConnectionTask) pending).abandon();
+    }
     LogUtil.i("Server shutdown on @" + address);
   }
 
@@ -150,11 +169,18 @@ public class LocalSocketServer {
     throw firstException;
   }
 
-  private static class WorkerThread extends Thread {
+  private static void closeQuietly(LocalSocket socket) {
+    try {
+      socket.close();
+    } catch (IOException ignore) {
+    }
+  }
+
+  private static class ConnectionTask implements Runnable {
     private final LocalSocket mSocket;
     private final SocketHandler mSocketHandler;
 
-    public WorkerThread(LocalSocket socket, SocketHandler socketHandler) {
+    public ConnectionTask(LocalSocket socket, SocketHandler socketHandler) {
       mSocket = socket;
       mSocketHandler = socketHandler;
     }
@@ -166,11 +192,12 @@ public class LocalSocketServer {
       } catch (IOException ex) {
         LogUtil.w("I/O error: %s", ex);
       } finally {
-        try {
-          mSocket.close();
-        } catch (IOException ignore) {
-        }
+        closeQuietly(mSocket);
       }
     }
+
+    public void abandon() {
+      closeQuietly(mSocket);
+    }
   }
 }
@@ -31,6 +31,12 @@ import java.util.Arrays;
 public class ProtocolDetectingSocketHandler extends SecureSocketHandler {
   private static final int SENSING_BUFFER_SIZE = 256;
 
+  /**
+   * How long a new connection has to send enough for its protocol to be detected, so that one
+   * which never does can't tie up a {@link WorkerPool} thread indefinitely.
+   */
+  private static final int SENSING_TIMEOUT_MS = 5000;
+
   private final ArrayList<HandlerInfo> mHandlers = new ArrayList<>(2);
 
   public ProtocolDetectingSocketHandler(Context context) {
@@ -51,19 +57,28 @@ public class ProtocolDetectingSocketHandler extends SecureSocketHandler {
       throw new IllegalStateException("No handlers added");
     }
 
+    // Only the sensing is bounded; the matched handler manages its own timeouts.
+    final int originalTimeoutMs = socket.getSoTimeout();
+    socket.setSoTimeout(SENSING_TIMEOUT_MS);
+    HandlerInfo matchedHandler = null;
     for (int i = 0, N = mHandlers.size(); i < N; i++) {
       HandlerInfo handlerInfo = mHandlers.get(i);
       leakyIn.mark(SENSING_BUFFER_SIZE);
       boolean matches = handlerInfo.magicMatcher.matches(leakyIn);
       leakyIn.reset();
       if (matches) {
-        SocketLike socketLike = new SocketLike(socket, leakyIn);
-        handlerInfo.handler.onAccepted(socketLike);
-        return;
+        matchedHandler = handlerInfo;
+        break;
       }
     }
 
-    throw new IOException("No matching handler, firstByte=" + leakyIn.read());
+    if (matchedHandler == null) {
+      throw new IOException("No matching handler, firstByte=" + leakyIn.read());
+    }
+
+    socket.setSoTimeout(originalTimeoutMs);
+    SocketLike socketLike = new SocketLike(socket, leakyIn);
+    matchedHandler.handler.onAccepted(socketLike);
   }
 
   public interface MagicMatcher {
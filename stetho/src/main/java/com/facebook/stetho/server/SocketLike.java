@@ -42,4 +42,11 @@ public class SocketLike {
   public OutputStream getOutput() throws IOException {
     return mSocket.getOutputStream();
   }
+
+  /**
+   * @param timeoutMs How long reads may block before failing, or 0 to wait indefinitely.
+   */
+  public void setSoTimeout(int timeoutMs) throws IOException {
+    mSocket.setSoTimeout(timeoutMs);
+  }
 }
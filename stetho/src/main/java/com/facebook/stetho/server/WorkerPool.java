@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.server;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of daemon threads serving accepted connections.  Most connections are short HTTP
+ * exchanges (discovery polling from {@code chrome://inspect} hits us about once a second) which
+ * are served by a small set of reused threads that are reaped after sitting idle.
+ * <p>
+ * Connections which turn into long-lived sessions (WebSocket, dumpapp) call
+ * {@link #detachCurrentThread} at which point their thread stops counting against the pool and
+ * effectively becomes dedicated to that session, so they can't starve short exchanges.
+ */
+@ThreadSafe
+public class WorkerPool {
+  private static final ThreadLocal<Worker> sCurrentWorker = new ThreadLocal<>();
+
+  private final String mThreadNamePrefix;
+  private final WorkerPoolOptions mOptions;
+  private final AtomicInteger mThreadId = new AtomicInteger();
+
+  @GuardedBy("this")
+  private final ArrayDeque<Runnable> mPending = new ArrayDeque<>();
+
+  @GuardedBy("this")
+  private int mPooledThreads;
+
+  @GuardedBy("this")
+  private int mIdleThreads;
+
+  @GuardedBy("this")
+  private int mDedicatedThreads;
+
+  @GuardedBy("this")
+  private int mActiveConnections;
+
+  @GuardedBy("this")
+  private long mThreadsCreated;
+
+  @GuardedBy("this")
+  private long mThreadsReaped;
+
+  @GuardedBy("this")
+  private long mRejectedConnections;
+
+  @GuardedBy("this")
+  private boolean mShutdown;
+
+  public WorkerPool(String threadNamePrefix, WorkerPoolOptions options) {
+    mThreadNamePrefix = threadNamePrefix;
+    mOptions = options;
+  }
+
+  /**
+   * Mark the connection being served by the calling thread as a long-lived session, freeing up
+   * its slot in the pool.  Does nothing when not called from a pool thread.
+   */
+  public static void detachCurrentThread() {
+    Worker worker = sCurrentWorker.get();
+    if (worker != null) {
+      worker.pool.detach(worker);
+    }
+  }
+
+  /**
+   * @return False if the pool is saturated (or shut down) and {@code task} was not accepted.
+   */
+  public synchronized boolean execute(Runnable task) {
+    if (mShutdown) {
+      mRejectedConnections++;
+      return false;
+    }
+    if (mIdleThreads > mPending.size()) {
+      mPending.addLast(task);
+      notifyAll();
+      return true;
+    }
+    if (mPooledThreads < mOptions.maxPooledThreads) {
+      mPooledThreads++;
+      startWorker(task);
+      return true;
+    }
+    if (mPending.size() < mOptions.maxPendingConnections) {
+      mPending.addLast(task);
+      return true;
+    }
+    mRejectedConnections++;
+    return false;
+  }
+
+  /**
+   * Stop accepting work and let idle threads exit.  Running connections are unaffected.
+   *
+   * @return Tasks that were still waiting for a thread.
+   */
+  public synchronized List<Runnable> shutdown() {
+    mShutdown = true;
+    List<Runnable> pending = new ArrayList<>(mPending);
+    mPending.clear();
+    notifyAll();
+    return pending;
+  }
+
+  public synchronized int getActiveConnectionCount() {
+    return mActiveConnections;
+  }
+
+  public synchronized int getPooledThreadCount() {
+    return mPooledThreads;
+  }
+
+  public synchronized int getIdleThreadCount() {
+    return mIdleThreads;
+  }
+
+  public synchronized int getDedicatedThreadCount() {
+    return mDedicatedThreads;
+  }
+
+  public synchronized int getPendingConnectionCount() {
+    return mPending.size();
+  }
+
+  /**
+   * @return Total number of threads started so far, a measure of thread churn.
+   */
+  public synchronized long getThreadsCreatedCount() {
+    return mThreadsCreated;
+  }
+
+  /**
+   * @return Number of pooled threads which exited after sitting idle.
+   */
+  public synchronized long getThreadsReapedCount() {
+    return mThreadsReaped;
+  }
+
+  public synchronized long getRejectedConnectionCount() {
+    return mRejectedConnections;
+  }
+
+  @GuardedBy("this")
+  private void startWorker(Runnable firstTask) {
+    mThreadsCreated++;
+    Worker worker = new Worker(this, firstTask);
+    worker.setName(mThreadNamePrefix + "-" + mThreadId.incrementAndGet());
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  private synchronized void detach(Worker worker) {
+    if (worker.detached) {
+      return;
+    }
+    worker.detached = true;
+    mPooledThreads--;
+    mDedicatedThreads++;
+
+    // The slot we just gave up may be the only thing standing between a queued connection and a
+    // thread to serve it.
+    if (mPending.size() > mIdleThreads && !mShutdown) {
+      mPooledThreads++;
+      startWorker(mPending.removeFirst());
+    }
+  }
+
+  private synchronized void onTaskStarted() {
+    mActiveConnections++;
+  }
+
+  private synchronized void onTaskFinished() {
+    mActiveConnections--;
+  }
+
+  /**
+   * Block until there's more work for {@code worker} or it should exit.
+   *
+   * @return Next task or null if the thread should exit, in which case it has already been
+   *     accounted for.
+   */
+  @Nullable
+  private synchronized Runnable takeNextTask(Worker worker) {
+    if (worker.detached) {
+      mDedicatedThreads--;
+      if (mShutdown || mPooledThreads >= mOptions.maxPooledThreads) {
+        return null;
+      }
+      // The session is over and there's room for us again.
+      worker.detached = false;
+      mPooledThreads++;
+    }
+
+    long deadline = System.currentTimeMillis() + mOptions.idleTimeoutMs;
+    mIdleThreads++;
+    try {
+      while (mPending.isEmpty()) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (mShutdown || remaining <= 0) {
+          mPooledThreads--;
+          mThreadsReaped++;
+          return null;
+        }
+        try {
+          wait(remaining);
+        } catch (InterruptedException e) {
+          // Only ever interrupted by accident; treat it as an early idle timeout.
+          mPooledThreads--;
+          mThreadsReaped++;
+          return null;
+        }
+      }
+      return mPending.removeFirst();
+    } finally {
+      mIdleThreads--;
+    }
+  }
+
+  /**
+   * Bookkeeping for a worker killed by an exception thrown from its task.
+   */
+  private synchronized void onWorkerDied(Worker worker) {
+    if (worker.detached) {
+      mDedicatedThreads--;
+    } else {
+      mPooledThreads--;
+    }
+    if (!mPending.isEmpty() && mIdleThreads == 0 && !mShutdown) {
+      mPooledThreads++;
+      startWorker(mPending.removeFirst());
+    }
+  }
+
+  private static class Worker extends Thread {
+    public final WorkerPool pool;
+    private @Nullable Runnable mFirstTask;
+
+    /**
+     * Guarded by {@link #pool}.
+     */
+    public boolean detached;
+
+    public Worker(WorkerPool pool, Runnable firstTask) {
+      this.pool = pool;
+      mFirstTask = firstTask;
+    }
+
+    @Override
+    public void run() {
+      sCurrentWorker.set(this);
+      Runnable task = mFirstTask;
+      mFirstTask = null;
+      boolean completedNormally = false;
+      try {
+        while (task != null) {
+          pool.onTaskStarted();
+          try {
+            task.run();
+          } finally {
+            pool.onTaskFinished();
+          }
+          task = pool.takeNextTask(this);
+        }
+        completedNormally = true;
+      } finally {
+        if (!completedNormally) {
+          pool.onWorkerDied(this);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.server;
+
+/**
+ * Sizing of the {@link WorkerPool} that serves connections accepted by {@link LocalSocketServer}.
+ */
+public final class WorkerPoolOptions {
+  /**
+   * Enough for a couple of concurrent discovery polls and dumpapp invocations, which is about
+   * as busy as a debug server ever gets.
+   */
+  public static final WorkerPoolOptions DEFAULT = new WorkerPoolOptions(
+      4 /* maxPooledThreads */,
+      16 /* maxPendingConnections */,
+      30000 /* idleTimeoutMs */);
+
+  /**
+   * Upper bound on threads serving short exchanges.  Threads promoted to a long-lived session
+   * (see {@link WorkerPool#detachCurrentThread}) do not count against it.
+   */
+  public final int maxPooledThreads;
+
+  /**
+   * Accepted connections allowed to wait for a free thread before new ones are refused.
+   */
+  public final int maxPendingConnections;
+
+  /**
+   * How long an idle pooled thread lingers before it is reaped.
+   */
+  public final long idleTimeoutMs;
+
+  public WorkerPoolOptions(int maxPooledThreads, int maxPendingConnections, long idleTimeoutMs) {
+    if (maxPooledThreads < 1) {
+      throw new IllegalArgumentException("maxPooledThreads must be at least 1");
+    }
+    if (maxPendingConnections < 0 || idleTimeoutMs < 0) {
+      throw new IllegalArgumentException("Negative limit");
+    }
+    this.maxPooledThreads = maxPooledThreads;
+    this.maxPendingConnections = maxPendingConnections;
+    this.idleTimeoutMs = idleTimeoutMs;
+  }
+}
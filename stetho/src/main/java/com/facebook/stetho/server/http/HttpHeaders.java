@@ -10,4 +10,8 @@ package com.facebook.stetho.server.http;
 public interface HttpHeaders {
   String CONTENT_TYPE = "Content-Type";
   String CONTENT_LENGTH = "Content-Length";
+  String CONNECTION = "Connection";
+  String ETAG = "ETag";
+  String IF_NONE_MATCH = "If-None-Match";
+  String TRANSFER_ENCODING = "Transfer-Encoding";
 }
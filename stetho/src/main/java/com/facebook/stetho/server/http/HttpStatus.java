@@ -10,6 +10,8 @@ package com.facebook.stetho.server.http;
 public interface HttpStatus {
   int HTTP_SWITCHING_PROTOCOLS = 101;
   int HTTP_OK = 200;
+  int HTTP_NO_CONTENT = 204;
+  int HTTP_NOT_MODIFIED = 304;
   int HTTP_NOT_FOUND = 404;
   int HTTP_INTERNAL_SERVER_ERROR = 500;
   int HTTP_NOT_IMPLEMENTED = 501;
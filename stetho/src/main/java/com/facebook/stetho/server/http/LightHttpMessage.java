@@ -20,10 +20,13 @@ public class LightHttpMessage {
     headerValues.add(value);
   }
 
+  /**
+   * @param name Header name, matched case-insensitively as per RFC7230.
+   */
   @Nullable
   public String getFirstHeaderValue(String name) {
     for (int i = 0, N = headerNames.size(); i < N; i++) {
-      if (name.equals(headerNames.get(i))) {
+      if (name.equalsIgnoreCase(headerNames.get(i))) {
         return headerValues.get(i);
       }
     }
@@ -16,6 +16,10 @@ public class LightHttpResponse extends LightHttpMessage {
     if (body != null) {
       addHeader(HttpHeaders.CONTENT_TYPE, body.contentType());
       addHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(body.contentLength()));
+    } else if (code != HttpStatus.HTTP_NO_CONTENT && code != HttpStatus.HTTP_NOT_MODIFIED) {
+      // Without a length the client can only find the end of the body by waiting for us to
+      // close the connection, which would defeat keep-alive.
+      addHeader(HttpHeaders.CONTENT_LENGTH, "0");
     }
   }
 
@@ -31,6 +31,14 @@ import androidx.annotation.Nullable;
  */
 public class LightHttpServer {
   private static final String TAG = "LightHttpServer";
+  private static final String HTTP_1_1 = "HTTP/1.1";
+
+  /**
+   * How long a connection may sit between requests before we close it.  Each open connection
+   * holds on to a worker thread, so an idle one must not be allowed to linger, but this is
+   * comfortably longer than the interval of Chrome's discovery polling.
+   */
+  static final int KEEP_ALIVE_TIMEOUT_MS = 5000;
 
   private final HandlerRegistry mHandlerRegistry;
 
@@ -49,9 +57,18 @@ public class LightHttpServer {
     LightHttpResponse scratchResponse = new LightHttpResponse();
     LightHttpRequest request;
 
-    // This loops assumes we are always using keep-alive connections.  If we're wrong, we
-    // expect the client to just close the connection.
-    while ((request = readRequestMessage(scratchRequest, reader)) != null) {
+    // Keep serving requests on this connection for as long as the client wants to, which lets
+    // Chrome's once-a-second discovery polling reuse a single connection.  Only waiting for a
+    // request is subject to the timeout; handlers (most importantly the WebSocket upgrade) can
+    // block on the socket for as long as they like.
+    while (true) {
+      socket.setSoTimeout(KEEP_ALIVE_TIMEOUT_MS);
+      request = readRequestMessage(scratchRequest, reader);
+      if (request == null) {
+        break;
+      }
+      socket.setSoTimeout(0);
+
       final LightHttpResponse response = scratchResponse;
       response.reset();
 
@@ -63,7 +80,35 @@ public class LightHttpServer {
         break;
       }
 
-      writeFullResponse(response, writer, output);
+      boolean keepAlive = isKeepAlive(request);
+      if (!keepAlive) {
+        response.addHeader(HttpHeaders.CONNECTION, "close");
+      } else if (!HTTP_1_1.equals(request.protocol)) {
+        response.addHeader(HttpHeaders.CONNECTION, "keep-alive");
+      }
+      writeFullResponse(response, writer);
+      if (!keepAlive) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * HTTP/1.1 connections persist unless either side says otherwise, HTTP/1.0 ones only if the
+   * client asks for it.  Requests with a body always end the connection since handlers aren't
+   * required to consume it, leaving us no way to find the start of the next request.
+   */
+  private static boolean isKeepAlive(LightHttpRequest request) {
+    String contentLength = request.getFirstHeaderValue(HttpHeaders.CONTENT_LENGTH);
+    if ((contentLength != null && !"0".equals(contentLength.trim())) ||
+        request.getFirstHeaderValue(HttpHeaders.TRANSFER_ENCODING) != null) {
+      return false;
+    }
+    String connection = request.getFirstHeaderValue(HttpHeaders.CONNECTION);
+    if (HTTP_1_1.equals(request.protocol)) {
+      return !"close".equalsIgnoreCase(connection);
+    } else {
+      return "keep-alive".equalsIgnoreCase(connection);
     }
   }
 
@@ -104,7 +149,17 @@ public class LightHttpServer {
       throws IOException {
     request.reset();
 
-    String requestLine = reader.readLine();
+    String requestLine;
+    try {
+      requestLine = reader.readLine();
+    } catch (IOException e) {
+      if (reader.hasPartialLine()) {
+        throw e;
+      }
+      // The client sat idle past the keep-alive timeout (LocalSocket reports this as a plain
+      // IOException) or went away between requests; either way we're done with it.
+      return null;
+    }
     if (requestLine == null) {
       return null;
     }
@@ -135,12 +190,13 @@ public class LightHttpServer {
       } else if ("".equals(headerLine)) {
         break;
       } else {
-        String[] headerParts = headerLine.split(": ", 2);
-        if (headerParts.length != 2) {
+        // Avoid String#split here, which compiles a regex for every line.
+        int colonIndex = headerLine.indexOf(':');
+        if (colonIndex <= 0) {
           throw new IOException("Malformed header: " + headerLine);
         }
-        String name = headerParts[0];
-        String value = headerParts[1];
+        String name = headerLine.substring(0, colonIndex);
+        String value = headerLine.substring(colonIndex + 1).trim();
 
         message.headerNames.add(name);
         message.headerValues.add(value);
@@ -150,26 +206,32 @@ public class LightHttpServer {
 
   private static void writeFullResponse(
       LightHttpResponse response,
-      HttpMessageWriter writer,
-      OutputStream output)
+      HttpMessageWriter writer)
       throws IOException {
     response.prepare();
-    writeResponseMessage(response, writer);
+    writeResponseHead(response, writer);
+    // Send the head and body together rather than as two separate writes to the socket.
     if (response.body != null) {
-      response.body.writeTo(output);
+      response.body.writeTo(writer.mOut);
     }
+    writer.flush();
   }
 
   public static void writeResponseMessage(LightHttpResponse response, HttpMessageWriter writer)
       throws IOException {
-    writer.writeLine("HTTP/1.1 " + response.code + " " + response.reasonPhrase);
+    writeResponseHead(response, writer);
+    writer.flush();
+  }
+
+  private static void writeResponseHead(LightHttpResponse response, HttpMessageWriter writer)
+      throws IOException {
+    writer.writeLine(HTTP_1_1 + " " + response.code + " " + response.reasonPhrase);
     for (int i = 0, N = response.headerNames.size(); i < N; i++) {
       String name = response.headerNames.get(i);
       String value = response.headerValues.get(i);
       writer.writeLine(name + ": " + value);
     }
     writer.writeLine();
-    writer.flush();
   }
 
   /**
@@ -187,6 +249,13 @@ public class LightHttpServer {
       mIn = in;
     }
 
+    /**
+     * @return True if {@link #readLine} was interrupted after reading part of a line.
+     */
+    public boolean hasPartialLine() {
+      return mBuffer.length() > 0;
+    }
+
     @Nullable
     public String readLine() throws IOException {
       while (true) {
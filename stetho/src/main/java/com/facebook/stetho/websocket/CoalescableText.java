@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.websocket;
+
+/**
+ * Text message which is encoded lazily by the session's writer so that it can absorb later
+ * messages with the same key for as long as it is waiting in the send queue.
+ *
+ * @see SendPolicy#COALESCE
+ */
+public interface CoalescableText {
+  /**
+   * Messages with equal keys are candidates for merging.
+   */
+  Object getCoalesceKey();
+
+  /**
+   * Attempt to fold {@code newer} into this message.  Called with the send queue locked, and
+   * only while this message has not yet been handed to the writer.
+   *
+   * @return True if {@code newer} was merged and should not be sent on its own.
+   */
+  boolean coalesce(CoalescableText newer);
+
+  /**
+   * Roughly how many bytes {@link #encode} will produce, which is what the message counts for
+   * against the send queue's byte budget while it waits.
+   */
+  int getSizeEstimate();
+
+  /**
+   * Produce the UTF-8 encoded message text.  Called once, on the writer thread, after which
+   * {@link #coalesce} will no longer be called.
+   */
+  byte[] encode();
+}
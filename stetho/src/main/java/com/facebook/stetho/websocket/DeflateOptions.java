@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.websocket;
+
+import java.util.zip.Deflater;
+
+/**
+ * Tuning for the {@code permessage-deflate} extension (RFC7692), which is negotiated whenever
+ * the client offers it.  Pass {@link #DISABLED} to {@link WebSocketHandler} to never negotiate
+ * it.
+ */
+public final class DeflateOptions {
+  /**
+   * Small messages tend to grow or barely shrink once deflated, and the bulk of the protocol
+   * traffic is small, so by default only messages of at least 1KB are compressed.
+   */
+  public static final DeflateOptions DEFAULT = new DeflateOptions(
+      true /* enabled */,
+      Deflater.BEST_SPEED,
+      1024 /* minMessageSize */);
+
+  public static final DeflateOptions DISABLED = new DeflateOptions(
+      false /* enabled */,
+      Deflater.DEFAULT_COMPRESSION,
+      Integer.MAX_VALUE /* minMessageSize */);
+
+  public final boolean enabled;
+
+  /**
+   * Compression level as per {@link Deflater#setLevel}.
+   */
+  public final int level;
+
+  /**
+   * Outgoing messages shorter than this many bytes are sent uncompressed.
+   */
+  public final int minMessageSize;
+
+  public DeflateOptions(boolean enabled, int level, int minMessageSize) {
+    if (level != Deflater.DEFAULT_COMPRESSION &&
+        (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+    this.enabled = enabled;
+    this.level = level;
+    this.minMessageSize = minMessageSize;
+  }
+}
@@ -17,6 +17,7 @@ import java.io.InputStream;
  * WebSocket frame as per RFC6455.
  */
 class Frame {
+  public static final byte OPCODE_CONTINUATION = 0x0;
   public static final byte OPCODE_TEXT_FRAME = 0x1;
   public static final byte OPCODE_BINARY_FRAME = 0x2;
   public static final byte OPCODE_CONNECTION_CLOSE = 0x8;
@@ -33,15 +34,37 @@ class Frame {
   public byte[] maskingKey;
   public byte[] payloadData;
 
-  public void readFrom(BufferedInputStream input) throws IOException {
+  /**
+   * Read everything up to but excluding the payload, leaving the caller to consume exactly
+   * {@link #payloadLen} bytes with {@link #readPayloadInto}.  {@link #payloadData} is not
+   * touched.
+   */
+  public void readHeaderFrom(BufferedInputStream input) throws IOException {
     decodeFirstByte(readByteOrThrow(input));
     byte maskAndFirstLengthBits = readByteOrThrow(input);
     hasMask = (maskAndFirstLengthBits & 0x80) != 0;
     payloadLen = decodeLength((byte)(maskAndFirstLengthBits & ~0x80), input);
-    maskingKey = hasMask ? decodeMaskingKey(input) : null;
-    payloadData = new byte[(int)payloadLen];
-    readBytesOrThrow(input, payloadData, 0, (int)payloadLen);
-    MaskingHelper.unmask(maskingKey, payloadData, 0, (int)payloadLen);
+    if (hasMask) {
+      if (maskingKey == null) {
+        maskingKey = new byte[4];
+      }
+      readBytesOrThrow(input, maskingKey, 0, maskingKey.length);
+    }
+  }
+
+  /**
+   * Read and unmask (in place) the payload of the frame whose header was just read.
+   */
+  public void readPayloadInto(BufferedInputStream input, byte[] buf, int offset)
+      throws IOException {
+    readBytesOrThrow(input, buf, offset, (int) payloadLen);
+    if (hasMask) {
+      MaskingHelper.unmask(maskingKey, buf, offset, (int) payloadLen);
+    }
+  }
+
+  public boolean isControlFrame() {
+    return (opcode & 0x8) != 0;
   }
 
   public void writeTo(BufferedOutputStream output) throws IOException {
@@ -125,12 +148,6 @@ class Frame {
     }
   }
 
-  private static byte[] decodeMaskingKey(InputStream in) throws IOException {
-    byte[] key = new byte[4];
-    readBytesOrThrow(in, key, 0, key.length);
-    return key;
-  }
-
   private static void readBytesOrThrow(InputStream in, byte[] buf, int offset, int count)
       throws IOException {
     while (count > 0) {
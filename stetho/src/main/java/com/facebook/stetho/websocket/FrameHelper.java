@@ -14,6 +14,10 @@ class FrameHelper {
     return createSimpleFrame(Frame.OPCODE_TEXT_FRAME, Utf8Charset.encodeUTF8(payload));
   }
 
+  public static Frame createTextFrame(byte[] payload, int payloadLen) {
+    return createSimpleFrame(Frame.OPCODE_TEXT_FRAME, payload, payloadLen);
+  }
+
   public static Frame createBinaryFrame(byte[] payload) {
     return createSimpleFrame(Frame.OPCODE_BINARY_FRAME, payload);
   }
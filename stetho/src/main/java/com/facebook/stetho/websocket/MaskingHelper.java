@@ -8,10 +8,24 @@
 package com.facebook.stetho.websocket;
 
 class MaskingHelper {
+  /**
+   * @param key 4 byte masking key as per RFC6455.
+   */
   public static void unmask(byte[] key, byte[] data, int offset, int count) {
-    int index = 0;
-    while (count-- > 0) {
-      data[offset++] ^= key[index++ % key.length];
+    byte key0 = key[0];
+    byte key1 = key[1];
+    byte key2 = key[2];
+    byte key3 = key[3];
+    int end = offset + count;
+    int i = offset;
+    for (int wordEnd = offset + (count & ~3); i < wordEnd; i += 4) {
+      data[i] ^= key0;
+      data[i + 1] ^= key1;
+      data[i + 2] ^= key2;
+      data[i + 3] ^= key3;
+    }
+    for (int index = 0; i < end; i++, index++) {
+      data[i] ^= key[index];
     }
   }
 }
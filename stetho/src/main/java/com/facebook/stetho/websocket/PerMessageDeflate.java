@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.websocket;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Negotiated parameters of the {@code permessage-deflate} extension (RFC7692).  Compression
+ * happens on the session's writer thread and decompression on its reader thread, each with its
+ * own long-lived {@link Deflater} or {@link Inflater}.
+ */
+class PerMessageDeflate {
+  public static final String EXTENSION_NAME = "permessage-deflate";
+
+  private static final String PARAM_SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+  private static final String PARAM_CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+  private static final String PARAM_SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+  private static final String PARAM_CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+  /**
+   * {@link Deflater} offers no control over the window size so we can only accept offers which
+   * allow the full 32KB window.
+   */
+  private static final int MAX_WINDOW_BITS = 15;
+
+  /**
+   * Trailer produced by a {@link Deflater#SYNC_FLUSH}, which the extension strips from every
+   * message and the receiver has to put back.
+   */
+  private static final byte[] SYNC_FLUSH_TAIL = { 0x00, 0x00, (byte) 0xff, (byte) 0xff };
+
+  private static final int INITIAL_BUFFER_SIZE = 4096;
+  private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+  private final DeflateOptions mOptions;
+  private final boolean mServerNoContextTakeover;
+  private final boolean mEchoServerMaxWindowBits;
+
+  private PerMessageDeflate(
+      DeflateOptions options,
+      boolean serverNoContextTakeover,
+      boolean echoServerMaxWindowBits) {
+    mOptions = options;
+    mServerNoContextTakeover = serverNoContextTakeover;
+    mEchoServerMaxWindowBits = echoServerMaxWindowBits;
+  }
+
+  /**
+   * Pick the first acceptable {@code permessage-deflate} offer.
+   *
+   * @param extensionHeaders Values of all {@code Sec-WebSocket-Extensions} request headers.
+   * @return Negotiated extension or null if the client didn't offer one we can accept.
+   */
+  @Nullable
+  public static PerMessageDeflate negotiate(List<String> extensionHeaders, DeflateOptions options) {
+    if (!options.enabled) {
+      return null;
+    }
+    for (String header : extensionHeaders) {
+      for (String offer : header.split(",")) {
+        PerMessageDeflate accepted = acceptOffer(offer, options);
+        if (accepted != null) {
+          return accepted;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static PerMessageDeflate acceptOffer(String offer, DeflateOptions options) {
+    String[] parts = offer.split(";");
+    if (!EXTENSION_NAME.equals(parts[0].trim())) {
+      return null;
+    }
+    boolean serverNoContextTakeover = false;
+    boolean echoServerMaxWindowBits = false;
+    for (int i = 1; i < parts.length; i++) {
+      String param = parts[i].trim();
+      String value = null;
+      int equalsIndex = param.indexOf('=');
+      if (equalsIndex >= 0) {
+        value = unquote(param.substring(equalsIndex + 1).trim());
+        param = param.substring(0, equalsIndex).trim();
+      }
+      switch (param) {
+        case PARAM_SERVER_NO_CONTEXT_TAKEOVER:
+          serverNoContextTakeover = true;
+          break;
+        case PARAM_CLIENT_NO_CONTEXT_TAKEOVER:
+          // A hint that we are free to ignore; our inflater copes either way.
+          break;
+        case PARAM_SERVER_MAX_WINDOW_BITS:
+          if (!String.valueOf(MAX_WINDOW_BITS).equals(value)) {
+            return null;
+          }
+          echoServerMaxWindowBits = true;
+          break;
+        case PARAM_CLIENT_MAX_WINDOW_BITS:
+          // We can inflate any window size, so there's no need to constrain the client.
+          break;
+        default:
+          return null;
+      }
+    }
+    return new PerMessageDeflate(options, serverNoContextTakeover, echoServerMaxWindowBits);
+  }
+
+  private static String unquote(String value) {
+    if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+      return value.substring(1, value.length() - 1);
+    }
+    return value;
+  }
+
+  /**
+   * @return Value for the {@code Sec-WebSocket-Extensions} response header.
+   */
+  public String getResponseHeaderValue() {
+    StringBuilder b = new StringBuilder(EXTENSION_NAME);
+    if (mServerNoContextTakeover) {
+      b.append("; ").append(PARAM_SERVER_NO_CONTEXT_TAKEOVER);
+    }
+    if (mEchoServerMaxWindowBits) {
+      b.append("; ").append(PARAM_SERVER_MAX_WINDOW_BITS).append('=').append(MAX_WINDOW_BITS);
+    }
+    return b.toString();
+  }
+
+  public MessageDeflater newDeflater() {
+    return new MessageDeflater(mOptions, mServerNoContextTakeover);
+  }
+
+  public MessageInflater newInflater() {
+    return new MessageInflater();
+  }
+
+  @NotThreadSafe
+  public static class MessageDeflater {
+    private final Deflater mDeflater;
+    private final int mMinMessageSize;
+    private final boolean mNoContextTakeover;
+    private byte[] mBuffer = new byte[INITIAL_BUFFER_SIZE];
+
+    private MessageDeflater(DeflateOptions options, boolean noContextTakeover) {
+      mDeflater = new Deflater(options.level, true /* nowrap */);
+      mMinMessageSize = options.minMessageSize;
+      mNoContextTakeover = noContextTakeover;
+    }
+
+    /**
+     * Compress the payload of a complete text or binary frame in place if it is large enough and
+     * actually shrinks.  The frame's new payload is only valid until the next call.
+     */
+    public void compress(Frame frame) {
+      int payloadLen = (int) frame.payloadLen;
+      if (payloadLen < mMinMessageSize) {
+        return;
+      }
+      if (mBuffer.length > MAX_RETAINED_BUFFER_SIZE && payloadLen < MAX_RETAINED_BUFFER_SIZE) {
+        mBuffer = new byte[INITIAL_BUFFER_SIZE];
+      }
+
+      mDeflater.setInput(frame.payloadData, 0, payloadLen);
+      int outLen = 0;
+      while (true) {
+        int available = mBuffer.length - outLen;
+        outLen += mDeflater.deflate(mBuffer, outLen, available, Deflater.SYNC_FLUSH);
+        if (outLen < mBuffer.length) {
+          // Output space to spare means the flush completed.
+          break;
+        }
+        byte[] newBuffer = new byte[mBuffer.length * 2];
+        System.arraycopy(mBuffer, 0, newBuffer, 0, outLen);
+        mBuffer = newBuffer;
+      }
+      if (endsWithSyncFlushTail(mBuffer, outLen)) {
+        outLen -= SYNC_FLUSH_TAIL.length;
+      }
+
+      if (outLen >= payloadLen) {
+        // Not worth it.  The peer never sees this output so we must also forget it ever happened
+        // or later messages would refer back to data the peer doesn't have.
+        mDeflater.reset();
+        return;
+      }
+      if (mNoContextTakeover) {
+        mDeflater.reset();
+      }
+
+      frame.rsv1 = true;
+      frame.payloadData = mBuffer;
+      frame.payloadLen = outLen;
+    }
+
+    public void end() {
+      mDeflater.end();
+    }
+
+    private static boolean endsWithSyncFlushTail(byte[] buf, int len) {
+      if (len < SYNC_FLUSH_TAIL.length) {
+        return false;
+      }
+      for (int i = 0; i < SYNC_FLUSH_TAIL.length; i++) {
+        if (buf[len - SYNC_FLUSH_TAIL.length + i] != SYNC_FLUSH_TAIL[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  @NotThreadSafe
+  public static class MessageInflater {
+    private final Inflater mInflater = new Inflater(true /* nowrap */);
+    private byte[] mBuffer = new byte[INITIAL_BUFFER_SIZE];
+
+    private MessageInflater() {
+    }
+
+    /**
+     * @return Buffer holding the output of the last {@link #inflate} call.
+     */
+    public byte[] getBuffer() {
+      return mBuffer;
+    }
+
+    /**
+     * Decompress a complete message.
+     *
+     * @param maxLength Limit on the decompressed size.
+     * @return Number of bytes written to {@link #getBuffer}.
+     */
+    public int inflate(byte[] payload, int payloadLen, int maxLength) throws IOException {
+      if (mBuffer.length > MAX_RETAINED_BUFFER_SIZE) {
+        mBuffer = new byte[INITIAL_BUFFER_SIZE];
+      }
+      try {
+        mInflater.setInput(payload, 0, payloadLen);
+        int outLen = inflateAvailable(0, maxLength);
+        mInflater.setInput(SYNC_FLUSH_TAIL);
+        outLen = inflateAvailable(outLen, maxLength);
+        if (mInflater.finished()) {
+          // The peer ended the deflate stream (BFINAL), so the next message starts a new one.
+          mInflater.reset();
+        }
+        return outLen;
+      } catch (DataFormatException e) {
+        throw new IOException("Corrupt compressed message", e);
+      }
+    }
+
+    private int inflateAvailable(int outLen, int maxLength)
+        throws DataFormatException, IOException {
+      while (!mInflater.needsInput() && !mInflater.finished()) {
+        if (outLen == mBuffer.length) {
+          if (outLen >= maxLength) {
+            throw new IOException("Decompressed message too large");
+          }
+          byte[] newBuffer = new byte[(int) Math.min((long) mBuffer.length * 2, maxLength)];
+          System.arraycopy(mBuffer, 0, newBuffer, 0, outLen);
+          mBuffer = newBuffer;
+        }
+        int inflated = mInflater.inflate(mBuffer, outLen, mBuffer.length - outLen);
+        if (inflated == 0 && mInflater.needsDictionary()) {
+          throw new IOException("Compressed message requires a preset dictionary");
+        }
+        outLen += inflated;
+      }
+      return outLen;
+    }
+
+    public void end() {
+      mInflater.end();
+    }
+  }
+}
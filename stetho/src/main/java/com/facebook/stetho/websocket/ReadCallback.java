@@ -8,5 +8,9 @@
 package com.facebook.stetho.websocket;
 
 interface ReadCallback {
+  /**
+   * @param payload Buffer owned by the reader which is overwritten by the next frame, so it
+   *     must not be retained past this call.
+   */
   void onCompleteFrame(byte opcode, byte[] payload, int payloadLen);
 }
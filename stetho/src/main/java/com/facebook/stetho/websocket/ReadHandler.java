@@ -7,23 +7,78 @@
 
 package com.facebook.stetho.websocket;
 
+import javax.annotation.Nullable;
+
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * Reads frames into a single growable buffer which is reused for every message, unmasking and
+ * reassembling continuation frames in place.  The payload handed to {@link ReadCallback} is
+ * only valid until the callback returns.
+ */
 class ReadHandler {
+  private static final int INITIAL_PAYLOAD_CAPACITY = 4096;
+
+  /**
+   * Buffers which grew beyond this size to hold an unusually large message are released once it
+   * has been delivered rather than pinned for the lifetime of the session.
+   */
+  private static final int MAX_RETAINED_PAYLOAD_CAPACITY = 256 * 1024;
+
+  /**
+   * Upper bound on a reassembled message, to fail cleanly instead of attempting to allocate
+   * whatever length a broken or hostile peer claims.
+   */
+  private static final int MAX_MESSAGE_LENGTH = 64 * 1024 * 1024;
+
+  /**
+   * Control frames carry at most 125 bytes of payload (RFC6455, 5.5).
+   */
+  private static final int MAX_CONTROL_PAYLOAD_LENGTH = 125;
+
   private final BufferedInputStream mBufferedInput;
   private final SimpleEndpoint mEndpoint;
+  private final @Nullable PerMessageDeflate.MessageInflater mInflater;
 
   /**
    * Used to build a larger payload over multiple frames.
    */
-  private final ByteArrayOutputStream mCurrentPayload = new ByteArrayOutputStream();
+  private byte[] mPayload = new byte[INITIAL_PAYLOAD_CAPACITY];
+  private int mPayloadLen;
+
+  /**
+   * Opcode of the first frame of the message being reassembled; continuation frames carry 0.
+   */
+  private byte mMessageOpcode;
+
+  /**
+   * Whether the message being reassembled was compressed (RSV1 set on its first frame).
+   */
+  private boolean mMessageCompressed;
+
+  /**
+   * Control frames may be interleaved with the fragments of a data message so they get their
+   * own buffer.
+   */
+  private final byte[] mControlPayload = new byte[MAX_CONTROL_PAYLOAD_LENGTH];
 
   public ReadHandler(InputStream bufferedInput, SimpleEndpoint endpoint) {
+    this(bufferedInput, endpoint, null /* inflater */);
+  }
+
+  /**
+   * @param inflater Decompressor for messages with RSV1 set, if {@code permessage-deflate} was
+   *     negotiated.
+   */
+  public ReadHandler(
+      InputStream bufferedInput,
+      SimpleEndpoint endpoint,
+      @Nullable PerMessageDeflate.MessageInflater inflater) {
     mBufferedInput = new BufferedInputStream(bufferedInput, 1024);
     mEndpoint = endpoint;
+    mInflater = inflater;
   }
 
   /**
@@ -35,13 +90,52 @@ class ReadHandler {
   public void readLoop(ReadCallback readCallback) throws IOException {
     Frame frame = new Frame();
     do {
-      frame.readFrom(mBufferedInput);
-      mCurrentPayload.write(frame.payloadData, 0, (int)frame.payloadLen);
-      if (frame.fin) {
-        byte[] completePayload = mCurrentPayload.toByteArray();
-        readCallback.onCompleteFrame(frame.opcode, completePayload, completePayload.length);
-        mCurrentPayload.reset();
+      frame.readHeaderFrom(mBufferedInput);
+      if (frame.rsv2 || frame.rsv3 ||
+          (frame.rsv1 && (mInflater == null || frame.opcode == Frame.OPCODE_CONTINUATION))) {
+        throw new IOException("Unexpected reserved bits in frame with opcode=" + frame.opcode);
+      }
+      if (frame.isControlFrame()) {
+        if (frame.rsv1) {
+          throw new IOException("Compressed control frame");
+        }
+        if (frame.payloadLen > MAX_CONTROL_PAYLOAD_LENGTH) {
+          throw new IOException("Control frame too large: " + frame.payloadLen);
+        }
+        frame.readPayloadInto(mBufferedInput, mControlPayload, 0);
+        readCallback.onCompleteFrame(frame.opcode, mControlPayload, (int) frame.payloadLen);
+      } else {
+        if (frame.opcode != Frame.OPCODE_CONTINUATION) {
+          mMessageOpcode = frame.opcode;
+          mMessageCompressed = frame.rsv1;
+        }
+        if (frame.payloadLen > MAX_MESSAGE_LENGTH - mPayloadLen) {
+          throw new IOException("Message too large: " + (mPayloadLen + frame.payloadLen));
+        }
+        ensurePayloadCapacity(mPayloadLen + (int) frame.payloadLen);
+        frame.readPayloadInto(mBufferedInput, mPayload, mPayloadLen);
+        mPayloadLen += (int) frame.payloadLen;
+        if (frame.fin) {
+          if (mMessageCompressed) {
+            int inflatedLen = mInflater.inflate(mPayload, mPayloadLen, MAX_MESSAGE_LENGTH);
+            readCallback.onCompleteFrame(mMessageOpcode, mInflater.getBuffer(), inflatedLen);
+          } else {
+            readCallback.onCompleteFrame(mMessageOpcode, mPayload, mPayloadLen);
+          }
+          mPayloadLen = 0;
+          if (mPayload.length > MAX_RETAINED_PAYLOAD_CAPACITY) {
+            mPayload = new byte[INITIAL_PAYLOAD_CAPACITY];
+          }
+        }
       }
     } while (frame.opcode != Frame.OPCODE_CONNECTION_CLOSE);
   }
+
+  private void ensurePayloadCapacity(int required) {
+    if (required > mPayload.length) {
+      byte[] newPayload = new byte[Math.max(required, mPayload.length * 2)];
+      System.arraycopy(mPayload, 0, newPayload, 0, mPayloadLen);
+      mPayload = newPayload;
+    }
+  }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.websocket;
+
+/**
+ * Determines what happens to an outgoing message when the session's bounded send queue is full
+ * or already holds a message with the same key.
+ */
+public enum SendPolicy {
+  /**
+   * Wait for the writer to make room in the queue.  The caller never waits on socket I/O
+   * directly but can be held up as long as the peer is not reading.
+   */
+  BLOCK,
+
+  /**
+   * Discard the message if the queue is full.  Discarded messages are counted in
+   * {@link SimpleSession#getDroppedMessageCount()}.  Only for messages the peer can do without,
+   * since it has no way to find out what it missed.
+   */
+  DROP,
+
+  /**
+   * Discard any still queued message with the same key in favour of this one, then behave like
+   * {@link #DROP}.  Suitable for streams where only the latest value is interesting.
+   */
+  DROP_OLDEST,
+
+  /**
+   * Merge into a still queued message with the same key if possible, otherwise behave like
+   * {@link #BLOCK}.  Only applicable to {@link CoalescableText} messages.
+   */
+  COALESCE,
+}
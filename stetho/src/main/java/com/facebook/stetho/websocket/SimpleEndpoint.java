@@ -33,7 +33,8 @@ public interface SimpleEndpoint {
    * WebSocket packets.
    *
    * @param session Unique handle for this session.
-   * @param message Complete payload data.
+   * @param message Complete payload data.  The array is reused for subsequent messages and must
+   *     not be retained past this call.
    * @param messageLen Maximum number of bytes of {@code message} to read.
    */
   void onMessage(SimpleSession session, byte[] message, int messageLen);
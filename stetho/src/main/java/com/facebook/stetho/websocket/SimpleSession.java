@@ -7,11 +7,50 @@
 
 package com.facebook.stetho.websocket;
 
+import com.facebook.stetho.common.Utf8Charset;
+
+import javax.annotation.Nullable;
+
 /**
  * Alternative to JSR-356's Session class but with a less insane J2EE-style API.
+ * <p>
+ * Outgoing messages are placed on a bounded queue which is drained by a dedicated writer thread
+ * so senders never perform socket I/O themselves.  Unless otherwise specified messages are sent
+ * with {@link SendPolicy#BLOCK}.
  */
 public interface SimpleSession {
   void sendText(String payload);
+
+  /**
+   * Send a text message which has already been encoded as UTF-8.  The payload is copied
+   * before this method returns so callers are free to reuse {@code payload} afterwards.
+   *
+   * @param payload UTF-8 encoded message text.
+   * @param payloadLen Number of bytes of {@code payload} to send.
+   */
+  default void sendText(byte[] payload, int payloadLen) {
+    sendText(new String(payload, 0, payloadLen, Utf8Charset.INSTANCE));
+  }
+
+  /**
+   * Variant of {@link #sendText(byte[], int)} with an explicit overflow policy.
+   *
+   * @param policy Any policy other than {@link SendPolicy#COALESCE}.
+   * @param key Key identifying messages which replace one another under
+   *     {@link SendPolicy#DROP_OLDEST}.
+   */
+  default void sendText(byte[] payload, int payloadLen, SendPolicy policy, @Nullable Object key) {
+    sendText(payload, payloadLen);
+  }
+
+  /**
+   * Queue a lazily encoded message with {@link SendPolicy#COALESCE}.
+   */
+  default void sendText(CoalescableText message) {
+    byte[] payload = message.encode();
+    sendText(payload, payload.length);
+  }
+
   void sendBinary(byte[] payload);
 
   /**
@@ -23,4 +62,25 @@ public interface SimpleSession {
   void close(int closeReason, String reasonPhrase);
 
   boolean isOpen();
+
+  /**
+   * @return Number of messages currently waiting to be written.
+   */
+  default int getQueuedMessageCount() {
+    return 0;
+  }
+
+  /**
+   * @return Number of messages discarded so far due to {@link SendPolicy}.
+   */
+  default long getDroppedMessageCount() {
+    return 0;
+  }
+
+  /**
+   * @return Number of messages merged into an already queued message so far.
+   */
+  default long getCoalescedMessageCount() {
+    return 0;
+  }
 }
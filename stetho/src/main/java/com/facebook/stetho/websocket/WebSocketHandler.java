@@ -12,6 +12,7 @@ import com.facebook.stetho.common.Utf8Charset;
 import com.facebook.stetho.server.http.HttpHandler;
 import com.facebook.stetho.server.http.HttpStatus;
 import com.facebook.stetho.server.SocketLike;
+import com.facebook.stetho.server.WorkerPool;
 import com.facebook.stetho.server.http.LightHttpBody;
 import com.facebook.stetho.server.http.LightHttpMessage;
 import com.facebook.stetho.server.http.LightHttpRequest;
@@ -26,6 +27,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Crazy kludge to support upgrading to the WebSocket protocol while still using the
@@ -44,6 +47,7 @@ public class WebSocketHandler implements HttpHandler {
   private static final String HEADER_SEC_WEBSOCKET_ACCEPT = "Sec-WebSocket-Accept";
   private static final String HEADER_SEC_WEBSOCKET_PROTOCOL = "Sec-WebSocket-Protocol";
   private static final String HEADER_SEC_WEBSOCKET_VERSION = "Sec-WebSocket-Version";
+  private static final String HEADER_SEC_WEBSOCKET_EXTENSIONS = "Sec-WebSocket-Extensions";
 
   private static final String HEADER_UPGRADE_WEBSOCKET = "websocket";
   private static final String HEADER_CONNECTION_UPGRADE = "Upgrade";
@@ -57,9 +61,19 @@ public class WebSocketHandler implements HttpHandler {
   private static final String SERVER_KEY_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
 
   private final SimpleEndpoint mEndpoint;
+  private final DeflateOptions mDeflateOptions;
 
   public WebSocketHandler(SimpleEndpoint endpoint) {
+    this(endpoint, DeflateOptions.DEFAULT);
+  }
+
+  /**
+   * @param deflateOptions Tuning for {@code permessage-deflate}, which is used whenever the
+   *     client offers it unless {@link DeflateOptions#DISABLED} is given.
+   */
+  public WebSocketHandler(SimpleEndpoint endpoint, DeflateOptions deflateOptions) {
     mEndpoint = endpoint;
+    mDeflateOptions = deflateOptions;
   }
 
   @Override
@@ -105,13 +119,23 @@ public class WebSocketHandler implements HttpHandler {
       response.addHeader(HEADER_SEC_WEBSOCKET_ACCEPT, generateServerKey(clientKey));
     }
 
+    PerMessageDeflate deflate = PerMessageDeflate.negotiate(
+        getAllHeaderValues(request, HEADER_SEC_WEBSOCKET_EXTENSIONS),
+        mDeflateOptions);
+    if (deflate != null) {
+      response.addHeader(HEADER_SEC_WEBSOCKET_EXTENSIONS, deflate.getResponseHeaderValue());
+    }
+
     InputStream in = socketLike.getInput();
     OutputStream out = socketLike.getOutput();
     LightHttpServer.writeResponseMessage(
         response,
         new LightHttpServer.HttpMessageWriter(new BufferedOutputStream(out)));
 
-    WebSocketSession session = new WebSocketSession(in, out, mEndpoint);
+    // The session lives until DevTools disconnects, so give it a thread of its own.
+    WorkerPool.detachCurrentThread();
+
+    WebSocketSession session = new WebSocketSession(in, out, mEndpoint, deflate);
     session.handle();
   }
 
@@ -130,4 +154,14 @@ public class WebSocketHandler implements HttpHandler {
   private static String getFirstHeaderValue(LightHttpMessage message, String headerName) {
     return message.getFirstHeaderValue(headerName);
   }
+
+  private static List<String> getAllHeaderValues(LightHttpMessage message, String headerName) {
+    List<String> values = new ArrayList<>();
+    for (int i = 0, N = message.headerNames.size(); i < N; i++) {
+      if (headerName.equalsIgnoreCase(message.headerNames.get(i))) {
+        values.add(message.headerValues.get(i));
+      }
+    }
+    return values;
+  }
 }
@@ -7,16 +7,20 @@
 
 package com.facebook.stetho.websocket;
 
+import com.facebook.stetho.common.Utf8Charset;
+
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nullable;
+
 /**
  * Binding driver between raw socket I/O and a high-level WebSocket interface.  This implementation
- * is generally very weak and doesn't offer sensible optimizations such as re-used buffers,
- * efficient UTF-8 encoding/decoding, or the full spectrum of features defined in the RFC.
+ * is generally very weak and doesn't offer the full spectrum of features defined in the RFC.
  */
 class WebSocketSession implements SimpleSession {
   private final ReadHandler mReadHandler;
@@ -26,16 +30,35 @@ class WebSocketSession implements SimpleSession {
   private AtomicBoolean mIsOpen = new AtomicBoolean(false);
   private volatile boolean mSentClose;
 
+  private final @Nullable PerMessageDeflate.MessageInflater mInflater;
+
   public WebSocketSession(
       InputStream rawSocketInput,
       OutputStream rawSocketOutput,
       SimpleEndpoint endpoint) {
-    mReadHandler = new ReadHandler(rawSocketInput, endpoint);
-    mWriteHandler = new WriteHandler(rawSocketOutput);
+    this(rawSocketInput, rawSocketOutput, endpoint, null /* deflate */);
+  }
+
+  /**
+   * @param deflate Negotiated {@code permessage-deflate} parameters, or null if the extension
+   *     is not in use.
+   */
+  public WebSocketSession(
+      InputStream rawSocketInput,
+      OutputStream rawSocketOutput,
+      SimpleEndpoint endpoint,
+      @Nullable PerMessageDeflate deflate) {
+    mInflater = deflate != null ? deflate.newInflater() : null;
+    mReadHandler = new ReadHandler(rawSocketInput, endpoint, mInflater);
+    mWriteHandler = new WriteHandler(
+        rawSocketOutput,
+        mErrorForwardingWriteCallback,
+        deflate != null ? deflate.newDeflater() : null);
     mEndpoint = endpoint;
   }
 
   public void handle() throws IOException {
+    mWriteHandler.start();
     markAndSignalOpen();
 
     // Loop until orderly shutdown or socket exception.
@@ -48,6 +71,12 @@ class WebSocketSession implements SimpleSession {
     } catch (IOException e) {
       markAndSignalClosed(CloseCodes.CLOSED_ABNORMALLY, null /* reasonPhrase */);
       throw e;
+    } finally {
+      // Our caller closes the socket once we return, so let the writer drain first.
+      mWriteHandler.shutdown();
+      if (mInflater != null) {
+        mInflater.end();
+      }
     }
   }
 
@@ -56,6 +85,34 @@ class WebSocketSession implements SimpleSession {
     doWrite(FrameHelper.createTextFrame(payload));
   }
 
+  @Override
+  public void sendText(byte[] payload, int payloadLen) {
+    sendText(payload, payloadLen, SendPolicy.BLOCK, null /* key */);
+  }
+
+  @Override
+  public void sendText(
+      byte[] payload,
+      int payloadLen,
+      SendPolicy policy,
+      @Nullable Object key) {
+    if (signalErrorIfNotOpen()) {
+      return;
+    }
+    // The caller is free to reuse payload as soon as we return but the frame sits in the queue
+    // until the writer gets to it.
+    byte[] payloadCopy = Arrays.copyOf(payload, payloadLen);
+    mWriteHandler.write(FrameHelper.createTextFrame(payloadCopy, payloadLen), policy, key);
+  }
+
+  @Override
+  public void sendText(CoalescableText message) {
+    if (signalErrorIfNotOpen()) {
+      return;
+    }
+    mWriteHandler.write(message);
+  }
+
   @Override
   public void sendBinary(byte[] payload) {
     doWrite(FrameHelper.createBinaryFrame(payload));
@@ -68,7 +125,7 @@ class WebSocketSession implements SimpleSession {
   }
 
   private void sendClose(int closeReason, String reasonPhrase) {
-    doWrite(FrameHelper.createCloseFrame(closeReason, reasonPhrase));
+    doWriteControl(FrameHelper.createCloseFrame(closeReason, reasonPhrase));
     markSentClose();
   }
 
@@ -93,11 +150,33 @@ class WebSocketSession implements SimpleSession {
     return mIsOpen.get();
   }
 
+  @Override
+  public int getQueuedMessageCount() {
+    return mWriteHandler.getQueuedMessageCount();
+  }
+
+  @Override
+  public long getDroppedMessageCount() {
+    return mWriteHandler.getDroppedMessageCount();
+  }
+
+  @Override
+  public long getCoalescedMessageCount() {
+    return mWriteHandler.getCoalescedMessageCount();
+  }
+
   private void doWrite(Frame frame) {
     if (signalErrorIfNotOpen()) {
       return;
     }
-    mWriteHandler.write(frame, mErrorForwardingWriteCallback);
+    mWriteHandler.write(frame, SendPolicy.BLOCK, null /* key */);
+  }
+
+  private void doWriteControl(Frame frame) {
+    if (signalErrorIfNotOpen()) {
+      return;
+    }
+    mWriteHandler.writeControl(frame);
   }
 
   /**
@@ -148,7 +227,9 @@ class WebSocketSession implements SimpleSession {
 
       if (payloadLen >= 2) {
         closeCode = ((payload[0] & 0xff) << 8) | (payload[1] & 0xff);
-        closeReasonPhrase = (payloadLen > 2) ? new String(payload, 2, payloadLen - 2) : null;
+        closeReasonPhrase = (payloadLen > 2)
+            ? new String(payload, 2, payloadLen - 2, Utf8Charset.INSTANCE)
+            : null;
       } else {
         closeCode = CloseCodes.CLOSED_ABNORMALLY;
         closeReasonPhrase = "Unparseable close frame";
@@ -163,7 +244,9 @@ class WebSocketSession implements SimpleSession {
     }
 
     private void handlePing(byte[] payload, int payloadLen) {
-      doWrite(FrameHelper.createPongFrame(payload, payloadLen));
+      // The payload is owned by the reader, so the queued pong gets its own copy.
+      doWriteControl(
+          FrameHelper.createPongFrame(Arrays.copyOf(payload, payloadLen), payloadLen));
     }
 
     private void handlePong(byte[] payload, int payloadLen) {
@@ -171,7 +254,9 @@ class WebSocketSession implements SimpleSession {
     }
 
     private void handleTextFrame(byte[] payload, int payloadLen) {
-      mEndpoint.onMessage(WebSocketSession.this, new String(payload, 0, payloadLen));
+      mEndpoint.onMessage(
+          WebSocketSession.this,
+          new String(payload, 0, payloadLen, Utf8Charset.INSTANCE));
     }
 
     private void handleBinaryFrame(byte[] payload, int payloadLen) {
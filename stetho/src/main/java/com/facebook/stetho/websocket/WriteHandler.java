@@ -7,27 +7,316 @@
 
 package com.facebook.stetho.websocket;
 
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
 
+/**
+ * Bounded queue of outgoing frames drained by a dedicated writer thread.  Producers only ever
+ * wait for queue space (with {@link SendPolicy#BLOCK}, or {@link SendPolicy#COALESCE} when there
+ * is nothing to merge into), never for the socket itself.
+ * The writer batches whatever is queued and only flushes once the queue runs dry.
+ */
 @ThreadSafe
 class WriteHandler {
+  private static final int MAX_QUEUED_MESSAGES = 1024;
+  private static final long MAX_QUEUED_BYTES = 8 * 1024 * 1024;
+
+  /**
+   * How long {@link #shutdown} gives the writer to drain frames that are already queued (most
+   * importantly a close frame) before the caller tears down the socket.
+   */
+  private static final long SHUTDOWN_DRAIN_TIMEOUT_MS = 1000;
+
   private final BufferedOutputStream mBufferedOutput;
+  private final WriteCallback mCallback;
+
+  /**
+   * Only touched by the writer thread.
+   */
+  private final @Nullable PerMessageDeflate.MessageDeflater mDeflater;
+
+  @GuardedBy("this")
+  private final ArrayDeque<Entry> mQueue = new ArrayDeque<>();
+
+  /**
+   * Queued entries which have a key, for {@link SendPolicy#DROP_OLDEST} and
+   * {@link SendPolicy#COALESCE}.  Entries leave this map as soon as the writer takes them.
+   */
+  @GuardedBy("this")
+  private final HashMap<Object, Entry> mKeyedEntries = new HashMap<>();
+
+  @GuardedBy("this")
+  private long mQueuedBytes;
+
+  @GuardedBy("this")
+  private long mDroppedCount;
+
+  @GuardedBy("this")
+  private long mCoalescedCount;
+
+  @GuardedBy("this")
+  private boolean mShutdown;
+
+  @GuardedBy("this")
+  private @Nullable Thread mWriterThread;
+
+  public WriteHandler(OutputStream rawSocketOutput, WriteCallback callback) {
+    this(rawSocketOutput, callback, null /* deflater */);
+  }
+
+  /**
+   * @param deflater Compressor for data frames, if {@code permessage-deflate} was negotiated.
+   */
+  public WriteHandler(
+      OutputStream rawSocketOutput,
+      WriteCallback callback,
+      @Nullable PerMessageDeflate.MessageDeflater deflater) {
+    mBufferedOutput = new BufferedOutputStream(rawSocketOutput, 8192);
+    mCallback = callback;
+    mDeflater = deflater;
+  }
+
+  public synchronized void start() {
+    if (mWriterThread == null && !mShutdown) {
+      mWriterThread = new Thread(this::writeLoop, "StethoWebSocketWriter");
+      mWriterThread.setDaemon(true);
+      mWriterThread.start();
+    }
+  }
+
+  /**
+   * Stop accepting new frames and give the writer a moment to flush what's already queued.
+   */
+  public void shutdown() {
+    Thread writerThread;
+    synchronized (this) {
+      mShutdown = true;
+      notifyAll();
+      writerThread = mWriterThread;
+    }
+    if (writerThread != null && writerThread != Thread.currentThread()) {
+      try {
+        writerThread.join(SHUTDOWN_DRAIN_TIMEOUT_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Queue a control frame.  These are tiny, rare and required by the protocol so they are never
+   * dropped and ignore the queue limits.
+   */
+  public synchronized void writeControl(Frame frame) {
+    if (mShutdown) {
+      return;
+    }
+    append(new Entry(frame, null /* message */, null /* key */, frame.payloadLen));
+  }
+
+  public synchronized void write(Frame frame, SendPolicy policy, @Nullable Object key) {
+    if (policy == SendPolicy.COALESCE) {
+      throw new IllegalArgumentException("COALESCE requires a CoalescableText message");
+    }
+    if (policy == SendPolicy.DROP_OLDEST && key != null) {
+      Entry oldest = mKeyedEntries.get(key);
+      if (oldest != null) {
+        remove(oldest);
+        mDroppedCount++;
+      }
+    }
+    if (!awaitCapacity(frame.payloadLen, policy == SendPolicy.BLOCK)) {
+      mDroppedCount++;
+      return;
+    }
+    append(new Entry(frame, null /* message */, key, frame.payloadLen));
+  }
+
+  public synchronized void write(CoalescableText message) {
+    Object key = message.getCoalesceKey();
+    Entry queued = mKeyedEntries.get(key);
+    if (queued != null && queued.message != null && queued.message.coalesce(message)) {
+      mCoalescedCount++;
+      return;
+    }
+    final int size = message.getSizeEstimate();
+    if (!awaitCapacity(size, true /* block */)) {
+      mDroppedCount++;
+      return;
+    }
+    // Waiting may have let the writer take the entry we failed to merge into, or let another
+    // producer queue one we can merge into now.
+    queued = mKeyedEntries.get(key);
+    if (queued != null && queued.message != null && queued.message.coalesce(message)) {
+      mCoalescedCount++;
+      return;
+    }
+    append(new Entry(null /* frame */, message, key, size));
+  }
+
+  public synchronized int getQueuedMessageCount() {
+    return mQueue.size();
+  }
+
+  public synchronized long getDroppedMessageCount() {
+    return mDroppedCount;
+  }
+
+  public synchronized long getCoalescedMessageCount() {
+    return mCoalescedCount;
+  }
+
+  /**
+   * @return True if there is room for a message of {@code payloadLen} bytes.  A message larger
+   *     than the whole byte budget is still admitted into an empty queue.
+   */
+  @GuardedBy("this")
+  private boolean awaitCapacity(long payloadLen, boolean block) {
+    while (!mShutdown) {
+      if (mQueue.isEmpty() ||
+          (mQueue.size() < MAX_QUEUED_MESSAGES &&
+              mQueuedBytes + payloadLen <= MAX_QUEUED_BYTES)) {
+        return true;
+      }
+      if (!block) {
+        return false;
+      }
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return false;
+  }
+
+  @GuardedBy("this")
+  private void append(Entry entry) {
+    mQueue.addLast(entry);
+    mQueuedBytes += entry.size;
+    if (entry.key != null) {
+      mKeyedEntries.put(entry.key, entry);
+    }
+    notifyAll();
+  }
+
+  @GuardedBy("this")
+  private void remove(Entry entry) {
+    mQueue.remove(entry);
+    forget(entry);
+  }
+
+  @GuardedBy("this")
+  private void forget(Entry entry) {
+    mQueuedBytes -= entry.size;
+    if (entry.key != null && mKeyedEntries.get(entry.key) == entry) {
+      mKeyedEntries.remove(entry.key);
+    }
+  }
 
-  public WriteHandler(OutputStream rawSocketOutput) {
-    mBufferedOutput = new BufferedOutputStream(rawSocketOutput, 1024);
+  @GuardedBy("this")
+  private @Nullable Entry takeNext() throws InterruptedException {
+    while (mQueue.isEmpty()) {
+      if (mShutdown) {
+        return null;
+      }
+      wait();
+    }
+    Entry entry = mQueue.removeFirst();
+    forget(entry);
+    // Wake up any producers waiting for space.
+    notifyAll();
+    return entry;
   }
 
-  public synchronized void write(Frame frame, WriteCallback callback) {
+  private void writeLoop() {
     try {
-      frame.writeTo(mBufferedOutput);
-      mBufferedOutput.flush();
-      callback.onSuccess();
+      while (true) {
+        Entry entry;
+        boolean flush;
+        synchronized (this) {
+          entry = takeNext();
+          if (entry == null) {
+            break;
+          }
+          flush = mQueue.isEmpty();
+        }
+        Frame frame = entry.frame != null ? entry.frame : encode(entry.message);
+        if (frame != null) {
+          if (mDeflater != null && !frame.isControlFrame()) {
+            mDeflater.compress(frame);
+          }
+          frame.writeTo(mBufferedOutput);
+        }
+        if (flush) {
+          mBufferedOutput.flush();
+        }
+        mCallback.onSuccess();
+      }
     } catch (IOException e) {
-      callback.onFailure(e);
+      abandon();
+      mCallback.onFailure(e);
+    } catch (InterruptedException e) {
+      abandon();
+    } finally {
+      if (mDeflater != null) {
+        mDeflater.end();
+      }
+    }
+  }
+
+  private @Nullable Frame encode(CoalescableText message) {
+    try {
+      byte[] payload = message.encode();
+      return FrameHelper.createTextFrame(payload, payload.length);
+    } catch (RuntimeException e) {
+      // Don't let a single bad message take down the writer and wedge the queue.
+      synchronized (this) {
+        mDroppedCount++;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * The socket is unusable, so discard everything that is left and release any blocked producers.
+   */
+  private synchronized void abandon() {
+    mShutdown = true;
+    mDroppedCount += mQueue.size();
+    mQueue.clear();
+    mKeyedEntries.clear();
+    mQueuedBytes = 0;
+    notifyAll();
+  }
+
+  private static class Entry {
+    public final @Nullable Frame frame;
+    public final @Nullable CoalescableText message;
+    public final @Nullable Object key;
+
+    /**
+     * Bytes counted against {@link #MAX_QUEUED_BYTES}, fixed for as long as the entry is queued.
+     */
+    public final long size;
+
+    public Entry(
+        @Nullable Frame frame,
+        @Nullable CoalescableText message,
+        @Nullable Object key,
+        long size) {
+      this.frame = frame;
+      this.message = message;
+      this.key = key;
+      this.size = size;
     }
   }
 }
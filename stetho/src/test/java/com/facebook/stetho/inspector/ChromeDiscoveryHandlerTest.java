@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector;
+
+import android.app.Activity;
+import android.net.Uri;
+import android.os.Build;
+
+import com.facebook.stetho.server.http.HttpHeaders;
+import com.facebook.stetho.server.http.HttpStatus;
+import com.facebook.stetho.server.http.LightHttpRequest;
+import com.facebook.stetho.server.http.LightHttpResponse;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.*;
+
+@Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN)
+@RunWith(RobolectricTestRunner.class)
+public class ChromeDiscoveryHandlerTest {
+  private final Activity mActivity = Robolectric.setupActivity(Activity.class);
+  private final ChromeDiscoveryHandler mHandler =
+      new ChromeDiscoveryHandler(mActivity, "/inspector");
+
+  @Test
+  public void testResponseHasETag() {
+    LightHttpResponse response = getVersion(null /* ifNoneMatch */);
+
+    assertEquals(HttpStatus.HTTP_OK, response.code);
+    assertNotNull(response.body);
+    assertNotNull(response.getFirstHeaderValue(HttpHeaders.ETAG));
+  }
+
+  @Test
+  public void testMatchingIfNoneMatchIsNotModified() {
+    String etag = getVersion(null /* ifNoneMatch */).getFirstHeaderValue(HttpHeaders.ETAG);
+
+    LightHttpResponse response = getVersion(etag);
+    assertEquals(HttpStatus.HTTP_NOT_MODIFIED, response.code);
+    assertNull(response.body);
+    assertEquals(etag, response.getFirstHeaderValue(HttpHeaders.ETAG));
+
+    // Weak comparison, and any tag in a list.
+    assertEquals(HttpStatus.HTTP_NOT_MODIFIED, getVersion("W/" + etag).code);
+    assertEquals(HttpStatus.HTTP_NOT_MODIFIED, getVersion("\"stale\", " + etag).code);
+    assertEquals(HttpStatus.HTTP_NOT_MODIFIED, getVersion("*").code);
+  }
+
+  @Test
+  public void testStaleIfNoneMatchGetsFullResponse() {
+    LightHttpResponse response = getVersion("\"0-0\"");
+
+    assertEquals(HttpStatus.HTTP_OK, response.code);
+    assertNotNull(response.body);
+  }
+
+  private LightHttpResponse getVersion(@Nullable String ifNoneMatch) {
+    LightHttpRequest request = new LightHttpRequest();
+    request.method = "GET";
+    request.uri = Uri.parse("/json/version");
+    request.protocol = "HTTP/1.1";
+    if (ifNoneMatch != null) {
+      request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+    }
+    LightHttpResponse response = new LightHttpResponse();
+    assertTrue(mHandler.handleRequest(null /* socket */, request, response));
+    return response;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.elements;
+
+import com.facebook.stetho.common.ArrayListAccumulator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ElementSearchIndexTest {
+  private ElementSearchIndex mIndex;
+  private TestAttributeSource mAttributes;
+
+  @Before
+  public void setup() {
+    mIndex = new ElementSearchIndex();
+    mAttributes = new TestAttributeSource();
+    put(3, "TextView", "id", "com.example:id/title", "text", "Hello");
+    put(1, "LinearLayout");
+    put(2, "TextView", "id", "com.example:id/subtitle", "text", "Hello!");
+    put(4, "ImageView", "id", "title");
+  }
+
+  @Test
+  public void testSubstringMatchesNamesAndAttributes() {
+    assertEquals(Arrays.asList(2, 3), search("textv"));
+    assertEquals(Arrays.asList(2, 3, 4), search("TITLE"));
+    assertEquals(Arrays.asList(1, 2, 3, 4), search("i"));
+  }
+
+  @Test
+  public void testQueryHints() {
+    assertEquals(Arrays.asList(2, 3), search("<text"));
+    assertEquals(Collections.<Integer>emptyList(), search("<text>"));
+    assertEquals(Arrays.asList(1), search("<linearlayout>"));
+    assertEquals(Arrays.asList(3, 4), search("#title"));
+    assertEquals(Arrays.asList(3), search("\"hello\""));
+  }
+
+  @Test
+  public void testUpdates() {
+    mIndex.remove(3);
+    mIndex.onAttributeRemoved(4, "id");
+    assertEquals(Collections.<Integer>emptyList(), search("#title"));
+
+    mIndex.onAttributeModified(1, "id", "com.example:id/title");
+    assertEquals(Arrays.asList(1), search("#title"));
+
+    mIndex.clear();
+    assertEquals(Collections.<Integer>emptyList(), search("view"));
+  }
+
+  @Test
+  public void testOtherAttributesReadAtSearchTime() {
+    // The text of a TextView is only read when it's needed, so it's never out of date.
+    mAttributes.put(3, "id", "com.example:id/title", "text", "Goodbye");
+    assertEquals(Collections.<Integer>emptyList(), search("\"hello\""));
+    assertEquals(Arrays.asList(3), search("goodbye"));
+  }
+
+  @Test
+  public void testIndexedQueriesDontReadAttributes() {
+    assertEquals(Arrays.asList(2, 3), search("<textview>"));
+    assertEquals(Arrays.asList(3, 4), search("#title"));
+    assertEquals(0, mAttributes.reads);
+
+    assertEquals(Arrays.asList(2, 3, 4), search("title"));
+    assertEquals(0, mAttributes.reads);
+
+    // Only the elements with attributes besides ids, which don't match by name or id.
+    assertEquals(Arrays.asList(2, 3), search("hello"));
+    assertEquals(2, mAttributes.reads);
+  }
+
+  private void put(int nodeId, String nodeName, String... attributes) {
+    mIndex.put(nodeId, nodeName, Arrays.asList(attributes));
+    mAttributes.put(nodeId, attributes);
+  }
+
+  private List<Integer> search(String query) {
+    ElementSearchIndex.Search search = mIndex.search(query);
+    if (search.needsAttributes()) {
+      search.matchAttributes(mAttributes);
+    }
+    ArrayListAccumulator<Integer> results = new ArrayListAccumulator<>();
+    search.getResults(results);
+    return results;
+  }
+
+  private static class TestAttributeSource implements ElementSearchIndex.AttributeSource {
+    private final HashMap<Integer, String[]> mAttributes = new HashMap<>();
+    public int reads;
+
+    public void put(int nodeId, String... attributes) {
+      mAttributes.put(nodeId, attributes);
+    }
+
+    @Override
+    public void getAttributes(int nodeId, AttributeAccumulator attributes) {
+      ++reads;
+      String[] nameValuePairs = mAttributes.get(nodeId);
+      for (int i = 0; i < nameValuePairs.length; i += 2) {
+        attributes.store(nameValuePairs[i], nameValuePairs[i + 1]);
+      }
+    }
+  }
+}
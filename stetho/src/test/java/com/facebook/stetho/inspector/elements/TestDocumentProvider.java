@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.elements;
+
+import com.facebook.stetho.common.Accumulator;
+import com.facebook.stetho.common.UncheckedCallable;
+
+import javax.annotation.Nullable;
+
+/**
+ * Serves a tree of {@link TestElement}s to a {@link Document}, running everything on the calling
+ * thread.  Changes to the tree are reported with the {@code notify} methods.
+ */
+public class TestDocumentProvider implements DocumentProvider, DocumentProviderFactory {
+  private final TestElement mRoot;
+  private final TestDescriptor mDescriptor = new TestDescriptor();
+  private @Nullable DocumentProviderListener mListener;
+
+  public TestDocumentProvider(TestElement root) {
+    mRoot = root;
+  }
+
+  public void notifyPossiblyChanged() {
+    mListener.onPossiblyChanged();
+  }
+
+  public void notifyAttributeModified(Object element, String name, String value) {
+    mListener.onAttributeModified(element, name, value);
+  }
+
+  public void notifyStylesPossiblyChanged(Object element) {
+    mListener.onStylesPossiblyChanged(element);
+  }
+
+  @Override
+  public DocumentProvider create() {
+    return this;
+  }
+
+  @Override
+  public void setListener(DocumentProviderListener listener) {
+    mListener = listener;
+  }
+
+  @Override
+  public void dispose() {
+  }
+
+  @Override
+  public Object getRootElement() {
+    return mRoot;
+  }
+
+  @Override
+  public NodeDescriptor getNodeDescriptor(@Nullable Object element) {
+    return mDescriptor;
+  }
+
+  @Override
+  public void highlightElement(Object element, int color) {
+  }
+
+  @Override
+  public void hideHighlight() {
+  }
+
+  @Override
+  public void setInspectModeEnabled(boolean enabled) {
+  }
+
+  @Override
+  public void setAttributesAsText(Object element, String text) {
+  }
+
+  @Override
+  public boolean checkThreadAccess() {
+    return true;
+  }
+
+  @Override
+  public void verifyThreadAccess() {
+  }
+
+  @Override
+  public <V> V postAndWait(UncheckedCallable<V> c) {
+    return c.call();
+  }
+
+  @Override
+  public void postAndWait(Runnable r) {
+    r.run();
+  }
+
+  @Override
+  public void postDelayed(Runnable r, long delayMillis) {
+    r.run();
+  }
+
+  @Override
+  public void removeCallbacks(Runnable r) {
+  }
+
+  private static class TestDescriptor extends Descriptor<TestElement> {
+    @Override
+    public void hook(TestElement element) {
+    }
+
+    @Override
+    public void unhook(TestElement element) {
+    }
+
+    @Override
+    public NodeType getNodeType(TestElement element) {
+      return NodeType.ELEMENT_NODE;
+    }
+
+    @Override
+    public String getNodeName(TestElement element) {
+      return element.name;
+    }
+
+    @Override
+    public String getLocalName(TestElement element) {
+      return element.name;
+    }
+
+    @Nullable
+    @Override
+    public String getNodeValue(TestElement element) {
+      return null;
+    }
+
+    @Override
+    public void getChildren(TestElement element, Accumulator<Object> children) {
+      for (TestElement child : element.children) {
+        children.store(child);
+      }
+    }
+
+    @Override
+    public void getAttributes(TestElement element, AttributeAccumulator attributes) {
+    }
+
+    @Override
+    public void setAttributesAsText(TestElement element, String text) {
+    }
+
+    @Override
+    public void getStyleRuleNames(TestElement element, StyleRuleNameAccumulator accumulator) {
+      accumulator.store("test", false /* editable */);
+    }
+
+    @Override
+    public void getStyles(TestElement element, String ruleName, StyleAccumulator accumulator) {
+      ++element.styleReads;
+      accumulator.store("width", element.width, false /* isDefault */);
+    }
+
+    @Override
+    public void setStyle(TestElement element, String ruleName, String name, String value) {
+    }
+
+    @Override
+    public void getComputedStyles(TestElement element, ComputedStyleAccumulator accumulator) {
+      ++element.computedStyleReads;
+      accumulator.store("width", element.width);
+    }
+  }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.elements;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An element of a {@link TestDocumentProvider}'s tree, with a single style, {@code width}.
+ */
+public class TestElement {
+  public final String name;
+  public final List<TestElement> children;
+  public String width = "0";
+  public int computedStyleReads;
+  public int styleReads;
+
+  public TestElement(String name, TestElement... children) {
+    this.name = name;
+    this.children = new ArrayList<>(Arrays.asList(children));
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.elements.android;
+
+import android.app.Activity;
+import android.os.Build;
+import android.view.View;
+
+import com.facebook.stetho.common.ThreadBound;
+import com.facebook.stetho.inspector.elements.DescriptorProvider;
+import com.facebook.stetho.inspector.elements.DocumentProviderListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN)
+@RunWith(RobolectricTestRunner.class)
+public class AndroidDocumentProviderTest {
+  private final Activity mActivity = Robolectric.setupActivity(Activity.class);
+  private final View mRootView = new View(mActivity);
+  private final DocumentProviderListener mListener = mock(DocumentProviderListener.class);
+
+  private AndroidDocumentProvider mProvider;
+
+  @Before
+  public void setup() {
+    mProvider = new AndroidDocumentProvider(
+        mActivity.getApplication(),
+        Collections.<DescriptorProvider>emptyList(),
+        mock(ThreadBound.class));
+    mProvider.setListener(mListener);
+  }
+
+  @Test
+  public void testLayoutReportsStylesPossiblyChanged() {
+    mProvider.onWindowLayout(mRootView);
+    verify(mListener).onStylesPossiblyChanged(mRootView);
+  }
+}
@@ -9,6 +9,9 @@ package com.facebook.stetho.inspector.elements.android;
 
 import android.app.Activity;
 import android.os.Build;
+import android.text.TextUtils;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
 import android.widget.CheckBox;
 import android.widget.TextView;
 import org.junit.Before;
@@ -19,6 +22,8 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 @Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN)
 @RunWith(RobolectricTestRunner.class)
@@ -51,12 +56,66 @@ public class MethodInvokerTest {
     assertEquals(34f, mTextView.getTextSize(), 0);
   }
 
+  @Test
+  public void testSetNumberWithUnitOverload() {
+    // Taken as pixels, like getTextSize() returns, rather than the sp of setTextSize(float).
+    mTextView.getResources().getDisplayMetrics().scaledDensity = 2f;
+    mInvoker.invoke(mTextView, "setTextSize", "34");
+    assertEquals(34f, mTextView.getTextSize(), 0);
+  }
+
   @Test
   public void testSetBoolean() {
     mInvoker.invoke(mCheckBox, "setChecked", "true");
     assertEquals(true, mCheckBox.isChecked());
   }
 
+  @Test
+  public void testSetColor() {
+    mInvoker.invoke(mTextView, "setTextColor", "#ff0000");
+    assertEquals(0xffff0000, mTextView.getCurrentTextColor());
+  }
+
+  @Test
+  public void testSetEnum() {
+    mInvoker.invoke(mTextView, "setEllipsize", "end");
+    assertEquals(TextUtils.TruncateAt.END, mTextView.getEllipsize());
+  }
+
+  @Test
+  public void testSetDimension() {
+    mInvoker.invoke(mTextView, "setMinWidth", "12px");
+    assertEquals(12, mTextView.getMinWidth());
+  }
+
+  @Test
+  public void testSetDimensionWithUnitOverload() {
+    // setTextSize(float) takes sp, so a dimension goes to setTextSize(int, float) instead.
+    mInvoker.invoke(mTextView, "setTextSize", "30px");
+    assertEquals(30f, mTextView.getTextSize(), 0);
+
+    DisplayMetrics displayMetrics = mTextView.getResources().getDisplayMetrics();
+    mInvoker.invoke(mTextView, "setTextSize", "12dp");
+    assertEquals(
+        TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 12f, displayMetrics),
+        mTextView.getTextSize(),
+        0);
+  }
+
+  @Test
+  public void testHasSetter() {
+    assertTrue(mInvoker.hasSetter(mTextView, "setTextSize"));
+    assertFalse(mInvoker.hasSetter(mTextView, "setSomething"));
+  }
+
+  @Test
+  public void testSetIgnoresInvalidArgument() {
+    // Should not throw
+    mInvoker.invoke(mTextView, "setId", "foo");
+    mInvoker.invoke(mCheckBox, "setChecked", "foo");
+    assertEquals(false, mCheckBox.isChecked());
+  }
+
   @Test
   public void testSetAttributeAsTextIgnoreUnknownAttribute() {
     // Should not throw
@@ -9,20 +9,33 @@ package com.facebook.stetho.inspector.elements.android;
 
 import android.app.Activity;
 import android.os.Build;
+import android.util.TypedValue;
+import android.view.View;
 import android.widget.CheckBox;
 import android.widget.TextView;
 
+import com.facebook.stetho.inspector.elements.ObjectDescriptor;
+import com.facebook.stetho.inspector.elements.StyleAccumulator;
+
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN)
 @RunWith(RobolectricTestRunner.class)
@@ -34,6 +47,11 @@ public class ViewDescriptorTest {
   private final TextView mTextView = new TextView(mActivity);
   private final CheckBox mCheckBox = new CheckBox(mActivity);
 
+  @Before
+  public void setup() {
+    mDescriptor.setSuper(new ObjectDescriptor());
+  }
+
   @Test
   public void testSetAttributeAsTextWithSetText() {
     mDescriptor.setAttributesAsText(mTextView, "text=\"Hello World\"");
@@ -64,4 +82,68 @@ public class ViewDescriptorTest {
     mDescriptor.setAttributesAsText(mTextView, "garbage");
     verify(mMethodInvoker, never()).invoke(anyObject(), anyString(), anyString());
   }
+
+  @Test
+  public void testSetStyle() {
+    mDescriptor.setStyle(mTextView, "<this_view>", "text-size", "20");
+    verify(mMethodInvoker).invoke(mTextView, "setTextSize", "20");
+    mDescriptor.setStyle(mTextView, "<this_view>", "is-clickable", "true");
+    verify(mMethodInvoker).invoke(mTextView, "setClickable", "true");
+  }
+
+  @Test
+  public void testSetStyleWithValueFromGetStyles() {
+    final ViewDescriptor descriptor = new ViewDescriptor(new MethodInvoker());
+    descriptor.setSuper(new ObjectDescriptor());
+    mTextView.getResources().getDisplayMetrics().scaledDensity = 2f;
+    mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, 30f);
+
+    final Map<String, String> styles = new HashMap<>();
+    getStyles(descriptor, mTextView, "<this_view>", styles);
+    descriptor.setStyle(mTextView, "<this_view>", "text-size", styles.get("text-size"));
+
+    assertEquals(30f, mTextView.getTextSize(), 0);
+  }
+
+  @Test
+  public void testGetStylesIncludesSubclassExportedProperties() {
+    final Map<String, String> styles = new HashMap<>();
+    getStyles(mCheckBox, "<this_view>", styles);
+    getStyles(mCheckBox, "<this_view> (read-only)", styles);
+
+    assertEquals("false", styles.get("is-checked"));
+    assertTrue(styles.containsKey("visibility"));
+  }
+
+  @Test
+  public void testGetStylesEditableOnlyWithSetter() {
+    when(mMethodInvoker.hasSetter(mCheckBox, "setChecked")).thenReturn(true);
+
+    final Map<String, String> editableStyles = new HashMap<>();
+    getStyles(mCheckBox, "<this_view>", editableStyles);
+    final Map<String, String> readOnlyStyles = new HashMap<>();
+    getStyles(mCheckBox, "<this_view> (read-only)", readOnlyStyles);
+
+    assertEquals("false", editableStyles.get("is-checked"));
+    assertFalse(editableStyles.containsKey("visibility"));
+    assertFalse(readOnlyStyles.containsKey("is-checked"));
+    assertTrue(readOnlyStyles.containsKey("visibility"));
+  }
+
+  private void getStyles(View element, String ruleName, Map<String, String> styles) {
+    getStyles(mDescriptor, element, ruleName, styles);
+  }
+
+  private static void getStyles(
+      ViewDescriptor descriptor,
+      View element,
+      String ruleName,
+      final Map<String, String> styles) {
+    descriptor.getStyles(element, ruleName, new StyleAccumulator() {
+      @Override
+      public void store(String name, String value, boolean isDefault) {
+        styles.put(name, value);
+      }
+    });
+  }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class AsyncCaptureOutputStreamTest {
+  @Test(timeout = 5000)
+  public void testWritesEverythingByClose() throws IOException {
+    byte[] data = new byte[1024 * 1024 + 17];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i % 251);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    OutputStream captureStream = new AsyncCaptureOutputStream(out);
+    captureStream.write(data[0]);
+    for (int offset = 1; offset < data.length; offset += 1000) {
+      captureStream.write(data, offset, Math.min(1000, data.length - offset));
+      // Keep well clear of abandoning the capture.
+      while (offset - out.size() > 64 * 1024) {
+        Thread.yield();
+      }
+    }
+    captureStream.close();
+    assertArrayEquals(data, out.toByteArray());
+  }
+
+  @Test(timeout = 5000)
+  public void testSlotsReusedAcrossStreams() throws IOException {
+    byte[] chunk = new byte[40 * 1024];
+    OutputStream first = new AsyncCaptureOutputStream(new ByteArrayOutputStream());
+    first.write(chunk);
+    first.close();
+
+    // Everything has been written out by the time close returns, so the slots are back.
+    int pooledSlotCount = AsyncCaptureOutputStream.getPooledSlotCount();
+    assertTrue(pooledSlotCount >= 3);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    OutputStream second = new AsyncCaptureOutputStream(out);
+    second.write('x');
+    assertEquals(pooledSlotCount - 1, AsyncCaptureOutputStream.getPooledSlotCount());
+    second.close();
+    assertEquals(pooledSlotCount, AsyncCaptureOutputStream.getPooledSlotCount());
+    assertArrayEquals(new byte[] { 'x' }, out.toByteArray());
+  }
+
+  @Test(timeout = 5000)
+  public void testAbandonsWhenFallingBehind() throws IOException, InterruptedException {
+    final CountDownLatch unblock = new CountDownLatch(1);
+    final CountDownLatch closed = new CountDownLatch(1);
+    OutputStream slowOut = new FilterOutputStream(new ByteArrayOutputStream()) {
+      @Override
+      public void write(byte[] buffer, int offset, int length) throws IOException {
+        try {
+          unblock.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        out.write(buffer, offset, length);
+      }
+
+      @Override
+      public void close() throws IOException {
+        super.close();
+        closed.countDown();
+      }
+    };
+
+    OutputStream captureStream = new AsyncCaptureOutputStream(slowOut);
+    byte[] chunk = new byte[8 * 1024];
+    Arrays.fill(chunk, (byte) 'x');
+    try {
+      for (int i = 0; i < 1000; i++) {
+        captureStream.write(chunk);
+      }
+      fail("Expected the capture to be abandoned");
+    } catch (IOException e) {
+      // expected
+    }
+
+    // Must not wait for the stuck writer.
+    captureStream.close();
+    unblock.countDown();
+    closed.await();
+  }
+}
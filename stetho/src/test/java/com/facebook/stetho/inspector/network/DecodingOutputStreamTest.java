@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class DecodingOutputStreamTest {
+  /**
+   * Toy encoding that flips every bit.
+   */
+  private static final ContentDecoder INVERTING_DECODER = new ContentDecoder() {
+    @Override
+    public InputStream decode(InputStream encoded) {
+      return new FilterInputStream(encoded) {
+        @Override
+        public int read() throws IOException {
+          int b = super.read();
+          return b == -1 ? -1 : (~b & 0xff);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+          int n = super.read(buffer, offset, length);
+          for (int i = 0; i < n; i++) {
+            buffer[offset + i] = (byte) ~buffer[offset + i];
+          }
+          return n;
+        }
+      };
+    }
+  };
+
+  @Test(timeout = 1000)
+  public void testDecode() throws IOException {
+    byte[] data = "test123test123".getBytes();
+    byte[] encoded = new byte[data.length];
+    for (int i = 0; i < data.length; i++) {
+      encoded[i] = (byte) ~data[i];
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    OutputStream decodingStream = DecodingOutputStream.create(out, INVERTING_DECODER);
+    decodingStream.write(encoded);
+    decodingStream.close();
+    assertArrayEquals(data, out.toByteArray());
+  }
+
+  @Test
+  public void testRegisteredDecoderIsSupported() {
+    assertFalse(DecompressionHelper.isSupportedEncoding("x-inverted"));
+    ContentDecoderRegistry.getInstance().register("x-inverted", INVERTING_DECODER);
+    try {
+      assertTrue(DecompressionHelper.isSupportedEncoding("x-inverted"));
+    } finally {
+      ContentDecoderRegistry.getInstance().unregister("x-inverted");
+    }
+  }
+}
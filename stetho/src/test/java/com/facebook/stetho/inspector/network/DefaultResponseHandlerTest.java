@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.verify;
+
+@RunWith(JUnit4.class)
+public class DefaultResponseHandlerTest {
+  private static final String TEST_REQUEST_ID = "1234";
+
+  private NetworkEventReporter mNetworkEventReporter;
+  private DefaultResponseHandler mResponseHandler;
+
+  @Before
+  public void setup() {
+    mNetworkEventReporter = Mockito.mock(NetworkEventReporter.class);
+    mResponseHandler = new DefaultResponseHandler(mNetworkEventReporter, TEST_REQUEST_ID);
+  }
+
+  @Test
+  public void testCoalescesReads() {
+    int totalBytes = 0;
+    for (int i = 0; i < 1000; i++) {
+      mResponseHandler.onRead(8 * 1024);
+      totalBytes += 8 * 1024;
+    }
+    mResponseHandler.onEOF();
+
+    ArgumentCaptor<Integer> dataLengths = ArgumentCaptor.forClass(Integer.class);
+    verify(mNetworkEventReporter, atMost(1000 / 8 + 1)).dataReceived(
+        eq(TEST_REQUEST_ID),
+        dataLengths.capture(),
+        anyInt());
+    assertEquals(totalBytes, sum(dataLengths.getAllValues()));
+    verify(mNetworkEventReporter).responseReadFinished(TEST_REQUEST_ID);
+  }
+
+  @Test
+  public void testReportsDecodedBytes() {
+    mResponseHandler.onReadDecoded(100);
+    mResponseHandler.onRead(40);
+    mResponseHandler.onReadDecoded(200);
+    mResponseHandler.onRead(60);
+    mResponseHandler.onEOF();
+
+    verify(mNetworkEventReporter).dataReceived(TEST_REQUEST_ID, 100, 300);
+  }
+
+  private static int sum(List<Integer> values) {
+    int sum = 0;
+    for (int value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class NetworkCapturePolicyTest {
+  @Test
+  public void testGetHost() {
+    assertEquals("example.com", NetworkCapturePolicy.getHost("https://example.com"));
+    assertEquals("example.com", NetworkCapturePolicy.getHost("http://Example.com:8080/a?b#c"));
+    assertEquals("example.com", NetworkCapturePolicy.getHost("http://user:pw@example.com/"));
+    assertEquals("::1", NetworkCapturePolicy.getHost("http://[::1]:80/"));
+    assertNull(NetworkCapturePolicy.getHost("data:text/plain,hello"));
+  }
+
+  @Test
+  public void testUrlRules() {
+    NetworkCapturePolicy policy = new NetworkCapturePolicy.Builder()
+        .includeHost("example.com")
+        .includeUrls("/api/")
+        .excludeHost("cdn.example.com")
+        .excludeUrls("\\.png$")
+        .build();
+
+    assertTrue(policy.shouldCapture("1", "https://example.com/feed"));
+    assertTrue(policy.shouldCapture("1", "https://www.example.com/feed"));
+    assertTrue(policy.shouldCapture("1", "https://other.com/api/feed"));
+    assertFalse(policy.shouldCapture("1", "https://notexample.com/feed"));
+    assertFalse(policy.shouldCapture("1", "https://cdn.example.com/feed"));
+    assertFalse(policy.shouldCapture("1", "https://example.com/photo.png"));
+  }
+
+  @Test
+  public void testSampleRate() {
+    NetworkCapturePolicy none = new NetworkCapturePolicy.Builder().sampleRate(0).build();
+    NetworkCapturePolicy half = new NetworkCapturePolicy.Builder().sampleRate(0.5).build();
+    int captured = 0;
+    for (int i = 0; i < 1000; i++) {
+      String requestId = String.valueOf(i);
+      assertFalse(none.shouldCapture(requestId, "https://example.com/"));
+      if (half.shouldCapture(requestId, "https://example.com/")) {
+        captured++;
+      }
+      // Asked again at a later point of the same request.
+      assertEquals(
+          half.shouldCapture(requestId, "https://example.com/"),
+          half.isSampled(requestId));
+    }
+    assertTrue("captured " + captured, captured > 400 && captured < 600);
+  }
+
+  @Test
+  public void testBodySizeLimits() {
+    NetworkCapturePolicy policy = new NetworkCapturePolicy.Builder()
+        .bodySizeLimit("image/*", 0)
+        .bodySizeLimit("application/json", 1024)
+        .maxBodySize(4096)
+        .build();
+
+    assertEquals(0, policy.getBodySizeLimit("image/webp"));
+    assertEquals(1024, policy.getBodySizeLimit("application/json; charset=utf-8"));
+    assertEquals(4096, policy.getBodySizeLimit("text/html"));
+    assertEquals(4096, policy.getBodySizeLimit(null));
+    assertEquals(
+        NetworkCapturePolicy.UNLIMITED,
+        NetworkCapturePolicy.CAPTURE_ALL.getBodySizeLimit("image/webp"));
+  }
+}
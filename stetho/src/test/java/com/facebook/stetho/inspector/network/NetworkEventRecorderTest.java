@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import android.os.Build;
+
+import com.facebook.stetho.inspector.jsonrpc.JsonRpcPeer;
+import com.facebook.stetho.json.ObjectMapper;
+import com.facebook.stetho.websocket.SimpleSession;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.*;
+
+@Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN)
+@RunWith(RobolectricTestRunner.class)
+public class NetworkEventRecorderTest {
+  @Test
+  public void testStaysWithinBudget() {
+    NetworkEventRecorder recorder =
+        new NetworkEventRecorder(64 * 1024 /* maxBytes */, true /* detached */);
+    for (int i = 0; i < 10000; i++) {
+      String requestId = String.valueOf(i);
+      assertTrue(recorder.recordRequestWillBeSent(
+          new SimpleRequest(requestId, "https://example.com/feed?page=" + i),
+          i /* timestamp */));
+      recorder.recordDataReceived(requestId, 100, 50, i);
+      recorder.recordLoadingFinished(requestId, i);
+    }
+    assertTrue(
+        "recorded " + recorder.getRecordedBytes(),
+        recorder.getRecordedBytes() <= 64 * 1024);
+  }
+
+  @Test
+  public void testReplaysToFirstPeer() throws Exception {
+    NetworkEventRecorder recorder =
+        new NetworkEventRecorder(64 * 1024 /* maxBytes */, true /* detached */);
+    recorder.recordRequestWillBeSent(new SimpleRequest("1", "https://example.com/a"), 1000);
+    recorder.recordRequestWillBeSent(new SimpleRequest("2", "https://example.com/b"), 2000);
+    recorder.recordLoadingFinished("1", 3000);
+    recorder.recordLoadingFailed("2", "timeout", 4000);
+
+    RecordingSession session = new RecordingSession();
+    recorder.replayTo(new JsonRpcPeer(new ObjectMapper(), session));
+
+    assertEquals(4, session.messages.size());
+    JSONObject first = session.messages.get(0);
+    assertEquals("Network.requestWillBeSent", first.getString("method"));
+    JSONObject params = first.getJSONObject("params");
+    assertEquals("1", params.getString("requestId"));
+    assertEquals(1.0, params.getDouble("timestamp"), 0.0);
+    assertEquals("https://example.com/a", params.getJSONObject("request").getString("url"));
+    assertEquals(
+        "a\nb",
+        params.getJSONObject("request").getJSONObject("headers").getString("X-Test"));
+    assertEquals("Network.loadingFinished", session.messages.get(2).getString("method"));
+    assertEquals(
+        "timeout",
+        session.messages.get(3).getJSONObject("params").getString("errorText"));
+
+    // Events now go straight to the peer, until it goes away again.
+    assertFalse(recorder.recordLoadingFinished("3", 5000));
+    recorder.detach();
+    assertTrue(recorder.recordLoadingFinished("3", 5000));
+  }
+
+  @Test(timeout = 5000)
+  public void testRecordsWithoutWaitingForReplay() throws Exception {
+    final NetworkEventRecorder recorder =
+        new NetworkEventRecorder(64 * 1024 /* maxBytes */, true /* detached */);
+    recorder.recordRequestWillBeSent(new SimpleRequest("1", "https://example.com/a"), 1000);
+
+    RecordingSession session = new RecordingSession() {
+      @Override
+      public void sendText(String payload) {
+        super.sendText(payload);
+        if (messages.size() == 1) {
+          // A network thread reporting an event while the replay is being sent.
+          Thread networkThread = new Thread() {
+            @Override
+            public void run() {
+              assertTrue(recorder.recordLoadingFinished("1", 2000));
+            }
+          };
+          networkThread.start();
+          try {
+            networkThread.join();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }
+    };
+    recorder.replayTo(new JsonRpcPeer(new ObjectMapper(), session));
+
+    assertEquals(2, session.messages.size());
+    assertEquals("Network.requestWillBeSent", session.messages.get(0).getString("method"));
+    assertEquals("Network.loadingFinished", session.messages.get(1).getString("method"));
+    assertFalse(recorder.isDetached());
+  }
+
+  private static class SimpleRequest implements NetworkEventReporter.InspectorRequest {
+    private final String mId;
+    private final String mUrl;
+
+    public SimpleRequest(String id, String url) {
+      mId = id;
+      mUrl = url;
+    }
+
+    @Override
+    public String id() {
+      return mId;
+    }
+
+    @Override
+    public String friendlyName() {
+      return "test";
+    }
+
+    @Nullable
+    @Override
+    public Integer friendlyNameExtra() {
+      return null;
+    }
+
+    @Override
+    public String url() {
+      return mUrl;
+    }
+
+    @Override
+    public String method() {
+      return "GET";
+    }
+
+    @Nullable
+    @Override
+    public byte[] body() {
+      return null;
+    }
+
+    @Override
+    public int headerCount() {
+      return 2;
+    }
+
+    @Override
+    public String headerName(int index) {
+      return "X-Test";
+    }
+
+    @Override
+    public String headerValue(int index) {
+      return index == 0 ? "a" : "b";
+    }
+
+    @Nullable
+    @Override
+    public String firstHeaderValue(String name) {
+      return "X-Test".equals(name) ? "a" : null;
+    }
+  }
+
+  private static class RecordingSession implements SimpleSession {
+    public final List<JSONObject> messages = new ArrayList<>();
+
+    @Override
+    public void sendText(String payload) {
+      try {
+        messages.add(new JSONObject(payload));
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void sendBinary(byte[] payload) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close(int closeReason, String reasonPhrase) {
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+  }
+}
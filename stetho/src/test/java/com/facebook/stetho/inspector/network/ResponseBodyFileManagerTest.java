@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import android.content.ContextWrapper;
+import android.os.Build;
+import android.util.Base64;
+
+import com.facebook.stetho.common.Util;
+import com.facebook.stetho.common.Utf8Charset;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+@Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN)
+@RunWith(RobolectricTestRunner.class)
+public class ResponseBodyFileManagerTest {
+  @Rule
+  public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private ContextWrapper mContext;
+
+  @Before
+  public void setup() throws IOException {
+    final File cacheDir = mTemporaryFolder.newFolder("cache");
+    final File filesDir = mTemporaryFolder.newFolder("files");
+    mContext = new ContextWrapper(null) {
+      @Override
+      public File getCacheDir() {
+        return cacheDir;
+      }
+
+      @Override
+      public File getFilesDir() {
+        return filesDir;
+      }
+    };
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedEntry() throws IOException {
+    ResponseBodyFileManager manager = new ResponseBodyFileManager(
+        mContext,
+        new ResponseBodyStoreOptions(1024 /* maxBytes */, 2 /* maxEntries */));
+
+    writeBody(manager, "1", "one");
+    writeBody(manager, "2", "two");
+    assertEquals("one", manager.readFile("1").data);
+
+    writeBody(manager, "3", "three");
+    assertEquals("one", manager.readFile("1").data);
+    assertEquals("three", manager.readFile("3").data);
+    try {
+      manager.readFile("2");
+      fail();
+    } catch (ResponseBodyEvictedException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testEvictsToStayWithinByteBudget() throws IOException {
+    ResponseBodyFileManager manager = new ResponseBodyFileManager(
+        mContext,
+        new ResponseBodyStoreOptions(100 /* maxBytes */, 10 /* maxEntries */));
+
+    writeBody(manager, "1", repeat('a', 60));
+    writeBody(manager, "2", repeat('b', 60));
+
+    assertEquals(repeat('b', 60), manager.readFile("2").data);
+    try {
+      manager.readFile("1");
+      fail();
+    } catch (ResponseBodyEvictedException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCleanupForgetsEverything() throws IOException {
+    ResponseBodyFileManager manager = new ResponseBodyFileManager(
+        mContext,
+        ResponseBodyStoreOptions.DEFAULT);
+
+    writeBody(manager, "1", "one");
+    manager.cleanupFiles();
+    try {
+      manager.readFile("1");
+      fail();
+    } catch (ResponseBodyEvictedException e) {
+      fail();
+    } catch (FileNotFoundException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCachesPrettyPrintedBody() throws IOException {
+    ResponseBodyFileManager manager = new ResponseBodyFileManager(
+        mContext,
+        ResponseBodyStoreOptions.DEFAULT);
+    CountingPrettyPrinter prettyPrinter = new CountingPrettyPrinter();
+
+    AsyncPrettyPrinterExecutorHolder.ensureInitialized();
+    try {
+      writeBody(manager, "1", "one");
+      manager.associateAsyncPrettyPrinterWithId("1", prettyPrinter);
+      assertEquals("pretty one", manager.readFile("1").data);
+      assertEquals("pretty one", manager.readFile("1").data);
+      assertEquals(1, prettyPrinter.printCount.get());
+
+      writeBody(manager, "1", "uno");
+      assertEquals("pretty uno", manager.readFile("1").data);
+      assertEquals(2, prettyPrinter.printCount.get());
+    } finally {
+      AsyncPrettyPrinterExecutorHolder.shutdown();
+    }
+  }
+
+  @Test
+  public void testDecodesBodiesStoredEncoded() throws IOException {
+    ResponseBodyFileManager manager = new ResponseBodyFileManager(
+        mContext,
+        new ResponseBodyStoreOptions(
+            1024 * 1024 /* maxBytes */,
+            10 /* maxEntries */,
+            0 /* segmentSize */,
+            true /* storeEncodedBodies */));
+    assertTrue(manager.shouldStoreEncoded("gzip"));
+    assertFalse(manager.shouldStoreEncoded("br"));
+    assertFalse(manager.shouldStoreEncoded(null));
+
+    byte[] body = repeat('z', 10000).getBytes(Utf8Charset.INSTANCE);
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    GZIPOutputStream gzipOut = new GZIPOutputStream(gzipped);
+    gzipOut.write(body);
+    gzipOut.close();
+
+    OutputStream out = manager.openResponseBodyFile("1", false /* base64Encode */, "gzip");
+    out.write(gzipped.toByteArray());
+    out.close();
+    assertEquals(repeat('z', 10000), manager.readFile("1").data);
+
+    out = manager.openResponseBodyFile("2", true /* base64Encode */, "gzip");
+    out.write(gzipped.toByteArray());
+    out.close();
+    ResponseBodyData bodyData = manager.readFile("2");
+    assertTrue(bodyData.base64Encoded);
+    assertArrayEquals(body, Base64.decode(bodyData.data, Base64.DEFAULT));
+  }
+
+  private static void writeBody(ResponseBodyFileManager manager, String requestId, String body)
+      throws IOException {
+    OutputStream out = manager.openResponseBodyFile(requestId, false /* base64Encode */);
+    try {
+      out.write(body.getBytes(Utf8Charset.INSTANCE));
+    } finally {
+      out.close();
+    }
+  }
+
+  private static class CountingPrettyPrinter implements AsyncPrettyPrinter {
+    public final AtomicInteger printCount = new AtomicInteger();
+
+    @Override
+    public void printTo(PrintWriter output, InputStream payload) throws IOException {
+      printCount.incrementAndGet();
+      output.print("pretty " + Util.readAsUTF8(payload));
+    }
+
+    @Override
+    public PrettyPrinterDisplayType getPrettifiedType() {
+      return PrettyPrinterDisplayType.TEXT;
+    }
+  }
+
+  private static String repeat(char c, int count) {
+    StringBuilder b = new StringBuilder(count);
+    for (int i = 0; i < count; i++) {
+      b.append(c);
+    }
+    return b.toString();
+  }
+}
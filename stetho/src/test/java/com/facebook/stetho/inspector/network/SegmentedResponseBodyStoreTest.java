@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.network;
+
+import com.facebook.stetho.common.Util;
+import com.facebook.stetho.common.Utf8Charset;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class SegmentedResponseBodyStoreTest {
+  @Rule
+  public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private File mDirectory;
+
+  @Before
+  public void setup() throws IOException {
+    mDirectory = mTemporaryFolder.newFolder("bodies");
+  }
+
+  @Test
+  public void testSmallBodiesShareSegments() throws IOException {
+    SegmentedResponseBodyStore store =
+        new SegmentedResponseBodyStore(mDirectory, 1024 /* segmentSize */, 1024 * 1024);
+
+    for (int i = 0; i < 100; i++) {
+      writeBody(store, "r" + i, "{\"id\":" + i + "}");
+    }
+    for (int i = 0; i < 100; i++) {
+      assertEquals("{\"id\":" + i + "}", readBody(store, "r" + i));
+    }
+    assertTrue(mDirectory.listFiles().length < 10);
+  }
+
+  @Test
+  public void testCompactsRemovedBodies() throws IOException {
+    SegmentedResponseBodyStore store =
+        new SegmentedResponseBodyStore(mDirectory, 100 /* segmentSize */, 400 /* maxBytes */);
+
+    String body = repeat('x', 50);
+    for (int i = 0; i < 8; i++) {
+      writeBody(store, "r" + i, body);
+    }
+    // Leave every other body behind so that no segment can simply be deleted.
+    for (int i = 0; i < 8; i += 2) {
+      store.remove("r" + i);
+    }
+    for (int i = 8; i < 12; i++) {
+      writeBody(store, "r" + i, body);
+      store.remove("r" + (i - 7));
+    }
+
+    long totalLength = 0;
+    for (File file : mDirectory.listFiles()) {
+      totalLength += file.length();
+    }
+    assertTrue("segments take up " + totalLength, totalLength <= 400 + 100);
+    for (int i = 8; i < 12; i++) {
+      assertEquals(body, readBody(store, "r" + i));
+    }
+    assertEquals(body, readBody(store, "r7"));
+  }
+
+  @Test
+  public void testLargeBodyGetsOwnFile() throws IOException {
+    SegmentedResponseBodyStore store =
+        new SegmentedResponseBodyStore(mDirectory, 1024 /* segmentSize */, 1024 * 1024);
+
+    String large = repeat('y', 200 * 1024);
+    writeBody(store, "large", large);
+    writeBody(store, "small", "small");
+    assertEquals(large, readBody(store, "large"));
+    assertEquals("small", readBody(store, "small"));
+
+    store.remove("large");
+    try {
+      store.openInputStream("large");
+      fail();
+    } catch (FileNotFoundException e) {
+      // expected
+    }
+
+    store.clear();
+    assertEquals(0, mDirectory.listFiles().length);
+  }
+
+  private static void writeBody(ResponseBodyStore store, String requestId, String body)
+      throws IOException {
+    OutputStream out = store.openOutputStream(requestId);
+    try {
+      out.write(body.getBytes(Utf8Charset.INSTANCE));
+    } finally {
+      out.close();
+    }
+  }
+
+  private static String readBody(ResponseBodyStore store, String requestId) throws IOException {
+    InputStream in = store.openInputStream(requestId);
+    try {
+      return Util.readAsUTF8(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static String repeat(char c, int count) {
+    StringBuilder b = new StringBuilder(count);
+    for (int i = 0; i < count; i++) {
+      b.append(c);
+    }
+    return b.toString();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.protocol.module;
+
+import android.os.Build;
+
+import com.facebook.stetho.inspector.elements.Document;
+import com.facebook.stetho.inspector.elements.TestDocumentProvider;
+import com.facebook.stetho.inspector.elements.TestElement;
+import com.facebook.stetho.inspector.jsonrpc.JsonRpcPeer;
+import com.facebook.stetho.json.ObjectMapper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN)
+@RunWith(RobolectricTestRunner.class)
+public class CSSTest {
+  private final ObjectMapper mObjectMapper = new ObjectMapper();
+
+  private TestElement mRoot;
+  private TestElement mA;
+  private TestElement mB;
+  private TestElement mC;
+
+  private TestDocumentProvider mProvider;
+  private Document mDocument;
+  private CSS mCSS;
+  private JsonRpcPeer mPeer;
+
+  @Before
+  public void setUp() {
+    // root
+    //   a
+    //     b
+    //   c
+    mB = new TestElement("b");
+    mA = new TestElement("a", mB);
+    mC = new TestElement("c");
+    mRoot = new TestElement("root", mA, mC);
+
+    mProvider = new TestDocumentProvider(mRoot);
+    mDocument = new Document(mProvider);
+    mCSS = new CSS(mDocument);
+    mPeer = new JsonRpcPeer(mObjectMapper, new RecordingSession());
+    mCSS.enable(mPeer, null /* params */);
+  }
+
+  @After
+  public void tearDown() {
+    mCSS.disable(mPeer, null /* params */);
+  }
+
+  @Test
+  public void testStylesCachedUntilChanged() throws JSONException {
+    getComputedStyle(mA);
+    getComputedStyle(mA);
+    assertEquals(1, mA.computedStyleReads);
+
+    getMatchedStyles(mA);
+    getMatchedStyles(mA);
+    assertEquals(1, mA.styleReads);
+  }
+
+  @Test
+  public void testAttributeChangeInvalidatesNode() throws JSONException {
+    mA.width = "10";
+    assertEquals("10", getComputedStyle(mA));
+    getComputedStyle(mC);
+    getMatchedStyles(mA);
+
+    mA.width = "20";
+    mProvider.notifyAttributeModified(mA, "width", "20");
+
+    assertEquals("20", getComputedStyle(mA));
+    assertEquals(2, mA.computedStyleReads);
+    getMatchedStyles(mA);
+    assertEquals(2, mA.styleReads);
+
+    getComputedStyle(mC);
+    assertEquals(1, mC.computedStyleReads);
+  }
+
+  @Test
+  public void testLayoutInvalidatesSubtree() throws JSONException {
+    getComputedStyle(mA);
+    getComputedStyle(mB);
+    getComputedStyle(mC);
+
+    // What a layout pass of a's window is reported as.
+    mProvider.notifyStylesPossiblyChanged(mA);
+
+    getComputedStyle(mA);
+    getComputedStyle(mB);
+    getComputedStyle(mC);
+    assertEquals(2, mA.computedStyleReads);
+    assertEquals(2, mB.computedStyleReads);
+    assertEquals(1, mC.computedStyleReads);
+  }
+
+  @Test
+  public void testNotCachedWhileDisabled() throws JSONException {
+    // The DOM domain keeps the document alive without us.
+    mDocument.addRef();
+    mCSS.disable(mPeer, null /* params */);
+
+    getComputedStyle(mA);
+    getComputedStyle(mA);
+    assertEquals(2, mA.computedStyleReads);
+
+    mCSS.enable(mPeer, null /* params */);
+    mDocument.release();
+  }
+
+  private String getComputedStyle(TestElement element) throws JSONException {
+    JSONObject params = new JSONObject().put("nodeId", getNodeId(element));
+    JSONObject result =
+        mObjectMapper.convertValue(mCSS.getComputedStyleForNode(mPeer, params), JSONObject.class);
+    return result.getJSONArray("computedStyle").getJSONObject(0).getString("value");
+  }
+
+  private void getMatchedStyles(TestElement element) throws JSONException {
+    JSONObject params = new JSONObject().put("nodeId", getNodeId(element));
+    mCSS.getMatchedStylesForNode(mPeer, params);
+  }
+
+  private int getNodeId(TestElement element) {
+    return mDocument.getNodeIdForElement(element);
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.protocol.module;
+
+import android.os.Build;
+
+import com.facebook.stetho.inspector.elements.Document;
+import com.facebook.stetho.inspector.elements.TestDocumentProvider;
+import com.facebook.stetho.inspector.elements.TestElement;
+import com.facebook.stetho.inspector.jsonrpc.JsonRpcPeer;
+import com.facebook.stetho.json.ObjectMapper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.*;
+
+@Config(emulateSdk = Build.VERSION_CODES.JELLY_BEAN)
+@RunWith(RobolectricTestRunner.class)
+public class DOMTest {
+  private final ObjectMapper mObjectMapper = new ObjectMapper();
+
+  private TestElement mRoot;
+  private TestElement mA;
+  private TestElement mB;
+  private TestElement mC;
+  private TestElement mD;
+
+  private TestDocumentProvider mProvider;
+  private DOM mDOM;
+  private RecordingSession mSession;
+  private JsonRpcPeer mPeer;
+
+  @Before
+  public void setUp() {
+    // root
+    //   a
+    //     b
+    //       c
+    //   d
+    mC = new TestElement("c");
+    mB = new TestElement("b", mC);
+    mA = new TestElement("a", mB);
+    mD = new TestElement("d");
+    mRoot = new TestElement("root", mA, mD);
+
+    mProvider = new TestDocumentProvider(mRoot);
+    mDOM = new DOM(new Document(mProvider));
+    mSession = new RecordingSession();
+    mPeer = new JsonRpcPeer(mObjectMapper, mSession);
+    mDOM.enable(mPeer, null /* params */);
+  }
+
+  @After
+  public void tearDown() {
+    mDOM.disable(mPeer, null /* params */);
+  }
+
+  @Test
+  public void testGetDocumentDefaultsToOneLevel() throws JSONException {
+    JSONObject root = getDocument(null /* depth */);
+
+    assertEquals("root", root.getString("nodeName"));
+    JSONArray children = root.getJSONArray("children");
+    assertEquals(2, children.length());
+    JSONObject a = children.getJSONObject(0);
+    assertEquals("a", a.getString("nodeName"));
+    assertEquals(1, a.getInt("childNodeCount"));
+    assertFalse(a.has("children"));
+  }
+
+  @Test
+  public void testGetDocumentToDepth() throws JSONException {
+    JSONObject a = getDocument(2).getJSONArray("children").getJSONObject(0);
+    JSONObject b = a.getJSONArray("children").getJSONObject(0);
+    assertEquals("b", b.getString("nodeName"));
+    assertEquals(1, b.getInt("childNodeCount"));
+    assertFalse(b.has("children"));
+
+    b = getDocument(-1)
+        .getJSONArray("children").getJSONObject(0)
+        .getJSONArray("children").getJSONObject(0);
+    JSONObject c = b.getJSONArray("children").getJSONObject(0);
+    assertEquals("c", c.getString("nodeName"));
+    assertEquals(0, c.getJSONArray("children").length());
+  }
+
+  @Test
+  public void testRequestChildNodesToDepth() throws Exception {
+    JSONObject a = getDocument(1).getJSONArray("children").getJSONObject(0);
+    mSession.messages.clear();
+
+    mDOM.requestChildNodes(mPeer, new JSONObject()
+        .put("nodeId", a.getInt("nodeId"))
+        .put("depth", 1));
+    JSONObject params = getOnlyMessage("DOM.setChildNodes");
+    assertEquals(a.getInt("nodeId"), params.getInt("parentId"));
+    JSONObject b = params.getJSONArray("nodes").getJSONObject(0);
+    assertEquals("b", b.getString("nodeName"));
+    assertFalse(b.has("children"));
+
+    mDOM.requestChildNodes(mPeer, new JSONObject()
+        .put("nodeId", a.getInt("nodeId"))
+        .put("depth", -1));
+    params = getOnlyMessage("DOM.setChildNodes");
+    b = params.getJSONArray("nodes").getJSONObject(0);
+    assertEquals("c", b.getJSONArray("children").getJSONObject(0).getString("nodeName"));
+  }
+
+  @Test
+  public void testChangesUnderUnexpandedNodeOnlyUpdateCount() throws JSONException {
+    JSONObject a = getDocument(1).getJSONArray("children").getJSONObject(0);
+    mSession.messages.clear();
+
+    mA.children.add(new TestElement("e"));
+    mProvider.notifyPossiblyChanged();
+
+    JSONObject params = getOnlyMessage("DOM.childNodeCountUpdated");
+    assertEquals(a.getInt("nodeId"), params.getInt("nodeId"));
+    assertEquals(2, params.getInt("childNodeCount"));
+  }
+
+  @Test
+  public void testRemovingNodeForgetsExpandedDescendants() throws JSONException {
+    JSONObject b = getDocument(-1)
+        .getJSONArray("children").getJSONObject(0)
+        .getJSONArray("children").getJSONObject(0);
+
+    // Moving a (and with it b) under d removes it and inserts it again without children, so the
+    // frontend no longer knows b's children.
+    mRoot.children.remove(mA);
+    mD.children.add(mA);
+    mProvider.notifyPossiblyChanged();
+    mSession.messages.clear();
+
+    mB.children.add(new TestElement("e"));
+    mProvider.notifyPossiblyChanged();
+
+    JSONObject params = getOnlyMessage("DOM.childNodeCountUpdated");
+    assertEquals(b.getInt("nodeId"), params.getInt("nodeId"));
+    assertEquals(2, params.getInt("childNodeCount"));
+  }
+
+  @Test
+  public void testPeersExpandSeparately() throws Exception {
+    RecordingSession otherSession = new RecordingSession();
+    JsonRpcPeer otherPeer = new JsonRpcPeer(mObjectMapper, otherSession);
+    mDOM.enable(otherPeer, null /* params */);
+    try {
+      mDOM.getDocument(otherPeer, new JSONObject().put("depth", -1));
+      JSONObject a = getDocument(1).getJSONArray("children").getJSONObject(0);
+
+      mDOM.requestChildNodes(mPeer, new JSONObject().put("nodeId", a.getInt("nodeId")));
+      getOnlyMessage("DOM.setChildNodes");
+      assertEquals(0, otherSession.messages.size());
+
+      // Only the other peer has been sent d's (so far nonexistent) children.
+      mD.children.add(new TestElement("e"));
+      mProvider.notifyPossiblyChanged();
+
+      getOnlyMessage("DOM.childNodeCountUpdated");
+      assertEquals(1, otherSession.messages.size());
+      assertEquals(
+          "DOM.childNodeInserted",
+          otherSession.messages.get(0).getString("method"));
+    } finally {
+      mDOM.disable(otherPeer, null /* params */);
+    }
+  }
+
+  @Test
+  public void testPerformSearchSkipsRoot() throws JSONException {
+    assertEquals(0, performSearch("root"));
+    assertEquals(1, performSearch("<b>"));
+    assertEquals(4, performSearch(""));
+  }
+
+  private JSONObject getDocument(@Nullable Integer depth) throws JSONException {
+    JSONObject params = new JSONObject();
+    if (depth != null) {
+      params.put("depth", depth);
+    }
+    return mObjectMapper.convertValue(mDOM.getDocument(mPeer, params), JSONObject.class)
+        .getJSONObject("root");
+  }
+
+  private int performSearch(String query) throws JSONException {
+    JSONObject params = new JSONObject().put("query", query);
+    return mObjectMapper.convertValue(mDOM.performSearch(mPeer, params), JSONObject.class)
+        .getInt("resultCount");
+  }
+
+  private JSONObject getOnlyMessage(String method) throws JSONException {
+    assertEquals(1, mSession.messages.size());
+    JSONObject message = mSession.messages.remove(0);
+    assertEquals(method, message.getString("method"));
+    return message.getJSONObject("params");
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.inspector.protocol.module;
+
+import com.facebook.stetho.websocket.SimpleSession;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps every message sent to the peer.
+ */
+class RecordingSession implements SimpleSession {
+  public final List<JSONObject> messages = new ArrayList<>();
+
+  @Override
+  public void sendText(String payload) {
+    try {
+      messages.add(new JSONObject(payload));
+    } catch (JSONException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void sendBinary(byte[] payload) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void close(int closeReason, String reasonPhrase) {
+  }
+
+  @Override
+  public boolean isOpen() {
+    return true;
+  }
+}
@@ -21,6 +21,7 @@ import org.robolectric.annotation.Config;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
@@ -180,6 +181,91 @@ public class ObjectMapperTest {
     assertEquals(primitives.toString(), actual.toString());
   }
 
+  @Test
+  public void testEnumListProperty() throws JSONException {
+    JSONObject json = new JSONObject("{\"enumList\":[\"three\",\"one\"]}");
+    // Convert twice to exercise both the cold and the cached binding.
+    for (int i = 0; i < 2; i++) {
+      JsonPropertyEnumList parsed = mObjectMapper.convertValue(json, JsonPropertyEnumList.class);
+      assertEquals(
+          Arrays.asList(TestEnum.VALUE_THREE, TestEnum.VALUE_ONE),
+          parsed.enumList);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownEnumValue() throws JSONException {
+    mObjectMapper.convertValue(
+        new JSONObject("{\"enumValue\":\"four\"}"),
+        JsonPropertyEnum.class);
+  }
+
+  @Test
+  public void testMissingPrimitiveDefaults() throws JSONException {
+    JsonPropertyInt parsed = mObjectMapper.convertValue(new JSONObject("{}"), JsonPropertyInt.class);
+    assertEquals(0, parsed.i);
+  }
+
+  @Test
+  public void testWriteValueMatchesJSONObject() throws JSONException {
+    NestedJsonProperty njp = new NestedJsonProperty();
+    njp.child2 = new JsonPropertyInt();
+    njp.child2.i = 4;
+    assertWriteValueMatchesJSONObject(njp);
+
+    JsonPropertyString jps = new JsonPropertyString();
+    jps.testString = "quote\" slash/ tab\t ctrl\u0001 \u00e9\u4e2d\ud83d\ude00";
+    assertWriteValueMatchesJSONObject(jps);
+
+    JsonPropertyEnum jpe = new JsonPropertyEnum();
+    jpe.enumValue = TestEnum.VALUE_THREE;
+    assertWriteValueMatchesJSONObject(jpe);
+
+    List<List<String>> listOfLists = new ArrayList<List<String>>();
+    listOfLists.add(Collections.singletonList("foo"));
+    listOfLists.add(Collections.<String>emptyList());
+    JsonPropertyListOfLists jpll = new JsonPropertyListOfLists();
+    jpll.listOfLists = listOfLists;
+    assertWriteValueMatchesJSONObject(jpll);
+
+    ArrayOfPrimitivesContainer container = new ArrayOfPrimitivesContainer();
+    container.primitives.add(Long.MIN_VALUE);
+    container.primitives.add(1.0d);
+    container.primitives.add(1.5f);
+    container.primitives.add(2.0f);
+    container.primitives.add(-0.0d);
+    container.primitives.add(-0.0f);
+    container.primitives.add(1e20d);
+    container.primitives.add(Double.NaN);
+    container.primitives.add(Float.NEGATIVE_INFINITY);
+    container.primitives.add(true);
+    container.primitives.add(null);
+    assertWriteValueMatchesJSONObject(container);
+
+    JSONObject jsonObject = new JSONObject("{\"a\":[1,\"b\",{\"c\":null}],\"d\":2.5}");
+    assertWriteValueMatchesJSONObject(jsonObject);
+  }
+
+  @Test
+  public void testWriteValueReusesWriter() {
+    Utf8JsonWriter writer = new Utf8JsonWriter();
+    JsonPropertyInt jpi = new JsonPropertyInt();
+    jpi.i = 1;
+    mObjectMapper.writeValue(writer, jpi);
+    writer.reset();
+    jpi.i = 2;
+    mObjectMapper.writeValue(writer, jpi);
+    assertEquals("{\"i\":2}", writer.toString());
+  }
+
+  private void assertWriteValueMatchesJSONObject(Object value) {
+    Utf8JsonWriter writer = new Utf8JsonWriter();
+    mObjectMapper.writeValue(writer, value);
+    assertEquals(
+        mObjectMapper.convertValue(value, JSONObject.class).toString(),
+        writer.toString());
+  }
+
   public static class ArrayOfPrimitivesContainer {
     @JsonProperty
     public final ArrayList<Object> primitives = new ArrayList<>();
@@ -286,6 +372,11 @@ public class ObjectMapperTest {
     }
   }
 
+  public static class JsonPropertyEnumList {
+    @JsonProperty
+    public List<TestEnum> enumList;
+  }
+
   private static class JsonPropertyMultitypedList {
     @JsonProperty
     public List<Object> multitypedList;
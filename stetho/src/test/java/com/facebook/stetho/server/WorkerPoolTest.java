@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.server;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class WorkerPoolTest {
+  private static final long LONG_IDLE_TIMEOUT_MS = 60000;
+
+  @Test(timeout = 5000)
+  public void testQueuesThenRejectsBeyondBound() throws InterruptedException {
+    WorkerPool pool = new WorkerPool(
+        "test",
+        new WorkerPoolOptions(
+            2 /* maxPooledThreads */,
+            1 /* maxPendingConnections */,
+            LONG_IDLE_TIMEOUT_MS));
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(3);
+
+    assertTrue(pool.execute(new BlockingTask(started, release)));
+    assertTrue(pool.execute(new BlockingTask(started, release)));
+    assertTrue(pool.execute(new BlockingTask(started, release)));
+    assertFalse(pool.execute(new BlockingTask(started, release)));
+
+    awaitActiveConnections(pool, 2);
+    assertEquals(2, pool.getPooledThreadCount());
+    assertEquals(1, pool.getPendingConnectionCount());
+    assertEquals(1, pool.getRejectedConnectionCount());
+
+    // The queued task runs on one of the two threads once they're free.
+    release.countDown();
+    assertTrue(started.await(1, TimeUnit.SECONDS));
+    awaitActiveConnections(pool, 0);
+    assertEquals(0, pool.getPendingConnectionCount());
+    assertEquals(2, pool.getThreadsCreatedCount());
+  }
+
+  @Test(timeout = 5000)
+  public void testIdleThreadReused() throws InterruptedException {
+    WorkerPool pool = new WorkerPool(
+        "test",
+        new WorkerPoolOptions(
+            2 /* maxPooledThreads */,
+            0 /* maxPendingConnections */,
+            LONG_IDLE_TIMEOUT_MS));
+    for (int i = 0; i < 3; i++) {
+      CountDownLatch done = new CountDownLatch(1);
+      assertTrue(pool.execute(done::countDown));
+      assertTrue(done.await(1, TimeUnit.SECONDS));
+      awaitIdleThreads(pool, 1);
+    }
+    assertEquals(1, pool.getThreadsCreatedCount());
+    assertEquals(1, pool.getPooledThreadCount());
+  }
+
+  @Test(timeout = 5000)
+  public void testIdleThreadReaped() throws InterruptedException {
+    WorkerPool pool = new WorkerPool(
+        "test",
+        new WorkerPoolOptions(
+            1 /* maxPooledThreads */,
+            0 /* maxPendingConnections */,
+            50 /* idleTimeoutMs */));
+    CountDownLatch done = new CountDownLatch(1);
+    assertTrue(pool.execute(done::countDown));
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+
+    while (pool.getPooledThreadCount() > 0) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, pool.getThreadsReapedCount());
+    assertEquals(0, pool.getIdleThreadCount());
+
+    // A fresh thread picks up the next connection.
+    CountDownLatch doneAgain = new CountDownLatch(1);
+    assertTrue(pool.execute(doneAgain::countDown));
+    assertTrue(doneAgain.await(1, TimeUnit.SECONDS));
+    assertEquals(2, pool.getThreadsCreatedCount());
+  }
+
+  @Test(timeout = 5000)
+  public void testDetachedThreadFreesSlot() throws InterruptedException {
+    WorkerPool pool = new WorkerPool(
+        "test",
+        new WorkerPoolOptions(
+            1 /* maxPooledThreads */,
+            1 /* maxPendingConnections */,
+            LONG_IDLE_TIMEOUT_MS));
+    CountDownLatch detached = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch shortTaskDone = new CountDownLatch(1);
+
+    CountDownLatch sessionStarted = new CountDownLatch(1);
+    assertTrue(pool.execute(() -> {
+      sessionStarted.countDown();
+      awaitQuietly(detached);
+      WorkerPool.detachCurrentThread();
+      awaitQuietly(release);
+    }));
+    assertTrue(sessionStarted.await(1, TimeUnit.SECONDS));
+
+    // Queued behind the session until it detaches.
+    assertTrue(pool.execute(shortTaskDone::countDown));
+    assertEquals(1, pool.getPendingConnectionCount());
+
+    detached.countDown();
+    assertTrue(shortTaskDone.await(1, TimeUnit.SECONDS));
+    assertEquals(1, pool.getDedicatedThreadCount());
+
+    release.countDown();
+    awaitActiveConnections(pool, 0);
+  }
+
+  @Test(timeout = 5000)
+  public void testShutdownReturnsPendingAndRejects() throws InterruptedException {
+    WorkerPool pool = new WorkerPool(
+        "test",
+        new WorkerPoolOptions(
+            1 /* maxPooledThreads */,
+            1 /* maxPendingConnections */,
+            LONG_IDLE_TIMEOUT_MS));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Runnable pendingTask = () -> {};
+
+    assertTrue(pool.execute(new BlockingTask(started, release)));
+    assertTrue(started.await(1, TimeUnit.SECONDS));
+    assertTrue(pool.execute(pendingTask));
+
+    List<Runnable> pending = pool.shutdown();
+    assertEquals(1, pending.size());
+    assertSame(pendingTask, pending.get(0));
+    assertFalse(pool.execute(() -> {}));
+
+    release.countDown();
+    while (pool.getPooledThreadCount() > 0) {
+      Thread.sleep(10);
+    }
+  }
+
+  private static void awaitActiveConnections(WorkerPool pool, int count)
+      throws InterruptedException {
+    while (pool.getActiveConnectionCount() != count) {
+      Thread.sleep(10);
+    }
+  }
+
+  private static void awaitIdleThreads(WorkerPool pool, int count) throws InterruptedException {
+    while (pool.getIdleThreadCount() != count) {
+      Thread.sleep(10);
+    }
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class BlockingTask implements Runnable {
+    private final CountDownLatch mStarted;
+    private final CountDownLatch mRelease;
+
+    public BlockingTask(CountDownLatch started, CountDownLatch release) {
+      mStarted = started;
+      mRelease = release;
+    }
+
+    @Override
+    public void run() {
+      mStarted.countDown();
+      awaitQuietly(mRelease);
+    }
+  }
+}
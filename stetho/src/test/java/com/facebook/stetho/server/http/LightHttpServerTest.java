@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.server.http;
+
+import android.net.LocalSocket;
+
+import com.facebook.stetho.common.Utf8Charset;
+import com.facebook.stetho.server.LeakyBufferedInputStream;
+import com.facebook.stetho.server.SocketLike;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class LightHttpServerTest {
+  private static final String GET_REQUEST = "GET /test HTTP/1.1\r\nHost: localhost\r\n\r\n";
+
+  @Test
+  public void testKeepAliveServesRequestsOnOneConnection() throws IOException {
+    CountingHandler handler = new CountingHandler();
+    FakeSocket socket = new FakeSocket(GET_REQUEST + GET_REQUEST + GET_REQUEST);
+    createServer(handler).serve(socket);
+
+    assertEquals(3, handler.requestCount);
+    String output = socket.getOutputString();
+    assertEquals(3, countOccurrences(output, "HTTP/1.1 200 OK"));
+    assertFalse(output.contains("Connection: close"));
+  }
+
+  @Test
+  public void testConnectionCloseEndsConnection() throws IOException {
+    CountingHandler handler = new CountingHandler();
+    FakeSocket socket = new FakeSocket(
+        "GET /test HTTP/1.1\r\nConnection: close\r\n\r\n" + GET_REQUEST);
+    createServer(handler).serve(socket);
+
+    assertEquals(1, handler.requestCount);
+    String output = socket.getOutputString();
+    assertEquals(1, countOccurrences(output, "HTTP/1.1 200 OK"));
+    assertTrue(output.contains("Connection: close"));
+  }
+
+  @Test
+  public void testHttp10ClosesUnlessKeepAliveRequested() throws IOException {
+    CountingHandler handler = new CountingHandler();
+    FakeSocket socket = new FakeSocket(
+        "GET /test HTTP/1.0\r\nConnection: keep-alive\r\n\r\n" +
+        "GET /test HTTP/1.0\r\n\r\n" +
+        GET_REQUEST);
+    createServer(handler).serve(socket);
+
+    assertEquals(2, handler.requestCount);
+    String output = socket.getOutputString();
+    assertTrue(output.contains("Connection: keep-alive"));
+    assertTrue(output.contains("Connection: close"));
+  }
+
+  @Test
+  public void testIdleConnectionClosedOnTimeout() throws IOException {
+    CountingHandler handler = new CountingHandler();
+    // The stream fails once the request has been read, like a LocalSocket whose read timed out.
+    FakeSocket socket = new FakeSocket(GET_REQUEST, new IOException("Try again"));
+    createServer(handler).serve(socket);
+
+    assertEquals(1, handler.requestCount);
+    assertEquals(1, countOccurrences(socket.getOutputString(), "HTTP/1.1 200 OK"));
+    assertEquals(
+        Arrays.asList(
+            LightHttpServer.KEEP_ALIVE_TIMEOUT_MS,
+            0,
+            LightHttpServer.KEEP_ALIVE_TIMEOUT_MS),
+        socket.timeouts);
+  }
+
+  @Test(expected = IOException.class)
+  public void testErrorWithinRequestLinePropagates() throws IOException {
+    FakeSocket socket = new FakeSocket("GET /te", new IOException("Connection reset"));
+    createServer(new CountingHandler()).serve(socket);
+  }
+
+  private static LightHttpServer createServer(HttpHandler handler) {
+    HandlerRegistry registry = new HandlerRegistry();
+    registry.register(new ExactPathMatcher("/test"), handler);
+    return new LightHttpServer(registry);
+  }
+
+  private static int countOccurrences(String haystack, String needle) {
+    int count = 0;
+    for (int index = haystack.indexOf(needle);
+        index >= 0;
+        index = haystack.indexOf(needle, index + needle.length())) {
+      count++;
+    }
+    return count;
+  }
+
+  private static class CountingHandler implements HttpHandler {
+    public int requestCount;
+
+    @Override
+    public boolean handleRequest(
+        SocketLike socket,
+        LightHttpRequest request,
+        LightHttpResponse response) {
+      requestCount++;
+      response.code = HttpStatus.HTTP_OK;
+      response.reasonPhrase = "OK";
+      response.body = LightHttpBody.create("hello\n", "text/plain");
+      return true;
+    }
+  }
+
+  private static class FakeSocket extends SocketLike {
+    public final List<Integer> timeouts = new ArrayList<>();
+    private final ByteArrayOutputStream mOutput = new ByteArrayOutputStream();
+
+    public FakeSocket(String input) {
+      this(input, null /* errorAtEnd */);
+    }
+
+    public FakeSocket(String input, @Nullable IOException errorAtEnd) {
+      super(
+          (LocalSocket) null,
+          new LeakyBufferedInputStream(new ScriptedInputStream(input, errorAtEnd), 1024));
+    }
+
+    @Override
+    public OutputStream getOutput() {
+      return mOutput;
+    }
+
+    @Override
+    public void setSoTimeout(int timeoutMs) {
+      timeouts.add(timeoutMs);
+    }
+
+    public String getOutputString() {
+      return new String(mOutput.toByteArray(), Utf8Charset.INSTANCE);
+    }
+  }
+
+  /**
+   * Serves {@code input} and then either reports end of stream or fails with an error.
+   */
+  private static class ScriptedInputStream extends InputStream {
+    private final ByteArrayInputStream mInput;
+    private final @Nullable IOException mErrorAtEnd;
+
+    public ScriptedInputStream(String input, @Nullable IOException errorAtEnd) {
+      mInput = new ByteArrayInputStream(Utf8Charset.encodeUTF8(input));
+      mErrorAtEnd = errorAtEnd;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = mInput.read();
+      if (b < 0 && mErrorAtEnd != null) {
+        throw mErrorAtEnd;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+      int n = mInput.read(buffer, offset, count);
+      if (n < 0 && mErrorAtEnd != null) {
+        throw mErrorAtEnd;
+      }
+      return n;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.websocket;
+
+import com.facebook.stetho.common.Utf8Charset;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class PerMessageDeflateTest {
+  private static final DeflateOptions OPTIONS =
+      new DeflateOptions(true /* enabled */, Deflater.BEST_SPEED, 64 /* minMessageSize */);
+
+  @Test
+  public void testNegotiate() {
+    PerMessageDeflate deflate = PerMessageDeflate.negotiate(
+        Collections.singletonList("permessage-deflate; client_max_window_bits"),
+        OPTIONS);
+    assertNotNull(deflate);
+    assertEquals("permessage-deflate", deflate.getResponseHeaderValue());
+
+    deflate = PerMessageDeflate.negotiate(
+        Collections.singletonList(
+            "permessage-deflate; server_max_window_bits=10, " +
+                "permessage-deflate; server_no_context_takeover"),
+        OPTIONS);
+    assertNotNull(deflate);
+    assertEquals(
+        "permessage-deflate; server_no_context_takeover",
+        deflate.getResponseHeaderValue());
+
+    assertNull(PerMessageDeflate.negotiate(
+        Collections.singletonList("x-webkit-deflate-frame"),
+        OPTIONS));
+    assertNull(PerMessageDeflate.negotiate(
+        Collections.singletonList("permessage-deflate"),
+        DeflateOptions.DISABLED));
+  }
+
+  @Test
+  public void testRoundTripWithContextTakeover() throws IOException {
+    PerMessageDeflate deflate = PerMessageDeflate.negotiate(
+        Collections.singletonList("permessage-deflate"),
+        OPTIONS);
+    PerMessageDeflate.MessageDeflater deflater = deflate.newDeflater();
+    PerMessageDeflate.MessageInflater inflater = deflate.newInflater();
+
+    String small = "{\"id\":1,\"result\":{}}";
+    Frame frame = FrameHelper.createTextFrame(small);
+    deflater.compress(frame);
+    assertFalse(frame.rsv1);
+
+    String large = createLargeMessage();
+    for (int i = 0; i < 3; i++) {
+      frame = FrameHelper.createTextFrame(large);
+      deflater.compress(frame);
+      assertTrue(frame.rsv1);
+      assertTrue(frame.payloadLen < large.length());
+
+      byte[] compressed = Arrays.copyOf(frame.payloadData, (int) frame.payloadLen);
+      int inflatedLen = inflater.inflate(compressed, compressed.length, Integer.MAX_VALUE);
+      assertEquals(
+          large,
+          new String(inflater.getBuffer(), 0, inflatedLen, Utf8Charset.INSTANCE));
+    }
+
+    deflater.end();
+    inflater.end();
+  }
+
+  private static String createLargeMessage() {
+    StringBuilder b = new StringBuilder("{\"method\":\"DOM.setChildNodes\",\"params\":[");
+    for (int i = 0; i < 500; i++) {
+      if (i > 0) {
+        b.append(',');
+      }
+      b.append("{\"nodeId\":").append(i).append(",\"nodeName\":\"android.widget.TextView\"}");
+    }
+    return b.append("]}").toString();
+  }
+}
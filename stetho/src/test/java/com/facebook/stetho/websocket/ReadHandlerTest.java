@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.stetho.websocket;
+
+import com.facebook.stetho.common.Utf8Charset;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ReadHandlerTest {
+  private static final byte[] MASKING_KEY = { 0x12, 0x34, 0x56, 0x78 };
+
+  @Test(timeout = 1000)
+  public void testMaskedFragmentedMessageWithInterleavedPing() throws IOException {
+    ByteArrayOutputStream in = new ByteArrayOutputStream();
+    writeFrame(in, false /* fin */, Frame.OPCODE_TEXT_FRAME, "{\"id\":1,");
+    writeFrame(in, true /* fin */, Frame.OPCODE_CONNECTION_PING, "ping");
+    writeFrame(in, true /* fin */, Frame.OPCODE_CONTINUATION, "\"method\":\"\u00e9\u20ac\"}");
+    writeFrame(in, true /* fin */, Frame.OPCODE_CONNECTION_CLOSE, "");
+
+    RecordingReadCallback callback = new RecordingReadCallback();
+    new ReadHandler(new ByteArrayInputStream(in.toByteArray()), null /* endpoint */)
+        .readLoop(callback);
+
+    assertEquals(3, callback.opcodes.size());
+    assertEquals(Frame.OPCODE_CONNECTION_PING, (byte) callback.opcodes.get(0));
+    assertEquals("ping", callback.payloads.get(0));
+    assertEquals(Frame.OPCODE_TEXT_FRAME, (byte) callback.opcodes.get(1));
+    assertEquals("{\"id\":1,\"method\":\"\u00e9\u20ac\"}", callback.payloads.get(1));
+    assertEquals(Frame.OPCODE_CONNECTION_CLOSE, (byte) callback.opcodes.get(2));
+  }
+
+  @Test(timeout = 1000)
+  public void testPayloadBufferReused() throws IOException {
+    ByteArrayOutputStream in = new ByteArrayOutputStream();
+    writeFrame(in, true /* fin */, Frame.OPCODE_TEXT_FRAME, "{\"id\":1,\"method\":\"DOM.enable\"}");
+    writeFrame(in, true /* fin */, Frame.OPCODE_TEXT_FRAME, "{\"id\":2,\"method\":\"CSS.enable\"}");
+    writeFrame(in, true /* fin */, Frame.OPCODE_CONNECTION_CLOSE, "");
+
+    RecordingReadCallback callback = new RecordingReadCallback();
+    new ReadHandler(new ByteArrayInputStream(in.toByteArray()), null /* endpoint */)
+        .readLoop(callback);
+
+    assertEquals("{\"id\":2,\"method\":\"CSS.enable\"}", callback.payloads.get(1));
+    assertSame(callback.buffers.get(0), callback.buffers.get(1));
+  }
+
+  private static void writeFrame(ByteArrayOutputStream out, boolean fin, byte opcode, String text) {
+    byte[] payload = Utf8Charset.encodeUTF8(text);
+    assertTrue(payload.length <= 125);
+    out.write((fin ? 0x80 : 0) | opcode);
+    out.write(0x80 | payload.length);
+    out.write(MASKING_KEY, 0, MASKING_KEY.length);
+    for (int i = 0; i < payload.length; i++) {
+      out.write(payload[i] ^ MASKING_KEY[i % 4]);
+    }
+  }
+
+  private static class RecordingReadCallback implements ReadCallback {
+    public final List<Byte> opcodes = new ArrayList<>();
+    public final List<String> payloads = new ArrayList<>();
+    public final List<byte[]> buffers = new ArrayList<>();
+
+    @Override
+    public void onCompleteFrame(byte opcode, byte[] payload, int payloadLen) {
+      opcodes.add(opcode);
+      payloads.add(new String(payload, 0, payloadLen, Utf8Charset.INSTANCE));
+      buffers.add(payload);
+    }
+  }
+}